@@ -0,0 +1,100 @@
+package com.mipssim;
+
+import com.mipssim.sim.Program;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * BinaryInput gives access to the 32-bit words of a raw binary file (e.g. a firmware image) without reading or
+ * copying it. The words are read directly from memory-mapped IntBuffer views with the chosen byte order. Files larger
+ * than what one buffer can address are mapped in windows. The words are addressed from Program.TEXT_BASE, so a
+ * region can hold at most MAX_WORDS words.
+ */
+public class BinaryInput implements Closeable {
+
+    // Largest number of bytes mapped by one buffer (multiple of 4).
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    // Largest number of words in a region, the last one is at the end of the 32-bit address space.
+    static final long MAX_WORDS = ((1L << 32) - Program.TEXT_BASE) / 4;
+
+    private final FileChannel channel;
+    private final ByteOrder order;
+    private final long offset;
+    private final long wordCount;
+
+    /**
+     * Opens a binary file.
+     * @param path File to read.
+     * @param order Byte order of the words in the file.
+     * @param offset Byte offset of the first word.
+     * @param length Number of bytes to read from offset, or -1 for the rest of the file. Bytes after the last
+     *               whole word are ignored.
+     * @throws IOException If the file can not be opened, offset is outside the file or the region holds more than
+     *                     MAX_WORDS words.
+     */
+    public BinaryInput(String path, ByteOrder order, long offset, long length) throws IOException {
+
+        this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        this.order   = order;
+        this.offset  = offset;
+
+        long size = channel.size();
+        if ((offset < 0) || (offset > size)) {
+            channel.close();
+            throw new IOException("Offset " + offset + " is outside the file (" + size + " bytes).");
+        }
+
+        if ((length < 0) || (offset + length > size))
+            length = size - offset;
+
+        if (length / 4 > MAX_WORDS) {
+            channel.close();
+            throw new IOException("Input is too large, " + (length / 4) + " words do not fit in the address space " +
+                                  "(at most " + MAX_WORDS + ").");
+        }
+
+        this.wordCount = length / 4;
+    }
+
+    /**
+     * Returns the number of whole words in the region.
+     * @return Number of words.
+     */
+    public long getWordCount() {
+        return wordCount;
+    }
+
+    /**
+     * Returns the largest number of words that is mapped by one call to map.
+     * @return Number of words in a window.
+     */
+    public static int getWindowWords() {
+        return (int) (WINDOW_SIZE / 4);
+    }
+
+    /**
+     * Maps count words starting at word firstWord of the region.
+     * @param firstWord Index of the first word (0 = the word at offset).
+     * @param count Number of words to map, at most getWindowWords().
+     * @return A read-only view of the words in the byte order of the file.
+     * @throws IOException If the mapping fails.
+     */
+    public IntBuffer map(long firstWord, int count) throws IOException {
+        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, offset + firstWord * 4, count * 4L);
+        buf.order(order);
+        return buf.asIntBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,106 @@
+package com.mipssim;
+
+import com.mipssim.instructions.Instructions;
+
+/**
+ * CompactOutput is an Output that only holds the instruction word, its line (and address) and its instruction.
+ * The format and opcode are available without building any String, the decompositions, mnemonic and input are
+ * rendered from the stored instruction by Disassembler.render when one of them is first asked for, without looking
+ * the word up again.
+ */
+public class CompactOutput extends Output {
+
+    private final int word;
+    private final Instructions instr;
+    private final Mappings map;
+
+    // Full result, null until rendered.
+    private Output rendered;
+
+    /**
+     *
+     * @param word The instruction word.
+     * @param lineInput The linenumber of the instruction (when read from file).
+     * @param instr Instruction of the word, see Disassembler.lookup.
+     * @param map Mappings object used to render the word.
+     */
+    public CompactOutput(int word, int lineInput, Instructions instr, Mappings map) {
+        super(null, null, null, null, lineInput);
+        this.word  = word;
+        this.instr = instr;
+        this.map   = map;
+    }
+
+    /**
+     * Returns the instruction word.
+     * @return Word (32-bit).
+     */
+    public int getWord() {
+        return word;
+    }
+
+    /**
+     * Returns the six most significant bits of the instruction.
+     * @return Opcode.
+     */
+    public int getOpcode() {
+        return word >>> 26;
+    }
+
+    /**
+     * Returns the instruction (descriptor) of the word.
+     * @return Instruction.
+     */
+    public Instructions getInstruction() {
+        return instr;
+    }
+
+    /**
+     * Returns true if the Strings of the result have been built.
+     * @return True if rendered.
+     */
+    public boolean isRendered() {
+        return rendered != null;
+    }
+
+    @Override
+    public String getFormat() {
+        // nop (word 0) has its own format, see Disassembler.parseWord.
+        return (word == 0) ? "?" : instr.getFormat();
+    }
+
+    @Override
+    public String getHexDecomp() {
+        return render().getHexDecomp();
+    }
+
+    @Override
+    public String getDecDecomp() {
+        return render().getDecDecomp();
+    }
+
+    @Override
+    public String getMnemonic() {
+        return render().getMnemonic();
+    }
+
+    @Override
+    public String getInput() {
+        String input = super.getInput();
+        if (input == null) {
+            input = "0x".concat(Integer.toHexString(word));
+            setInput(input);
+        }
+        return input;
+    }
+
+    private Output render() {
+        if (rendered == null) {
+            // nop (word 0) and words without instruction are handled by parseWord.
+            rendered = ((word == 0) || (instr == null))
+                       ? Disassembler.parseWord(word, getLineInput(), map, System.err)
+                       : Disassembler.render(word, getLineInput(), instr, map);
+        }
+        return rendered;
+    }
+}
@@ -0,0 +1,523 @@
+package com.mipssim;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * ControlFlowGraph splits the words of a program into basic blocks and connects them by the branches and jumps
+ * between them, with the dominator tree of the blocks. Everything is kept in int arrays indexed by block number
+ * (blocks are numbered in address order), so a graph of millions of instructions is a few arrays, not objects.
+ *
+ * The branches are beq, bne, blez, bgtz, the REGIMM branches and their likely forms, the same as for the listing
+ * (isBranchFunction), and in addition the coprocessor branches bc0f/bc0t, bc1f/bc1t and bc2f/bc2t and their likely
+ * forms, which isBranchFunction does not accept. The jumps are j, jal, jr and jalr. A block ends after the delay
+ * slot of a branch or jump, or before a leader: the entry, the target of a branch or direct jump, or the
+ * instruction after a delay slot. A block then gets up to two successor edges:
+ * <ul>
+ *   <li>BRANCH to the target of a branch, and FALL to the next block (for a likely branch this skips the delay
+ *   slot, which ends the block either way);</li>
+ *   <li>JUMP to the target of j;</li>
+ *   <li>CALL to the target of jal, bltzal, bgezal and their likely forms, and FALL to the block the call returns
+ *   to (jalr only has the FALL edge);</li>
+ *   <li>none for jr, whose target is not known without running the program;</li>
+ *   <li>FALL for a block that ends before a leader.</li>
+ * </ul>
+ * Targets outside the program get no edge.
+ *
+ * The graph is built in one sweep over the words for the leaders (a bit set), one over the blocks for the
+ * successors and a counting sort of the edges for the predecessors. Dominators are computed by the iterative
+ * algorithm of Cooper, Harvey and Kennedy in reverse postorder, which converges in a few passes on compiled code.
+ * Blocks that can not be reached from the entry are dominated from a virtual root, as if it jumped to the first of
+ * them in every unreachable region; their getIdom is -1 like the entry's.
+ */
+public class ControlFlowGraph {
+
+    // Kinds of edges.
+    public static final int FALL   = 0;
+    public static final int BRANCH = 1;
+    public static final int JUMP   = 2;
+    public static final int CALL   = 3;
+
+    private static final String[] KINDS = { "fall", "branch", "jump", "call" };
+
+    // Kinds of words, see control.
+    private static final int NONE     = 0;
+    private static final int COND     = 1;
+    private static final int COND_AL  = 2;
+    private static final int J        = 3;
+    private static final int JAL      = 4;
+    private static final int JR       = 5;
+    private static final int JALR     = 6;
+
+    private final int base;
+    private final int entry;
+    private final int length;
+
+    // Leaders as a bit set, and the number of leaders before every 64 words (rank), mapping words to blocks.
+    private final long[] leaders;
+    private final int[] rank;
+
+    // Block b starts at word starts[b], and ends before starts[b + 1] (starts has an extra entry, length).
+    private final int[] starts;
+
+    // Successors of b are succ[succStart[b] ... succStart[b + 1] - 1] with kinds succKind, the predecessors alike.
+    private final int[] succStart;
+    private final int[] succ;
+    private final byte[] succKind;
+    private final int[] predStart;
+    private final int[] pred;
+
+    // Immediate dominator of every block, -1 for the entry and the blocks not reachable from it.
+    private final int[] idom;
+
+    private ControlFlowGraph(int[] words, int base, int entry) {
+
+        this.base   = base;
+        this.length = words.length;
+        int entryIndex = (int) (Integer.toUnsignedLong(entry - base) >>> 2);
+        this.entry  = ((entryIndex < length) && ((entry & 3) == 0)) ? entryIndex : 0;
+
+        // Leaders: the first word, the entry, branch and jump targets and the words after delay slots.
+        leaders = new long[(length + 63) >>> 6];
+        mark(0);
+        mark(this.entry);
+        for (int i = 0; i < length; i++) {
+            int kind = control(words[i]);
+            if (kind == NONE)
+                continue;
+            mark(i + 2);
+            if (kind != JR && kind != JALR)
+                mark(targetIndex(words[i], i));
+        }
+
+        rank = new int[leaders.length + 1];
+        for (int k = 0; k < leaders.length; k++)
+            rank[k + 1] = rank[k] + Long.bitCount(leaders[k]);
+        int blocks = rank[leaders.length];
+
+        starts = new int[blocks + 1];
+        int b = 0;
+        for (int k = 0; k < leaders.length; k++) {
+            for (long bits = leaders[k]; bits != 0; bits &= bits - 1)
+                starts[b++] = (k << 6) + Long.numberOfTrailingZeros(bits);
+        }
+        starts[blocks] = length;
+
+        // Successors, at most two per block.
+        succStart = new int[blocks + 1];
+        int[] s   = new int[2 * blocks];
+        byte[] sk = new byte[2 * blocks];
+        int edges = 0;
+        for (b = 0; b < blocks; b++) {
+            succStart[b] = edges;
+            int last = starts[b + 1] - 1;
+            int next = (b + 1 < blocks) ? b + 1 : -1;
+
+            // The control word is the one before the last (its delay slot), which is in the previous block if the
+            // delay slot is a leader; that block then ends with the control word and falls into its delay slot.
+            int at     = last - 1;
+            int kind   = (at >= 0) ? control(words[at]) : NONE;
+            int target = (kind == NONE || kind == JR || kind == JALR) ? -1 : block(targetIndex(words[at], at));
+
+            switch (kind) {
+                case COND:
+                    edges = edge(s, sk, edges, target, BRANCH);
+                    edges = edge(s, sk, edges, next, FALL);
+                    break;
+                case J:
+                    edges = edge(s, sk, edges, target, JUMP);
+                    break;
+                case JAL:
+                case COND_AL:
+                    edges = edge(s, sk, edges, target, CALL);
+                    edges = edge(s, sk, edges, next, FALL);
+                    break;
+                case JR:
+                    break;
+                default:
+                    // jalr, and blocks that end before a leader.
+                    edges = edge(s, sk, edges, next, FALL);
+                    break;
+            }
+        }
+        succStart[blocks] = edges;
+        succ     = Arrays.copyOf(s, edges);
+        succKind = Arrays.copyOf(sk, edges);
+
+        // Predecessors by a counting sort of the edges on their target.
+        predStart = new int[blocks + 1];
+        for (int e = 0; e < edges; e++)
+            predStart[succ[e] + 1]++;
+        for (b = 0; b < blocks; b++)
+            predStart[b + 1] += predStart[b];
+        pred = new int[edges];
+        int[] fill = Arrays.copyOf(predStart, blocks);
+        for (b = 0; b < blocks; b++) {
+            for (int e = succStart[b]; e < succStart[b + 1]; e++)
+                pred[fill[succ[e]]++] = b;
+        }
+
+        idom = dominators(blocks, block(this.entry));
+    }
+
+    /**
+     * Builds the graph of a program.
+     * @param words Instruction words.
+     * @param base Address of the first word.
+     * @param entry Address of the first instruction executed (the first word if it is outside the program).
+     * @return The graph.
+     */
+    public static ControlFlowGraph build(int[] words, int base, int entry) {
+        return new ControlFlowGraph(words, base, entry);
+    }
+
+    /**
+     * Returns the kind of control transfer of a word.
+     */
+    private static int control(int word) {
+        int op = word >>> 26;
+        switch (op) {
+            case 0x00: {
+                int funct = word & 0x3f;
+                return (funct == 0x08) ? JR : (funct == 0x09) ? JALR : NONE;
+            }
+            case 0x01: {
+                int rt = (word >>> 16) & 0x1f;
+                if ((rt & 0x0c) != 0)
+                    return NONE;
+                return ((rt & 0x10) != 0) ? COND_AL : COND;
+            }
+            case 0x02:
+                return J;
+            case 0x03:
+                return JAL;
+            case 0x04: case 0x05: case 0x06: case 0x07:
+            case 0x14: case 0x15: case 0x16: case 0x17:
+                return COND;
+            case 0x10:
+            case 0x11:
+            case 0x12:
+                return (((word >>> 21) & 0x1f) == 0x08) ? COND : NONE;
+            default:
+                return NONE;
+        }
+    }
+
+    /**
+     * Returns the word index a branch or direct jump at index i goes to, -1 if it is outside the program.
+     */
+    private int targetIndex(int word, int i) {
+        long index = Integer.toUnsignedLong(target(word, base + i * 4) - base) >>> 2;
+        return (index < length) ? (int) index : -1;
+    }
+
+    /**
+     * Returns true if a word is a branch or a direct jump (j, jal), the words whose target is known statically.
+     * @param word Instruction word.
+     * @return True if target can be used on the word.
+     */
+    static boolean hasTarget(int word) {
+        int kind = control(word);
+        return (kind != NONE) && (kind != JR) && (kind != JALR);
+    }
+
+    /**
+     * Returns the address a branch or direct jump goes to, see hasTarget.
+     * @param word Instruction word.
+     * @param pc Address of the word.
+     * @return Target address.
+     */
+    static int target(int word, int pc) {
+        int op = word >>> 26;
+        return ((op == 0x02) || (op == 0x03)) ? ((pc + 4) & 0xf0000000) | ((word & 0x03ffffff) << 2)
+                                              : pc + 4 + ((short) word << 2);
+    }
+
+    private void mark(int i) {
+        if ((i >= 0) && (i < length))
+            leaders[i >>> 6] |= 1L << i;
+    }
+
+    /**
+     * Returns the block of word i, -1 if i is outside the program.
+     */
+    private int block(int i) {
+        if ((i < 0) || (i >= length))
+            return -1;
+        long below = leaders[i >>> 6] & (-1L >>> (63 - (i & 63)));
+        return rank[i >>> 6] + Long.bitCount(below) - 1;
+    }
+
+    private static int edge(int[] s, byte[] sk, int edges, int to, int kind) {
+        if (to < 0)
+            return edges;
+        s[edges]  = to;
+        sk[edges] = (byte) kind;
+        return edges + 1;
+    }
+
+    /**
+     * Computes the immediate dominators. A virtual root has an edge to the entry and to the first block of every
+     * region that the depth-first search from the entry did not reach. The passes work on postorder numbers, with
+     * the predecessors renumbered and sorted alike, so they read the arrays in order and compare numbers directly.
+     */
+    private int[] dominators(int blocks, int entryBlock) {
+
+        int[] order = new int[blocks];         // Postorder number of every block.
+        int[] post  = new int[blocks];         // Blocks in postorder.
+        boolean[] isRoot = new boolean[blocks + 1];
+        Arrays.fill(order, -1);
+
+        // Iterative depth-first search: a stack of blocks and of the next successor of each to visit (+ 1).
+        int[] stack = new int[blocks];
+        int[] next  = new int[blocks];
+        int count   = 0;
+        for (int k = -1; k < blocks; k++) {
+            int start = (k < 0) ? entryBlock : k;
+            if ((start < 0) || (next[start] != 0))
+                continue;
+            int sp = 0;
+            stack[sp++] = start;
+            next[start] = succStart[start] + 1;
+            while (sp > 0) {
+                int b = stack[sp - 1];
+                int e = next[b] - 1;
+                if (e < succStart[b + 1]) {
+                    next[b]++;
+                    int t = succ[e];
+                    if (next[t] == 0) {
+                        next[t] = succStart[t] + 1;
+                        stack[sp++] = t;
+                    }
+                } else {
+                    sp--;
+                    order[b]      = count;
+                    post[count++] = b;
+                }
+            }
+            isRoot[order[start]] = true;
+        }
+        int root = count;
+
+        // Predecessors in postorder numbers.
+        int[] start = new int[root + 2];
+        int[] from  = new int[pred.length];
+        for (int p = 0; p < root; p++)
+            start[p + 1] = start[p] + getPredecessorCount(post[p]);
+        for (int p = 0; p < root; p++) {
+            int b = post[p];
+            for (int e = predStart[b], f = start[p]; e < predStart[b + 1]; e++, f++)
+                from[f] = order[pred[e]];
+        }
+
+        int[] dom = new int[root + 1];
+        Arrays.fill(dom, -1);
+        dom[root] = root;
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            // Reverse postorder, without the root.
+            for (int p = root - 1; p >= 0; p--) {
+                int d = isRoot[p] ? root : -1;
+                for (int f = start[p]; f < start[p + 1]; f++) {
+                    int q = from[f];
+                    if (dom[q] == -1)
+                        continue;
+                    d = (d == -1) ? q : intersect(dom, q, d);
+                }
+                if (dom[p] != d) {
+                    dom[p]  = d;
+                    changed = true;
+                }
+            }
+        }
+
+        int[] result = new int[blocks];
+        for (int p = 0; p < root; p++)
+            result[post[p]] = (dom[p] == root) ? -1 : post[dom[p]];
+        return result;
+    }
+
+    /**
+     * Returns the nearest common dominator of two blocks, by postorder number.
+     */
+    private static int intersect(int[] dom, int a, int b) {
+        while (a != b) {
+            while (a < b)
+                a = dom[a];
+            while (b < a)
+                b = dom[b];
+        }
+        return a;
+    }
+
+    public int getBase()          { return base; }
+    public int getBlockCount()    { return starts.length - 1; }
+    public int getEdgeCount()     { return succ.length; }
+
+    /**
+     * Returns the block the entry is in.
+     * @return Block number.
+     */
+    public int getEntryBlock() {
+        return block(entry);
+    }
+
+    /**
+     * Returns the address of the first instruction of a block.
+     * @param b Block number.
+     * @return Address.
+     */
+    public int getStart(int b) {
+        return base + starts[b] * 4;
+    }
+
+    /**
+     * Returns the number of instructions of a block.
+     * @param b Block number.
+     * @return Number of words.
+     */
+    public int getLength(int b) {
+        return starts[b + 1] - starts[b];
+    }
+
+    /**
+     * Returns the block an instruction is in.
+     * @param addr Address of the instruction.
+     * @return Block number, -1 if addr is outside the program.
+     */
+    public int blockAt(int addr) {
+        long index = Integer.toUnsignedLong(addr - base) >>> 2;
+        return (index < length) ? block((int) index) : -1;
+    }
+
+    public int getSuccessorCount(int b)   { return succStart[b + 1] - succStart[b]; }
+    public int getPredecessorCount(int b) { return predStart[b + 1] - predStart[b]; }
+
+    /**
+     * Returns a successor of a block.
+     * @param b Block number.
+     * @param k Number of the successor (0 to getSuccessorCount(b) - 1).
+     * @return Block number of the successor.
+     */
+    public int getSuccessor(int b, int k) {
+        return succ[succStart[b] + k];
+    }
+
+    /**
+     * Returns the kind of the edge to a successor.
+     * @param b Block number.
+     * @param k Number of the successor.
+     * @return FALL, BRANCH, JUMP or CALL.
+     */
+    public int getSuccessorKind(int b, int k) {
+        return succKind[succStart[b] + k];
+    }
+
+    /**
+     * Returns a predecessor of a block.
+     * @param b Block number.
+     * @param k Number of the predecessor (0 to getPredecessorCount(b) - 1).
+     * @return Block number of the predecessor.
+     */
+    public int getPredecessor(int b, int k) {
+        return pred[predStart[b] + k];
+    }
+
+    /**
+     * Returns the immediate dominator of a block.
+     * @param b Block number.
+     * @return Block number of the dominator, -1 for the entry and the first block of an unreachable region.
+     */
+    public int getIdom(int b) {
+        return idom[b];
+    }
+
+    /**
+     * Returns true if every path to b (from the entry, or its unreachable region) goes through a.
+     * @param a Block number.
+     * @param b Block number.
+     * @return True if a dominates b (a block dominates itself).
+     */
+    public boolean dominates(int a, int b) {
+        while ((b != -1) && (b != a))
+            b = idom[b];
+        return b == a;
+    }
+
+    /**
+     * Returns the name of an edge kind.
+     * @param kind FALL, BRANCH, JUMP or CALL.
+     * @return "fall", "branch", "jump" or "call".
+     */
+    public static String kindName(int kind) {
+        return KINDS[kind];
+    }
+
+    /**
+     * Formats an address as 0x and 8 hexadecimal digits (String.format is slow for millions of blocks).
+     */
+    private static String hex(int addr) {
+        String digits = Integer.toHexString(addr);
+        return "0x00000000".substring(0, 10 - digits.length()) + digits;
+    }
+
+    /**
+     * Writes the graph in the DOT language of Graphviz: a node per block (its address, length and immediate
+     * dominator) and an edge per successor, styled by kind.
+     * @param out Writer to write to.
+     * @throws IOException If writing fails.
+     */
+    public void writeDot(Writer out) throws IOException {
+        out.write("digraph cfg {\n  node [shape=box, fontname=monospace];\n");
+        for (int b = 0; b < getBlockCount(); b++) {
+            out.write("  b" + b + " [label=\"" + hex(getStart(b)) + "\\n" + getLength(b) + " words");
+            if (idom[b] != -1)
+                out.write("\\nidom b" + idom[b]);
+            out.write("\"];\n");
+        }
+        for (int b = 0; b < getBlockCount(); b++) {
+            for (int e = succStart[b]; e < succStart[b + 1]; e++) {
+                out.write("  b" + b + " -> b" + succ[e]);
+                switch (succKind[e]) {
+                    case BRANCH: out.write(" [color=blue]"); break;
+                    case JUMP:   out.write(" [style=bold]"); break;
+                    case CALL:   out.write(" [style=dashed]"); break;
+                    default:     break;
+                }
+                out.write(";\n");
+            }
+        }
+        out.write("}\n");
+    }
+
+    /**
+     * Writes the graph as JSON: the base, the entry block and an array of blocks (one per line) with their
+     * address, length, successors and their kinds, predecessors and immediate dominator.
+     * @param out Writer to write to.
+     * @throws IOException If writing fails.
+     */
+    public void writeJson(Writer out) throws IOException {
+        out.write("{\"base\": \"" + hex(base) + "\", \"entry\": " + getEntryBlock() + ", \"blocks\": [");
+        StringBuilder sb = new StringBuilder(128);
+        for (int b = 0; b < getBlockCount(); b++) {
+            sb.setLength(0);
+            sb.append((b == 0) ? "\n" : ",\n");
+            sb.append("  {\"id\": ").append(b).append(", \"start\": \"").append(hex(getStart(b)));
+            sb.append("\", \"words\": ").append(getLength(b)).append(", \"succ\": [");
+            for (int e = succStart[b]; e < succStart[b + 1]; e++)
+                sb.append((e == succStart[b]) ? "" : ", ").append(succ[e]);
+            sb.append("], \"kinds\": [");
+            for (int e = succStart[b]; e < succStart[b + 1]; e++)
+                sb.append((e == succStart[b]) ? "\"" : ", \"").append(KINDS[succKind[e]]).append('"');
+            sb.append("], \"pred\": [");
+            for (int e = predStart[b]; e < predStart[b + 1]; e++)
+                sb.append((e == predStart[b]) ? "" : ", ").append(pred[e]);
+            sb.append("], \"idom\": ").append(idom[b]).append('}');
+            out.write(sb.toString());
+        }
+        out.write("\n]}\n");
+    }
+}
@@ -0,0 +1,168 @@
+package com.mipssim;
+
+import java.io.PrintStream;
+
+/**
+ * DecodeCache remembers the decoded strings of recently seen instruction words, so a repeated word (nop, jr $ra,
+ * stack pushes and pops, ...) is decoded only once. The cache is a set-associative table keyed by the raw word:
+ * a word can be stored in one of the PROBES slots of the set its hash selects, and when all of them are taken one
+ * is evicted by the clock algorithm. Every set has its own hand, which stays where the last eviction left it and
+ * passes over a slot once if the slot was used since the hand last passed it.
+ * Words that can not be decoded are never cached, so their errors are reported for every line.
+ * A DecodeCache is not thread-safe, use one per thread.
+ */
+public class DecodeCache {
+
+    // Number of slots in a set, a word can be stored in any of them.
+    private static final int PROBES = 4;
+
+    private final Mappings map;
+    private final int mask;
+    private final int[] words;
+    private final Output[] decoded;
+    private final boolean[] referenced;
+    // Clock hand of every set, the slot (0 to PROBES - 1) to consider next for eviction.
+    private final byte[] hands;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates a cache for the instructions of map.
+     * @param map Mappings object to decode words with.
+     * @param size Number of words to cache, rounded up to a power of two (at least PROBES).
+     */
+    public DecodeCache(Mappings map, int size) {
+
+        int slots = Integer.highestOneBit(Math.max(size, PROBES) - 1) << 1;
+
+        this.map        = map;
+        this.mask       = slots - 1;
+        this.words      = new int[slots];
+        this.decoded    = new Output[slots];
+        this.referenced = new boolean[slots];
+        this.hands      = new byte[slots / PROBES];
+    }
+
+    /**
+     * Decodes a word, from the cache if it was seen before.
+     * @param word Instruction to disassemble.
+     * @param srcLine Line (or index) of the instruction in the input.
+     * @param err Stream to report the word to if it can not be decoded.
+     * @return Output - Result of disassembling (a new object for every call), or null if the word could not be
+     * decoded.
+     */
+    public Output decode(int word, int srcLine, PrintStream err) {
+
+        int set = hash(word) & ~(PROBES - 1);
+
+        for (int p = 0; p < PROBES; p++) {
+
+            int slot = set + p;
+            Output cached = decoded[slot];
+
+            if (cached == null)
+                break;
+
+            if (words[slot] == word) {
+                hits++;
+                referenced[slot] = true;
+                return new Output(cached.getFormat(), cached.getHexDecomp(), cached.getDecDecomp(),
+                                  cached.getMnemonic(), srcLine);
+            }
+        }
+
+        misses++;
+
+        Output res = Disassembler.parseWord(word, srcLine, map, err);
+        if (res != null)
+            store(word, set, res);
+        return res;
+    }
+
+    /**
+     * Stores a decoded word in the first free slot of its set, or evicts one of them.
+     */
+    private void store(int word, int set, Output res) {
+
+        int slot = -1;
+
+        for (int p = 0; p < PROBES; p++) {
+            if (decoded[set + p] == null) {
+                slot = set + p;
+                break;
+            }
+        }
+
+        if (slot < 0) {
+            // Clock: starting at the hand, clear the reference bits until a slot that was not used since the last
+            // pass is found. The hand then points past the evicted slot.
+            int hand = hands[set / PROBES];
+            while (referenced[set + hand]) {
+                referenced[set + hand] = false;
+                hand = (hand + 1) % PROBES;
+            }
+            slot = set + hand;
+            hands[set / PROBES] = (byte) ((hand + 1) % PROBES);
+            evictions++;
+        }
+
+        words[slot]      = word;
+        decoded[slot]    = res;
+        referenced[slot] = false;
+    }
+
+    /**
+     * Spreads the bits of a word over the table, similar words (e.g. lw with different offsets) must not collide.
+     */
+    private int hash(int word) {
+        int h = word * 0x9e3779b9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Returns the number of words that were found in the cache.
+     * @return Number of hits.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of words that had to be decoded.
+     * @return Number of misses.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of cached words that were replaced by another word.
+     * @return Number of evictions.
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of words the cache can hold.
+     * @return Capacity.
+     */
+    public int getCapacity() {
+        return words.length;
+    }
+
+    /**
+     * Writes a summary of the counters.
+     * @param out Stream to write to.
+     * @param hits Number of hits.
+     * @param misses Number of misses.
+     * @param evictions Number of evictions.
+     */
+    static void report(PrintStream out, long hits, long misses, long evictions) {
+        long total = hits + misses;
+        out.printf("Decode cache: %d hits, %d misses, %d evictions (%.1f%% hits)%n", hits, misses, evictions,
+                   (total == 0) ? 0.0 : 100.0 * hits / total);
+    }
+}
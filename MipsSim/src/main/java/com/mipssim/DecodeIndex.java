@@ -0,0 +1,571 @@
+package com.mipssim;
+
+import com.mipssim.instructions.Instructions;
+import com.mipssim.sim.Op;
+import com.mipssim.sim.Program;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * DecodeIndex keeps the decoded fields of every instruction of an input in a directory, one file per field, so
+ * later runs can list, filter or count the instructions without parsing the input or looking them up in the
+ * Mappings tables again. A record is one instruction; the n-th record of every column belongs to the n-th
+ * instruction of the input (line n + 1), so a run that only needs one field only reads (and pages in) that column.
+ * The columns are memory-mapped, in windows for inputs larger than one buffer can address.
+ *
+ * Columns (big-endian, one value per record):
+ * <pre>
+ *   word.col   int    instruction word
+ *   addr.col   int    address (Program.TEXT_BASE + 4 * record for text and binary input)
+ *   op.col     byte   opcode, bits 31-26
+ *   rs.col     byte   rs, bits 25-21
+ *   rt.col     byte   rt, bits 20-16
+ *   rd.col     byte   rd, bits 15-11
+ *   funct.col  byte   funct, bits 5-0
+ *   desc.col   short  descriptor id in the Mappings (see Instructions.getId()), -1 = not in the mapping
+ * </pre>
+ *
+ * The file "meta" describes the columns. It is written last (and renamed into place), and removed before the
+ * columns are written again, so an index that was not written completely is not used. An index is rejected if its
+ * meta file is missing or corrupt, its descriptor ids are of other Mappings, or a column has the wrong size. The
+ * columns are not checksummed (that would read all of them on every open), instead a descriptor id outside the
+ * Mappings is reported as soon as it is read.
+ *
+ * Meta layout (big-endian):
+ * <pre>
+ *   0  int    magic "MDX1"
+ *   4  int    version
+ *   8  long   number of records
+ *  16  int    number of descriptors of the Mappings
+ *  20  int    number of sections (0 for text and binary input)
+ *  24  int    number of symbols
+ *  28  int    CRC-32 of the bytes from 36 to the end
+ *  32  int    hash of the descriptors of the Mappings (see Mappings.getDescriptorHash)
+ *  36  sections, per section: long first record, int address, UTF name
+ *      symbols, per symbol: int address, UTF name (sorted by unsigned address)
+ * </pre>
+ */
+public class DecodeIndex implements Closeable {
+
+    private static final int MAGIC   = 0x4d445831;
+    private static final int VERSION = 2;
+    private static final int HEADER  = 36;
+
+    private static final String META = "meta";
+
+    // Columns, their file names and the bytes of one value.
+    private static final int WORD  = 0;
+    private static final int ADDR  = 1;
+    private static final int OP    = 2;
+    private static final int RS    = 3;
+    private static final int RT    = 4;
+    private static final int RD    = 5;
+    private static final int FUNCT = 6;
+    private static final int DESC  = 7;
+    private static final String[] NAMES = { "word", "addr", "op", "rs", "rt", "rd", "funct", "desc" };
+    private static final int[] WIDTHS   = { 4, 4, 1, 1, 1, 1, 1, 2 };
+
+    // Records buffered per column while writing.
+    private static final int BUFFER_RECORDS = 1 << 16;
+
+    /**
+     * A range of records, mapped from every column.
+     */
+    public static class Window {
+
+        private final DecodeIndex index;
+        private final long first;
+        private final int count;
+        private final IntBuffer words;
+        private final IntBuffer addrs;
+        private final ByteBuffer op;
+        private final ByteBuffer rs;
+        private final ByteBuffer rt;
+        private final ByteBuffer rd;
+        private final ByteBuffer funct;
+        private final ShortBuffer desc;
+
+        private Window(DecodeIndex index, long first, int count) throws IOException {
+            this.index = index;
+            this.first = first;
+            this.count = count;
+            this.words = index.map(WORD, first, count).asIntBuffer();
+            this.addrs = index.map(ADDR, first, count).asIntBuffer();
+            this.op    = index.map(OP, first, count);
+            this.rs    = index.map(RS, first, count);
+            this.rt    = index.map(RT, first, count);
+            this.rd    = index.map(RD, first, count);
+            this.funct = index.map(FUNCT, first, count);
+            this.desc  = index.map(DESC, first, count).asShortBuffer();
+        }
+
+        public long getFirst()          { return first; }
+        public int getCount()           { return count; }
+        public int getWord(int i)       { return words.get(i); }
+        public int getAddress(int i)    { return addrs.get(i); }
+        public int getOpcode(int i)     { return op.get(i); }
+        public int getRs(int i)         { return rs.get(i); }
+        public int getRt(int i)         { return rt.get(i); }
+        public int getRd(int i)         { return rd.get(i); }
+        public int getFunct(int i)      { return funct.get(i); }
+
+        /**
+         * Returns the descriptor id of a record.
+         * @param i Index of the record in the window.
+         * @return Descriptor id, -1 if the word is not in the mapping.
+         * @throws IOException If the id is not one of the Mappings (the column is corrupt).
+         */
+        public int getDescriptor(int i) throws IOException {
+            return index.checkDescriptor(desc.get(i), first + i);
+        }
+    }
+
+    /**
+     * Writes the columns of an index while the input is read, and the meta file when it is done.
+     */
+    private static class Builder implements Closeable {
+
+        private final Path dir;
+        private final Mappings map;
+        private final FileChannel[] channels = new FileChannel[NAMES.length];
+        private final ByteBuffer[] buffers   = new ByteBuffer[NAMES.length];
+        private final ByteArrayOutputStream sections = new ByteArrayOutputStream();
+        private int sectionCount;
+        private long count;
+
+        Builder(Path dir, Mappings map) throws IOException {
+            this.dir = dir;
+            this.map = map;
+            Files.createDirectories(dir);
+            Files.deleteIfExists(dir.resolve(META));
+            for (int c = 0; c < NAMES.length; c++) {
+                channels[c] = FileChannel.open(dir.resolve(NAMES[c] + ".col"), StandardOpenOption.CREATE,
+                                               StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                buffers[c]  = ByteBuffer.allocate(BUFFER_RECORDS * WIDTHS[c]);
+            }
+        }
+
+        void add(int word, int addr) throws IOException {
+            if (!buffers[DESC].hasRemaining())
+                flush();
+            buffers[WORD].putInt(word);
+            buffers[ADDR].putInt(addr);
+            buffers[OP].put((byte) (word >>> 26));
+            buffers[RS].put((byte) ((word >>> 21) & 0x1f));
+            buffers[RT].put((byte) ((word >>> 16) & 0x1f));
+            buffers[RD].put((byte) ((word >>> 11) & 0x1f));
+            buffers[FUNCT].put((byte) (word & 0x3f));
+            buffers[DESC].putShort((short) Op.descriptor(word, map));
+            count++;
+        }
+
+        void add(IntBuffer words, int firstAddr) throws IOException {
+            for (int i = words.position(), addr = firstAddr; i < words.limit(); i++, addr += 4)
+                add(words.get(i), addr);
+        }
+
+        void section(String name, int addr) throws IOException {
+            DataOutputStream out = new DataOutputStream(sections);
+            out.writeLong(count);
+            out.writeInt(addr);
+            out.writeUTF(name);
+            sectionCount++;
+        }
+
+        private void flush() throws IOException {
+            for (int c = 0; c < NAMES.length; c++) {
+                ByteBuffer buf = buffers[c];
+                buf.flip();
+                while (buf.hasRemaining())
+                    channels[c].write(buf);
+                buf.clear();
+            }
+        }
+
+        long finish(ElfFile elf) throws IOException {
+            flush();
+            close();
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(new byte[HEADER]);
+            sections.writeTo(out);
+            int[] symbols = (elf != null) ? elf.getSymbolAddresses() : new int[0];
+            for (int addr : symbols) {
+                out.writeInt(addr);
+                out.writeUTF(elf.getSymbol(addr));
+            }
+
+            ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+            CRC32 crc = new CRC32();
+            crc.update(buf.array(), HEADER, buf.capacity() - HEADER);
+            buf.putInt(0, MAGIC);
+            buf.putInt(4, VERSION);
+            buf.putLong(8, count);
+            buf.putInt(16, map.getDescriptorCount());
+            buf.putInt(20, sectionCount);
+            buf.putInt(24, symbols.length);
+            buf.putInt(28, (int) crc.getValue());
+            buf.putInt(32, map.getDescriptorHash());
+
+            Path meta = dir.resolve(META);
+            Path tmp  = Files.createTempFile(dir, META, ".tmp");
+            try {
+                Files.write(tmp, buf.array());
+                Files.move(tmp, meta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (FileChannel ch : channels) {
+                if (ch != null)
+                    ch.close();
+            }
+        }
+    }
+
+    private final Path dir;
+    private final Mappings map;
+    private final FileChannel[] channels = new FileChannel[NAMES.length];
+    private long count;
+
+    // Sections (first record, address, name) and symbols of ELF input.
+    private long[] sectionStarts = new long[0];
+    private int[] sectionAddrs = new int[0];
+    private String[] sectionNames = new String[0];
+    private int[] symbolAddrs = new int[0];
+    private String[] symbolNames = new String[0];
+
+    private DecodeIndex(Path dir, Mappings map) {
+        this.dir = dir;
+        this.map = map;
+    }
+
+    /**
+     * Writes the index of a text input-file (one instruction per line, as read by Main.parseLine). Lines that are
+     * not numbers are skipped silently, the listing reports them.
+     * @param dir Directory to write the index to, created if needed. An index in it is replaced.
+     * @param input File to read instructions from.
+     * @param map Mappings object to look the descriptors up in.
+     * @return Number of records written.
+     * @throws IOException If reading or writing fails.
+     */
+    public static long write(Path dir, String input, Mappings map) throws IOException {
+        PrintStream quiet = new PrintStream(OutputStream.nullOutputStream());
+        try (Builder index = new Builder(dir, map);
+             BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(input),
+                                                                          StandardCharsets.UTF_8), 1 << 16)) {
+            int addr = Program.TEXT_BASE;
+            String line;
+            while ((line = br.readLine()) != null) {
+                long word = Main.parseLine(line, quiet);
+                if (word < 0)
+                    continue;
+                index.add((int) word, addr);
+                addr += 4;
+            }
+            return index.finish(null);
+        }
+    }
+
+    /**
+     * Writes the index of a binary input, with addresses from Program.TEXT_BASE.
+     * @param dir Directory to write the index to, created if needed. An index in it is replaced.
+     * @param input Binary input to read words from.
+     * @param map Mappings object to look the descriptors up in.
+     * @return Number of records written.
+     * @throws IOException If reading or writing fails.
+     */
+    public static long write(Path dir, BinaryInput input, Mappings map) throws IOException {
+        try (Builder index = new Builder(dir, map)) {
+            long total = input.getWordCount();
+            for (long first = 0; first < total; ) {
+                int n = (int) Math.min(total - first, BinaryInput.getWindowWords());
+                index.add(input.map(first, n), (int) (Program.TEXT_BASE + first * 4));
+                first += n;
+            }
+            return index.finish(null);
+        }
+    }
+
+    /**
+     * Writes the index of the executable sections of an ELF file, with their section headers and symbols.
+     * @param dir Directory to write the index to, created if needed. An index in it is replaced.
+     * @param elf ELF file to read sections from.
+     * @param map Mappings object to look the descriptors up in.
+     * @return Number of records written.
+     * @throws IOException If reading or writing fails.
+     */
+    public static long write(Path dir, ElfFile elf, Mappings map) throws IOException {
+        try (Builder index = new Builder(dir, map)) {
+            for (ElfFile.Section section : elf.getExecutableSections()) {
+                index.section(section.getName(), section.getAddr());
+                index.add(elf.words(section), section.getAddr());
+            }
+            return index.finish(elf);
+        }
+    }
+
+    /**
+     * Opens an index written by one of the write methods.
+     * @param dir Directory of the index.
+     * @param map Mappings object, the same tables the index was written with.
+     * @return The index, to be closed.
+     * @throws IOException If the index can not be read or is rejected.
+     */
+    public static DecodeIndex open(Path dir, Mappings map) throws IOException {
+
+        byte[] meta;
+        try {
+            meta = Files.readAllBytes(dir.resolve(META));
+        } catch (NoSuchFileException e) {
+            throw reject(dir, "no meta file");
+        }
+        if (meta.length < HEADER)
+            throw reject(dir, "truncated");
+
+        ByteBuffer buf = ByteBuffer.wrap(meta);
+        if ((buf.getInt(0) != MAGIC) || (buf.getInt(4) != VERSION))
+            throw reject(dir, "not a decode index");
+        if ((buf.getInt(16) != map.getDescriptorCount()) || (buf.getInt(32) != map.getDescriptorHash()))
+            throw reject(dir, "different mappings");
+        CRC32 crc = new CRC32();
+        crc.update(meta, HEADER, meta.length - HEADER);
+        if ((int) crc.getValue() != buf.getInt(28))
+            throw reject(dir, "checksum mismatch");
+
+        DecodeIndex index = new DecodeIndex(dir, map);
+        index.count = buf.getLong(8);
+        int sections = buf.getInt(20);
+        int symbols  = buf.getInt(24);
+        if ((index.count < 0) || (sections < 0) || (symbols < 0))
+            throw reject(dir, "truncated");
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(meta, HEADER, meta.length - HEADER));
+        index.sectionStarts = new long[sections];
+        index.sectionAddrs  = new int[sections];
+        index.sectionNames  = new String[sections];
+        index.symbolAddrs   = new int[symbols];
+        index.symbolNames   = new String[symbols];
+        try {
+            for (int s = 0; s < sections; s++) {
+                index.sectionStarts[s] = in.readLong();
+                index.sectionAddrs[s]  = in.readInt();
+                index.sectionNames[s]  = in.readUTF();
+            }
+            for (int s = 0; s < symbols; s++) {
+                index.symbolAddrs[s] = in.readInt();
+                index.symbolNames[s] = in.readUTF();
+            }
+        } catch (EOFException e) {
+            throw reject(dir, "truncated");
+        }
+
+        try {
+            for (int c = 0; c < NAMES.length; c++) {
+                index.channels[c] = FileChannel.open(dir.resolve(NAMES[c] + ".col"), StandardOpenOption.READ);
+                if (index.channels[c].size() != index.count * WIDTHS[c])
+                    throw reject(dir, "column " + NAMES[c] + " has the wrong size");
+            }
+        } catch (IOException e) {
+            index.close();
+            throw e;
+        }
+        return index;
+    }
+
+    private static IOException reject(Path dir, String reason) {
+        return new IOException("Can not use the index in " + dir + " (" + reason + ").");
+    }
+
+    /**
+     * Returns a descriptor id read from the descriptor column, rejects the index if it is not one of the Mappings.
+     */
+    private int checkDescriptor(int id, long record) throws IOException {
+        if ((id < -1) || (id >= map.getDescriptorCount()))
+            throw reject(dir, "descriptor id " + id + " of record " + record + " is out of range");
+        return id;
+    }
+
+    /**
+     * Returns the largest number of records that is mapped by one call to map.
+     * @return Number of records in a window.
+     */
+    public static int getWindowRecords() {
+        return BinaryInput.getWindowWords();
+    }
+
+    /**
+     * Maps count records starting at record first.
+     * @param first Index of the first record.
+     * @param count Number of records to map, at most getWindowRecords().
+     * @return Read-only views of the records in every column.
+     * @throws IOException If the mapping fails.
+     */
+    public Window map(long first, int count) throws IOException {
+        return new Window(this, first, count);
+    }
+
+    private MappedByteBuffer map(int column, long first, int count) throws IOException {
+        return channels[column].map(FileChannel.MapMode.READ_ONLY, first * WIDTHS[column],
+                                    (long) count * WIDTHS[column]);
+    }
+
+    /**
+     * Returns the number of records.
+     * @return Number of instructions in the index.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of sections, 0 if the index is of text or binary input.
+     * @return Number of sections.
+     */
+    public int getSectionCount() {
+        return sectionStarts.length;
+    }
+
+    /**
+     * Returns the first record of a section.
+     * @param section Index of the section.
+     * @return Index of its first record (the next section's if it has none).
+     */
+    public long getSectionStart(int section) {
+        return sectionStarts[section];
+    }
+
+    /**
+     * Returns the line written before the records of a section, see StreamDisassembler.sectionHeader.
+     * @param section Index of the section.
+     * @return The header line.
+     */
+    public String getSectionHeader(int section) {
+        return StreamDisassembler.sectionHeader(sectionNames[section], sectionAddrs[section]);
+    }
+
+    /**
+     * Returns the name of the function symbol that starts at addr.
+     * @param addr Virtual address.
+     * @return Name of the symbol, or null if no symbol starts at addr (or the index is not of an ELF file).
+     */
+    public String getSymbol(int addr) {
+        int lo = 0;
+        int hi = symbolAddrs.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = Integer.compareUnsigned(symbolAddrs[mid], addr);
+            if (cmp == 0)
+                return symbolNames[mid];
+            if (cmp < 0)
+                lo = mid + 1;
+            else
+                hi = mid - 1;
+        }
+        return null;
+    }
+
+    /**
+     * Counts the records of every descriptor. The word 0 is counted as nop, not as sll, as in the listing and in
+     * queries. Without a query only the descriptor column is read, and the word column of the records of sll.
+     * @param query Query the counted records must match, null to count all.
+     * @return Number of records per descriptor id, then the number of nop and, last, the number of words not in
+     * the mapping.
+     * @throws IOException If the mapping fails or the descriptor column is corrupt.
+     */
+    public long[] countDescriptors(Query query) throws IOException {
+        int descriptors = map.getDescriptorCount();
+        int sll         = Op.descriptor(0, map);
+        long[] counts   = new long[descriptors + 2];
+        for (long first = 0; first < count; ) {
+            int n = (int) Math.min(count - first, getWindowRecords());
+            if (query == null) {
+                ShortBuffer desc = map(DESC, first, n).asShortBuffer();
+                IntBuffer words  = null;
+                for (int i = 0; i < n; i++) {
+                    int id = checkDescriptor(desc.get(i), first + i);
+                    if (id == sll) {
+                        if (words == null)
+                            words = map(WORD, first, n).asIntBuffer();
+                        if (words.get(i) == 0)
+                            id = descriptors;
+                    }
+                    counts[(id < 0) ? descriptors + 1 : id]++;
+                }
+            } else {
+                Window records = map(first, n);
+                for (int i = 0; i < n; i++) {
+                    int id   = records.getDescriptor(i);
+                    int word = records.getWord(i);
+                    if (query.matches(word, id, records.getAddress(i)))
+                        counts[(id < 0) ? descriptors + 1 : (word == 0) ? descriptors : id]++;
+                }
+            }
+            first += n;
+        }
+        return counts;
+    }
+
+    /**
+     * Writes the number of instructions per mnemonic, the most frequent first, and the number of words that are
+     * not in the mapping.
+     * @param wr Writer to write to.
+     * @param query Query the counted records must match, null to count all.
+     * @throws IOException If reading or writing fails.
+     */
+    public void writeStats(Writer wr, Query query) throws IOException {
+
+        long[] counts = countDescriptors(query);
+        int descriptors = counts.length - 2;
+
+        // The descriptor ids and nop (id = descriptors).
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 0; id <= descriptors; id++) {
+            if (counts[id] > 0)
+                ids.add(id);
+        }
+        ids.sort((a, b) -> Long.compare(counts[b], counts[a]));
+
+        for (int id : ids) {
+            if (id == descriptors) {
+                wr.write(String.format("%12d  %-10s %s%n", counts[id], "nop", "?"));
+                continue;
+            }
+            Instructions instr = map.getDescriptor(id);
+            wr.write(String.format("%12d  %-10s %s%n", counts[id], instr.getFunc(), instr.getFormat()));
+        }
+        if (counts[descriptors + 1] > 0)
+            wr.write(String.format("%12d  (not in the mapping)%n", counts[descriptors + 1]));
+        long total = 0;
+        for (long n : counts)
+            total += n;
+        wr.write(String.format("%12d  total%n", total));
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (FileChannel ch : channels) {
+            if (ch != null)
+                ch.close();
+        }
+    }
+}
@@ -1,17 +1,19 @@
 package com.mipssim;
 
-import com.mipssim.instructions.Instruction_I;
-import com.mipssim.instructions.Instruction_J;
-import com.mipssim.instructions.Instruction_R;
+import com.mipssim.instructions.Instructions;
 
-import java.io.*;
-import java.math.BigInteger;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.io.PrintStream;
 
 public class Disassembler {
 
+    // Hex-representations of all 8-bit fields, so decoding a field does not have to build a new String.
+    private static final String[] HEX_FIELDS = new String[256];
+
+    static {
+        for (int i = 0; i < HEX_FIELDS.length; i++)
+            HEX_FIELDS[i] = (i < 16) ? "0x0".concat(Integer.toHexString(i)) : "0x".concat(Integer.toHexString(i));
+    }
+
     /**
      * binaryToHex converts a 32-bit binary number into an hexadecimal-number.
      * @param bin String containing the binary number (32-bit) to convert into an hexadecimal number.
@@ -77,111 +79,48 @@ public class Disassembler {
         if (func == null)
             return null;
 
-        boolean isFirstParam = true;
-
-        String mnemonic = func + " ";
+        StringBuilder mnemonic = new StringBuilder(48).append(func).append(' ');
 
+        // Length of "func ", parameters after the first one are separated by ", ".
+        int first = mnemonic.length();
 
         if (format.equals("R")) {
 
             // If R-instruction...
 
             // Param is null then exclude from mnemonic.
-
-            if (rd != null) {
-                mnemonic     = mnemonic.concat(rd);
-                isFirstParam = false;
-            }
-            if (rs != null) {
-                if (isFirstParam) {
-                    mnemonic     = mnemonic.concat(rs);
-                    isFirstParam = false;
-                } else {
-                    mnemonic = mnemonic.concat(", ").concat(rs);
-                }
-            }
-            if (rt != null) {
-                if (isFirstParam) {
-                    mnemonic     = mnemonic.concat(rt);
-                    isFirstParam = false;
-                } else {
-                    mnemonic = mnemonic.concat(", ").concat(rt);
-                }
-            }
+            appendParam(mnemonic, first, rd);
+            appendParam(mnemonic, first, rs);
+            appendParam(mnemonic, first, rt);
 
         } else if (format.equals("I")) {
 
             // If I-instruction...
+            appendParam(mnemonic, first, rt);
+            appendParam(mnemonic, first, rs);
+            appendParam(mnemonic, first, immediate);
 
-            if (rt != null) {
-                mnemonic     = mnemonic.concat(rt);
-                isFirstParam = false;
-            }
-            if (rs != null) {
-                if (isFirstParam) {
-                    mnemonic     = mnemonic.concat(rs);
-                    isFirstParam = false;
-                } else {
-                    mnemonic = mnemonic.concat(", ").concat(rs);
-                }
-            }
-            if (immediate != null) {
-                if (isFirstParam) {
-                    mnemonic     = mnemonic.concat(immediate);
-                    isFirstParam = false;
-                } else {
-                    mnemonic = mnemonic.concat(", ").concat(immediate);
-                }
-            }
         } else if (format.equals("I1")) {
-            // If I-instruction (alternative for special instructions)...
 
-            if (rs != null) {
-                mnemonic     = mnemonic.concat(rs);
-                isFirstParam = false;
-            }
-            if (rt != null) {
-                if (isFirstParam) {
-                    mnemonic     = mnemonic.concat(rt);
-                    isFirstParam = false;
-                } else {
-                    mnemonic = mnemonic.concat(", ").concat(rt);
-                }
-            }
-            if (immediate != null) {
-                if (isFirstParam) {
-                    mnemonic     = mnemonic.concat(immediate);
-                    isFirstParam = false;
-                } else {
-                    mnemonic = mnemonic.concat(", ").concat(immediate);
-                }
-            }
+            // If I-instruction (alternative for special instructions)...
+            appendParam(mnemonic, first, rs);
+            appendParam(mnemonic, first, rt);
+            appendParam(mnemonic, first, immediate);
 
         } else if (format.equals("I2")) {
 
             // If I-instruction (alternative 2 for special instructions)...
-
-            if (rt != null) {
-                mnemonic     = mnemonic.concat(rt);
-                isFirstParam = false;
-            }
-            if (immediate != null) {
-                if (isFirstParam) {
-                    mnemonic     = mnemonic.concat(immediate);
-                    isFirstParam = false;
-                } else {
-                    mnemonic = mnemonic.concat(", ").concat(immediate);
-                }
-            }
+            appendParam(mnemonic, first, rt);
+            appendParam(mnemonic, first, immediate);
             if (rs != null) {
-                mnemonic = mnemonic.concat("(").concat(rs).concat(")");
+                mnemonic.append('(').append(rs).append(')');
             }
-            
+
         } else if (format.equals("J")) {
             // If J-instruction...
 
             if (target != null) {
-                mnemonic = mnemonic.concat(target);
+                mnemonic.append(target);
             }
 
         } else {
@@ -189,7 +128,21 @@ public class Disassembler {
             // Do nothing.
         }
 
-        return mnemonic;
+        return mnemonic.toString();
+    }
+
+    /**
+     * Appends a parameter to a mnemonic, separated by ", " unless it is the first one.
+     * @param mnemonic Mnemonic to append to.
+     * @param first Length of the mnemonic before any parameter.
+     * @param param Parameter to append, null is excluded.
+     */
+    private static void appendParam(StringBuilder mnemonic, int first, String param) {
+        if (param == null)
+            return;
+        if (mnemonic.length() > first)
+            mnemonic.append(", ");
+        mnemonic.append(param);
     }
 
 
@@ -212,501 +165,432 @@ public class Disassembler {
 
         int item = 0;
 
-        item = (op0 != null)     ? item = item + 1 : item;
-        item = (op1 != null)     ? item = item + 1 : item;
-        item = (op2 != null)     ? item = item + 1 : item;
-        item = (op3 != null)     ? item = item + 1 : item;
-        item = (op4 != null)     ? item = item + 1 : item;
-        item = (op5 != null)     ? item = item + 1 : item;
-
-        String decomp = "[";
-
-        for (int i = 0; i < item; i++) {
-
-            // If param is not null then include in decomposition. Independent of format of param.
+        item = (op0 != null)     ? item + 1 : item;
+        item = (op1 != null)     ? item + 1 : item;
+        item = (op2 != null)     ? item + 1 : item;
+        item = (op3 != null)     ? item + 1 : item;
+        item = (op4 != null)     ? item + 1 : item;
+        item = (op5 != null)     ? item + 1 : item;
+
+        StringBuilder decomp = new StringBuilder(48).append('[');
+
+        // A param is included if it is not null and its position is less than the number of params given.
+        // Independent of format of param.
+        if ((op0 != null) && (item > 0))
+            decomp.append(op0);
+        if ((op1 != null) && (item > 1))
+            decomp.append(' ').append(op1);
+        if ((op2 != null) && (item > 2))
+            decomp.append(' ').append(op2);
+        if ((op3 != null) && (item > 3))
+            decomp.append(' ').append(op3);
+        if ((op4 != null) && (item > 4))
+            decomp.append(' ').append(op4);
+        if ((op5 != null) && (item > 5))
+            decomp.append(' ').append(op5);
+
+        return decomp.append(']').toString();
+    }
 
-            if ((op0 != null) && (i == 0)) {
-                decomp = decomp.concat(op0);
-                continue;
-            }
-            if ((op1 != null) && (i == 1)) {
-                decomp = decomp.concat(" ").concat(op1);
-                continue;
-            }
-            if ((op2 != null) && (i == 2)) {
-                decomp = decomp.concat(" ").concat(op2);
-                continue;
-            }
-            if ((op3 != null) && (i == 3)) {
-                decomp = decomp.concat(" ").concat(op3);
-                continue;
-            }
-            if ((op4 != null) && (i == 4)) {
-                decomp = decomp.concat(" ").concat(op4);
-                continue;
-            }
-            if ((op5 != null) && (i == 5)) {
-                decomp = decomp.concat(" ").concat(op5);
-                continue;
-            }
-        }
+    /**
+     * Converts an unsigned bit-field (already shifted and masked out of an instruction word) into the same
+     * hexadecimal representation as binaryToHex would give for its binary string.
+     * @param field The unsigned value of the bit-field.
+     * @return String containing the hex-representation of field.
+     */
+    public static String fieldToHex(int field) {
+        if ((field >= 0) && (field < HEX_FIELDS.length))
+            return HEX_FIELDS[field];
+        return "0x".concat(Integer.toHexString(field));
+    }
 
-        decomp = decomp.concat("]");
-        return decomp;
+    /**
+     * Interprets the lowest width bits of field as a two's complement number. Gives the same value as binaryToDec
+     * would for the binary string of the field.
+     * @param field The unsigned value of the bit-field.
+     * @param width Number of bits in the field (1-32).
+     * @return The signed value of the field.
+     */
+    public static int signExtend(int field, int width) {
+        return (field << (32 - width)) >> (32 - width);
     }
 
     /**
      * parseBin disassembles a given binary-instruction (32-bit) and identifies it's function, format and registers.
+     * The binary string is converted to a word once and then decoded by parseWord.
      * @param instruction Instruction to disassemble
      * @param srcLine Line of instruction in file it was read from.
      * @param mapper Mappings object.
      * @return Output - Result of disassembling of the given binary instruction.
      */
     public static Output parseBin(String instruction, int srcLine, Mappings mapper) {
+        return parseWord(Integer.parseUnsignedInt(instruction, 2), srcLine, mapper);
+    }
 
-        // Decompositions to return when parseBin is done.
-        String mnemonic  = null;
-        String hexDecomp = null;
-        String decDecomp = null;
-        String format    = null;
-
-        // Get all HashMaps which contains functions.
-        HashMap<String, HashMap> func = mapper.getOpCodeToFuncMap();
-
-        if (binaryToDec(instruction) == 0) {
-            // If bin is equal to 0 then return nop-instruction.
-            mnemonic  = "nop";
-            hexDecomp = "[0x00]";
-            decDecomp = "[0]";
-            format    = "?";
-
-        } else {
-
-            // The most significant bits.
-            String op_bin = instruction.substring(0, 6);
-            String opfield = binaryToHex(op_bin);
-
-            // If the six most significant bits equals...
-            if (opfield.equals("0x00")) {
-
-                // Retrieve and inspect the six least significant bits (func-field in OP-map).
-                String hexFunc = binaryToHex(instruction.substring(26, 32));
-
-                // If func equals 0x01 then get another HashMap to inspect else stick to the old one.
-                HashMap<String, HashMap> opSet = null;
-                if (hexFunc.equals("0x01")) {
+    /**
+     * lookup returns the instruction (descriptor) of a word without building any String. The tables are chosen
+     * the same way as in parseWord.
+     * @param word Instruction to look up.
+     * @param mapper Mappings object.
+     * @return The instruction, or null if the word is not in the mapping (or has no function, e.g. an unused
+     * coprocessor encoding).
+     */
+    public static Instructions lookup(int word, Mappings mapper) {
+
+        int op    = word >>> 26;
+        int iRS   = (word >>> 21) & 0x1f;
+        int iRT   = (word >>> 16) & 0x1f;
+        int funct = word & 0x3f;
+
+        switch (op) {
+            case 0x00:
+                return (funct == 0x01) ? mapper.getMovci((word >>> 16) & 0x1) : mapper.getSpecial(funct);
+            case 0x01:
+                return mapper.getRegimm(iRT);
+            case 0x1c:
+                return mapper.getSpecial2(funct);
+            case 0x10:
+            case 0x11:
+            case 0x12:
+                int z = op - 0x10;
+                if ((iRS == 0x00) || (iRS == 0x02) || (iRS == 0x04) || (iRS == 0x06))
+                    return mapper.getCop(z, iRS);
+                if ((iRS == 0x08) && (z != 0))
+                    return mapper.getCopBranch(z, (word >>> 16) & 0x3);
+                if ((iRS == 0x10) && (z == 0))
+                    return mapper.getCop0(word & 0x1f);
+                if (((iRS == 0x10) || (iRS == 0x11)) && (z == 1))
+                    return mapper.getFloat(iRS - 0x10, funct);
+                return null;
+            default:
+                return mapper.getOp(op);
+        }
+    }
 
-                    opSet = func.get(opfield.concat("/1"));
+    /**
+     * parseCompact disassembles a given instruction word into a CompactOutput, which only holds the word and its
+     * instruction. The Strings of the result are built when they are first asked for.
+     * @param word Instruction to disassemble
+     * @param srcLine Line of instruction in file it was read from.
+     * @param mapper Mappings object.
+     * @param err Stream to report instructions that can not be decoded to.
+     * @return Output - Result of disassembling of the given instruction, or null if it can not be decoded.
+     */
+    public static Output parseCompact(int word, int srcLine, Mappings mapper, PrintStream err) {
 
-                    // Use the 15:th bit to retrieve the function.
-                    hexFunc = binaryToHex(instruction.substring(15, 16));
+        Instructions instr = lookup(word, mapper);
+        if (instr == null)
+            // Not in the mapping (reported by parseWord) or without function, both are rare.
+            return parseWord(word, srcLine, mapper, err);
 
-                } else {
-                    opSet = func.get(opfield);
-                }
+        return new CompactOutput(word, srcLine, instr, mapper);
+    }
 
-                // Get HashMap containing format of instruction and instruction.
-                HashMap<String, ?> arr = mapper.getInstruction(opSet, hexFunc);
-                if (arr == null) {
-                    System.err.println(srcLine + "| Error: Func_Hex: " + hexFunc + " does not exist in mapping.");
-                    return null;
-                }
+    /**
+     * parseWord disassembles a given instruction word (32-bit) and identifies it's function, format and registers.
+     * All fields are extracted with shifts and masks, no binary string is built.
+     * @param word Instruction to disassemble
+     * @param srcLine Line of instruction in file it was read from.
+     * @param mapper Mappings object.
+     * @return Output - Result of disassembling of the given instruction.
+     */
+    public static Output parseWord(int word, int srcLine, Mappings mapper) {
+        return parseWord(word, srcLine, mapper, System.err);
+    }
 
-                // Swap back to func bits. Only necessary if hexFunc was swapped earlier.
-                hexFunc = binaryToHex(instruction.substring(26, 32));
+    /**
+     * parseWord disassembles a given instruction word (32-bit) and identifies it's function, format and registers.
+     * @param word Instruction to disassemble
+     * @param srcLine Line of instruction in file it was read from.
+     * @param mapper Mappings object.
+     * @param err Stream to report instructions that can not be decoded to.
+     * @return Output - Result of disassembling of the given instruction.
+     */
+    public static Output parseWord(int word, int srcLine, Mappings mapper, PrintStream err) {
+
+        if (word == 0)
+            // If word is equal to 0 then return nop-instruction.
+            return new Output("?", "[0x00]", "[0]", "nop", srcLine);
+
+        Instructions instr = lookup(word, mapper);
+        if (instr != null)
+            return render(word, srcLine, instr, mapper);
+
+        // Not in the mapping, report the field that selects the missing instruction.
+        int op    = word >>> 26;
+        int iRS   = (word >>> 21) & 0x1f;
+        int iRT   = (word >>> 16) & 0x1f;
+        int funct = word & 0x3f;
+
+        String field;
+        if ((op == 0x00) || (op == 0x1c)) {
+            field = fieldToHex(funct);
+        } else if (op == 0x01) {
+            field = fieldToHex(iRT);
+        } else if ((op == 0x10) || (op == 0x11) || (op == 0x12)) {
+            int z = op - 0x10;
+            if ((iRS == 0x00) || (iRS == 0x02) || (iRS == 0x04) || (iRS == 0x06))
+                field = fieldToHex(iRS);
+            else if ((iRS == 0x10) && (z == 0))
+                field = fieldToHex(word & 0x1f);
+            else if (((iRS == 0x10) || (iRS == 0x11)) && (z == 1))
+                field = fieldToHex(funct);
+            else
+                // No instruction of the coprocessor has these rs-bits, nothing is decoded.
+                return new Output(null, null, null, null, srcLine);
+        } else {
+            err.println(srcLine + "| Error: No opfield=" + fieldToHex(op) + " exists in set 'OP'");
+            return null;
+        }
 
+        err.println(srcLine + "| Error: Func_Hex: " + field + " does not exist in mapping.");
+        return null;
+    }
 
-                // Get instruction and registers.
-                Instruction_R rIntr = (Instruction_R) arr.get("R");
-                int iRD     = Integer.parseInt(instruction.substring(16, 21), 2);
-                String rd   = mapper.getRegister().get(iRD);
-                int iRT     = Integer.parseInt(instruction.substring(11, 16), 2);
-                String rt   = mapper.getRegister().get(iRT);
-                int iRS     = Integer.parseInt(instruction.substring(6, 11), 2);
-                String rs   = mapper.getRegister().get(iRS);
+    /**
+     * render builds the result of an instruction word from its instruction (see lookup), only the registers,
+     * immediate and target are taken from the word. Nothing is looked up in the decode tables.
+     * @param word Instruction to disassemble, not 0 (nop).
+     * @param srcLine Line of instruction in file it was read from.
+     * @param instr Instruction of the word.
+     * @param mapper Mappings object.
+     * @return Output - Result of disassembling of the given instruction.
+     */
+    public static Output render(int word, int srcLine, Instructions instr, Mappings mapper) {
 
+        // Decompositions to return when render is done.
+        String mnemonic  = null;
+        String hexDecomp = null;
+        String decDecomp = null;
+        String format    = null;
 
-                // Special exceptions of the mnemonic syntax (order of registers etc).
-                int funcDec = Integer.parseInt(hexFunc.substring(2), 16);
-                if (funcDec == 8)
-                    // "jr" has special syntax "jr rs" (excluding rt and rd).
-                    mnemonic = toMnemonic("R", rIntr.getFunc(), null, rs, null, null, null);
-                else if (funcDec == 9) {
-                    // "jalr" has only rs and rd in syntax, "jalr rs, rd"
-                    mnemonic = toMnemonic("R", rIntr.getFunc(), rd, rs, null, null, null);
-                } else if ((funcDec == 12) || (funcDec == 13) || (funcDec == 15)) {
-                    // System calls eg. break, syscall, sync etc.
-                    mnemonic = toMnemonic("R", rIntr.getFunc(), null, null, null, null, null);
-                } else if (((funcDec > 11) && (funcDec < 28)) || ((funcDec > 47) && (funcDec < 55))) {
-                    // Following functions excludes rd from syntax. E.g. mult -> "mult rs, rt"
-                    mnemonic = toMnemonic("R", rIntr.getFunc(), null, rs, rt, null, null);
-                } else {
-                    // Normal R-type instructions.
-                    mnemonic = toMnemonic("R", rIntr.getFunc(), rd, rs, rt, null, null);
-                }
+        // Fields of the instruction word, bits(31:26) is the most significant.
+        int op     = word >>> 26;
+        int iRS    = (word >>> 21) & 0x1f;
+        int iRT    = (word >>> 16) & 0x1f;
+        int iRD    = (word >>> 11) & 0x1f;
+        int funct  = word & 0x3f;
+        int imm    = word & 0xffff;
+        int target = word & 0x3ffffff;
+
+        String opfield = fieldToHex(op);
+        String opDec   = Integer.toString(signExtend(op, 6));
+
+        // If the six most significant bits equals...
+        if (op == 0x00) {
+
+            // Retrieve and inspect the six least significant bits (func-field in OP-map).
+            String hexFunc = fieldToHex(funct);
+
+            // Get registers.
+            String rd   = mapper.getRegister(iRD);
+            String rt   = mapper.getRegister(iRT);
+            String rs   = mapper.getRegister(iRS);
+
+            // Special exceptions of the mnemonic syntax (order of registers etc).
+            if (funct == 8)
+                // "jr" has special syntax "jr rs" (excluding rt and rd).
+                mnemonic = toMnemonic("R", instr.getFunc(), null, rs, null, null, null);
+            else if (funct == 9) {
+                // "jalr" has only rs and rd in syntax, "jalr rs, rd"
+                mnemonic = toMnemonic("R", instr.getFunc(), rd, rs, null, null, null);
+            } else if ((funct == 12) || (funct == 13) || (funct == 15)) {
+                // System calls eg. break, syscall, sync etc.
+                mnemonic = toMnemonic("R", instr.getFunc(), null, null, null, null, null);
+            } else if (((funct > 11) && (funct < 28)) || ((funct > 47) && (funct < 55))) {
+                // Following functions excludes rd from syntax. E.g. mult -> "mult rs, rt"
+                mnemonic = toMnemonic("R", instr.getFunc(), null, rs, rt, null, null);
+            } else {
+                // Normal R-type instructions.
+                mnemonic = toMnemonic("R", instr.getFunc(), rd, rs, rt, null, null);
+            }
 
-                // Get decompositions of retrieved function, format and registers.
-                hexDecomp = getDecomp(opfield, decimalToHex(iRS), decimalToHex(iRT), decimalToHex(iRD), "0", hexFunc);
-                decDecomp = getDecomp(Integer.toString(binaryToDec(op_bin)), Integer.toString(iRS),
-                                      Integer.toString(iRT), Integer.toString(iRD), "0",
-                                      Integer.toString(binaryToDec(instruction.substring(26, 32))));
-                format    = rIntr.getFormat();
+            // Get decompositions of retrieved function, format and registers.
+            hexDecomp = getDecomp(opfield, decimalToHex(iRS), decimalToHex(iRT), decimalToHex(iRD), "0", hexFunc);
+            decDecomp = getDecomp(opDec, Integer.toString(iRS), Integer.toString(iRT), Integer.toString(iRD), "0",
+                                  Integer.toString(signExtend(funct, 6)));
+            format    = instr.getFormat();
 
+        } else if (op == 0x01) {
 
-            } else if (opfield.equals("0x01")) {
+            // If op=0x01 then the function is identified by RT in OP-map, bits(20:16).
 
-                // If op=0x01 then retrieve new hashmap (RT in OP-map) from bits(11:15).
+            String rt_hex = fieldToHex(iRT);
 
-                HashMap<String, HashMap> opSet = func.get(opfield);
-                String rt_hex = binaryToHex(instruction.substring(11, 16));
+            // Get registers.
+            String rs        = mapper.getRegister(iRS);
+            int label        = word & 0x7fff;
+            String label_Hex = fieldToHex(label);
 
-                // Get HashMap containing format of instruction and instruction.
-                HashMap<String, ?> arr = mapper.getInstruction(opSet, rt_hex);
-                if (arr == null) {
-                    System.err.println(srcLine + "| Error: Func_Hex: " + rt_hex + " does not exist in mapping.");
-                    return null;
-                }
+            // Get decompositions of retrieved function, format and registers.
+            mnemonic  = toMnemonic("I", instr.getFunc(), null, rs, null, label_Hex, null);
+            hexDecomp = getDecomp(opfield, decimalToHex(iRS), rt_hex, label_Hex, null, null);
+            decDecomp = getDecomp(opDec, Integer.toString(iRS), Integer.toString(signExtend(iRT, 5)),
+                                  Integer.toString(signExtend(label, 15)), null, null);
+            format    = instr.getFormat();
 
-                // Get instruction and registers.
-                Instruction_I iIntr = (Instruction_I) arr.get("I");
-                int iRS          = Integer.parseInt(instruction.substring(6, 11), 2);
-                String rs        = mapper.getRegister().get(iRS);
-                String label_Hex = binaryToHex(instruction.substring(17, 32));
+        } else if (op == 0x1c) {
 
-                // Get decompositions of retrieved function, format and registers.
-                mnemonic  = toMnemonic("I", iIntr.getFunc(), null, rs, null, label_Hex, null);
-                hexDecomp = getDecomp(opfield, decimalToHex(iRS), rt_hex, label_Hex, null, null);
-                decDecomp = getDecomp(Integer.toString(binaryToDec(op_bin)), Integer.toString(iRS),
-                                      Integer.toString(binaryToDec(instruction.substring(11, 16))),
-                                      Integer.toString(binaryToDec(instruction.substring(17, 32))), null, null);
-                format    = iIntr.getFormat();
+            // If OP=0x1c...
+            // Retrieve and inspect the six least significant bits (func-field 2 in OP-map).
 
+            String hexFunc = fieldToHex(funct);
 
-            } else if (opfield.equals("0x1c")) {
+            // Get registers.
+            String rd   = mapper.getRegister(iRD);
+            String rt   = mapper.getRegister(iRT);
+            String rs   = mapper.getRegister(iRS);
 
-                // If OP=0x1c...
-                // Retrieve and inspect the six least significant bits (func-field 2 in OP-map).
+            // Special exceptions of the mnemonic syntax (order of registers etc).
+            if (funct == 2) // Format for "mul"
+                mnemonic = toMnemonic("R", instr.getFunc(), rd, rs, rt, null, null);
+            else if (funct > 6) // format for clo, clz
+                mnemonic = toMnemonic("R", instr.getFunc(), rd, rs, null, null, null);
+            else // Normal format.
+                mnemonic = toMnemonic("R", instr.getFunc(), null, rs, rt, null, null);
 
-                HashMap<String, HashMap> opSet = func.get(opfield);
+            // Get decompositions of retrieved function, format and registers.
+            hexDecomp = getDecomp(opfield, decimalToHex(iRS), decimalToHex(iRT), decimalToHex(iRD), "0", hexFunc);
+            decDecomp = getDecomp(opDec, Integer.toString(iRS), Integer.toString(iRT), Integer.toString(iRD), "0",
+                                  Integer.toString(funct));
+            format    = instr.getFormat();
 
-                String hexFunc  = binaryToHex(instruction.substring(26, 32));
-                int decFunc     = Integer.parseInt(instruction.substring(26, 32), 2);
+        } else if ((op == 0x10) || (op == 0x11) || (op == 0x12)) {
 
+            // If OP equals 0x10, 0x11 or 0x12, z is the coprocessor number.
+            int z = op - 0x10;
 
-                // Get HashMap containing format of instruction and instruction.
-                HashMap<String, ?> arr = mapper.getInstruction(opSet, hexFunc);
-                if (arr == null) {
-                    System.err.println(srcLine + "| Error: Func_Hex: " + hexFunc + " does not exist in mapping.");
-                    return null;
-                }
+            String rs_hex = fieldToHex(iRS);
+            String rsDec  = Integer.toString(signExtend(iRS, 5));
 
-                // Get instruction and registers.
-                Instruction_R rIntr = (Instruction_R) arr.get("R");
-                int iRD     = Integer.parseInt(instruction.substring(16, 21), 2);
-                String rd   = mapper.getRegister().get(iRD);
-                int iRT     = Integer.parseInt(instruction.substring(11, 16), 2);
-                String rt   = mapper.getRegister().get(iRT);
-                int iRS     = Integer.parseInt(instruction.substring(6, 11), 2);
-                String rs   = mapper.getRegister().get(iRS);
+            // Inspect the RS-field in OP-map that corresponds to bits(25:21).
+            if ((iRS == 0x00) || (iRS == 0x02) || (iRS == 0x04) || (iRS == 0x06)) {
 
+                // If rs-bits equals 0x00, 0x02, 0x04 or ox06 then it is a move to/from the coprocessor.
 
-                // Special exceptions of the mnemonic syntax (order of registers etc).
-                if (decFunc == 2) // Format for "mul"
-                    mnemonic = toMnemonic("R", rIntr.getFunc(), rd, rs, rt, null, null);
-                else if (decFunc > 6) // format for clo, clz
-                    mnemonic = toMnemonic("R", rIntr.getFunc(), rd, rs, null, null, null);
-                else // Normal format.
-                    mnemonic = toMnemonic("R", rIntr.getFunc(), null, rs, rt, null, null);
+                // Get registers.
+                String ft   = (z == 0) ? mapper.getRegister(iRT) : mapper.getFloatRegister(iRT);
+                String fs   = (z == 0) ? mapper.getRegister(iRD) : mapper.getFloatRegister(iRD);
 
                 // Get decompositions of retrieved function, format and registers.
-                hexDecomp = getDecomp(opfield, decimalToHex(iRS), decimalToHex(iRT), decimalToHex(iRD), "0", hexFunc);
-                decDecomp = getDecomp(Integer.toString(binaryToDec(op_bin)), Integer.toString(iRS),
-                                      Integer.toString(iRT), Integer.toString(iRD), "0",
-                                      Integer.toString(decFunc));
-                format    = rIntr.getFormat();
+                mnemonic  = toMnemonic("R", instr.getFunc(), null, fs, ft, null, null);
+                hexDecomp = getDecomp(opfield, rs_hex, decimalToHex(iRT), decimalToHex(iRD), null, "0");
+                decDecomp = getDecomp(opDec, rsDec, Integer.toString(iRT), Integer.toString(iRD), null, "0");
+                format    = instr.getFormat();
 
+            } else if (iRS == 0x08) {
 
-            } else if (opfield.equals("0x10") || opfield.equals("0x11") || opfield.equals("0x12")) {
+                // If rs-bits equals 0x08...
 
-                // If OP equals 0x10, 0x11 or 0x12...
+                // Only coprocessor 1 and 2 have branch-functions.
+                if ((z == 1) || (z == 2)) {
 
-                // Variables that certain character in the functions depends on.
-                char f = 'z';
-                int  z = -1;
-                     z = opfield.equals("0x10") ? 0 : z;
-                     z = opfield.equals("0x11") ? 1 : z;
-                     z = opfield.equals("0x12") ? 2 : z;
+                    int ndtf        = (word >>> 16) & 0x3;
+                    String func_hex = fieldToHex(ndtf);
 
-                String rs_bin = instruction.substring(6, 11);
-                String rs_hex = binaryToHex(rs_bin);
+                    String target_hex = fieldToHex(target);
 
-                // Inspect the RS-hashmap in OP-map that corresponds to bits(6:10).
-                if (rs_hex.equals("0x00") || rs_hex.equals("0x02") || rs_hex.equals("0x04") || rs_hex.equals("0x06")) {
+                    // Get decompositions of retrieved function, format and registers.
+                    mnemonic  = toMnemonic("J", instr.getFunc(), null, null, null, null, target_hex);
 
-                    // If rs-bits equals 0x00, 0x02, 0x04 or ox06 then function is in same hashmap.
+                    // Warning: These instructions have following decomp-layout [op rs func target] since they do
+                    // not follow the original J-format (only op and rest target) but the syntax is most similar
+                    // to J-format thus Instruction_J.
+                    hexDecomp = getDecomp(opfield, func_hex, rs_hex, target_hex, null, null);
+                    decDecomp = getDecomp(opDec, rsDec, Integer.toString(ndtf),
+                                          Integer.toString(signExtend(target, 26)), null, null);
+                    format    = instr.getFormat();
 
-                    HashMap<String, HashMap> funcs = func.get("rs");
+                } // If z=0 do nothing.
 
-                    // Get HashMap containing format of instruction and instruction.
-                    HashMap<String, ?> arr = mapper.getInstruction(funcs, rs_hex);
-                    if (arr == null) {
-                        System.err.println(srcLine + "| Error: Func_Hex: " + rs_hex + " does not exist in mapping.");
-                        return null;
-                    }
+            } else if ((iRS == 0x10) && (z == 0)) {
 
-                    // Get instruction and registers.
-                    Instruction_R rIntr = (Instruction_R) arr.get("R");
-                    rIntr.setFunc(rIntr.getFunc().replace('z', Integer.toString(z).charAt(0)));
-                    int ift     = Integer.parseInt(instruction.substring(11, 16), 2);
-                    String ft   = (z == 0) ? mapper.getRegister().get(ift) : mapper.getFloatRegister().get(ift);
-                    int ifs     = Integer.parseInt(instruction.substring(16, 21), 2);
-                    String fs   = (z == 0) ? mapper.getRegister().get(ifs) : mapper.getFloatRegister().get(ifs);
+                // If rs-bits equals 0x10 on coprocessor 0...
 
+                int funcLow     = word & 0x1f;
+                String func_hex = fieldToHex(funcLow);
 
-                    // Get decompositions of retrieved function, format and registers.
-                    mnemonic  = toMnemonic("R", rIntr.getFunc(), null, fs, ft, null, null);
-                    hexDecomp = getDecomp(opfield, rs_hex, decimalToHex(ift), decimalToHex(ifs), null, "0");
-                    decDecomp = getDecomp(Integer.toString(binaryToDec(op_bin)), Integer.toString(binaryToDec(rs_bin)),
-                                          Integer.toString(ift), Integer.toString(ifs), null, "0");
-                    format    = rIntr.getFormat();
+                // Get decompositions of retrieved function, format and registers.
+                int code  = (word >>> 6) & 0xfffff;
+                mnemonic  = toMnemonic("syscall", instr.getFunc(), null, null, null, null, null);
+                hexDecomp = getDecomp(opfield, fieldToHex(code), null, null, null, func_hex);
+                decDecomp = getDecomp(opDec, Integer.toString(signExtend(code, 20)), null, null, null,
+                                      Integer.toString(signExtend(funcLow, 5)));
+                format    = instr.getFormat();
 
-                } else if (rs_hex.equals("0x08")) {
+            } else if (((iRS == 0x10) || (iRS == 0x11)) && (z == 1)) {
 
-                    // If rs-bits equals 0x08...
+                // If rs-bits equals 0x10 (single) or 0x11 (double) on coprocessor 1...
 
-                    // Depending on value of z the new hashmap is different.
-                    if ((z == 1) || (z == 2)) {
-
-                        String key = "rs/".concat(rs_hex);
-                        HashMap<String, HashMap> funcs = func.get(key);
-
-                        String func_bin = instruction.substring(14, 15);
-                        String func_hex = binaryToHex(func_bin);
-
-                        // Get HashMap containing format of instruction and instruction.
-                        HashMap<String, ?> arr = mapper.getInstruction(funcs, func_hex);
-                        if (arr == null) {
-                            System.err.println(srcLine + "| Error: Func_Hex: " + func_hex + " does not exist in mapping.");
-                            return null;
-                        }
-
-
-                        Instruction_J jIntr = (Instruction_J) arr.get("J");
-                        jIntr.setFunc(jIntr.getFunc().replace('z', Integer.toString(z).charAt(0)));
-
-                        String target_bin = instruction.substring(6, 32);
-                        String target_hex = binaryToHex(target_bin);
-
-
-                        // Get decompositions of retrieved function, format and registers.
-                        mnemonic  = toMnemonic("J", jIntr.getFunc(), null, null, null, null, target_hex);
-
-                        // Warning: These instructions have following decomp-layout [op rs func target] since they do
-                        // not follow the original J-format (only op and rest target) but the syntax is most similar
-                        // to J-format thus Instruction_J.
-                        hexDecomp = getDecomp(opfield, func_hex, rs_hex, target_hex, null, null);
-                        decDecomp = getDecomp(Integer.toString(binaryToDec(op_bin)),
-                                              Integer.toString(binaryToDec(rs_bin)),
-                                              Integer.toString(binaryToDec(func_bin)),
-                                              Integer.toString(binaryToDec(target_bin)), null, null);
-                        format    = jIntr.getFormat();
-
-                    } // If z=0 do nothing.
-
-                } else if (rs_hex.equals("0x10")) {
-
-                    // If rs-bits equals 0x10...
-
-                    String key = "rs/".concat(rs_hex).concat("/").concat(Integer.toString(z)); // rs/0x10/0
-                    HashMap<String, HashMap> funcs = func.get(key);
-
-                    // Depending on value of z the new hashmap is different.
-                    if (z == 0) {
-
-                        String func_bin = instruction.substring(27, 32);
-                        String func_hex = binaryToHex(func_bin);
-                        int funcDec     = Integer.parseUnsignedInt(func_bin, 2);
-
-                        // Get HashMap containing format of instruction and instruction.
-                        HashMap<String, ?> arr = mapper.getInstruction(funcs, func_hex);
-                        if (arr == null) {
-                            System.err.println(srcLine + "| Error: Func_Hex: " + func_hex + " does not exist in mapping.");
-                            return null;
-                        }
-
-                        // Get decompositions of retrieved function, format and registers.
-                        Instruction_J sysIntr = (Instruction_J) arr.get("J");
-                        mnemonic  = toMnemonic("syscall", sysIntr.getFunc(), null, null, null, null, null);
-                        hexDecomp = getDecomp(opfield, binaryToHex(instruction.substring(6, 26)), null, null, null, func_hex);
-                        decDecomp = getDecomp(Integer.toString(binaryToDec(op_bin)),
-                                              Integer.toString(binaryToDec(instruction.substring(6, 26))),
-                                              null, null, null, Integer.toString(binaryToDec(func_bin)));
-                        format    = sysIntr.getFormat();
-
-                    } else if (z == 1) {
-
-                        f = 's';
-
-                        String func_bin = instruction.substring(27, 32);
-                        String func_hex = binaryToHex(func_bin);
-                        int funcDec     = Integer.parseUnsignedInt(func_bin, 2);
-
-                        // Get HashMap containing format of instruction and instruction.
-                        HashMap<String, ?> arr = mapper.getInstruction(funcs, func_hex);
-                        if (arr == null) {
-                            System.err.println(srcLine + "| Error: Func_Hex: " + func_hex + " does not exist in mapping.");
-                            return null;
-                        }
-
-                        // Replace 'f' at the end with f.
-                        Instruction_R rIntr = (Instruction_R) arr.get("R");
-                        String function = rIntr.getFunc();
-                        function = function.replace(function.charAt(function.length() - 1), f);
-                        rIntr.setFunc(function);
-
-                        // Get registers.
-                        int ift     = Integer.parseInt(instruction.substring(11, 16), 2);
-                        String ft   = mapper.getFloatRegister().get(ift);
-                        int ifs     = Integer.parseInt(instruction.substring(16, 21), 2);
-                        String fs   = mapper.getFloatRegister().get(ifs);
-                        int ifd     = Integer.parseInt(instruction.substring(21, 26), 2);
-                        String fd   = mapper.getFloatRegister().get(ifd);
+                int func        = word & 0x3f;
+                String func_hex = fieldToHex(func);
 
-                        // Get decompositions of retrieved function, format and registers.
-                        mnemonic  = toMnemonic("R", rIntr.getFunc(), fd, fs, ft, null, null);
-                        hexDecomp = getDecomp(opfield, decimalToHex(ifs), decimalToHex(ift), decimalToHex(ifd), "0",
-                                              func_hex);
-                        decDecomp = getDecomp(Integer.toString(binaryToDec(op_bin)), Integer.toString(ifs),
-                                              Integer.toString(ift), Integer.toString(ifd), "0",
-                                              Integer.toString(binaryToDec(func_bin)));
-                        format    = rIntr.getFormat();
+                // Get registers.
+                int ifd     = (word >>> 6) & 0x1f;
+                String ft   = mapper.getFloatRegister(iRT);
+                String fs   = mapper.getFloatRegister(iRD);
+                String fd   = mapper.getFloatRegister(ifd);
 
-                    }
-
-                } else if (rs_hex.equals("0x11")) {
-
-                    // If rs-bits equals 0x10...
-
-                    // Depending on value of z the new hashmap is different.
-                    if (z == 1) {
-
-                        f = 'd';
-
-                        String key = "rs/".concat(rs_hex).concat("/").concat(Integer.toString(z)); // "rs/0x11/1"
-                        HashMap<String, HashMap> funcs = func.get(key);
-
-                        String func_bin = instruction.substring(27, 32);
-                        String func_hex = binaryToHex(func_bin);
-                        int funcDec     = Integer.parseUnsignedInt(func_bin, 2);
-
-                        // Get HashMap containing format of instruction and instruction.
-                        HashMap<String, ?> arr = mapper.getInstruction(funcs, func_hex);
-                        if (arr == null) {
-                            System.err.println(srcLine + "| Error: Func_Hex: " + func_hex + " does not exist in mapping.");
-                            return null;
-                        }
-
-                        // Replace 'f' at the end with f.
-                        Instruction_R rIntr = (Instruction_R) arr.get("R");
-                        String function = rIntr.getFunc();
-                        function = function.replace(function.charAt(function.length() - 1), f);
-                        rIntr.setFunc(function);
-
-                        // Get registers.
-                        int ift   = Integer.parseInt(instruction.substring(11, 16), 2);
-                        String ft = mapper.getFloatRegister().get(ift);
-                        int ifs   = Integer.parseInt(instruction.substring(16, 21), 2);
-                        String fs = mapper.getFloatRegister().get(ifs);
-                        int ifd   = Integer.parseInt(instruction.substring(21, 26), 2);
-                        String fd = mapper.getFloatRegister().get(ifd);
-
-                        // Get decompositions of retrieved function, format and registers.
-                        mnemonic  = toMnemonic("R", rIntr.getFunc(), fd, fs, ft, null, null);
-                        hexDecomp = getDecomp(opfield, binaryToHex(instruction.substring(16, 21)),
-                                              binaryToHex(instruction.substring(11, 16)),
-                                              binaryToHex(instruction.substring(21, 26)), "0", func_hex);
-                        decDecomp = getDecomp(binaryToHex(op_bin), Integer.toString(ifs), Integer.toString(ift),
-                                              Integer.toString(ifd), "0", Integer.toString(funcDec));
-                        format    = rIntr.getFormat();
-
-                    } // else do nothing
-                }
+                // Get decompositions of retrieved function, format and registers.
+                mnemonic  = toMnemonic("R", instr.getFunc(), fd, fs, ft, null, null);
+                hexDecomp = getDecomp(opfield, decimalToHex(iRD), decimalToHex(iRT), decimalToHex(ifd), "0",
+                                      func_hex);
+                decDecomp = getDecomp(opDec, Integer.toString(iRD), Integer.toString(iRT),
+                                      Integer.toString(ifd), "0", Integer.toString(signExtend(func, 6)));
+                format    = instr.getFormat();
 
-            } else {
+            } // else do nothing
 
-                // Instruction is in OP-field...
+        } else {
 
-                HashMap<String, HashMap> funcs = func.get("op");
+            // Instruction is in OP-field...
 
-                // Get HashMap containing format of instruction and instruction.
-                HashMap<String, ?> arr = mapper.getInstruction(funcs, opfield);
-                if ((arr == null) || (arr.size() == 0)) {
-                    System.err.println(srcLine + "| Error: No opfield=" + opfield + " exists in set 'OP'");
-                    return null;
-                }
+            // The first 3 instructions are J-instructions, rest are I-instructions.
+            if (op < 4) {
 
+                String target_Hex = fieldToHex(target);
 
-                int funcDec = Integer.parseInt(opfield.substring(opfield.length() - 2, opfield.length()), 16);
+                // Get decompositions of retrieved function, format and registers.
+                mnemonic    = toMnemonic("J", instr.getFunc(), null, null, null, null, target_Hex);
+                hexDecomp   = getDecomp(opfield, target_Hex, null, null, null, null);
+                decDecomp   = getDecomp(opDec, Integer.toString(signExtend(target, 26)), null, null, null, null);
+                format      = instr.getFormat();
 
-                // The first 3 instructions are J-instructions, rest are I-instructions.
-                if (funcDec < 4) {
+            } else {
 
-                    Instruction_J jIntr = (Instruction_J) arr.get("J");
-                    String function     = jIntr.getFunc();
+                String function = instr.getFunc();
 
-                    String target_Bin = instruction.substring(6, 32);
-                    String target_Hex = binaryToHex(target_Bin);
+                // If func deals with coproc 1 then use float register instead of rt
+                boolean ftFloat = (function.endsWith("1")) ? true : false;
 
-                    // Get decompositions of retrieved function, format and registers.
-                    mnemonic    = toMnemonic("J", jIntr.getFunc(), null, null, null, null, target_Hex);
-                    hexDecomp   = getDecomp(opfield, target_Hex, null, null, null, null);
-                    decDecomp   = getDecomp(Integer.toString(binaryToDec(op_bin)),
-                                            Integer.toString(binaryToDec(target_Bin)), null, null, null, null);
-                    format      = jIntr.getFormat();
+                // Get registers.
+                String rs   = mapper.getRegister(iRS);
+                String xt   = (ftFloat) ? mapper.getFloatRegister(iRT) : mapper.getRegister(iRT);
 
-                } else {
+                // Check if function is a branch-function. If so then immed needs to be +1 (starts with NEXT
+                // instruction).
+                int     offset = signExtend(imm, 16);
+                        offset = (isBranchFunction(function)) ? offset + 1 : offset;
+                String  immed  = Integer.toString(offset);
 
-                    Instruction_I iIntr = (Instruction_I) arr.get("I");
-                    String function     = iIntr.getFunc();
-
-                    // If func deals with coproc 1 then use float register instead of rt
-                    boolean ftFloat = (function.endsWith("1")) ? true : false;
-
-                    // Get registers.
-                    int irs     = Integer.parseInt(instruction.substring(6, 11), 2);
-                    String rs   = mapper.getRegister().get(irs);
-                    int irt     = Integer.parseInt(instruction.substring(11, 16), 2);
-                    String xt   = (ftFloat) ? mapper.getFloatRegister().get(irt) : mapper.getRegister().get(irt);
-
-
-                    // Check if function is a branch-function. If so then immed needs to be +1 (starts with NEXT
-                    // instruction).
-                    String  immed = Integer.toString(binaryToDec(instruction.substring(16, 32)));
-                            immed = (isBranchFunction(function)) ?
-                                    Integer.toString(Integer.parseUnsignedInt(immed) + 1) : immed;
-
-                    // Special exceptions of the mnemonic syntax (order of registers etc).
-                    if (funcDec < 15) { // Format: funct rs, rt/ft, immed
-                        if (isBranchFunction(function)) {
-                            // Branch has reverse order of params. E.g. beq rs, rt, imm (instead of ... rt, rs, ...)
-                            mnemonic = toMnemonic("I1", iIntr.getFunc(), null, rs, xt, immed, null);
-                        } else {
-                            // Normal format.
-                            mnemonic = toMnemonic("I", iIntr.getFunc(), null, rs, xt, immed, null);
-                        }
+                // Special exceptions of the mnemonic syntax (order of registers etc).
+                if (op < 15) { // Format: funct rs, rt/ft, immed
+                    if (isBranchFunction(function)) {
+                        // Branch has reverse order of params. E.g. beq rs, rt, imm (instead of ... rt, rs, ...)
+                        mnemonic = toMnemonic("I1", function, null, rs, xt, immed, null);
                     } else {
-                        // Format: func rs, immed(rt/ft)
-                        mnemonic = toMnemonic("I2", iIntr.getFunc(), null, rs, xt, immed, null);
+                        // Normal format.
+                        mnemonic = toMnemonic("I", function, null, rs, xt, immed, null);
                     }
+                } else {
+                    // Format: func rs, immed(rt/ft)
+                    mnemonic = toMnemonic("I2", function, null, rs, xt, immed, null);
+                }
 
-                    hexDecomp = getDecomp(opfield, binaryToHex(instruction.substring(6, 11)),
-                                          binaryToHex(instruction.substring(11, 16)), binaryToHex(instruction.substring(16, 32)),
-                                          null, null);
-                    decDecomp = getDecomp(Integer.toString(binaryToDec(op_bin)), Integer.toString(irs),
-                                          Integer.toString(irt), immed, null, null);
-                    format    = iIntr.getFormat();
+                hexDecomp = getDecomp(opfield, fieldToHex(iRS), fieldToHex(iRT), fieldToHex(imm), null, null);
+                decDecomp = getDecomp(opDec, Integer.toString(iRS), Integer.toString(iRT), immed, null, null);
+                format    = instr.getFormat();
 
-                }
             }
         }
 
@@ -714,5 +598,3 @@ public class Disassembler {
     }
 
 }
-
-
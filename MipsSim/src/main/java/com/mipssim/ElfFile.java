@@ -0,0 +1,394 @@
+package com.mipssim;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ElfFile reads a 32-bit MIPS ELF file (executable, shared object or relocatable object). The file is memory-mapped
+ * once; headers are parsed from the mapping and the words of a section are returned as views of it, so nothing is
+ * copied. Function symbols are read from the symbol table so the disassembly can be annotated with their names.
+ */
+public class ElfFile implements Closeable {
+
+    public static final int EM_MIPS       = 8;
+    public static final int SHT_PROGBITS  = 1;
+    public static final int SHT_SYMTAB    = 2;
+    public static final int SHT_DYNSYM    = 11;
+    public static final int SHF_EXECINSTR = 0x4;
+    public static final int PT_LOAD       = 1;
+    public static final int PF_X          = 0x1;
+
+    private static final int STT_NOTYPE = 0;
+    private static final int STT_FUNC   = 2;
+
+    /**
+     * A section (or, for files without section headers, a loadable segment) of the file.
+     */
+    public static class Section {
+
+        private final String name;
+        private final int type;
+        private final int flags;
+        private final int addr;
+        private final int offset;
+        private final int size;
+        private final int link;
+        private final int entsize;
+
+        Section(String name, int type, int flags, int addr, int offset, int size, int link, int entsize) {
+            this.name    = name;
+            this.type    = type;
+            this.flags   = flags;
+            this.addr    = addr;
+            this.offset  = offset;
+            this.size    = size;
+            this.link    = link;
+            this.entsize = entsize;
+        }
+
+        public String getName()  { return name; }
+        public int getType()     { return type; }
+        public int getFlags()    { return flags; }
+        public int getAddr()     { return addr; }
+        public int getOffset()   { return offset; }
+        public int getSize()     { return size; }
+        public int getLink()     { return link; }
+        public int getEntsize()  { return entsize; }
+
+        /**
+         * Returns true if the section holds instructions.
+         * @return True if executable.
+         */
+        public boolean isExecutable() {
+            return (type == SHT_PROGBITS) && ((flags & SHF_EXECINSTR) != 0);
+        }
+    }
+
+    /**
+     * A program header (segment) of the file.
+     */
+    public static class Segment {
+
+        private final int type;
+        private final int offset;
+        private final int vaddr;
+        private final int filesz;
+        private final int memsz;
+        private final int flags;
+
+        Segment(int type, int offset, int vaddr, int filesz, int memsz, int flags) {
+            this.type   = type;
+            this.offset = offset;
+            this.vaddr  = vaddr;
+            this.filesz = filesz;
+            this.memsz  = memsz;
+            this.flags  = flags;
+        }
+
+        public int getType()   { return type; }
+        public int getOffset() { return offset; }
+        public int getVaddr()  { return vaddr; }
+        public int getFilesz() { return filesz; }
+        public int getMemsz()  { return memsz; }
+        public int getFlags()  { return flags; }
+    }
+
+    private final FileChannel channel;
+    private final ByteBuffer data;
+    private final int entry;
+    private final List<Section> sections;
+    private final List<Segment> segments;
+
+    // Function symbols sorted by address (unsigned).
+    private int[] symbolAddr;
+    private String[] symbolName;
+
+    /**
+     * Opens and parses an ELF file.
+     * @param path File to read.
+     * @throws IOException If the file can not be read or is not a 32-bit MIPS ELF file.
+     */
+    public ElfFile(String path) throws IOException {
+
+        channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+
+        try {
+            long size = channel.size();
+            if (size < 52)
+                throw new IOException("Not an ELF file (too small).");
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("ELF file too large (" + size + " bytes).");
+
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if ((data.get(0) != 0x7f) || (data.get(1) != 'E') || (data.get(2) != 'L') || (data.get(3) != 'F'))
+                throw new IOException("Not an ELF file (bad magic).");
+            if (data.get(4) != 1)
+                throw new IOException("Not a 32-bit ELF file.");
+
+            if (data.get(5) == 1)
+                data.order(ByteOrder.LITTLE_ENDIAN);
+            else if (data.get(5) == 2)
+                data.order(ByteOrder.BIG_ENDIAN);
+            else
+                throw new IOException("Unknown ELF data encoding " + data.get(5) + ".");
+
+            int machine = data.getShort(18) & 0xffff;
+            if (machine != EM_MIPS)
+                throw new IOException("Not a MIPS ELF file (machine " + machine + ").");
+
+            entry           = data.getInt(24);
+            int phoff       = data.getInt(28);
+            int shoff       = data.getInt(32);
+            int phentsize   = data.getShort(42) & 0xffff;
+            int phnum       = data.getShort(44) & 0xffff;
+            int shentsize   = data.getShort(46) & 0xffff;
+            int shnum       = data.getShort(48) & 0xffff;
+            int shstrndx    = data.getShort(50) & 0xffff;
+
+            segments = new ArrayList<>(phnum);
+            for (int i = 0; i < phnum; i++) {
+                int ph = checkRange(phoff + i * phentsize, 32);
+                segments.add(new Segment(data.getInt(ph), data.getInt(ph + 4), data.getInt(ph + 8),
+                                         data.getInt(ph + 16), data.getInt(ph + 20), data.getInt(ph + 24)));
+            }
+
+            // Offset of the section name string table.
+            int shstroff = -1;
+            if ((shnum > 0) && (shstrndx < shnum))
+                shstroff = data.getInt(checkRange(shoff + shstrndx * shentsize, 40) + 16);
+
+            sections = new ArrayList<>(shnum);
+            for (int i = 0; i < shnum; i++) {
+                int sh     = checkRange(shoff + i * shentsize, 40);
+                String name = (shstroff < 0) ? "" : readString(shstroff + data.getInt(sh));
+                sections.add(new Section(name, data.getInt(sh + 4), data.getInt(sh + 8), data.getInt(sh + 12),
+                                         data.getInt(sh + 16), data.getInt(sh + 20), data.getInt(sh + 24),
+                                         data.getInt(sh + 36)));
+            }
+
+            readSymbols();
+
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            if (e instanceof IndexOutOfBoundsException)
+                throw new IOException("Corrupt ELF file (header outside of file).");
+            throw e;
+        }
+    }
+
+    /**
+     * Throws if [off, off+len) is not inside the file.
+     */
+    private int checkRange(int off, int len) throws IOException {
+        if ((off < 0) || (len < 0) || ((long) off + len > data.capacity()))
+            throw new IOException("Corrupt ELF file (offset 0x" + Integer.toHexString(off) + " outside of file).");
+        return off;
+    }
+
+    /**
+     * Reads a zero-terminated string at offset off.
+     */
+    private String readString(int off) throws IOException {
+        checkRange(off, 0);
+        int end = off;
+        while ((end < data.capacity()) && (data.get(end) != 0))
+            end++;
+        byte[] bytes = new byte[end - off];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = data.get(off + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the function symbols of the symbol table (or the dynamic symbol table if there is none).
+     */
+    private void readSymbols() throws IOException {
+
+        Section symtab = null;
+        for (Section s : sections) {
+            if (s.getType() == SHT_SYMTAB)
+                symtab = s;
+            else if ((s.getType() == SHT_DYNSYM) && (symtab == null))
+                symtab = s;
+        }
+
+        if ((symtab == null) || (symtab.getLink() >= sections.size())) {
+            symbolAddr = new int[0];
+            symbolName = new String[0];
+            return;
+        }
+
+        int strOff = sections.get(symtab.getLink()).getOffset();
+        int entsize = (symtab.getEntsize() > 0) ? symtab.getEntsize() : 16;
+        int count   = symtab.getSize() / entsize;
+
+        long[] keys    = new long[count];
+        String[] names = new String[count];
+        int n = 0;
+
+        for (int i = 0; i < count; i++) {
+            int sym   = checkRange(symtab.getOffset() + i * entsize, 16);
+            int type  = data.get(sym + 12) & 0xf;
+            int shndx = data.getShort(sym + 14) & 0xffff;
+            if (((type != STT_FUNC) && (type != STT_NOTYPE)) || (shndx == 0) || (shndx >= 0xff00))
+                continue;
+            if ((shndx >= sections.size()) || !sections.get(shndx).isExecutable())
+                continue;
+            String name = readString(strOff + data.getInt(sym));
+            if (name.isEmpty() || name.startsWith("$"))
+                continue;
+            // Sort by unsigned address (the sign bit flipped), keep the symbol index in the low bits so names can be
+            // found after sorting.
+            keys[n]  = ((Integer.toUnsignedLong(data.getInt(sym + 4)) << 32) | n) ^ Long.MIN_VALUE;
+            names[n] = name;
+            n++;
+        }
+
+        Arrays.sort(keys, 0, n);
+
+        symbolAddr = new int[n];
+        symbolName = new String[n];
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            keys[i] ^= Long.MIN_VALUE;
+            int addr = (int) (keys[i] >>> 32);
+            // Several symbols can share an address (e.g. aliases), keep the first one.
+            if ((m > 0) && (symbolAddr[m - 1] == addr))
+                continue;
+            symbolAddr[m] = addr;
+            symbolName[m] = names[(int) keys[i]];
+            m++;
+        }
+        symbolAddr = Arrays.copyOf(symbolAddr, m);
+        symbolName = Arrays.copyOf(symbolName, m);
+    }
+
+    /**
+     * Returns the entry point of the program.
+     * @return Virtual address of the entry point.
+     */
+    public int getEntry() {
+        return entry;
+    }
+
+    /**
+     * Returns the byte order of the file.
+     * @return Byte order.
+     */
+    public ByteOrder getByteOrder() {
+        return data.order();
+    }
+
+    /**
+     * Returns all section headers.
+     * @return List of sections.
+     */
+    public List<Section> getSections() {
+        return sections;
+    }
+
+    /**
+     * Returns all program headers.
+     * @return List of segments.
+     */
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * Returns the sections that contain instructions. If the file has no section headers the executable loadable
+     * segments are returned instead (named "segment<n>").
+     * @return List of executable sections.
+     */
+    public List<Section> getExecutableSections() {
+
+        List<Section> exec = new ArrayList<>();
+        for (Section s : sections) {
+            if (s.isExecutable() && (s.getSize() > 0))
+                exec.add(s);
+        }
+
+        if (exec.isEmpty()) {
+            for (int i = 0; i < segments.size(); i++) {
+                Segment p = segments.get(i);
+                if ((p.getType() == PT_LOAD) && ((p.getFlags() & PF_X) != 0) && (p.getFilesz() > 0))
+                    exec.add(new Section("segment" + i, SHT_PROGBITS, SHF_EXECINSTR, p.getVaddr(), p.getOffset(),
+                                         p.getFilesz(), 0, 0));
+            }
+        }
+        return exec;
+    }
+
+    /**
+     * Returns the bytes a segment has in the file as a view of the mapped file (nothing is copied).
+     * @param segment Segment to read.
+     * @return The filesz bytes of the segment.
+     * @throws IOException If the segment is outside of the file.
+     */
+    public ByteBuffer bytes(Segment segment) throws IOException {
+        checkRange(segment.getOffset(), segment.getFilesz());
+        ByteBuffer view = data.duplicate();
+        view.position(segment.getOffset());
+        view.limit(segment.getOffset() + segment.getFilesz());
+        return view.slice().order(data.order());
+    }
+
+    /**
+     * Returns the words of a section as a view of the mapped file (nothing is copied).
+     * @param section Section to read.
+     * @return The whole words of the section in the byte order of the file.
+     * @throws IOException If the section is outside of the file.
+     */
+    public IntBuffer words(Section section) throws IOException {
+        checkRange(section.getOffset(), section.getSize());
+        ByteBuffer view = data.duplicate();
+        view.position(section.getOffset());
+        view.limit(section.getOffset() + (section.getSize() & ~3));
+        return view.slice().order(data.order()).asIntBuffer();
+    }
+
+    /**
+     * Returns the addresses of all function symbols, sorted (unsigned).
+     * @return Symbol addresses.
+     */
+    public int[] getSymbolAddresses() {
+        return symbolAddr;
+    }
+
+    /**
+     * Returns the name of the function symbol that starts at addr.
+     * @param addr Virtual address.
+     * @return Name of the symbol, or null if no symbol starts at addr.
+     */
+    public String getSymbol(int addr) {
+        int lo = 0;
+        int hi = symbolAddr.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = Integer.compareUnsigned(symbolAddr[mid], addr);
+            if (cmp == 0)
+                return symbolName[mid];
+            if (cmp < 0)
+                lo = mid + 1;
+            else
+                hi = mid - 1;
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
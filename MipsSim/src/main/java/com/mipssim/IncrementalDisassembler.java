@@ -0,0 +1,544 @@
+package com.mipssim;
+
+import com.mipssim.sim.Program;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * IncrementalDisassembler writes the same listing as StreamDisassembler, but keeps the rendered rows of every chunk
+ * of CHUNK_WORDS words in a cache file, so the next run over a changed input only decodes the chunks that changed.
+ *
+ * A chunk is identified by a 64-bit hash of its words, its first line and address, the section header before it
+ * and the ELF symbols in it, everything its rows and error messages depend on. A chunk whose hash equals the one of
+ * the chunk at the same index in the cache is copied from the cache, the others are decoded and appended to the
+ * cache. Words inserted or removed shift the lines (and addresses) of all following chunks, so those are decoded
+ * again; a change in place only costs its own chunks.
+ *
+ * The listing is written with file channels. If the output-file is the one written by the last run (same size and
+ * modification time), only the changed chunks are written into it, in place, as long as their rows have the same
+ * length as before (rows are padded to fixed columns, so this is the usual case); from the first chunk whose
+ * length changed on, the rest of the listing is copied from the cache. The error messages of all chunks are
+ * written to stderr after the listing, as in a full run.
+ *
+ * The cache file is a log: chunks are appended, then a new index, then the header is rewritten to point at the
+ * index. A run that stops halfway leaves the previous index valid. When less than half of the file is still used
+ * it is compacted into a new file, which replaces the old one.
+ *
+ * File layout (big-endian):
+ * <pre>
+ *   0  int    magic "MIC1"
+ *   4  int    version
+ *   8  int    words per chunk
+ *  12  int    number of descriptors of the Mappings
+ *  16  long   hash of the kind of input (text, binary or elf)
+ *  24  long   size of the listing written by the last run (-1 = not a file)
+ *  32  long   modification time of the listing (ms)
+ *  40  long   offset of the index
+ *  48  int    number of chunks
+ *  52  int    CRC-32 of the index
+ *  56  int    hash of the descriptors of the Mappings (see Mappings.getDescriptorHash)
+ *  60  byte[] rows and error messages of the chunks
+ *      index, per chunk: long hash, long offset of its rows, int length of its rows, int length of its errors
+ * </pre>
+ */
+public class IncrementalDisassembler {
+
+    // Number of words in one chunk.
+    static final int CHUNK_WORDS = ParallelDisassembler.CHUNK_WORDS;
+
+    private static final int MAGIC   = 0x4d494331;
+    private static final int VERSION = 2;
+    private static final int HEADER  = 60;
+    private static final int ENTRY   = 24;
+
+    // Garbage the cache file may hold before it is compacted (bytes), in addition to the size of the live chunks.
+    private static final long SLACK = 1 << 20;
+
+    /**
+     * A chunk of the input, as ParallelDisassembler splits it.
+     */
+    private static class Piece {
+
+        final IntBuffer words;
+        final int firstLine;
+        final int firstAddr;
+        final String header;
+
+        Piece(IntBuffer words, int firstLine, int firstAddr, String header) {
+            this.words     = words;
+            this.firstLine = firstLine;
+            this.firstAddr = firstAddr;
+            this.header    = header;
+        }
+    }
+
+    private final Path cacheFile;
+    private final Mappings map;
+    private final ListingOptions listing;
+    private final long kind;
+
+    // Index of the cache file, empty if there is none or it was rejected.
+    private long[] hashes = new long[0];
+    private long[] offsets = new long[0];
+    private int[] rowLengths = new int[0];
+    private int[] errorLengths = new int[0];
+    private long listingSize = -1;
+    private long listingModified;
+
+    // Counters of the last run.
+    private int reused;
+    private int decoded;
+    private boolean patched;
+    private String rejected;
+
+    /**
+     * Creates an incremental disassembler.
+     * @param cacheFile File to keep the rendered chunks in, created by the first run.
+     * @param map Mappings object.
+     * @param cache Cache of decoded words, null to decode every word.
+     * @param kind Kind of input ("text", "binary" or "elf"), a cache file of another kind is not used.
+     */
+    public IncrementalDisassembler(Path cacheFile, Mappings map, DecodeCache cache, String kind) {
+        this.cacheFile = cacheFile;
+        this.map       = map;
+        this.listing   = new ListingOptions(map);
+        this.listing.setCache(cache);
+        this.kind      = hash(0xcbf29ce484222325L, kind);
+    }
+
+    /**
+     * Disassembles the instructions in a text input-file (one per line). Lines that are not numbers are reported
+     * on stderr while reading, as by StreamDisassembler.
+     * @param input File to read instructions from.
+     * @param output File to write the result to, "-" or null writes to stdout.
+     * @throws IOException If reading or writing fails.
+     */
+    public void run(String input, String output) throws IOException {
+
+        int[] words = new int[CHUNK_WORDS];
+        int count   = 0;
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(input),
+                                                                          StandardCharsets.UTF_8), 1 << 16)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                long word = Main.parseLine(line);
+                if (word < 0)
+                    continue;
+                if (count == words.length)
+                    words = Arrays.copyOf(words, count * 2);
+                words[count++] = (int) word;
+            }
+        }
+
+        List<Piece> pieces = new ArrayList<>();
+        split(pieces, IntBuffer.wrap(words, 0, count).slice(), 1, Program.TEXT_BASE, null);
+        run(pieces, null, output);
+    }
+
+    /**
+     * Disassembles every word of a binary input.
+     * @param input Binary input to read words from.
+     * @param output File to write the result to, "-" or null writes to stdout.
+     * @throws IOException If reading or writing fails.
+     */
+    public void run(BinaryInput input, String output) throws IOException {
+
+        List<Piece> pieces = new ArrayList<>();
+        long total = input.getWordCount();
+        for (long first = 0; first < total; ) {
+            int n = (int) Math.min(total - first, BinaryInput.getWindowWords());
+            split(pieces, input.map(first, n), (int) (first + 1), (int) (Program.TEXT_BASE + first * 4), null);
+            first += n;
+        }
+        run(pieces, null, output);
+    }
+
+    /**
+     * Disassembles the executable sections of an ELF file.
+     * @param elf ELF file to read sections from.
+     * @param output File to write the result to, "-" or null writes to stdout.
+     * @throws IOException If reading or writing fails.
+     */
+    public void run(ElfFile elf, String output) throws IOException {
+
+        List<Piece> pieces = new ArrayList<>();
+        int j = 0;
+        for (ElfFile.Section section : elf.getExecutableSections()) {
+            IntBuffer words = elf.words(section);
+            String header   = StreamDisassembler.sectionHeader(section);
+            if (words.limit() == 0)
+                pieces.add(new Piece(words, j + 1, section.getAddr(), header));
+            split(pieces, words, j + 1, section.getAddr(), header);
+            j += words.limit();
+        }
+        run(pieces, elf, output);
+    }
+
+    /**
+     * Splits words into pieces of CHUNK_WORDS, the first one carries the header.
+     */
+    private static void split(List<Piece> pieces, IntBuffer words, int firstLine, int firstAddr, String header) {
+        for (int from = 0; from < words.limit(); from += CHUNK_WORDS) {
+            IntBuffer slice = words.duplicate();
+            slice.position(from);
+            slice.limit(Math.min(words.limit(), from + CHUNK_WORDS));
+            pieces.add(new Piece(slice.slice(), firstLine + from, firstAddr + from * 4, header));
+            header = null;
+        }
+    }
+
+    private void run(List<Piece> pieces, ElfFile elf, String output) throws IOException {
+
+        reused   = 0;
+        decoded  = 0;
+        patched  = false;
+        rejected = null;
+
+        int n = pieces.size();
+        long[] newHashes = new long[n];
+        long[] newOffsets = new long[n];
+        int[] newRows = new int[n];
+        int[] newErrors = new int[n];
+        boolean[] changed = new boolean[n];
+
+        try (FileChannel ch = FileChannel.open(cacheFile, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                                               StandardOpenOption.CREATE)) {
+
+            if (!load(ch)) {
+                ch.truncate(0);
+                ch.write(ByteBuffer.allocate(HEADER), 0);
+            }
+
+            // Decode the chunks that changed and append them to the log.
+            long end = ch.size();
+            for (int i = 0; i < n; i++) {
+                Piece piece  = pieces.get(i);
+                newHashes[i] = hash(piece, elf);
+                if ((i < hashes.length) && (hashes[i] == newHashes[i])) {
+                    newOffsets[i] = offsets[i];
+                    newRows[i]    = rowLengths[i];
+                    newErrors[i]  = errorLengths[i];
+                    reused++;
+                    continue;
+                }
+
+                CharArrayWriter rows = new CharArrayWriter(piece.words.remaining() * ParallelDisassembler.ROW_CHARS);
+                ByteArrayOutputStream errors = new ByteArrayOutputStream();
+                if (piece.header != null)
+                    rows.write(piece.header);
+                StreamDisassembler.writeWords(piece.words, piece.firstLine, piece.firstAddr, elf, listing, rows,
+                                              new PrintStream(errors, true));
+                byte[] bytes = rows.toString().getBytes(StandardCharsets.UTF_8);
+
+                newOffsets[i] = end;
+                newRows[i]    = bytes.length;
+                newErrors[i]  = errors.size();
+                end += write(ch, end, ByteBuffer.wrap(bytes));
+                end += write(ch, end, ByteBuffer.wrap(errors.toByteArray()));
+                changed[i] = true;
+                decoded++;
+            }
+
+            writeListing(ch, output, newOffsets, newRows, changed);
+            writeErrors(ch, newOffsets, newRows, newErrors);
+
+            hashes       = newHashes;
+            offsets      = newOffsets;
+            rowLengths   = newRows;
+            errorLengths = newErrors;
+            store(ch, end);
+        }
+
+        long live = HEADER + (long) ENTRY * n;
+        for (int i = 0; i < n; i++)
+            live += rowLengths[i] + errorLengths[i];
+        if (Files.size(cacheFile) > 2 * live + SLACK)
+            compact();
+    }
+
+    /**
+     * Reads the index of the cache file.
+     * @return True if the file has a valid index for this kind of input and these Mappings.
+     */
+    private boolean load(FileChannel ch) throws IOException {
+
+        hashes       = new long[0];
+        offsets      = new long[0];
+        rowLengths   = new int[0];
+        errorLengths = new int[0];
+        listingSize  = -1;
+
+        long size = ch.size();
+        if (size == 0)
+            return false;
+        if (size < HEADER)
+            return reject("truncated");
+
+        ByteBuffer header = read(ch, 0, HEADER);
+        if ((header.getInt(0) != MAGIC) || (header.getInt(4) != VERSION))
+            return reject("not an incremental cache");
+        if ((header.getInt(8) != CHUNK_WORDS) || (header.getInt(12) != map.getDescriptorCount()) ||
+            (header.getInt(56) != map.getDescriptorHash()) || (header.getLong(16) != kind))
+            return reject("different input or mappings");
+
+        long index = header.getLong(40);
+        int count  = header.getInt(48);
+        if ((count < 0) || (index < HEADER) || (index + (long) ENTRY * count > size))
+            return reject("truncated");
+
+        ByteBuffer entries = read(ch, index, ENTRY * count);
+        CRC32 crc = new CRC32();
+        crc.update(entries.duplicate());
+        if ((int) crc.getValue() != header.getInt(52))
+            return reject("checksum mismatch");
+
+        long[] h = new long[count];
+        long[] o = new long[count];
+        int[] r  = new int[count];
+        int[] e  = new int[count];
+        for (int i = 0; i < count; i++) {
+            h[i] = entries.getLong(i * ENTRY);
+            o[i] = entries.getLong(i * ENTRY + 8);
+            r[i] = entries.getInt(i * ENTRY + 16);
+            e[i] = entries.getInt(i * ENTRY + 20);
+            if ((o[i] < HEADER) || (r[i] < 0) || (e[i] < 0) || (o[i] + r[i] + e[i] > index))
+                return reject("bad chunk " + i);
+        }
+
+        hashes          = h;
+        offsets         = o;
+        rowLengths      = r;
+        errorLengths    = e;
+        listingSize     = header.getLong(24);
+        listingModified = header.getLong(32);
+        return true;
+    }
+
+    private boolean reject(String reason) {
+        rejected = reason;
+        return false;
+    }
+
+    /**
+     * Appends the index at end and points the header at it.
+     */
+    private void store(FileChannel ch, long end) throws IOException {
+
+        int n = hashes.length;
+        ByteBuffer entries = ByteBuffer.allocate(ENTRY * n);
+        for (int i = 0; i < n; i++) {
+            entries.putLong(hashes[i]).putLong(offsets[i]).putInt(rowLengths[i]).putInt(errorLengths[i]);
+        }
+        entries.flip();
+        CRC32 crc = new CRC32();
+        crc.update(entries.duplicate());
+        write(ch, end, entries);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putInt(8, CHUNK_WORDS);
+        header.putInt(12, map.getDescriptorCount());
+        header.putLong(16, kind);
+        header.putLong(24, listingSize);
+        header.putLong(32, listingModified);
+        header.putLong(40, end);
+        header.putInt(48, n);
+        header.putInt(52, (int) crc.getValue());
+        header.putInt(56, map.getDescriptorHash());
+        write(ch, 0, header);
+    }
+
+    /**
+     * Writes the listing: into the listing of the last run where possible, else from the start.
+     */
+    private void writeListing(FileChannel ch, String output, long[] newOffsets, int[] newRows, boolean[] changed)
+            throws IOException {
+
+        int n = newOffsets.length;
+
+        if ((output == null) || output.equals("-")) {
+            System.out.flush();
+            WritableByteChannel out = Channels.newChannel(System.out);
+            for (int i = 0; i < n; i++)
+                copy(ch, newOffsets[i], newRows[i], out);
+            System.out.flush();
+            listingSize = -1;
+            return;
+        }
+
+        Path path = Paths.get(output);
+        boolean same = (listingSize >= 0) && Files.isRegularFile(path) && (Files.size(path) == listingSize) &&
+                       (Files.getLastModifiedTime(path).toMillis() == listingModified);
+
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+
+            long pos = 0;
+            int i    = 0;
+            if (same) {
+                // Skip or overwrite chunks as long as they have the length of the chunk they replace.
+                for (; (i < n) && (i < rowLengths.length) && (newRows[i] == rowLengths[i]); i++) {
+                    if (changed[i]) {
+                        out.position(pos);
+                        copy(ch, newOffsets[i], newRows[i], out);
+                    }
+                    pos += newRows[i];
+                }
+                patched = true;
+            }
+            out.position(pos);
+            for (; i < n; i++) {
+                copy(ch, newOffsets[i], newRows[i], out);
+                pos += newRows[i];
+            }
+            out.truncate(pos);
+            listingSize = pos;
+        }
+        listingModified = Files.getLastModifiedTime(path).toMillis();
+    }
+
+    /**
+     * Writes the error messages of every chunk to stderr.
+     */
+    private static void writeErrors(FileChannel ch, long[] newOffsets, int[] newRows, int[] newErrors)
+            throws IOException {
+        for (int i = 0; i < newOffsets.length; i++) {
+            if (newErrors[i] > 0) {
+                ByteBuffer errors = read(ch, newOffsets[i] + newRows[i], newErrors[i]);
+                System.err.write(errors.array(), 0, newErrors[i]);
+            }
+        }
+        System.err.flush();
+    }
+
+    /**
+     * Rewrites the cache file with only the live chunks, then replaces the old file by it.
+     */
+    private void compact() throws IOException {
+
+        Path tmp = Files.createTempFile(cacheFile.toAbsolutePath().getParent(), cacheFile.getFileName().toString(),
+                                        ".tmp");
+        try {
+            try (FileChannel from = FileChannel.open(cacheFile, StandardOpenOption.READ);
+                 FileChannel to = FileChannel.open(tmp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                to.write(ByteBuffer.allocate(HEADER), 0);
+                long end = HEADER;
+                for (int i = 0; i < hashes.length; i++) {
+                    int length = rowLengths[i] + errorLengths[i];
+                    to.position(end);
+                    copy(from, offsets[i], length, to);
+                    offsets[i] = end;
+                    end += length;
+                }
+                store(to, end);
+            }
+            Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Returns the hash of a chunk: its words, first line and address, header and the ELF symbols in it.
+     */
+    private static long hash(Piece piece, ElfFile elf) {
+
+        // FNV-1a, as TranslationCache.hash.
+        long h = 0xcbf29ce484222325L;
+        h = (h ^ piece.firstLine) * 0x100000001b3L;
+        h = (h ^ piece.firstAddr) * 0x100000001b3L;
+        IntBuffer words = piece.words;
+        for (int i = words.position(), end = words.limit(); i < end; i++)
+            h = (h ^ words.get(i)) * 0x100000001b3L;
+        h = (h ^ words.remaining()) * 0x100000001b3L;
+        if (piece.header != null)
+            h = hash(h, piece.header);
+
+        if (elf != null) {
+            // The symbols from firstAddr to the last word, found in the sorted addresses.
+            int[] symbols = elf.getSymbolAddresses();
+            long first = Integer.toUnsignedLong(piece.firstAddr);
+            long last  = first + 4L * words.remaining();
+            int lo = 0, hi = symbols.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (Integer.toUnsignedLong(symbols[mid]) < first)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            for (int s = lo; (s < symbols.length) && (Integer.toUnsignedLong(symbols[s]) < last); s++) {
+                h = (h ^ symbols[s]) * 0x100000001b3L;
+                h = hash(h, elf.getSymbol(symbols[s]));
+            }
+        }
+        return h;
+    }
+
+    private static long hash(long h, String s) {
+        for (int i = 0; i < s.length(); i++)
+            h = (h ^ s.charAt(i)) * 0x100000001b3L;
+        return (h ^ s.length()) * 0x100000001b3L;
+    }
+
+    private static ByteBuffer read(FileChannel ch, long pos, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, pos + buf.position()) < 0)
+                throw new EOFException("Incremental cache truncated.");
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static int write(FileChannel ch, long pos, ByteBuffer buf) throws IOException {
+        int length = buf.remaining();
+        while (buf.hasRemaining())
+            ch.write(buf, pos + length - buf.remaining());
+        return length;
+    }
+
+    /**
+     * Copies length bytes at pos of ch to the current position of out.
+     */
+    private static void copy(FileChannel ch, long pos, long length, WritableByteChannel out) throws IOException {
+        while (length > 0) {
+            long n = ch.transferTo(pos, length, out);
+            if (n <= 0)
+                throw new EOFException("Incremental cache truncated.");
+            pos    += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Writes the counters of the last run.
+     * @param out Stream to write to.
+     * @param millis Time the run took (ms).
+     */
+    public void report(PrintStream out, long millis) {
+        if (rejected != null)
+            out.println("Incremental: rejected " + cacheFile + " (" + rejected + ").");
+        out.printf("Incremental: %d chunks reused, %d decoded, listing %s in %d ms.%n", reused, decoded,
+                   patched ? "patched" : "written", millis);
+    }
+
+    public int getReused()      { return reused; }
+    public int getDecoded()     { return decoded; }
+    public boolean isPatched()  { return patched; }
+}
@@ -0,0 +1,235 @@
+package com.mipssim;
+
+import com.mipssim.sim.Program;
+
+import java.io.*;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Labels are the targets of the branches and direct jumps of a program, for a listing that shows "beq $t0, $zero,
+ * L_00400120" instead of an offset. A first pass (scan) collects the targets into a sorted set of ints, the listing
+ * then looks up every word it writes: isLabel tells whether a label line goes before it (unless an ELF symbol line
+ * does), label renames the target of a branch or jump. Targets are named by the function symbol of an ELF file at
+ * their address, or L_ and their address in 8 hexadecimal digits.
+ *
+ * Only targets that are words of the input get a label. Text and binary input start at Program.TEXT_BASE, like
+ * --run, ELF input at the addresses of its executable sections. The set is sorted on the addresses with their sign
+ * bit flipped, so the signed order of the array is the unsigned order of the addresses. The listing asks for its
+ * words in address order, which isLabel follows with a cursor instead of searching.
+ */
+public class Labels {
+
+    private final ElfFile elf;
+
+    // Targets (sign bit flipped), count of them and the next one isLabel can find.
+    private int[] targets = new int[1024];
+    private int count;
+    private int cursor;
+
+    // Scanned ranges of addresses, as pairs of first and last address (sign bit flipped).
+    private int[] ranges = new int[8];
+    private int rangeCount;
+
+    /**
+     * Creates an empty set of labels.
+     * @param elf ELF file to name labels by its symbols, null for other inputs.
+     */
+    public Labels(ElfFile elf) {
+        this.elf = elf;
+    }
+
+    /**
+     * Collects the labels of every word of a text input-file (as read by Main.parseLine), starting at
+     * Program.TEXT_BASE. Lines that are not numbers are skipped silently, the listing reports them.
+     * @param input File to read instructions from.
+     * @return The labels.
+     * @throws IOException If reading fails.
+     */
+    public static Labels of(String input) throws IOException {
+        Labels labels = new Labels(null);
+        PrintStream quiet = new PrintStream(OutputStream.nullOutputStream());
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(input),
+                                                                          StandardCharsets.UTF_8), 1 << 16)) {
+            int addr = Program.TEXT_BASE;
+            String line;
+            while ((line = br.readLine()) != null) {
+                long word = Main.parseLine(line, quiet);
+                if (word < 0)
+                    continue;
+                labels.scan((int) word, addr);
+                addr += 4;
+            }
+        }
+        return labels.sort();
+    }
+
+    /**
+     * Collects the labels of every word of a binary input, starting at Program.TEXT_BASE.
+     * @param input Binary input to read words from.
+     * @return The labels.
+     * @throws IOException If reading fails.
+     */
+    public static Labels of(BinaryInput input) throws IOException {
+        Labels labels = new Labels(null);
+        long total = input.getWordCount();
+        for (long first = 0; first < total; ) {
+            int n = (int) Math.min(total - first, BinaryInput.getWindowWords());
+            labels.scan(input.map(first, n), (int) (Program.TEXT_BASE + first * 4));
+            first += n;
+        }
+        return labels.sort();
+    }
+
+    /**
+     * Collects the labels of the executable sections of an ELF file, named by its symbols.
+     * @param elf ELF file to read sections from.
+     * @return The labels.
+     * @throws IOException If reading fails.
+     */
+    public static Labels of(ElfFile elf) throws IOException {
+        Labels labels = new Labels(elf);
+        for (ElfFile.Section section : elf.getExecutableSections())
+            labels.scan(elf.words(section), section.getAddr());
+        return labels.sort();
+    }
+
+    /**
+     * Collects the target of a word.
+     * @param word Instruction word.
+     * @param addr Address of the word.
+     */
+    public void scan(int word, int addr) {
+        range(addr, addr);
+        if (ControlFlowGraph.hasTarget(word))
+            add(ControlFlowGraph.target(word, addr));
+    }
+
+    /**
+     * Collects the targets of all remaining words of a buffer.
+     * @param words Words, from position to limit.
+     * @param firstAddr Address of the word at position.
+     */
+    public void scan(IntBuffer words, int firstAddr) {
+        int n = words.remaining();
+        if (n == 0)
+            return;
+        range(firstAddr, firstAddr + (n - 1) * 4);
+        for (int i = 0, p = words.position(); i < n; i++) {
+            int word = words.get(p + i);
+            if (ControlFlowGraph.hasTarget(word))
+                add(ControlFlowGraph.target(word, firstAddr + i * 4));
+        }
+    }
+
+    private void add(int addr) {
+        if (count == targets.length)
+            targets = Arrays.copyOf(targets, count * 2);
+        targets[count++] = addr ^ Integer.MIN_VALUE;
+    }
+
+    /**
+     * Adds [first, last] to the scanned ranges, merged with the last range if it follows it.
+     */
+    private void range(int first, int last) {
+        first ^= Integer.MIN_VALUE;
+        last  ^= Integer.MIN_VALUE;
+        if ((rangeCount > 0) && (ranges[2 * rangeCount - 1] + 4 == first)) {
+            ranges[2 * rangeCount - 1] = last;
+            return;
+        }
+        if (2 * rangeCount == ranges.length)
+            ranges = Arrays.copyOf(ranges, ranges.length * 2);
+        ranges[2 * rangeCount]     = first;
+        ranges[2 * rangeCount + 1] = last;
+        rangeCount++;
+    }
+
+    /**
+     * Ends the first pass: sorts the targets, drops duplicates and the targets outside the scanned words.
+     * @return This set.
+     */
+    public Labels sort() {
+        Arrays.sort(targets, 0, count);
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int t = targets[i];
+            if (((n > 0) && (targets[n - 1] == t)) || !scanned(t))
+                continue;
+            targets[n++] = t;
+        }
+        count  = n;
+        cursor = 0;
+        return this;
+    }
+
+    private boolean scanned(int t) {
+        for (int r = 0; r < rangeCount; r++) {
+            if ((t >= ranges[2 * r]) && (t <= ranges[2 * r + 1]))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of labels.
+     * @return Number of distinct targets.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns true if addr is the target of a branch or jump. Fastest when called with increasing addresses.
+     * @param addr Address of a word.
+     * @return True if it has a label.
+     */
+    public boolean isLabel(int addr) {
+        int key = addr ^ Integer.MIN_VALUE;
+        if ((cursor > 0) && (targets[cursor - 1] >= key)) {
+            // Not in address order (e.g. a later section at a lower address), search again.
+            int i  = Arrays.binarySearch(targets, 0, count, key);
+            cursor = (i >= 0) ? i : -i - 1;
+        }
+        while ((cursor < count) && (targets[cursor] < key))
+            cursor++;
+        return (cursor < count) && (targets[cursor] == key);
+    }
+
+    /**
+     * Returns the name of the label at an address.
+     * @param addr Address of the label.
+     * @return The ELF symbol at addr, or "L_" and addr in 8 hexadecimal digits.
+     */
+    public String name(int addr) {
+        String symbol = (elf != null) ? elf.getSymbol(addr) : null;
+        if (symbol != null)
+            return symbol;
+        String digits = Integer.toHexString(addr);
+        return "L_00000000".substring(0, 10 - digits.length()).concat(digits);
+    }
+
+    /**
+     * Returns a decoded branch or jump with its target replaced by the name of its label. The target is the last
+     * operand of the mnemonic.
+     * @param res Decoded word, not modified (it may be shared by a DecodeCache).
+     * @param word Instruction word.
+     * @param addr Address of the word.
+     * @return A copy of res with the label, or res if the word has no labelled target.
+     */
+    public Output label(Output res, int word, int addr) {
+        if (!ControlFlowGraph.hasTarget(word) || (res.getMnemonic() == null))
+            return res;
+        int target = ControlFlowGraph.target(word, addr);
+        if (Arrays.binarySearch(targets, 0, count, target ^ Integer.MIN_VALUE) < 0)
+            return res;
+        String mnemonic = res.getMnemonic();
+        Output out = new Output(res.getFormat(), res.getHexDecomp(), res.getDecDecomp(),
+                                mnemonic.substring(0, mnemonic.lastIndexOf(' ') + 1).concat(name(target)),
+                                res.getLineInput());
+        out.setInput(res.getInput());
+        out.setAddress(res.getAddress());
+        return out;
+    }
+}
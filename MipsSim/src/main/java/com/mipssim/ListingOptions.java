@@ -0,0 +1,78 @@
+package com.mipssim;
+
+/**
+ * ListingOptions holds what the StreamDisassembler needs, besides the words, to render a listing: the mappings to
+ * decode with and the optional cache, labels and query. Only the mappings are required, the others are null (not
+ * used) until they are set.
+ */
+public class ListingOptions {
+
+    private final Mappings map;
+    private DecodeCache cache;
+    private Labels labels;
+    private Query query;
+
+    /**
+     * Creates options that decode every word with map and write all rows as they are.
+     * @param map Mappings object.
+     */
+    public ListingOptions(Mappings map) {
+        this.map = map;
+    }
+
+    /**
+     * Returns the mappings to decode words with.
+     * @return Mappings object.
+     */
+    public Mappings getMappings() {
+        return map;
+    }
+
+    /**
+     * Returns the cache of decoded words.
+     * @return The cache, null to decode every word.
+     */
+    public DecodeCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Sets the cache of decoded words.
+     * @param cache The cache, null to decode every word.
+     */
+    public void setCache(DecodeCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the labels of the input (see Labels.of).
+     * @return The labels, null to write offsets and targets as they are.
+     */
+    public Labels getLabels() {
+        return labels;
+    }
+
+    /**
+     * Sets the labels of the input (see Labels.of).
+     * @param labels The labels, null to write offsets and targets as they are.
+     */
+    public void setLabels(Labels labels) {
+        this.labels = labels;
+    }
+
+    /**
+     * Returns the query the words must match to be written.
+     * @return The query, null to write all words.
+     */
+    public Query getQuery() {
+        return query;
+    }
+
+    /**
+     * Sets the query the words must match to be written, words that do not match are not decoded.
+     * @param query The query, null to write all words.
+     */
+    public void setQuery(Query query) {
+        this.query = query;
+    }
+}
@@ -1,41 +1,111 @@
 package com.mipssim;
 
+import com.mipssim.sim.BlockEngine;
+import com.mipssim.sim.BranchPredictor;
+import com.mipssim.sim.BranchProfiler;
+import com.mipssim.sim.CacheHierarchy;
+import com.mipssim.sim.CacheLevel;
+import com.mipssim.sim.Cpu;
+import com.mipssim.sim.Engine;
+import com.mipssim.sim.Interpreter;
+import com.mipssim.sim.Memory;
+import com.mipssim.sim.Mmu;
+import com.mipssim.sim.Op;
+import com.mipssim.sim.Pipeline;
+import com.mipssim.sim.Program;
+import com.mipssim.sim.SimulationException;
+import com.mipssim.sim.Tracer;
+import com.mipssim.sim.TranslationCache;
+
 import java.io.*;
-import java.math.BigInteger;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.StringJoiner;
 
 public class Main
 {
+    // Time between two checks of the input-file of --watch (ms).
+    private static final long WATCH_INTERVAL = 200;
+
+    // Largest number of bytes between the executable sections of an ELF file that --run fills with nop.
+    private static final long MAX_SECTION_GAP = 16 << 20;
 
     /**
-     * @param args args[0] = file to read instructions from,
-     *             args[1] = file to write result to (optional).
+     * @param args [options] followed by
+     *             file to read instructions from,
+     *             file to write result to (optional).
+     *             See Options.USAGE for the options.
      */
     public static void main(String[] args) {
 
-        ArrayList<String> instructions;
-        ArrayList<Output> result;
+        int[] instructions;
+        int count;
 
 
         boolean writeToFile = false;
-        File wfile;
         Writer wr = null;
 
-        instructions = new ArrayList<>();
-        result       = new ArrayList<>();
+        instructions = new int[1024];
+        count        = 0;
+
+
+        Options opts;
+        try {
+            opts = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("\nError: " + e.getMessage());
+            System.err.println(Options.USAGE);
+            return;
+        }
+
+        if (opts.isRun()) {
+            // Execute the program instead of disassembling it.
+            try {
+                runSimulation(opts);
+            } catch (IOException | SimulationException e) {
+                System.err.println("\nError: " + e.getMessage());
+            }
+            return;
+        }
+
+        if (opts.getCfg() != null) {
+            // Write the control-flow graph instead of the listing.
+            try {
+                writeGraph(opts);
+            } catch (IOException e) {
+                System.err.println("\nError: " + e.getMessage());
+            }
+            return;
+        }
 
+        if (opts.isIncremental()) {
+            // Only decode the chunks that changed since the last run, and again on every change with --watch.
+            try {
+                runIncremental(opts);
+            } catch (IOException e) {
+                System.err.println("\nError: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
 
-        if (args.length < 1) {
-            System.err.println("\nError: No input-file to read data from.");
+        if (opts.isElf() || opts.isBinary() || opts.isStream()) {
+            // Decode one instruction (or chunk) at a time, only the result is written to the output.
+            try {
+                runStreaming(opts);
+            } catch (IOException e) {
+                System.err.println("\nError: " + e.getMessage());
+            }
             return;
         }
 
-        if (args.length > 1) {
-            wfile = new File(args[1]);
-            System.out.println("\nFile to write: <" + args[1] + ">");
+        if (opts.getOutput() != null) {
+            System.out.println("\nFile to write: <" + opts.getOutput() + ">");
             try {
-                wr = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[1])));
+                wr = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(opts.getOutput())));
                 writeToFile = true;
             } catch (FileNotFoundException e) {
                 e.printStackTrace();
@@ -47,49 +117,23 @@ public class Main
 
         try {
 
-            File fileToRead = new File(args[0]);
+            File fileToRead = new File(opts.getInput());
             BufferedReader br = new BufferedReader(new FileReader(fileToRead));
 
-            System.out.println("\nFile to read: <" + args[0] + ">");
+            System.out.println("\nFile to read: <" + opts.getInput() + ">");
             System.out.println("------------------------------------------------------------------------------------" +
                     "-----------------------");
             String line;
 
             while((line = br.readLine()) != null) {
 
-                String bin = null;
-
-                try {
-
-                    if (line.startsWith("0x")) {
-                        // Line == hex-number!
-                        if ((line.length() > 0) && (line.substring(0, 2).equalsIgnoreCase("0x"))) {
-                            // Valid Hex-code
-                            String subHex = line.substring(2);
-                            bin = new BigInteger(subHex, 16).toString(2);
-                        } else {
-                            System.err.println("Error: Unknown Hex-line in file at line " + line + ".");
-                        }
-
-                    } else {
-                        // Line == decimal-number!
-                        bin = Integer.toBinaryString(Integer.parseUnsignedInt(line));
-                    }
-
-                } catch (NumberFormatException e) {
-                    System.err.println("Error: Input not a number.");
+                long word = parseLine(line);
+                if (word < 0)
                     continue;
-                }
-
-                if (bin != null) {
 
-                    // Pad binary number if less than 32 bits with 0s.
-                    while (bin.length() < 32) {
-                        bin = "0" + bin;
-                    }
-
-                    instructions.add(bin);
-                }
+                if (count == instructions.length)
+                    instructions = Arrays.copyOf(instructions, count * 2);
+                instructions[count++] = (int) word;
             }
 
             br.close();
@@ -102,48 +146,55 @@ public class Main
 
         // Create Mapping object which identifies instructions.
         Mappings map = new Mappings();
-
-        // Parse every read-instruction and print it's function according to MIPS-architecture.
-        Iterator it = instructions.iterator();
+        DecodeCache cache = (opts.getCacheSize() > 0) ? new DecodeCache(map, opts.getCacheSize()) : null;
 
         // Line number
         int j = 0;
 
+        // Rows are formatted once and written to the console and (optionally) the file. The console is flushed
+        // every row only when it is a terminal, like line-buffered output.
+        RowFormatter fmt  = new RowFormatter();
+        Writer console    = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+        boolean terminal  = System.console() != null;
+
         System.out.println("");
-        System.out.printf("%-10s\t\t%-5s\t%-25s %-35s %-35s %n", "Instruction", "Format", "DecComp", "HexComp", "Mnemonic");
+        System.out.print(fmt.row("Instruction", "Format", "DecComp", "HexComp", "Mnemonic"));
         System.out.println("------------------------------------------------------------------------------------" +
                 "-----------------------");
 
-        while(it.hasNext()) {
+        // Parse every read-instruction and print it's function according to MIPS-architecture.
+        for (int i = 0; i < count; i++) {
 
-            String bin = (String) it.next();
+            int word = instructions[i];
             j++;
 
             // Parse the instruction and get Output to print/write to file.
-            Output res = Disassembler.parseBin(bin, j, map);
+            Output res = (cache != null) ? cache.decode(word, j, System.err) : Disassembler.parseWord(word, j, map);
             if (res == null)
                 continue;
-            res.setInput("0x".concat(Integer.toHexString(Disassembler.binaryToDec(bin))));
-
-            result.add(res);
+            res.setInput("0x".concat(Integer.toHexString(word)));
 
-            System.out.printf("%-10s\t\t%-5s\t%-25s %-35s %-35s %n", res.getInput(), res.getFormat(),
-                    res.getDecDecomp(), res.getHexDecomp(),
-                    res.getMnemonic());
+            fmt.row(res, false);
 
-            if (writeToFile && (wr != null)) {
-                try {
+            try {
+                fmt.writeTo(console);
+                if (terminal)
+                    console.flush();
 
-                    wr.write(String.format("%-10s\t\t%-5s\t%-25s %-35s %-35s %n", res.getInput(), res.getFormat(),
-                            res.getDecDecomp(), res.getHexDecomp(),
-                            res.getMnemonic()));
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+                if (writeToFile && (wr != null))
+                    fmt.writeTo(wr);
+            } catch (IOException e) {
+                e.printStackTrace();
             }
 
         }
 
+        try {
+            console.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
         if (wr != null) {
             try {
                 wr.close();
@@ -152,8 +203,471 @@ public class Main
             }
         }
 
+        if (cache != null)
+            DecodeCache.report(System.err, cache.getHits(), cache.getMisses(), cache.getEvictions());
+
         return;
     }
 
+    /**
+     * Runs the streaming modes (--stream, --binary, --elf), sequentially or on several threads.
+     * @param opts Parsed options.
+     * @throws IOException If reading or writing fails.
+     */
+    private static void runStreaming(Options opts) throws IOException {
+
+        Mappings map = new Mappings();
+        Query query  = (opts.getQuery() != null) ? Query.parse(opts.getQuery(), map) : null;
+
+        if (opts.isFromIndex()) {
+            // List (or count) the records of an index instead of decoding the input.
+            DecodeCache cache = (opts.getCacheSize() > 0) ? new DecodeCache(map, opts.getCacheSize()) : null;
+            try (DecodeIndex index = DecodeIndex.open(Paths.get(opts.getInput()), map)) {
+                if (opts.isStats()) {
+                    writeStats(index, query, opts.getOutput());
+                } else {
+                    ListingOptions listing = new ListingOptions(map);
+                    listing.setCache(cache);
+                    listing.setQuery(query);
+                    StreamDisassembler.run(index, opts.getOutput(), listing);
+                }
+            }
+            if (cache != null)
+                DecodeCache.report(System.err, cache.getHits(), cache.getMisses(), cache.getEvictions());
+            return;
+        }
+
+        if (!opts.isParallel()) {
+            DecodeCache cache = (opts.getCacheSize() > 0) ? new DecodeCache(map, opts.getCacheSize()) : null;
+            ListingOptions listing = new ListingOptions(map);
+            listing.setCache(cache);
+            listing.setQuery(query);
+
+            // With --labels, a first pass collects the targets of branches and jumps.
+            if (opts.isElf()) {
+                // Decode the executable sections of an ELF file at their virtual addresses.
+                try (ElfFile elf = new ElfFile(opts.getInput())) {
+                    listing.setLabels(opts.isLabels() ? Labels.of(elf) : null);
+                    StreamDisassembler.run(elf, opts.getOutput(), listing);
+                }
+            } else if (opts.isBinary()) {
+                // Decode the words of a raw binary file directly from a memory-mapped view.
+                try (BinaryInput input = new BinaryInput(opts.getInput(), opts.getByteOrder(), opts.getOffset(),
+                                                         opts.getLength())) {
+                    listing.setLabels(opts.isLabels() ? Labels.of(input) : null);
+                    StreamDisassembler.run(input, opts.getOutput(), listing);
+                }
+            } else {
+                listing.setLabels(opts.isLabels() ? Labels.of(opts.getInput()) : null);
+                StreamDisassembler.run(opts.getInput(), opts.getOutput(), listing);
+            }
+            if (cache != null)
+                DecodeCache.report(System.err, cache.getHits(), cache.getMisses(), cache.getEvictions());
+            writeIndex(opts, map);
+            return;
+        }
+
+        Writer wr = StreamDisassembler.openOutput(opts.getOutput());
+        try {
+            ParallelDisassembler par = new ParallelDisassembler(opts.getThreads(), map, wr);
+            par.setCacheSize(opts.getCacheSize());
+            par.setQuery(query);
+            if (opts.isElf()) {
+                try (ElfFile elf = new ElfFile(opts.getInput())) {
+                    par.run(elf);
+                }
+            } else if (opts.isBinary()) {
+                try (BinaryInput input = new BinaryInput(opts.getInput(), opts.getByteOrder(), opts.getOffset(),
+                                                         opts.getLength())) {
+                    par.run(input);
+                }
+            } else {
+                par.run(opts.getInput());
+            }
+            if (opts.getCacheSize() > 0)
+                par.reportCache(System.err);
+        } finally {
+            StreamDisassembler.closeOutput(wr, opts.getOutput());
+        }
+        writeIndex(opts, map);
+    }
+
+    /**
+     * Writes the index of the input-file (--index) after its listing. The input is read once more, its words are
+     * looked up but not rendered.
+     * @param opts Parsed options.
+     * @param map Mappings object.
+     * @throws IOException If reading the input or writing the index fails.
+     */
+    private static void writeIndex(Options opts, Mappings map) throws IOException {
+
+        if (opts.getIndex() == null)
+            return;
+
+        Path dir   = Paths.get(opts.getIndex());
+        long start = System.nanoTime();
+        long count;
+        if (opts.isElf()) {
+            try (ElfFile elf = new ElfFile(opts.getInput())) {
+                count = DecodeIndex.write(dir, elf, map);
+            }
+        } else if (opts.isBinary()) {
+            try (BinaryInput input = new BinaryInput(opts.getInput(), opts.getByteOrder(), opts.getOffset(),
+                                                     opts.getLength())) {
+                count = DecodeIndex.write(dir, input, map);
+            }
+        } else {
+            count = DecodeIndex.write(dir, opts.getInput(), map);
+        }
+        System.err.println("Index: " + count + " instructions written to " + dir + " in " +
+                           (System.nanoTime() - start) / 1000000 + " ms.");
+    }
+
+    /**
+     * Writes the number of instructions per mnemonic of an index (--stats) to the output-file.
+     * @param index Index to count.
+     * @param query Query the counted records must match, null to count all.
+     * @param output File to write to, "-" or null writes to stdout.
+     * @throws IOException If reading or writing fails.
+     */
+    private static void writeStats(DecodeIndex index, Query query, String output) throws IOException {
+        Writer wr = StreamDisassembler.openOutput(output);
+        try {
+            index.writeStats(wr, query);
+        } finally {
+            StreamDisassembler.closeOutput(wr, output);
+        }
+    }
+
+    /**
+     * Runs the incremental mode (--incremental): writes the listing from the chunks of the last run that did not
+     * change. With --watch the input-file is polled and the listing written again after every change, until the
+     * process is stopped; errors of a run are reported and the next change is waited for.
+     * @param opts Parsed options.
+     * @throws IOException If reading or writing fails (without --watch).
+     * @throws InterruptedException If interrupted while watching.
+     */
+    private static void runIncremental(Options opts) throws IOException, InterruptedException {
+
+        Mappings map      = new Mappings();
+        DecodeCache cache = (opts.getCacheSize() > 0) ? new DecodeCache(map, opts.getCacheSize()) : null;
+        String kind       = opts.isElf() ? "elf" : opts.isBinary() ? "binary" : "text";
+        IncrementalDisassembler inc = new IncrementalDisassembler(Paths.get(opts.getIncrementalCache()), map, cache,
+                                                                  kind);
+        File input = new File(opts.getInput());
+
+        while (true) {
+
+            long size     = input.length();
+            long modified = input.lastModified();
+            long start    = System.nanoTime();
+            try {
+                if (opts.isElf()) {
+                    try (ElfFile elf = new ElfFile(opts.getInput())) {
+                        inc.run(elf, opts.getOutput());
+                    }
+                } else if (opts.isBinary()) {
+                    try (BinaryInput in = new BinaryInput(opts.getInput(), opts.getByteOrder(), opts.getOffset(),
+                                                          opts.getLength())) {
+                        inc.run(in, opts.getOutput());
+                    }
+                } else {
+                    inc.run(opts.getInput(), opts.getOutput());
+                }
+                inc.report(System.err, (System.nanoTime() - start) / 1000000);
+            } catch (IOException e) {
+                if (!opts.isWatch())
+                    throw e;
+                System.err.println("\nError: " + e.getMessage());
+            }
+
+            if (!opts.isWatch())
+                return;
+
+            // Wait for a change, then until the file stops changing (a build may still be writing it).
+            while ((input.length() == size) && (input.lastModified() == modified))
+                Thread.sleep(WATCH_INTERVAL);
+            do {
+                size     = input.length();
+                modified = input.lastModified();
+                Thread.sleep(WATCH_INTERVAL);
+            } while ((input.length() != size) || (input.lastModified() != modified));
+        }
+    }
+
+    /**
+     * Builds the control-flow graph of the program of the input-file (--cfg) and writes it to the output-file.
+     * @param opts Parsed options.
+     * @throws IOException If the program can not be read or the graph not written.
+     */
+    private static void writeGraph(Options opts) throws IOException {
+
+        Program program = loadProgram(opts);
+
+        long start = System.nanoTime();
+        ControlFlowGraph cfg = ControlFlowGraph.build(program.getWords(), program.getBase(), program.getEntry());
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        Writer wr = StreamDisassembler.openOutput(opts.getOutput());
+        try {
+            if (opts.getCfg().equals("dot"))
+                cfg.writeDot(wr);
+            else
+                cfg.writeJson(wr);
+        } finally {
+            StreamDisassembler.closeOutput(wr, opts.getOutput());
+        }
+        System.err.println("CFG: " + cfg.getBlockCount() + " blocks, " + cfg.getEdgeCount() + " edges, built in " +
+                           millis + " ms.");
+    }
+
+    /**
+     * Executes the program of the input-file (--run) and reports the number of instructions per second on stderr.
+     * @param opts Parsed options.
+     * @throws IOException If the program can not be read.
+     */
+    private static void runSimulation(Options opts) throws IOException {
+
+        Program program = loadProgram(opts);
+        Mappings map    = new Mappings();
+
+        // The descriptors of the words, from the translation cache if the program was run before.
+        TranslationCache cache = (opts.getTranslationCache() == null) ? null
+                                 : new TranslationCache(Paths.get(opts.getTranslationCache()));
+        boolean cached = (cache != null) && cache.load(program, map);
+        if ((cache != null) && (cache.getRejected() != null))
+            System.err.println("Translation cache: rejected " + cache.entry(program) + " (" + cache.getRejected() +
+                               ").");
+        int[] descriptors = cached ? cache.getDescriptors() : Op.descriptors(program.getWords(), map);
+
+        // Timing models and profilers see every instruction, so they run on the interpreter.
+        Pipeline pipeline     = opts.isPipeline() ? new Pipeline(opts.isForwarding()) : null;
+        CacheHierarchy caches = !opts.isCaches() ? null
+                : new CacheHierarchy(program, CacheLevel.parse("L1I", opts.getL1i()),
+                                     CacheLevel.parse("L1D", opts.getL1d()),
+                                     (opts.getL2() == null) ? null : CacheLevel.parse("L2", opts.getL2()));
+        Cpu cpu = new Cpu();
+        BranchProfiler branches = !opts.isBranches() ? null : new BranchProfiler(program, predictors(opts),
+                                                                                 opts.getPredictorBits(), cpu);
+        Tracer tracer = Tracer.both(Tracer.both(pipeline, caches), branches);
+
+        // Translated loads and stores can raise guest exceptions in the middle of a block, so they are interpreted.
+        boolean interpret = (tracer != null) || opts.isTlb();
+        if (opts.isBlocks() && interpret)
+            System.err.println("Warning: " + ((opts.getJitThreshold() > 0) ? "--jit" : "--blocks") +
+                               " is ignored, the program is interpreted for " + interpreterOptions(opts) + ".");
+        Engine sim = (opts.isBlocks() && !interpret) ? new BlockEngine(program, map, descriptors)
+                                                     : new Interpreter(program, map, descriptors);
+        if (tracer != null)
+            ((Interpreter) sim).setTracer(tracer);
+        if (sim instanceof BlockEngine) {
+            ((BlockEngine) sim).setJitThreshold(opts.getJitThreshold());
+            if (cached)
+                ((BlockEngine) sim).warm(cache.getBlockStarts(), cache.getBlockCounts());
+        }
+        cpu.reset(program.getEntry());
+        Mmu mmu = opts.isTlb() ? new Mmu(program.getMemory(), cpu) : null;
+        if (mmu != null)
+            ((Interpreter) sim).setMmu(mmu);
+
+        // On a hit the entry is only written again if the run translated or compiled blocks it does not hold.
+        long known = translations(sim);
+
+        long start = System.nanoTime();
+        long count;
+        try {
+            count = sim.run(cpu, opts.getLimit());
+        } finally {
+            // The translations are kept even if the program failed.
+            if ((cache != null) && !(cached && (translations(sim) == known)))
+                storeTranslations(cache, cached, program, map, descriptors, sim);
+            else if (cache != null)
+                System.err.println("Translation cache: hit, nothing new to store.");
+        }
+        long time = System.nanoTime() - start;
+        System.out.flush();
+
+        System.err.printf("%nExecuted %d instructions in %.3f s (%.2f MIPS).%n", count, time / 1e9,
+                          (time == 0) ? 0.0 : count * 1e3 / time);
+        if (sim.isHalted())
+            System.err.println("Exit code: " + sim.getExitCode());
+        else
+            System.err.printf("Stopped at 0x%08x.%n", cpu.getPc());
+        System.err.println("Memory: " + program.getMemory().getPageCount() + " pages of " + Memory.PAGE_SIZE +
+                           " bytes.");
+        if (sim instanceof BlockEngine) {
+            BlockEngine blocks = (BlockEngine) sim;
+            System.err.println("Blocks: " + blocks.getTranslated() + " translated, " + blocks.getInvalidated() +
+                               " invalidated, " + blocks.getCompiled() + " compiled.");
+        }
+        if (pipeline != null)
+            pipeline.report(System.err);
+        if (caches != null)
+            caches.report(System.err);
+        if (branches != null)
+            branches.report(System.err);
+        if (mmu != null)
+            mmu.report(System.err);
+    }
+
+    /**
+     * Returns the given options that only the interpreter supports, e.g. "--pipeline, --tlb".
+     */
+    private static String interpreterOptions(Options opts) {
+        StringJoiner names = new StringJoiner(", ");
+        if (opts.isPipeline())
+            names.add("--pipeline");
+        if (opts.isCaches())
+            names.add("--caches");
+        if (opts.isBranches())
+            names.add("--branches");
+        if (opts.isTlb())
+            names.add("--tlb");
+        return names.toString();
+    }
+
+    /**
+     * Creates the branch predictors named by the options.
+     */
+    private static BranchPredictor[] predictors(Options opts) {
+        String[] names = opts.getPredictors();
+        BranchPredictor[] predictors = new BranchPredictor[names.length];
+        for (int i = 0; i < names.length; i++)
+            predictors[i] = BranchPredictor.create(names[i], opts.getPredictorBits());
+        return predictors;
+    }
+
+    /**
+     * Returns the number of blocks sim has translated, compiled and invalidated so far, 0 if it is not a
+     * BlockEngine. The number only grows, so an unchanged number means the run added no translations.
+     */
+    private static long translations(Engine sim) {
+        if (!(sim instanceof BlockEngine))
+            return 0;
+        BlockEngine blocks = (BlockEngine) sim;
+        return blocks.getTranslated() + blocks.getCompiled() + blocks.getInvalidated();
+    }
+
+    /**
+     * Stores the descriptors of a program and the blocks of its run (if sim is a BlockEngine) in cache. A failure
+     * is reported on stderr, not thrown, so it does not replace an exception of the simulation.
+     */
+    private static void storeTranslations(TranslationCache cache, boolean hit, Program program, Mappings map,
+                                          int[] descriptors, Engine sim) {
+        int[] starts  = new int[0];
+        long[] counts = new long[0];
+        if (sim instanceof BlockEngine) {
+            starts = ((BlockEngine) sim).getBlockStarts();
+            counts = ((BlockEngine) sim).getBlockCounts(starts);
+        }
+        try {
+            cache.store(program, map, descriptors, starts, counts);
+        } catch (IOException e) {
+            System.err.println("Translation cache: can not store " + cache.entry(program) + " (" + e.getMessage() +
+                               ").");
+            return;
+        }
+        System.err.println("Translation cache: " + (hit ? "hit" : "miss") + ", stored " + starts.length +
+                           " blocks in " + cache.entry(program) + ".");
+    }
+
+    /**
+     * Reads the program to execute. Text and raw binary input is loaded at Program.TEXT_BASE, the executable
+     * sections of an ELF file at their addresses (gaps between them are filled with nop) and its loadable segments
+     * into memory.
+     * @param opts Parsed options.
+     * @return The program.
+     * @throws IOException If the input-file can not be read, or its executable sections are more than
+     *                     MAX_SECTION_GAP bytes apart.
+     */
+    static Program loadProgram(Options opts) throws IOException {
+
+        if (opts.isElf()) {
+            try (ElfFile elf = new ElfFile(opts.getInput())) {
+
+                long low = Long.MAX_VALUE, high = 0, size = 0;
+                for (ElfFile.Section section : elf.getExecutableSections()) {
+                    low   = Math.min(low, Integer.toUnsignedLong(section.getAddr()));
+                    high  = Math.max(high, Integer.toUnsignedLong(section.getAddr()) + (section.getSize() & ~3));
+                    size += section.getSize() & ~3;
+                }
+                if (low >= high)
+                    throw new IOException("No executable sections in " + opts.getInput() + ".");
+                // The sections are loaded as one array of words, gaps included.
+                if ((high - low > size + MAX_SECTION_GAP) || (high - low > 4L * BinaryInput.getWindowWords()))
+                    throw new IOException(String.format("Executable sections of %s are too far apart to execute " +
+                                                        "(0x%08x to 0x%08x).", opts.getInput(), low, high));
+
+                int[] words = new int[(int) ((high - low) >>> 2)];
+                for (ElfFile.Section section : elf.getExecutableSections()) {
+                    IntBuffer w = elf.words(section);
+                    w.get(words, (int) ((Integer.toUnsignedLong(section.getAddr()) - low) >>> 2), w.limit());
+                }
+                Memory memory = new Memory(elf.getByteOrder());
+                for (ElfFile.Segment segment : elf.getSegments()) {
+                    // The rest of the segment (memsz > filesz, e.g. .bss) reads as zeros.
+                    if (segment.getType() == ElfFile.PT_LOAD)
+                        memory.load(segment.getVaddr(), elf.bytes(segment));
+                }
+                return new Program((int) low, words, elf.getEntry(), memory);
+            }
+        }
+
+        if (opts.isBinary()) {
+            try (BinaryInput input = new BinaryInput(opts.getInput(), opts.getByteOrder(), opts.getOffset(),
+                                                     opts.getLength())) {
+                if (input.getWordCount() > BinaryInput.getWindowWords())
+                    throw new IOException("Program too large to execute.");
+                int[] words = new int[(int) input.getWordCount()];
+                input.map(0, words.length).get(words);
+                return new Program(Program.TEXT_BASE, words, Program.TEXT_BASE, new Memory(opts.getByteOrder()));
+            }
+        }
+
+        int[] words = new int[1024];
+        int count   = 0;
+        try (BufferedReader br = new BufferedReader(new FileReader(opts.getInput()))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                long word = parseLine(line);
+                if (word < 0)
+                    continue;
+                if (count == words.length)
+                    words = Arrays.copyOf(words, count * 2);
+                words[count++] = (int) word;
+            }
+        }
+        return new Program(Program.TEXT_BASE, Arrays.copyOf(words, count), Program.TEXT_BASE);
+    }
+
+    /**
+     * Parses one line of the input-file, either a hexadecimal ("0x...") or a decimal number.
+     * @param line Line to parse.
+     * @return The 32-bit instruction as an unsigned value, or -1 if the line is not a number.
+     */
+    static long parseLine(String line) {
+        return parseLine(line, System.err);
+    }
+
+    /**
+     * Parses one line of the input-file, either a hexadecimal ("0x...") or a decimal number.
+     * @param line Line to parse.
+     * @param err Stream to report lines that are not numbers to.
+     * @return The 32-bit instruction as an unsigned value, or -1 if the line is not a number.
+     */
+    static long parseLine(String line, PrintStream err) {
+        try {
+            if (line.startsWith("0x")) {
+                // Line == hex-number!
+                return Integer.toUnsignedLong(Integer.parseUnsignedInt(line.substring(2), 16));
+            } else {
+                // Line == decimal-number!
+                return Integer.toUnsignedLong(Integer.parseUnsignedInt(line));
+            }
+        } catch (NumberFormatException e) {
+            err.println("Error: Input not a number.");
+            return -1;
+        }
+    }
 
 }
@@ -5,353 +5,406 @@ import com.mipssim.instructions.Instruction_J;
 import com.mipssim.instructions.Instruction_R;
 import com.mipssim.instructions.Instructions;
 
-import java.util.HashMap;
-
-@SuppressWarnings("unchecked")
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
 
 /**
- * Mappings contain HashMaps that maps functions and register to certain hexadecimal-numbers accordingly to the MIPS-
+ * Mappings contain tables that maps functions and register to certain field-values accordingly to the MIPS-
  * architecture i.e. the OP-map which is found in the course book on A-50 (5:th ed).
  *
+ * Every table is a flat array indexed directly by the field that selects the instruction (op, func, rs or rt), so a
+ * lookup is a single array load. The instructions are immutable and shared between lookups, which also makes one
+ * Mappings object safe to share between threads. Functions which depend on the coprocessor number z or the float
+ * format (e.g. "mfcz", "add.f") are expanded once when the tables are built.
+ *
  */
 public class Mappings {
-    
-    private HashMap<String, HashMap> opCodeToFuncMap;
-    private HashMap<Integer, String> register;
-    private HashMap<Integer, String> floatRegister;
+
+    // Registers (not including float-registers).
+    private static final String[] REGISTERS = {
+            "$zero", "$at", "$v0", "$v1", "$a0", "$a1", "$a2", "$a3", "$t0", "$t1", "$t2", "$t3", "$t4", "$t5",
+            "$t6", "$t7", "$s0", "$s1", "$s2", "$s3", "$s4", "$s5", "$s6", "$s7", "$t8", "$t9", "$k0", "$k1", "$gp",
+            "$sp", "$fp/s8", "$ra"
+    };
+
+    // Register for float-operation instructions.
+    private static final String[] FLOAT_REGISTERS = {
+            "$f0", "$f1", "$f2", "$f3", "$f4", "$f5", "$f6", "$f7", "$f8", "$f9", "$f10", "$f11", "$f12", "$f13",
+            "$f14", "$f15", "$f16", "$f17", "$f18", "$f19", "$f20", "$f21", "$f22", "$f23", "$f24", "$f25", "$f26",
+            "$f27", "$f28", "$f29", "$f30", "$f31"
+    };
+
+    // Float formats in the order of the rs-field (0x10 = single, 0x11 = double).
+    private static final char[] FLOAT_FORMATS = { 's', 'd' };
+
+    // Instructions identified by the op-field (bits 31:26) alone.
+    private final Instructions[] opTable       = new Instructions[64];
+    // op = 0x00, identified by func (bits 5:0).
+    private final Instructions[] specialTable  = new Instructions[64];
+    // op = 0x00 and func = 0x01, identified by bit 16.
+    private final Instructions[] movciTable    = new Instructions[2];
+    // op = 0x01, identified by rt (bits 20:16).
+    private final Instructions[] regimmTable   = new Instructions[32];
+    // op = 0x1c, identified by func (bits 5:0).
+    private final Instructions[] special2Table = new Instructions[64];
+    // op = 0x10 + z, identified by z and rs (bits 25:21).
+    private final Instructions[][] copTable    = new Instructions[3][32];
+    // op = 0x10 + z and rs = 0x08, identified by z and the nd/tf bits (17:16).
+    private final Instructions[][] copBranchTable = new Instructions[3][4];
+    // op = 0x10 and rs = 0x10, identified by func.
+    private final Instructions[] cop0Table     = new Instructions[64];
+    // op = 0x11 and rs = 0x10 + format, identified by format and func.
+    private final Instructions[][] floatTable  = new Instructions[2][64];
+
+    // All instructions, indexed by their id.
+    private final Instructions[] descriptors;
+    // CRC-32 of the formats and functions of the instructions, in the order of their ids.
+    private final int descriptorHash;
+
+    // Only used while the tables are built.
+    private ArrayList<Instructions> building;
 
 
     public Mappings() {
 
-        opCodeToFuncMap = new HashMap<>();
-        
-        HashMap<String, ? super Instructions> fSet1 = new HashMap<>();
-        fSet1.put("0x00", new Instruction_R(null, "sll"));
-        fSet1.put("0x02", new Instruction_R(null, "srl"));
-        fSet1.put("0x03", new Instruction_R(null, "sra"));
-        fSet1.put("0x04", new Instruction_R(null, "sllv"));
-        fSet1.put("0x06", new Instruction_R(null, "srlv"));
-        fSet1.put("0x07", new Instruction_R(null, "srav"));
-        fSet1.put("0x08", new Instruction_R(null, "jr"));
-        fSet1.put("0x09", new Instruction_R(null, "jalr")); 
-        fSet1.put("0x0a", new Instruction_R(null, "movz")); 
-        fSet1.put("0x0b", new Instruction_R(null, "movn")); 
-        fSet1.put("0x0c", new Instruction_R(null, "syscall")); 
-        fSet1.put("0x0d", new Instruction_R(null, "break")); 
-        fSet1.put("0x0f", new Instruction_R(null, "sync")); 
-        fSet1.put("0x10", new Instruction_R(null, "mfhi"));
-        fSet1.put("0x11", new Instruction_R(null, "mthi")); 
-        fSet1.put("0x12", new Instruction_R(null, "mflo"));
-        fSet1.put("0x13", new Instruction_R(null, "mtlo")); 
-        fSet1.put("0x18", new Instruction_R(null, "mult"));
-        fSet1.put("0x19", new Instruction_R(null, "multu"));
-        fSet1.put("0x1a", new Instruction_R(null, "div"));
-        fSet1.put("0x1b", new Instruction_R(null, "divu"));
-        fSet1.put("0x20", new Instruction_R(null, "add"));
-        fSet1.put("0x21", new Instruction_R(null, "addu"));
-        fSet1.put("0x22", new Instruction_R(null, "sub"));
-        fSet1.put("0x23", new Instruction_R(null, "subu"));
-        fSet1.put("0x24", new Instruction_R(null, "and"));
-        fSet1.put("0x25", new Instruction_R(null, "or"));
-        fSet1.put("0x26", new Instruction_R(null, "xor"));
-        fSet1.put("0x27", new Instruction_R(null, "nor"));
-        fSet1.put("0x2a", new Instruction_R(null, "slt"));
-        fSet1.put("0x2b", new Instruction_R(null, "sltu"));
-        fSet1.put("0x30", new Instruction_R(null, "tge")); 
-        fSet1.put("0x31", new Instruction_R(null, "tgeu")); 
-        fSet1.put("0x32", new Instruction_R(null, "tlt")); 
-        fSet1.put("0x33", new Instruction_R(null, "tltu")); 
-        fSet1.put("0x34", new Instruction_R(null, "teq")); 
-        fSet1.put("0x36", new Instruction_R(null, "tne")); 
-        opCodeToFuncMap.put("0x00", fSet1);
-
-        HashMap<String, ? super Instructions> fSet11 = new HashMap<>();
-        fSet11.put("0x00", new Instruction_R(null, "movf"));
-        fSet11.put("0x01", new Instruction_R(null, "movt"));
-        opCodeToFuncMap.put("0x00/1", fSet11);
-
-        HashMap<String, ? super Instructions> funcSet2 = new HashMap<>();
-        funcSet2.put("0x00", new Instruction_I(null, "bltz"));
-        funcSet2.put("0x01", new Instruction_I(null, "bgez"));
-        funcSet2.put("0x02", new Instruction_I(null, "bltzl"));
-        funcSet2.put("0x03", new Instruction_I(null, "bgezl"));
-        funcSet2.put("0x08", new Instruction_I(null, "tgei"));
-        funcSet2.put("0x09", new Instruction_I(null, "tgeiu"));
-        funcSet2.put("0x0a", new Instruction_I(null, "tlti"));
-        funcSet2.put("0x0b", new Instruction_I(null, "tltiu"));
-        funcSet2.put("0x0c", new Instruction_I(null, "tegi"));
-        funcSet2.put("0x0e", new Instruction_I(null, "tnei"));
-        funcSet2.put("0x10", new Instruction_I(null, "bltzal"));
-        funcSet2.put("0x11", new Instruction_I(null, "bgezal"));
-        funcSet2.put("0x12", new Instruction_I(null, "bltzall"));
-        funcSet2.put("0x13", new Instruction_I(null, "bgczall"));
-        opCodeToFuncMap.put("0x01", funcSet2);
-
-
-        HashMap<String, ? super Instructions>  funcSet3 = new HashMap<>();
-        funcSet3.put("0x00", new Instruction_R(null, "madd"));
-        funcSet3.put("0x01", new Instruction_R(null, "maddu"));
-        funcSet3.put("0x02", new Instruction_R(null, "mul"));
-        funcSet3.put("0x04", new Instruction_R(null, "msub"));
-        funcSet3.put("0x05", new Instruction_R(null, "msubu"));
-        funcSet3.put("0x20", new Instruction_R(null, "clz"));
-        funcSet3.put("0x21", new Instruction_R(null, "clo"));
-        opCodeToFuncMap.put("0x1c", funcSet3);
-
-        HashMap<String, ? super Instructions>  funcSetRS = new HashMap<>();
-        funcSetRS.put("0x00", new Instruction_R(null, "mfcz"));
-        funcSetRS.put("0x01", new Instruction_R(null, "cfcz"));
-        funcSetRS.put("0x04", new Instruction_R(null, "mtcz"));
-        funcSetRS.put("0x06", new Instruction_R(null, "ctcz"));
-        opCodeToFuncMap.put("rs", funcSetRS);
-
-
-        HashMap<String, ? super Instructions>  funcSet4 = new HashMap<>();
-        funcSet4.put("0x00", new Instruction_J(null, "bczf"));
-        funcSet4.put("0x01", new Instruction_J(null, "bczt"));
-        funcSet4.put("0x02", new Instruction_J(null, "bczfl"));
-        funcSet4.put("0x03", new Instruction_J(null, "bcztl"));
-        opCodeToFuncMap.put("rs/0x08", funcSet4);
-
-
-        HashMap<String, ? super Instructions>  funcSet5 = new HashMap<>();
-        funcSet5.put("0x01", new Instruction_J(null, "tlbr"));
-        funcSet5.put("0x02", new Instruction_J(null, "tlbwi"));
-        funcSet5.put("0x06", new Instruction_J(null, "tlbwr"));
-        funcSet5.put("0x08", new Instruction_J(null, "tlbp"));
-        funcSet5.put("0x18", new Instruction_J(null, "eret"));
-        funcSet5.put("0x1f", new Instruction_J(null, "deret"));
-        opCodeToFuncMap.put("rs/0x10/0", funcSet5);
-
-
-
-        HashMap<String, ? super Instructions>  funcSet6 = new HashMap<>();
-        funcSet6.put("0x00", new Instruction_R(null, "add.f"));
-        funcSet6.put("0x01", new Instruction_R(null, "sub.f"));
-        funcSet6.put("0x02", new Instruction_R(null, "mul.f"));
-        funcSet6.put("0x03", new Instruction_R(null, "div.f"));
-        funcSet6.put("0x04", new Instruction_R(null, "sqrt.f"));
-        funcSet6.put("0x05", new Instruction_R(null, "abs.f"));
-        funcSet6.put("0x06", new Instruction_R(null, "mov.f"));
-        funcSet6.put("0x07", new Instruction_R(null, "neg.f"));
-        funcSet6.put("0x0c", new Instruction_R(null, "round.w.f"));
-        funcSet6.put("0x0d", new Instruction_R(null, "trunc.w.f"));
-        funcSet6.put("0x0e", new Instruction_R(null, "cell.w.f"));
-        funcSet6.put("0x0f", new Instruction_R(null, "floor.w.f"));
-        funcSet6.put("0x12", new Instruction_R(null, "movz.f"));
-        funcSet6.put("0x13", new Instruction_R(null, "movn.f"));
-        funcSet6.put("0x20", new Instruction_R(null, "cvt.s.f"));
-        funcSet6.put("0x21", new Instruction_R(null, "cvt.d.f"));
-        funcSet6.put("0x24", new Instruction_R(null, "cvt.w.f"));
-        funcSet6.put("0x30", new Instruction_R(null, "c.f.f"));
-        funcSet6.put("0x31", new Instruction_R(null, "c.un.f"));
-        funcSet6.put("0x32", new Instruction_R(null, "c.eq.f"));
-        funcSet6.put("0x33", new Instruction_R(null, "c.ueq.f"));
-        funcSet6.put("0x34", new Instruction_R(null, "c.olt.f"));
-        funcSet6.put("0x35", new Instruction_R(null, "c.ult.f"));
-        funcSet6.put("0x36", new Instruction_R(null, "c.ole.f"));
-        funcSet6.put("0x37", new Instruction_R(null, "c.ule.f"));
-        funcSet6.put("0x38", new Instruction_R(null, "c.sf.f"));
-        funcSet6.put("0x39", new Instruction_R(null, "c.ngle.f"));
-        funcSet6.put("0x3a", new Instruction_R(null, "c.seq.f"));
-        funcSet6.put("0x3b", new Instruction_R(null, "c.ngl.f"));
-        funcSet6.put("0x3c", new Instruction_R(null, "c.lt.f"));
-        funcSet6.put("0x3d", new Instruction_R(null, "c.nge.f"));
-        funcSet6.put("0x3e", new Instruction_R(null, "c.le.f"));
-        funcSet6.put("0x3f", new Instruction_R(null, "c.ngt.f"));
-        opCodeToFuncMap.put("rs/0x10/1", funcSet6);
-        opCodeToFuncMap.put("rs/0x11/1", funcSet4);
-
-
-        HashMap<String, ? super Instructions>  func0 = new HashMap<>();
-        funcSet5.put("0x02", new Instruction_J(null, "j"));
-        funcSet5.put("0x03", new Instruction_J(null, "jal"));
-        funcSet5.put("0x04", new Instruction_I(null, "beq"));
-        funcSet5.put("0x05", new Instruction_I(null, "bne"));
-        funcSet5.put("0x06", new Instruction_I(null, "blez"));
-        funcSet5.put("0x07", new Instruction_I(null, "bgtz"));
-        funcSet5.put("0x08", new Instruction_I(null, "addi"));
-        funcSet5.put("0x09", new Instruction_I(null, "addiu"));
-        funcSet5.put("0x0a", new Instruction_I(null, "slti"));
-        funcSet5.put("0x0b", new Instruction_I(null, "sltiu"));
-        funcSet5.put("0x0c", new Instruction_I(null, "andi"));
-        funcSet5.put("0x0d", new Instruction_I(null, "ori"));
-        funcSet5.put("0x0e", new Instruction_I(null, "xori"));
-        funcSet5.put("0x0f", new Instruction_I(null, "lui"));
-        funcSet5.put("0x14", new Instruction_I(null, "beql"));
-        funcSet5.put("0x15", new Instruction_I(null, "bnel"));
-        funcSet5.put("0x16", new Instruction_I(null, "blezl"));
-        funcSet5.put("0x17", new Instruction_I(null, "bgtzl"));
-        funcSet5.put("0x20", new Instruction_I(null, "lb"));
-        funcSet5.put("0x21", new Instruction_I(null, "lh"));
-        funcSet5.put("0x22", new Instruction_I(null, "lwl"));
-        funcSet5.put("0x23", new Instruction_I(null, "lw"));
-        funcSet5.put("0x24", new Instruction_I(null, "lbu"));
-        funcSet5.put("0x25", new Instruction_I(null, "lhu"));
-        funcSet5.put("0x26", new Instruction_I(null, "lwr"));
-        funcSet5.put("0x28", new Instruction_I(null, "sb"));
-        funcSet5.put("0x29", new Instruction_I(null, "sh"));
-        funcSet5.put("0x2a", new Instruction_I(null, "swl"));
-        funcSet5.put("0x2b", new Instruction_I(null, "sw"));
-        funcSet5.put("0x2e", new Instruction_I(null, "swr"));
-        funcSet5.put("0x2f", new Instruction_I(null, "cache"));
-        funcSet5.put("0x30", new Instruction_I(null, "ll"));
-        funcSet5.put("0x31", new Instruction_I(null, "lwc1"));
-        funcSet5.put("0x32", new Instruction_I(null, "lwc2"));
-        funcSet5.put("0x33", new Instruction_I(null, "pref"));
-        funcSet5.put("0x35", new Instruction_I(null, "ldc1"));
-        funcSet5.put("0x36", new Instruction_I(null, "ldc2"));
-        funcSet5.put("0x38", new Instruction_I(null, "sc"));
-        funcSet5.put("0x39", new Instruction_I(null, "swc1"));
-        funcSet5.put("0x3a", new Instruction_I(null, "swc2"));
-        funcSet5.put("0x3d", new Instruction_I(null, "sdc1"));
-        funcSet5.put("0x3e", new Instruction_I(null, "sdc2"));
-        opCodeToFuncMap.put("op", funcSet5);
-
-        // Register for float-operation instructions.
-        floatRegister = new HashMap<>();
-        floatRegister.put(0, "$f0");
-        floatRegister.put(1, "$f1");
-        floatRegister.put(2, "$f2");
-        floatRegister.put(3, "$f3");
-        floatRegister.put(4, "$f4");
-        floatRegister.put(5, "$f5");
-        floatRegister.put(6, "$f6");
-        floatRegister.put(7, "$f7");
-        floatRegister.put(8, "$f8");
-        floatRegister.put(9, "$f9");
-        floatRegister.put(10, "$f10");
-        floatRegister.put(11, "$f11");
-        floatRegister.put(12, "$f12");
-        floatRegister.put(13, "$f13");
-        floatRegister.put(14, "$f14");
-        floatRegister.put(15, "$f15");
-        floatRegister.put(16, "$f16");
-        floatRegister.put(17, "$f17");
-        floatRegister.put(18, "$f18");
-        floatRegister.put(19, "$f19");
-        floatRegister.put(20, "$f20");
-        floatRegister.put(21, "$f21");
-        floatRegister.put(22, "$f22");
-        floatRegister.put(23, "$f23");
-        floatRegister.put(24, "$f24");
-        floatRegister.put(25, "$f25");
-        floatRegister.put(26, "$f26");
-        floatRegister.put(27, "$f27");
-        floatRegister.put(28, "$f28");
-        floatRegister.put(29, "$f29");
-        floatRegister.put(30, "$f30");
-        floatRegister.put(31, "$f31");
-
-        // Normal registers.
-        register = new HashMap<>();
-        register.put(0, "$zero");
-        register.put(1, "$at");
-        register.put(2, "$v0");
-        register.put(3, "$v1");
-        register.put(4, "$a0");
-        register.put(5, "$a1");
-        register.put(6, "$a2");
-        register.put(7, "$a3");
-        register.put(8, "$t0");
-        register.put(9, "$t1");
-        register.put(10, "$t2");
-        register.put(11, "$t3");
-        register.put(12, "$t4");
-        register.put(13, "$t5");
-        register.put(14, "$t6");
-        register.put(15, "$t7");
-        register.put(16, "$s0");
-        register.put(17, "$s1");
-        register.put(18, "$s2");
-        register.put(19, "$s3");
-        register.put(20, "$s4");
-        register.put(21, "$s5");
-        register.put(22, "$s6");
-        register.put(23, "$s7");
-        register.put(24, "$t8");
-        register.put(25, "$t9");
-        register.put(26, "$k0");
-        register.put(27, "$k1");
-        register.put(28, "$gp");
-        register.put(29, "$sp");
-        register.put(30, "$fp/s8");
-        register.put(31, "$ra");
+        building = new ArrayList<>();
+
+        specialTable[0x00] = r("sll");
+        specialTable[0x02] = r("srl");
+        specialTable[0x03] = r("sra");
+        specialTable[0x04] = r("sllv");
+        specialTable[0x06] = r("srlv");
+        specialTable[0x07] = r("srav");
+        specialTable[0x08] = r("jr");
+        specialTable[0x09] = r("jalr");
+        specialTable[0x0a] = r("movz");
+        specialTable[0x0b] = r("movn");
+        specialTable[0x0c] = r("syscall");
+        specialTable[0x0d] = r("break");
+        specialTable[0x0f] = r("sync");
+        specialTable[0x10] = r("mfhi");
+        specialTable[0x11] = r("mthi");
+        specialTable[0x12] = r("mflo");
+        specialTable[0x13] = r("mtlo");
+        specialTable[0x18] = r("mult");
+        specialTable[0x19] = r("multu");
+        specialTable[0x1a] = r("div");
+        specialTable[0x1b] = r("divu");
+        specialTable[0x20] = r("add");
+        specialTable[0x21] = r("addu");
+        specialTable[0x22] = r("sub");
+        specialTable[0x23] = r("subu");
+        specialTable[0x24] = r("and");
+        specialTable[0x25] = r("or");
+        specialTable[0x26] = r("xor");
+        specialTable[0x27] = r("nor");
+        specialTable[0x2a] = r("slt");
+        specialTable[0x2b] = r("sltu");
+        specialTable[0x30] = r("tge");
+        specialTable[0x31] = r("tgeu");
+        specialTable[0x32] = r("tlt");
+        specialTable[0x33] = r("tltu");
+        specialTable[0x34] = r("teq");
+        specialTable[0x36] = r("tne");
+
+        movciTable[0x00] = r("movf");
+        movciTable[0x01] = r("movt");
+
+        regimmTable[0x00] = i("bltz");
+        regimmTable[0x01] = i("bgez");
+        regimmTable[0x02] = i("bltzl");
+        regimmTable[0x03] = i("bgezl");
+        regimmTable[0x08] = i("tgei");
+        regimmTable[0x09] = i("tgeiu");
+        regimmTable[0x0a] = i("tlti");
+        regimmTable[0x0b] = i("tltiu");
+        regimmTable[0x0c] = i("tegi");
+        regimmTable[0x0e] = i("tnei");
+        regimmTable[0x10] = i("bltzal");
+        regimmTable[0x11] = i("bgezal");
+        regimmTable[0x12] = i("bltzall");
+        regimmTable[0x13] = i("bgczall");
+
+        special2Table[0x00] = r("madd");
+        special2Table[0x01] = r("maddu");
+        special2Table[0x02] = r("mul");
+        special2Table[0x04] = r("msub");
+        special2Table[0x05] = r("msubu");
+        special2Table[0x20] = r("clz");
+        special2Table[0x21] = r("clo");
+
+        String[] copFuncs = new String[32];
+        copFuncs[0x00] = "mfcz";
+        copFuncs[0x01] = "cfcz";
+        copFuncs[0x04] = "mtcz";
+        copFuncs[0x06] = "ctcz";
+
+        String[] copBranchFuncs = new String[4];
+        copBranchFuncs[0x00] = "bczf";
+        copBranchFuncs[0x01] = "bczt";
+        copBranchFuncs[0x02] = "bczfl";
+        copBranchFuncs[0x03] = "bcztl";
+
+        for (int z = 0; z < copTable.length; z++) {
+            char zc = (char) ('0' + z);
+            for (int rs = 0; rs < copFuncs.length; rs++) {
+                if (copFuncs[rs] != null)
+                    copTable[z][rs] = r(copFuncs[rs].replace('z', zc));
+            }
+            for (int tf = 0; tf < copBranchFuncs.length; tf++) {
+                copBranchTable[z][tf] = j(copBranchFuncs[tf].replace('z', zc));
+            }
+        }
+
+        cop0Table[0x01] = j("tlbr");
+        cop0Table[0x02] = j("tlbwi");
+        cop0Table[0x06] = j("tlbwr");
+        cop0Table[0x08] = j("tlbp");
+        cop0Table[0x18] = j("eret");
+        cop0Table[0x1f] = j("deret");
+
+        String[] floatFuncs = new String[64];
+        floatFuncs[0x00] = "add.f";
+        floatFuncs[0x01] = "sub.f";
+        floatFuncs[0x02] = "mul.f";
+        floatFuncs[0x03] = "div.f";
+        floatFuncs[0x04] = "sqrt.f";
+        floatFuncs[0x05] = "abs.f";
+        floatFuncs[0x06] = "mov.f";
+        floatFuncs[0x07] = "neg.f";
+        floatFuncs[0x0c] = "round.w.f";
+        floatFuncs[0x0d] = "trunc.w.f";
+        floatFuncs[0x0e] = "cell.w.f";
+        floatFuncs[0x0f] = "floor.w.f";
+        floatFuncs[0x12] = "movz.f";
+        floatFuncs[0x13] = "movn.f";
+        floatFuncs[0x20] = "cvt.s.f";
+        floatFuncs[0x21] = "cvt.d.f";
+        floatFuncs[0x24] = "cvt.w.f";
+        floatFuncs[0x30] = "c.f.f";
+        floatFuncs[0x31] = "c.un.f";
+        floatFuncs[0x32] = "c.eq.f";
+        floatFuncs[0x33] = "c.ueq.f";
+        floatFuncs[0x34] = "c.olt.f";
+        floatFuncs[0x35] = "c.ult.f";
+        floatFuncs[0x36] = "c.ole.f";
+        floatFuncs[0x37] = "c.ule.f";
+        floatFuncs[0x38] = "c.sf.f";
+        floatFuncs[0x39] = "c.ngle.f";
+        floatFuncs[0x3a] = "c.seq.f";
+        floatFuncs[0x3b] = "c.ngl.f";
+        floatFuncs[0x3c] = "c.lt.f";
+        floatFuncs[0x3d] = "c.nge.f";
+        floatFuncs[0x3e] = "c.le.f";
+        floatFuncs[0x3f] = "c.ngt.f";
+
+        // Replace the trailing 'f' of the function with the format, e.g. "add.f" -> "add.s".
+        for (int fmt = 0; fmt < floatTable.length; fmt++) {
+            for (int func = 0; func < floatFuncs.length; func++) {
+                String function = floatFuncs[func];
+                if (function != null)
+                    floatTable[fmt][func] = r(function.substring(0, function.length() - 1) + FLOAT_FORMATS[fmt]);
+            }
+        }
+
+        opTable[0x02] = j("j");
+        opTable[0x03] = j("jal");
+        opTable[0x04] = i("beq");
+        opTable[0x05] = i("bne");
+        opTable[0x06] = i("blez");
+        opTable[0x07] = i("bgtz");
+        opTable[0x08] = i("addi");
+        opTable[0x09] = i("addiu");
+        opTable[0x0a] = i("slti");
+        opTable[0x0b] = i("sltiu");
+        opTable[0x0c] = i("andi");
+        opTable[0x0d] = i("ori");
+        opTable[0x0e] = i("xori");
+        opTable[0x0f] = i("lui");
+        opTable[0x14] = i("beql");
+        opTable[0x15] = i("bnel");
+        opTable[0x16] = i("blezl");
+        opTable[0x17] = i("bgtzl");
+        opTable[0x20] = i("lb");
+        opTable[0x21] = i("lh");
+        opTable[0x22] = i("lwl");
+        opTable[0x23] = i("lw");
+        opTable[0x24] = i("lbu");
+        opTable[0x25] = i("lhu");
+        opTable[0x26] = i("lwr");
+        opTable[0x28] = i("sb");
+        opTable[0x29] = i("sh");
+        opTable[0x2a] = i("swl");
+        opTable[0x2b] = i("sw");
+        opTable[0x2e] = i("swr");
+        opTable[0x2f] = i("cache");
+        opTable[0x30] = i("ll");
+        opTable[0x31] = i("lwc1");
+        opTable[0x32] = i("lwc2");
+        opTable[0x33] = i("pref");
+        opTable[0x35] = i("ldc1");
+        opTable[0x36] = i("ldc2");
+        opTable[0x38] = i("sc");
+        opTable[0x39] = i("swc1");
+        opTable[0x3a] = i("swc2");
+        opTable[0x3d] = i("sdc1");
+        opTable[0x3e] = i("sdc2");
+
+        descriptors = building.toArray(new Instructions[0]);
+        building    = null;
+
+        CRC32 crc = new CRC32();
+        for (Instructions instr : descriptors)
+            crc.update((instr.getFormat() + " " + instr.getFunc() + "\n").getBytes(StandardCharsets.UTF_8));
+        descriptorHash = (int) crc.getValue();
+    }
+
+    private Instructions r(String func) {
+        Instructions instr = new Instruction_R(building.size(), func);
+        building.add(instr);
+        return instr;
+    }
+
+    private Instructions i(String func) {
+        Instructions instr = new Instruction_I(building.size(), func);
+        building.add(instr);
+        return instr;
+    }
 
+    private Instructions j(String func) {
+        Instructions instr = new Instruction_J(building.size(), func);
+        building.add(instr);
+        return instr;
     }
 
+
     /**
-     * Returns the hashmap containing all other hashmaps that is used to identifying the functions of a
-     * instruction.
-     * @return The hashmap containing all HashMap mappings.
+     * Returns the instruction identified by the op-field alone (j, jal, beq, addi, lw, sw, ...).
+     * @param op The op-field (bits 31:26).
+     * @return The instruction or null if op has no instruction in the table.
      */
-    public HashMap<String, HashMap> getOpCodeToFuncMap() {
-        return opCodeToFuncMap;
+    public Instructions getOp(int op) {
+        return opTable[op & 0x3f];
     }
 
+    /**
+     * Returns the instruction for op = 0x00.
+     * @param func The func-field (bits 5:0).
+     * @return The instruction or null if func has no instruction in the table.
+     */
+    public Instructions getSpecial(int func) {
+        return specialTable[func & 0x3f];
+    }
 
     /**
-     * Returns the hashmap containing all possible registers (not including float-registers).
-     * @return Hashmap of registers.
+     * Returns the instruction for op = 0x00 and func = 0x01 (movf, movt).
+     * @param tf Bit 16 of the instruction.
+     * @return The instruction.
      */
-    public HashMap<Integer, String> getRegister() {
-        return register;
+    public Instructions getMovci(int tf) {
+        return movciTable[tf & 0x1];
     }
 
     /**
-     * Returns the hashmap containing all possible float-registers (not including normal-registers).
-     * @return
+     * Returns the instruction for op = 0x01 (bltz, bgez, ...).
+     * @param rt The rt-field (bits 20:16).
+     * @return The instruction or null if rt has no instruction in the table.
      */
-    public HashMap<Integer, String> getFloatRegister() {
-        return floatRegister;
+    public Instructions getRegimm(int rt) {
+        return regimmTable[rt & 0x1f];
     }
 
+    /**
+     * Returns the instruction for op = 0x1c (madd, mul, clz, ...).
+     * @param func The func-field (bits 5:0).
+     * @return The instruction or null if func has no instruction in the table.
+     */
+    public Instructions getSpecial2(int func) {
+        return special2Table[func & 0x3f];
+    }
 
     /**
-     * Given a hashmap of instruction the method deep-copies the instruction in the hashmap that has the key funcOP.
-     * This is so the HashMap remains unchanged from future changes to the returned instruction.
-     * @param instructions HashMap of functions/registers.
-     * @param funcOP String containing hexadecimal-number to identify function to copy.
-     * @return Independent instruction.
-     * @throws NullPointerException
+     * Returns the move instruction of coprocessor z (mfcz, cfcz, mtcz, ctcz) with z already filled in.
+     * @param z Coprocessor number (0-2).
+     * @param rs The rs-field (bits 25:21).
+     * @return The instruction or null if rs has no instruction in the table.
      */
-    public HashMap<String, ? super Instructions> getInstruction(HashMap instructions, String funcOP)
-            throws NullPointerException {
+    public Instructions getCop(int z, int rs) {
+        return copTable[z][rs & 0x1f];
+    }
 
-        if (instructions == null) {
-            System.err.println("Error: No HashMap to retrieve instruction from.");
-            return null;
-        }
+    /**
+     * Returns the branch instruction of coprocessor z (bczf, bczt, bczfl, bcztl) with z already filled in.
+     * @param z Coprocessor number (0-2).
+     * @param ndtf The nd/tf bits (17:16) of the instruction.
+     * @return The instruction.
+     */
+    public Instructions getCopBranch(int z, int ndtf) {
+        return copBranchTable[z][ndtf & 0x3];
+    }
 
-        Instructions instr = (Instructions) instructions.get(funcOP);
+    /**
+     * Returns the coprocessor 0 instruction (tlbr, tlbwi, eret, ...).
+     * @param func The func-field.
+     * @return The instruction or null if func has no instruction in the table.
+     */
+    public Instructions getCop0(int func) {
+        return cop0Table[func & 0x3f];
+    }
 
-        if (instr != null) {
+    /**
+     * Returns the float instruction (add.s, mul.d, ...) with the format already filled in.
+     * @param fmt Float format, 0 = single (rs = 0x10), 1 = double (rs = 0x11).
+     * @param func The func-field.
+     * @return The instruction or null if func has no instruction in the table.
+     */
+    public Instructions getFloat(int fmt, int func) {
+        return floatTable[fmt][func & 0x3f];
+    }
 
-            HashMap<String, ? super Instructions> retMap = new HashMap<String, Instructions>();
+    /**
+     * Returns the instruction with the given id.
+     * @param id Id of the instruction (see Instructions.getId()).
+     * @return The instruction.
+     */
+    public Instructions getDescriptor(int id) {
+        return descriptors[id];
+    }
 
-            if (instr.getFormat().equals("R")) {
-                Instruction_R instr2 = null;
-                instr2 = new Instruction_R(null, instr.getFunc());
-                instr2.setFormat(instr.getFormat());
-                instr2.setBin(instr.getBin());
-                retMap.put(instr2.getFormat(), instr2);
+    /**
+     * Returns the number of instructions in the tables, all ids are less than this.
+     * @return Number of instructions.
+     */
+    public int getDescriptorCount() {
+        return descriptors.length;
+    }
 
-            } else if (instr.getFormat().equals("I")) {
-                Instruction_I instr2 = null;
-                instr2 = new Instruction_I(null, instr.getFunc());
-                instr2.setFormat(instr.getFormat());
-                instr2.setBin(instr.getBin());
-                retMap.put(instr2.getFormat(), instr2);
+    /**
+     * Returns a hash of the format and function of every instruction, in the order of their ids. Files that keep
+     * descriptor ids store it, so ids written with other tables (even of the same size) are rejected.
+     * @return CRC-32 of the descriptor table.
+     */
+    public int getDescriptorHash() {
+        return descriptorHash;
+    }
 
-            } else if (instr.getFormat().equals("J")) {
-                Instruction_J instr2 = null;
-                instr2 = new Instruction_J(null, instr.getFunc());
-                instr2.setFormat(instr.getFormat());
-                instr2.setBin(instr.getBin());
-                retMap.put(instr2.getFormat(), instr2);
-            }
-            return retMap;
-        }
-        return null;
+
+    /**
+     * Returns the name of a register (not including float-registers).
+     * @param reg Register number (0-31).
+     * @return Name of the register.
+     */
+    public String getRegister(int reg) {
+        return REGISTERS[reg & 0x1f];
+    }
+
+    /**
+     * Returns the name of a float-register (not including normal-registers).
+     * @param reg Register number (0-31).
+     * @return Name of the float-register.
+     */
+    public String getFloatRegister(int reg) {
+        return FLOAT_REGISTERS[reg & 0x1f];
     }
 }
@@ -0,0 +1,571 @@
+package com.mipssim;
+
+import com.mipssim.sim.BranchPredictor;
+import com.mipssim.sim.CacheLevel;
+
+import java.nio.ByteOrder;
+
+/**
+ * Options holds the command line arguments given to Main. Flags start with "--", the remaining arguments are the
+ * input-file and the (optional) output-file in that order. "-" can be used as file to read from stdin or write to
+ * stdout.
+ */
+public class Options {
+
+    public static final String USAGE =
+            "Usage: java -jar MipsSim.jar [options] <input-file> [output-file]\n" +
+            "  --stream           Read, decode and write one instruction at a time ('-' = stdin/stdout).\n" +
+            "  --binary           Input-file is raw binary 32-bit words (memory-mapped), implies streaming output.\n" +
+            "  --endian <b|l>     Byte order of --binary input, big (default) or little.\n" +
+            "  --offset <n>       Byte offset in the --binary input to start at.\n" +
+            "  --length <n>       Number of bytes of the --binary input to read (default rest of file).\n" +
+            "  --elf              Input-file is a 32-bit MIPS ELF file, its executable sections are disassembled.\n" +
+            "  --threads <n>      Decode on n threads (0 = all cores), output order is kept. Implies --stream.\n" +
+            "  --cache <n>        Cache the strings of n recently decoded words (per thread), counters on stderr.\n" +
+            "  --run              Execute the program instead of disassembling it (text, --binary or --elf input).\n" +
+            "  --limit <n>        Stop --run after n instructions (default no limit).\n" +
+            "  --blocks           Let --run translate basic blocks once (the base of --jit, not faster alone).\n" +
+            "  --jit <n>          Compile blocks entered n times to JVM classes (0 = never). Implies --blocks.\n" +
+            "  --tcache <dir>     Keep the decoded words and the blocks of --run programs in dir for later runs.\n" +
+            "  --pipeline         Let --run model the cycles of a 5-stage pipeline (interpreted), report on stderr.\n" +
+            "  --no-forwarding    Model --pipeline without forwarding paths.\n" +
+            "  --caches           Let --run model L1I/L1D caches (interpreted), counters on stderr. Implied by:\n" +
+            "  --l1i <spec>       L1 instruction cache size[:ways[:line[:lru|plru|random[:wb|wt]]]] (16k:2:32).\n" +
+            "  --l1d <spec>       L1 data cache, the same as --l1i (16k:4:32).\n" +
+            "  --l2 <spec>        Unified L2 cache, the same as --l1i (default none).\n" +
+            "  --branches         Let --run compare branch predictors (interpreted), report on stderr. Implied by:\n" +
+            "  --predictors <l>   Comma separated not-taken, bimodal, gshare, tournament (default all).\n" +
+            "  --bp-bits <n>      Index bits of the predictor tables and the BTB (default 12).\n" +
+            "  --tlb              Let --run translate loads/stores by the CP0 TLB, for kernel code (interpreted).\n" +
+            "  --cfg <dot|json>   Write the basic blocks, edges and dominators of the program instead of a listing.\n" +
+            "  --labels           Label branch/jump targets (L_<addr> or ELF symbol), two passes. Implies --stream.\n" +
+            "  --incremental      Keep rendered chunks in <output-file>.mic, next runs only decode changed chunks.\n" +
+            "  --watch            Rewrite the listing whenever the input-file changes. Implies --incremental.\n" +
+            "  --index <dir>      Also write the decoded fields of every word to dir (columns). Implies --stream.\n" +
+            "  --from-index       Input-file is a directory written by --index, listed without parsing the input.\n" +
+            "  --stats            Count the instructions per mnemonic instead of listing them (needs --from-index).\n" +
+            "  --where <query>    Only write the words that match, e.g. 'mnemonic in (lw,sw) and rs=$sp'.\n" +
+            "  --opcode <n>       Only write the words with opcode n, the same as --where 'op=n'.\n" +
+            "  --format <R|I|J>   Only write the words of a format, the same as --where 'format=R'.";
+
+    private String input;
+    private String output;
+    private boolean stream;
+    private boolean binary;
+    private boolean elf;
+    private int threads = 1;
+    private int cacheSize = 0;
+    private boolean run;
+    private long limit = 0;
+    private boolean blocks;
+    private long jitThreshold = 0;
+    private String translationCache;
+    private boolean pipeline;
+    private boolean forwarding = true;
+    private boolean caches;
+    private String l1i = "16k:2:32";
+    private String l1d = "16k:4:32";
+    private String l2;
+    private boolean branches;
+    private String predictors = "not-taken,bimodal,gshare,tournament";
+    private int predictorBits = 12;
+    private boolean tlb;
+    private String cfg;
+    private boolean labels;
+    private boolean incremental;
+    private boolean watch;
+    private String index;
+    private boolean fromIndex;
+    private boolean stats;
+    private String where;
+    private long opcode = -1;
+    private String format;
+    private ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+    private long offset = 0;
+    private long length = -1;
+
+    /**
+     * Parses the command line arguments.
+     * @param args Arguments given to Main.
+     * @return The parsed options.
+     * @throws IllegalArgumentException If an argument is unknown or the input-file is missing.
+     */
+    public static Options parse(String[] args) throws IllegalArgumentException {
+
+        Options opts = new Options();
+
+        for (int i = 0; i < args.length; i++) {
+
+            String arg = args[i];
+
+            if (arg.equals("--stream")) {
+                opts.stream = true;
+            } else if (arg.equals("--binary")) {
+                opts.binary = true;
+            } else if (arg.equals("--run")) {
+                opts.run = true;
+            } else if (arg.equals("--blocks")) {
+                opts.blocks = true;
+            } else if (arg.equals("--jit")) {
+                opts.jitThreshold = number(value(args, ++i, arg), arg);
+                opts.blocks       = true;
+            } else if (arg.equals("--pipeline")) {
+                opts.pipeline = true;
+            } else if (arg.equals("--no-forwarding")) {
+                opts.forwarding = false;
+            } else if (arg.equals("--caches")) {
+                opts.caches = true;
+            } else if (arg.equals("--l1i")) {
+                opts.l1i    = value(args, ++i, arg);
+                opts.caches = true;
+            } else if (arg.equals("--l1d")) {
+                opts.l1d    = value(args, ++i, arg);
+                opts.caches = true;
+            } else if (arg.equals("--l2")) {
+                opts.l2     = value(args, ++i, arg);
+                opts.caches = true;
+            } else if (arg.equals("--branches")) {
+                opts.branches = true;
+            } else if (arg.equals("--predictors")) {
+                opts.predictors = value(args, ++i, arg);
+                opts.branches   = true;
+            } else if (arg.equals("--bp-bits")) {
+                opts.predictorBits = (int) Math.min(number(value(args, ++i, arg), arg), 32);
+                opts.branches      = true;
+            } else if (arg.equals("--tlb")) {
+                opts.tlb = true;
+            } else if (arg.equals("--cfg")) {
+                opts.cfg = value(args, ++i, arg);
+                if (!opts.cfg.equals("dot") && !opts.cfg.equals("json"))
+                    throw new IllegalArgumentException("Unknown graph format " + opts.cfg + ".");
+            } else if (arg.equals("--labels")) {
+                opts.labels = true;
+                opts.stream = true;
+            } else if (arg.equals("--incremental")) {
+                opts.incremental = true;
+                opts.stream      = true;
+            } else if (arg.equals("--watch")) {
+                opts.watch       = true;
+                opts.incremental = true;
+                opts.stream      = true;
+            } else if (arg.equals("--index")) {
+                opts.index  = value(args, ++i, arg);
+                opts.stream = true;
+            } else if (arg.equals("--from-index")) {
+                opts.fromIndex = true;
+                opts.stream    = true;
+            } else if (arg.equals("--stats")) {
+                opts.stats = true;
+            } else if (arg.equals("--where")) {
+                opts.where  = value(args, ++i, arg);
+                opts.stream = true;
+            } else if (arg.equals("--opcode")) {
+                opts.opcode = number(value(args, ++i, arg), arg);
+                opts.stream = true;
+            } else if (arg.equals("--format")) {
+                opts.format = value(args, ++i, arg);
+                opts.stream = true;
+            } else if (arg.equals("--tcache")) {
+                opts.translationCache = value(args, ++i, arg);
+            } else if (arg.equals("--limit")) {
+                opts.limit = number(value(args, ++i, arg), arg);
+            } else if (arg.equals("--elf")) {
+                opts.elf = true;
+            } else if (arg.equals("--endian")) {
+                String order = value(args, ++i, arg);
+                if (order.startsWith("b"))
+                    opts.byteOrder = ByteOrder.BIG_ENDIAN;
+                else if (order.startsWith("l"))
+                    opts.byteOrder = ByteOrder.LITTLE_ENDIAN;
+                else
+                    throw new IllegalArgumentException("Unknown byte order " + order + ".");
+            } else if (arg.equals("--threads")) {
+                long n = number(value(args, ++i, arg), arg);
+                if (n > 1024)
+                    throw new IllegalArgumentException("Too many threads: " + n + ".");
+                opts.threads = (int) n;
+                opts.stream  = true;
+            } else if (arg.equals("--cache")) {
+                long n = number(value(args, ++i, arg), arg);
+                if (n > (1 << 24))
+                    throw new IllegalArgumentException("Cache too large: " + n + ".");
+                opts.cacheSize = (int) n;
+            } else if (arg.equals("--offset")) {
+                opts.offset = number(value(args, ++i, arg), arg);
+            } else if (arg.equals("--length")) {
+                opts.length = number(value(args, ++i, arg), arg);
+            } else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option " + arg + ".");
+            } else if (opts.input == null) {
+                opts.input = arg;
+            } else if (opts.output == null) {
+                opts.output = arg;
+            } else {
+                throw new IllegalArgumentException("Too many files given.");
+            }
+        }
+
+        if (opts.input == null)
+            throw new IllegalArgumentException("No input-file to read data from.");
+
+        if (opts.labels && opts.input.equals("-"))
+            throw new IllegalArgumentException("--labels reads the input-file twice, it can not be stdin.");
+        if (opts.labels && opts.isParallel())
+            throw new IllegalArgumentException("--labels can not be combined with --threads.");
+
+        if (opts.incremental && opts.input.equals("-"))
+            throw new IllegalArgumentException("--incremental needs an input-file, it can not be stdin.");
+        if (opts.incremental && (opts.labels || opts.isParallel()))
+            throw new IllegalArgumentException("--incremental can not be combined with --labels or --threads.");
+
+        if ((opts.index != null) && opts.input.equals("-"))
+            throw new IllegalArgumentException("--index reads the input-file again, it can not be stdin.");
+        if ((opts.index != null) && (opts.incremental || opts.fromIndex))
+            throw new IllegalArgumentException("--index can not be combined with --incremental or --from-index.");
+
+        if (opts.fromIndex && (opts.binary || opts.elf || opts.labels || opts.incremental || opts.isParallel()))
+            throw new IllegalArgumentException("--from-index can not be combined with --binary, --elf, --labels, " +
+                                               "--incremental or --threads.");
+        if (opts.fromIndex && (opts.run || (opts.cfg != null)))
+            throw new IllegalArgumentException("--from-index can not be combined with --run or --cfg.");
+        if (opts.stats && !opts.fromIndex)
+            throw new IllegalArgumentException("--stats reads an index, it needs --from-index.");
+
+        if (opts.getQuery() != null) {
+            if (opts.incremental || opts.run || (opts.cfg != null))
+                throw new IllegalArgumentException("A query can not be combined with --incremental, --run or --cfg.");
+            // Bad queries are usage errors.
+            Query.parse(opts.getQuery(), new Mappings());
+        }
+
+        if (opts.caches) {
+            // Bad cache descriptions are usage errors.
+            CacheLevel.parse("L1I", opts.l1i);
+            CacheLevel.parse("L1D", opts.l1d);
+            if (opts.l2 != null)
+                CacheLevel.parse("L2", opts.l2);
+        }
+        if (opts.branches) {
+            for (String name : opts.getPredictors())
+                BranchPredictor.create(name, opts.predictorBits);
+        }
+
+        return opts;
+    }
+
+    /**
+     * Returns the value following an option.
+     * @throws IllegalArgumentException If there is no value.
+     */
+    private static String value(String[] args, int i, String option) throws IllegalArgumentException {
+        if (i >= args.length)
+            throw new IllegalArgumentException("Missing value for " + option + ".");
+        return args[i];
+    }
+
+    /**
+     * Parses a non-negative number, either hexadecimal ("0x...") or decimal.
+     * @throws IllegalArgumentException If value is not a non-negative number.
+     */
+    private static long number(String value, String option) throws IllegalArgumentException {
+        try {
+            long n = value.startsWith("0x") ? Long.parseLong(value.substring(2), 16) : Long.parseLong(value);
+            if (n < 0)
+                throw new NumberFormatException();
+            return n;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Value of " + option + " is not a number: " + value + ".");
+        }
+    }
+
+    /**
+     * Returns the file to read instructions from ("-" = stdin).
+     * @return Input-file.
+     */
+    public String getInput() {
+        return input;
+    }
+
+    /**
+     * Returns the file to write the result to ("-" = stdout) or null if none was given.
+     * @return Output-file.
+     */
+    public String getOutput() {
+        return output;
+    }
+
+    /**
+     * Returns true if the instructions should be decoded one at a time (constant memory).
+     * @return True if streaming.
+     */
+    public boolean isStream() {
+        return stream;
+    }
+
+    /**
+     * Returns true if the input-file is raw binary words.
+     * @return True if binary input.
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Returns the byte order of binary input.
+     * @return Byte order.
+     */
+    public ByteOrder getByteOrder() {
+        return byteOrder;
+    }
+
+    /**
+     * Returns the byte offset in the binary input to start at.
+     * @return Offset in bytes.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the number of bytes of the binary input to read, -1 = rest of the file.
+     * @return Length in bytes.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns true if the input-file is an ELF file.
+     * @return True if ELF input.
+     */
+    public boolean isElf() {
+        return elf;
+    }
+
+    /**
+     * Returns the number of threads to decode on, 0 = all available processors.
+     * @return Number of threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Returns the number of decoded words to cache, 0 = no cache.
+     * @return Cache size in words.
+     */
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Returns true if the program should be executed instead of disassembled.
+     * @return True if running.
+     */
+    public boolean isRun() {
+        return run;
+    }
+
+    /**
+     * Returns the maximum number of instructions to execute, 0 = no limit.
+     * @return Instruction limit.
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * Returns true if --run should execute translated basic blocks.
+     * @return True if using blocks.
+     */
+    public boolean isBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Returns the number of times a block is entered before it is compiled, 0 = never.
+     * @return JIT threshold.
+     */
+    public long getJitThreshold() {
+        return jitThreshold;
+    }
+
+    /**
+     * Returns the directory of the translation cache of --run, null if none was given.
+     * @return Directory.
+     */
+    public String getTranslationCache() {
+        return translationCache;
+    }
+
+    /**
+     * Returns true if --run should model the timing of a pipeline.
+     * @return True if modelling the pipeline.
+     */
+    public boolean isPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Returns true if the pipeline model forwards results (default true).
+     * @return True if forwarding.
+     */
+    public boolean isForwarding() {
+        return forwarding;
+    }
+
+    /**
+     * Returns true if --run should model caches.
+     * @return True if modelling caches.
+     */
+    public boolean isCaches() {
+        return caches;
+    }
+
+    /**
+     * Returns the description of the L1 instruction cache (see CacheLevel.parse).
+     * @return Cache description.
+     */
+    public String getL1i() {
+        return l1i;
+    }
+
+    /**
+     * Returns the description of the L1 data cache (see CacheLevel.parse).
+     * @return Cache description.
+     */
+    public String getL1d() {
+        return l1d;
+    }
+
+    /**
+     * Returns the description of the L2 cache (see CacheLevel.parse), null if there is none.
+     * @return Cache description.
+     */
+    public String getL2() {
+        return l2;
+    }
+
+    /**
+     * Returns true if --run should compare branch predictors.
+     * @return True if profiling branches.
+     */
+    public boolean isBranches() {
+        return branches;
+    }
+
+    /**
+     * Returns the names of the branch predictors to compare (see BranchPredictor.create).
+     * @return Predictor names.
+     */
+    public String[] getPredictors() {
+        return predictors.split(",");
+    }
+
+    /**
+     * Returns the number of index bits of the branch predictor tables.
+     * @return Number of bits.
+     */
+    public int getPredictorBits() {
+        return predictorBits;
+    }
+
+    /**
+     * Returns true if --run should translate loads and stores by the TLB of the simulated CP0.
+     * @return True if translating.
+     */
+    public boolean isTlb() {
+        return tlb;
+    }
+
+    /**
+     * Returns the format to write the control-flow graph in.
+     * @return "dot", "json" or null to disassemble.
+     */
+    public String getCfg() {
+        return cfg;
+    }
+
+    /**
+     * Returns true if the listing should name the targets of branches and jumps.
+     * @return True if labelling.
+     */
+    public boolean isLabels() {
+        return labels;
+    }
+
+    /**
+     * Returns true if the listing should be written from the chunks cached by the last run where they did not
+     * change.
+     * @return True if incremental.
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Returns the file the chunks of --incremental are kept in: the output-file (or the input-file, when writing
+     * to stdout) with ".mic" appended.
+     * @return Path of the cache file.
+     */
+    public String getIncrementalCache() {
+        boolean toStdout = (output == null) || output.equals("-");
+        return (toStdout ? input : output) + ".mic";
+    }
+
+    /**
+     * Returns true if the listing should be written again whenever the input-file changes.
+     * @return True if watching.
+     */
+    public boolean isWatch() {
+        return watch;
+    }
+
+    /**
+     * Returns the directory to write the index of the input-file to (see DecodeIndex), null if none was given.
+     * @return Directory.
+     */
+    public String getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns true if the input-file is the directory of an index.
+     * @return True if reading an index.
+     */
+    public boolean isFromIndex() {
+        return fromIndex;
+    }
+
+    /**
+     * Returns true if the number of instructions per mnemonic should be written instead of a listing.
+     * @return True if counting.
+     */
+    public boolean isStats() {
+        return stats;
+    }
+
+    /**
+     * Returns the query the words must match to be written (see Query): --where, --opcode and --format joined
+     * with "and".
+     * @return The query, null to write all words.
+     */
+    public String getQuery() {
+        StringBuilder query = new StringBuilder();
+        if (where != null)
+            query.append('(').append(where).append(')');
+        if (opcode >= 0)
+            query.append((query.length() > 0) ? " and " : "").append("op = ").append(opcode);
+        if (format != null)
+            query.append((query.length() > 0) ? " and " : "").append("format = ").append(format);
+        return (query.length() > 0) ? query.toString() : null;
+    }
+
+    /**
+     * Returns true if decoding should be done on more than one thread.
+     * @return True if parallel.
+     */
+    public boolean isParallel() {
+        return threads != 1;
+    }
+}
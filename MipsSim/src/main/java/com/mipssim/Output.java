@@ -8,6 +8,7 @@ public class Output {
     private String decDecomp;
     private String mnemonic;
     private int lineInput;
+    private int address;
 
     /**
      *
@@ -80,4 +81,20 @@ public class Output {
     public void setInput(String input) {
         this.input = input;
     }
+
+    /**
+     * Returns the (virtual) address of the instruction, 0 if the input has no addresses.
+     * @return Address (unsigned int).
+     */
+    public int getAddress() {
+        return address;
+    }
+
+    /**
+     * Set the address
+     * @param address Virtual address of the instruction.
+     */
+    public void setAddress(int address) {
+        this.address = address;
+    }
 }
@@ -0,0 +1,325 @@
+package com.mipssim;
+
+import com.mipssim.sim.Program;
+
+import java.io.*;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * ParallelDisassembler splits the input into chunks of words, decodes the chunks on a pool of threads and writes
+ * the rendered chunks in the original order. Every chunk knows the line number (and address) of its first word, so
+ * the result is byte-identical to the sequential StreamDisassembler regardless of the number of threads, and error
+ * messages (written chunk by chunk) carry the same line numbers. Only a bounded number of chunks is in flight at
+ * once, so memory stays flat for any input size.
+ */
+public class ParallelDisassembler {
+
+    // Number of words in one chunk.
+    static final int CHUNK_WORDS = 1 << 14;
+
+    // Length of one rendered row (116 columns, padded, and the line separator), used to size the buffer of a chunk
+    // so it is not grown while the chunk is written.
+    static final int ROW_CHARS = 120;
+
+    /**
+     * One chunk of the input and, once decoded, its rendered rows and error messages.
+     */
+    private static class Chunk implements Callable<Chunk> {
+
+        private final IntBuffer words;
+        private final int firstLine;
+        private final int firstAddr;
+        private final String header;
+        private final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        private final PrintStream err = new PrintStream(errors, true);
+        private CharArrayWriter rows;
+        private ElfFile elf;
+        private Mappings map;
+        private ThreadLocal<DecodeCache> cache;
+        private Query query;
+
+        Chunk(IntBuffer words, int firstLine, int firstAddr, String header) {
+            this.words     = words;
+            this.firstLine = firstLine;
+            this.firstAddr = firstAddr;
+            this.header    = header;
+        }
+
+        @Override
+        public Chunk call() throws IOException {
+            rows = new CharArrayWriter((query == null) ? words.remaining() * ROW_CHARS : 32);
+            ListingOptions opts = new ListingOptions(map);
+            opts.setCache((cache != null) ? cache.get() : null);
+            opts.setQuery(query);
+            StreamDisassembler.writeWords(words, firstLine, firstAddr, elf, opts, rows, err);
+            return this;
+        }
+    }
+
+    private final Mappings map;
+    private final Writer wr;
+    private final ExecutorService pool;
+    private final ArrayDeque<Future<Chunk>> pending;
+    private final int maxPending;
+
+    // Caches of decoded words, one per thread (null = no cache), and all caches created so far.
+    private ThreadLocal<DecodeCache> cache;
+    private final List<DecodeCache> caches = new ArrayList<>();
+
+    // Query the words must match to be written, null = all.
+    private Query query;
+
+    /**
+     * Creates a disassembler that decodes on the given number of threads.
+     * @param threads Number of threads, 0 = number of available processors.
+     * @param map Mappings object, shared by all threads.
+     * @param wr Writer to write the result to.
+     */
+    public ParallelDisassembler(int threads, Mappings map, Writer wr) {
+
+        if (threads <= 0)
+            threads = Runtime.getRuntime().availableProcessors();
+
+        this.map        = map;
+        this.wr         = wr;
+        this.pending    = new ArrayDeque<>();
+        this.maxPending = threads * 4;
+        this.pool       = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "mipssim-decoder");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Lets every thread remember the decoded strings of recently seen words, see DecodeCache.
+     * @param size Number of words each thread caches, 0 = no cache.
+     */
+    public void setCacheSize(int size) {
+        if (size <= 0) {
+            cache = null;
+            return;
+        }
+        cache = ThreadLocal.withInitial(() -> {
+            DecodeCache c = new DecodeCache(map, size);
+            synchronized (caches) {
+                caches.add(c);
+            }
+            return c;
+        });
+    }
+
+    /**
+     * Only writes the words that match a query, the others are not decoded.
+     * @param query The query, shared by all threads. Null writes all words.
+     */
+    public void setQuery(Query query) {
+        this.query = query;
+    }
+
+    /**
+     * Writes the summed counters of the caches of all threads, see setCacheSize.
+     * @param out Stream to write to.
+     */
+    public void reportCache(PrintStream out) {
+        long hits = 0, misses = 0, evictions = 0;
+        synchronized (caches) {
+            for (DecodeCache c : caches) {
+                hits      += c.getHits();
+                misses    += c.getMisses();
+                evictions += c.getEvictions();
+            }
+        }
+        DecodeCache.report(out, hits, misses, evictions);
+    }
+
+    /**
+     * Disassembles the instructions in the input-file (one per line) and writes the result to wr. Each of the run
+     * methods can only be called once, the threads are stopped when it returns.
+     * @param input File to read instructions from, "-" reads from stdin.
+     * @throws IOException If reading or writing fails.
+     */
+    public void run(String input) throws IOException {
+
+        InputStream in;
+        try {
+            in = input.equals("-") ? System.in : new FileInputStream(input);
+        } catch (IOException e) {
+            pool.shutdownNow();
+            throw e;
+        }
+        BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+
+        try {
+            // Line number
+            int j = 0;
+
+            int[] words = new int[CHUNK_WORDS];
+            int count   = 0;
+            Chunk chunk = null;
+            String line;
+
+            while ((line = br.readLine()) != null) {
+
+                if (chunk == null)
+                    chunk = new Chunk(IntBuffer.wrap(words), j + 1, Program.TEXT_BASE + j * 4, null);
+
+                long word = Main.parseLine(line, chunk.err);
+                if (word < 0)
+                    continue;
+                j++;
+
+                words[count++] = (int) word;
+                if (count == CHUNK_WORDS) {
+                    submit(chunk);
+                    words = new int[CHUNK_WORDS];
+                    count = 0;
+                    chunk = null;
+                }
+            }
+
+            if (chunk != null) {
+                chunk.words.limit(count);
+                submit(chunk);
+            }
+
+            writePending();
+
+        } finally {
+            pool.shutdownNow();
+            if (in != System.in)
+                br.close();
+        }
+    }
+
+    /**
+     * Disassembles every word of a binary input and writes the result to wr.
+     * @param input Binary input to read words from.
+     * @throws IOException If reading or writing fails.
+     */
+    public void run(BinaryInput input) throws IOException {
+
+        long total = input.getWordCount();
+        long first = 0;
+
+        try {
+            while (first < total) {
+
+                int count = (int) Math.min(total - first, BinaryInput.getWindowWords());
+                IntBuffer words = input.map(first, count);
+                submitAll(words, (int) (first + 1), (int) (Program.TEXT_BASE + first * 4), null, null);
+                first += count;
+            }
+
+            writePending();
+
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Disassembles the executable sections of an ELF file and writes the result to wr.
+     * @param elf ELF file to read sections from.
+     * @throws IOException If reading or writing fails.
+     */
+    public void run(ElfFile elf) throws IOException {
+
+        // Index of the word in the file, used as line number.
+        int j = 0;
+
+        try {
+            for (ElfFile.Section section : elf.getExecutableSections()) {
+
+                IntBuffer words = elf.words(section);
+                submitAll(words, j + 1, section.getAddr(), elf, StreamDisassembler.sectionHeader(section));
+                j += words.limit();
+            }
+
+            writePending();
+
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Splits words into chunks and submits them. The first chunk carries the header (if any), so a header is
+     * written even if there are no words.
+     */
+    private void submitAll(IntBuffer words, int firstLine, int firstAddr, ElfFile elf, String header)
+            throws IOException {
+
+        if (words.limit() == 0) {
+            if (header != null)
+                submit(chunkOf(words, firstLine, firstAddr, elf, header));
+            return;
+        }
+
+        for (int from = 0; from < words.limit(); from += CHUNK_WORDS) {
+
+            int to = Math.min(words.limit(), from + CHUNK_WORDS);
+            IntBuffer slice = words.duplicate();
+            slice.position(from);
+            slice.limit(to);
+
+            submit(chunkOf(slice.slice(), firstLine + from, firstAddr + from * 4, elf, header));
+            header = null;
+        }
+    }
+
+    private Chunk chunkOf(IntBuffer words, int firstLine, int firstAddr, ElfFile elf, String header) {
+        Chunk chunk = new Chunk(words, firstLine, firstAddr, header);
+        chunk.elf   = elf;
+        return chunk;
+    }
+
+    /**
+     * Submits a chunk for decoding. Waits for (and writes) the oldest chunk first if too many are in flight.
+     */
+    private void submit(Chunk chunk) throws IOException {
+        chunk.map   = map;
+        chunk.cache = cache;
+        chunk.query = query;
+        if (pending.size() >= maxPending)
+            writeOldest();
+        pending.add(pool.submit(chunk));
+    }
+
+    /**
+     * Waits for the oldest chunk and writes its error messages and rows.
+     */
+    private void writeOldest() throws IOException {
+
+        Chunk chunk;
+        try {
+            chunk = pending.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decoding.");
+        } catch (ExecutionException e) {
+            throw new IOException("Decoding failed.", e.getCause());
+        }
+
+        if (chunk.header != null)
+            wr.write(chunk.header);
+        chunk.rows.writeTo(wr);
+        wr.flush();
+
+        if (chunk.errors.size() > 0)
+            chunk.errors.writeTo(System.err);
+    }
+
+    /**
+     * Writes all remaining chunks.
+     */
+    private void writePending() throws IOException {
+        while (!pending.isEmpty())
+            writeOldest();
+    }
+}
@@ -0,0 +1,470 @@
+package com.mipssim;
+
+import com.mipssim.instructions.Instructions;
+import com.mipssim.sim.Op;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Query selects the words of a listing by the fields of the instruction, before anything is rendered: a word that
+ * does not match is never decoded into Strings. Conditions on the bit fields (op, rs, rt, rd, shamt, funct, imm)
+ * are tested on the word itself; conditions on the mnemonic or format on the descriptor id of the word (see
+ * Op.descriptor), which is only looked up if the query has such a condition. A query is immutable, so one can be
+ * shared by several threads.
+ *
+ * Grammar (keywords in any case):
+ * <pre>
+ *   query     = term { "or" term }
+ *   term      = factor { "and" factor }
+ *   factor    = "not" factor | "(" query ")" | condition
+ *   condition = field ( "=" | "!=" | "<" | "<=" | ">" | ">=" ) value
+ *             | field [ "not" ] "in" "(" value { "," value } ")"
+ * </pre>
+ * Fields are op, rs, rt, rd, shamt, funct, imm (sign-extended, 0xfff8 is the same as -8), addr (unsigned),
+ * mnemonic and format; the last two only with "=", "!=" and "in". Values are numbers (decimal or "0x..."),
+ * registers ("$sp", "$29") or, for mnemonic and format, names. The word 0 is "nop" of format "?", as in the listing.
+ *
+ * The conditions on the 6-bit fields are compiled to 64-bit sets, so "op &lt; 8" and "rs in ($sp,$fp)" are both
+ * one shift and mask; the mnemonic and format conditions to a table of the descriptor ids that match.
+ */
+public class Query {
+
+    // Fields, those before IMM are bit fields of at most 6 bits.
+    private static final String[] FIELDS = { "op", "rs", "rt", "rd", "shamt", "funct", "imm", "addr", "mnemonic",
+                                             "format" };
+    private static final int[] SHIFTS    = { 26, 21, 16, 11, 6, 0 };
+    private static final int[] MASKS     = { 0x3f, 0x1f, 0x1f, 0x1f, 0x1f, 0x3f };
+    private static final int IMM      = 6;
+    private static final int ADDR     = 7;
+    private static final int MNEMONIC = 8;
+    private static final int FORMAT   = 9;
+
+    private static final String[] OPERATORS = { "=", "!=", "<", "<=", ">", ">=" };
+
+    /**
+     * A compiled condition.
+     */
+    private abstract static class Node {
+        abstract boolean test(int word, int desc, int addr);
+        boolean usesDescriptor() { return false; }
+    }
+
+    /**
+     * Condition on a bit field: the set of its values that match.
+     */
+    private static class Bits extends Node {
+
+        private final int shift;
+        private final int mask;
+        private final long set;
+
+        Bits(int shift, int mask, long set) {
+            this.shift = shift;
+            this.mask  = mask;
+            this.set   = set;
+        }
+
+        @Override
+        boolean test(int word, int desc, int addr) {
+            return ((set >>> ((word >>> shift) & mask)) & 1) != 0;
+        }
+    }
+
+    /**
+     * Condition on the immediate or the address: the values that match, sorted (unsigned for addresses), or a
+     * comparison.
+     */
+    private static class Value extends Node {
+
+        private final boolean address;
+        private final int operator;
+        private final int[] values;
+
+        Value(boolean address, int operator, int[] values) {
+            this.address  = address;
+            this.operator = operator;
+            this.values   = values;
+        }
+
+        @Override
+        boolean test(int word, int desc, int addr) {
+            // Addresses are compared unsigned, with the sign bit flipped.
+            int v = address ? (addr ^ Integer.MIN_VALUE) : (short) word;
+            if (operator < 0)
+                return Arrays.binarySearch(values, v) >= 0;
+            return compare(v, operator, values[0]);
+        }
+    }
+
+    /**
+     * Condition on the mnemonic or format: the descriptor ids that match, and whether nop (the word 0) does.
+     */
+    private static class Descriptor extends Node {
+
+        private final boolean[] ids;
+        private final boolean nop;
+
+        Descriptor(boolean[] ids, boolean nop) {
+            this.ids = ids;
+            this.nop = nop;
+        }
+
+        @Override
+        boolean test(int word, int desc, int addr) {
+            if (word == 0)
+                return nop;
+            return (desc >= 0) && ids[desc];
+        }
+
+        @Override
+        boolean usesDescriptor() {
+            return true;
+        }
+    }
+
+    /**
+     * "and" (all) or "or" (any) of conditions.
+     */
+    private static class Junction extends Node {
+
+        private final boolean all;
+        private final Node[] nodes;
+
+        Junction(boolean all, List<Node> nodes) {
+            this.all   = all;
+            this.nodes = nodes.toArray(new Node[0]);
+        }
+
+        @Override
+        boolean test(int word, int desc, int addr) {
+            for (Node n : nodes) {
+                if (n.test(word, desc, addr) != all)
+                    return !all;
+            }
+            return all;
+        }
+
+        @Override
+        boolean usesDescriptor() {
+            for (Node n : nodes) {
+                if (n.usesDescriptor())
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * "not" of a condition.
+     */
+    private static class Not extends Node {
+
+        private final Node node;
+
+        Not(Node node) {
+            this.node = node;
+        }
+
+        @Override
+        boolean test(int word, int desc, int addr) {
+            return !node.test(word, desc, addr);
+        }
+
+        @Override
+        boolean usesDescriptor() {
+            return node.usesDescriptor();
+        }
+    }
+
+    private final String text;
+    private final Node root;
+    private final boolean descriptor;
+    private final Mappings map;
+
+    // Parser state.
+    private String[] tokens;
+    private int pos;
+
+    private Query(String text, Mappings map) {
+        this.text = text;
+        this.map  = map;
+        this.tokens = tokenize(text);
+        this.root   = parseQuery();
+        if (pos < tokens.length)
+            throw error("Unexpected " + tokens[pos]);
+        this.tokens     = null;
+        this.descriptor = root.usesDescriptor();
+    }
+
+    /**
+     * Parses a query.
+     * @param text The query, e.g. "mnemonic in (lw,sw) and rs=$sp".
+     * @param map Mappings object, for the names of mnemonics, formats and registers.
+     * @return The compiled query.
+     * @throws IllegalArgumentException If the query is not valid.
+     */
+    public static Query parse(String text, Mappings map) throws IllegalArgumentException {
+        return new Query(text, map);
+    }
+
+    /**
+     * Returns true if a word matches. The descriptor is looked up only if the query needs it.
+     * @param word Instruction word.
+     * @param addr Address of the word.
+     * @return True if the word matches.
+     */
+    public boolean matches(int word, int addr) {
+        return root.test(word, descriptor ? Op.descriptor(word, map) : -1, addr);
+    }
+
+    /**
+     * Returns true if a word with a known descriptor matches, e.g. a record of a DecodeIndex.
+     * @param word Instruction word.
+     * @param desc Descriptor id of the word, -1 if it is not in the mapping.
+     * @param addr Address of the word.
+     * @return True if the word matches.
+     */
+    public boolean matches(int word, int desc, int addr) {
+        return root.test(word, desc, addr);
+    }
+
+    /**
+     * Returns true if the query has a condition on the mnemonic or format.
+     * @return True if matches(word, addr) looks up descriptors.
+     */
+    public boolean usesDescriptor() {
+        return descriptor;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    private static String[] tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if ((c == '(') || (c == ')') || (c == ',')) {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if ((c == '<') || (c == '>') || (c == '!') || (c == '=')) {
+                int end = ((i + 1 < text.length()) && (text.charAt(i + 1) == '=')) ? i + 2 : i + 1;
+                String op = text.substring(i, end);
+                tokens.add(op.equals("==") ? "=" : op);
+                i = end;
+            } else {
+                int start = i;
+                while ((i < text.length()) && (Character.isLetterOrDigit(text.charAt(i)) ||
+                                               ("$._-/".indexOf(text.charAt(i)) >= 0)))
+                    i++;
+                if (i == start)
+                    throw new IllegalArgumentException("Unexpected '" + c + "' in query " + text + ".");
+                tokens.add(text.substring(start, i));
+            }
+        }
+        return tokens.toArray(new String[0]);
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " in query " + text + ".");
+    }
+
+    private String peek() {
+        return (pos < tokens.length) ? tokens[pos] : null;
+    }
+
+    private boolean accept(String keyword) {
+        if ((pos < tokens.length) && tokens[pos].equalsIgnoreCase(keyword)) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private String next(String expected) {
+        if (pos == tokens.length)
+            throw error("Missing " + expected);
+        return tokens[pos++];
+    }
+
+    private void expect(String token) {
+        String t = next("'" + token + "'");
+        if (!t.equals(token))
+            throw error("Expected '" + token + "' instead of " + t);
+    }
+
+    private Node parseQuery() {
+        List<Node> terms = new ArrayList<>();
+        do {
+            terms.add(parseTerm());
+        } while (accept("or"));
+        return (terms.size() == 1) ? terms.get(0) : new Junction(false, terms);
+    }
+
+    private Node parseTerm() {
+        List<Node> factors = new ArrayList<>();
+        do {
+            factors.add(parseFactor());
+        } while (accept("and"));
+        return (factors.size() == 1) ? factors.get(0) : new Junction(true, factors);
+    }
+
+    private Node parseFactor() {
+        if (accept("not"))
+            return new Not(parseFactor());
+        if (accept("(")) {
+            Node node = parseQuery();
+            expect(")");
+            return node;
+        }
+        return parseCondition();
+    }
+
+    private Node parseCondition() {
+
+        String name = next("field").toLowerCase(Locale.ROOT);
+        int field = Arrays.asList(FIELDS).indexOf(name.equals("opcode") ? "op" : name);
+        if (field < 0)
+            throw error("Unknown field " + name);
+
+        boolean negate = accept("not");
+        List<String> values = new ArrayList<>();
+        int operator;
+        if (accept("in")) {
+            operator = -1;
+            expect("(");
+            do {
+                values.add(next("value"));
+            } while (accept(","));
+            expect(")");
+        } else {
+            if (negate)
+                throw error("Expected 'in' after 'not'");
+            String op = next("operator");
+            operator  = Arrays.asList(OPERATORS).indexOf(op);
+            if (operator < 0)
+                throw error("Unknown operator " + op);
+            values.add(next("value"));
+        }
+
+        Node node;
+        if ((field == MNEMONIC) || (field == FORMAT)) {
+            if (operator > 1)
+                throw error(FIELDS[field] + " can only be compared with =, != and in");
+            node = descriptors(field, values);
+            if (operator == 1)
+                node = new Not(node);
+        } else if (field < IMM) {
+            node = bits(field, operator, values);
+        } else {
+            int[] v = new int[values.size()];
+            for (int i = 0; i < v.length; i++) {
+                v[i] = number(field, values.get(i));
+                if (field == ADDR)
+                    v[i] ^= Integer.MIN_VALUE;
+            }
+            Arrays.sort(v);
+            node = new Value(field == ADDR, operator, v);
+        }
+        return negate ? new Not(node) : node;
+    }
+
+    /**
+     * Compiles a condition on a bit field to the set of values that match.
+     */
+    private Node bits(int field, int operator, List<String> values) {
+        long set = 0;
+        for (String value : values) {
+            long n = number(field, value);
+            for (int v = 0; v <= MASKS[field]; v++) {
+                boolean match = (operator < 0) ? (v == n) : compare(v, operator, n);
+                if (match)
+                    set |= 1L << v;
+            }
+        }
+        return new Bits(SHIFTS[field], MASKS[field], set);
+    }
+
+    /**
+     * Compiles a condition on the mnemonic or format to the descriptor ids that match.
+     */
+    private Node descriptors(int field, List<String> values) {
+        boolean[] ids = new boolean[map.getDescriptorCount()];
+        boolean nop   = false;
+        for (String value : values) {
+            boolean known = false;
+            for (int id = 0; id < ids.length; id++) {
+                Instructions instr = map.getDescriptor(id);
+                String name = (field == MNEMONIC) ? instr.getFunc() : instr.getFormat();
+                if (value.equalsIgnoreCase(name)) {
+                    ids[id] = true;
+                    known   = true;
+                }
+            }
+            if (value.equalsIgnoreCase((field == MNEMONIC) ? "nop" : "?")) {
+                nop   = true;
+                known = true;
+            }
+            if (!known)
+                throw error("Unknown " + FIELDS[field] + " " + value);
+        }
+        return new Descriptor(ids, nop);
+    }
+
+    /**
+     * Parses the value of a numeric field: a number (negative only for imm) or a register.
+     */
+    private int number(int field, String value) {
+        if (value.startsWith("$")) {
+            for (int r = 0; r < 32; r++) {
+                for (String name : map.getRegister(r).split("/")) {
+                    if (name.equals(value) || ("$" + name).equals(value))
+                        return r;
+                }
+            }
+            try {
+                int r = Integer.parseInt(value.substring(1));
+                if ((r >= 0) && (r < 32))
+                    return r;
+            } catch (NumberFormatException e) {
+                // Reported below.
+            }
+            throw error("Unknown register " + value);
+        }
+        try {
+            boolean negative = value.startsWith("-");
+            String digits    = negative ? value.substring(1) : value;
+            long n = digits.startsWith("0x") ? Long.parseLong(digits.substring(2), 16) : Long.parseLong(digits);
+            if (negative)
+                n = -n;
+            if (field == IMM) {
+                if ((n < -0x8000) || (n > 0xffff))
+                    throw error("Immediate out of range: " + value);
+                return (short) n;
+            }
+            if ((n < 0) || (n > 0xffffffffL))
+                throw error("Value out of range: " + value);
+            return (int) n;
+        } catch (NumberFormatException e) {
+            throw error("Not a number: " + value);
+        }
+    }
+
+    private static boolean compare(long v, int operator, long value) {
+        switch (operator) {
+            case 0:  return v == value;
+            case 1:  return v != value;
+            case 2:  return v < value;
+            case 3:  return v <= value;
+            case 4:  return v > value;
+            default: return v >= value;
+        }
+    }
+}
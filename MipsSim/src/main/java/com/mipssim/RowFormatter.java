@@ -0,0 +1,142 @@
+package com.mipssim;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * RowFormatter renders the rows of the result into a reusable char buffer. The layout is the one of
+ * "%-10s\t\t%-5s\t%-25s %-35s %-35s %n", but each row is formatted once, without String.format, and can then
+ * be written to any number of sinks. A RowFormatter is not thread-safe, use one per thread.
+ */
+public class RowFormatter {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final String NEWLINE    = System.lineSeparator();
+
+    private char[] buf = new char[256];
+    private int len;
+
+    /**
+     * Formats the row of a decoded instruction.
+     * @param res Decoded instruction.
+     * @param withAddress True to prefix the row with the address of the instruction ("%08x  ").
+     * @return This formatter.
+     */
+    public RowFormatter row(Output res, boolean withAddress) {
+        len = 0;
+        if (withAddress) {
+            hex8(res.getAddress());
+            append("  ");
+        }
+        return columns(res.getInput(), res.getFormat(), res.getDecDecomp(), res.getHexDecomp(), res.getMnemonic());
+    }
+
+    /**
+     * Formats a row of five columns, e.g. the header of the result.
+     * @return This formatter.
+     */
+    public RowFormatter row(String input, String format, String decDecomp, String hexDecomp, String mnemonic) {
+        len = 0;
+        return columns(input, format, decDecomp, hexDecomp, mnemonic);
+    }
+
+    /**
+     * Formats the line that marks the start of a symbol ("%n%08x <%s>:%n").
+     * @param addr Address of the symbol.
+     * @param name Name of the symbol.
+     * @return This formatter.
+     */
+    public RowFormatter symbol(int addr, String name) {
+        len = 0;
+        append(NEWLINE);
+        hex8(addr);
+        append(" <");
+        append(name);
+        append(">:");
+        append(NEWLINE);
+        return this;
+    }
+
+    /**
+     * Formats the line that marks a branch or jump target ("%s:%n").
+     * @param name Name of the label.
+     * @return This formatter.
+     */
+    public RowFormatter label(String name) {
+        len = 0;
+        append(name);
+        append(':');
+        append(NEWLINE);
+        return this;
+    }
+
+    /**
+     * Writes the formatted row to a sink.
+     * @param wr Writer to write to.
+     * @throws IOException If writing fails.
+     */
+    public void writeTo(Writer wr) throws IOException {
+        wr.write(buf, 0, len);
+    }
+
+    /**
+     * Returns the formatted row as a String.
+     * @return The row.
+     */
+    @Override
+    public String toString() {
+        return new String(buf, 0, len);
+    }
+
+    private RowFormatter columns(String input, String format, String decDecomp, String hexDecomp, String mnemonic) {
+        pad(input, 10);
+        append("\t\t");
+        pad(format, 5);
+        append('\t');
+        pad(decDecomp, 25);
+        append(' ');
+        pad(hexDecomp, 35);
+        append(' ');
+        pad(mnemonic, 35);
+        append(' ');
+        append(NEWLINE);
+        return this;
+    }
+
+    /**
+     * Appends s left-justified in a column of width characters (like "%-<width>s", null is written as "null").
+     */
+    private void pad(String s, int width) {
+        if (s == null)
+            s = "null";
+        append(s);
+        for (int i = s.length(); i < width; i++)
+            append(' ');
+    }
+
+    private void hex8(int value) {
+        ensure(8);
+        for (int shift = 28; shift >= 0; shift -= 4)
+            buf[len++] = HEX_DIGITS[(value >>> shift) & 0xf];
+    }
+
+    private void append(String s) {
+        int n = s.length();
+        ensure(n);
+        s.getChars(0, n, buf, len);
+        len += n;
+    }
+
+    private void append(char c) {
+        ensure(1);
+        buf[len++] = c;
+    }
+
+    private void ensure(int n) {
+        if (len + n > buf.length) {
+            char[] bigger = new char[Math.max(buf.length * 2, len + n)];
+            System.arraycopy(buf, 0, bigger, 0, len);
+            buf = bigger;
+        }
+    }
+}
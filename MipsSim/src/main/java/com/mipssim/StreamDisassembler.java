@@ -0,0 +1,354 @@
+package com.mipssim;
+
+import com.mipssim.sim.Program;
+
+import java.io.*;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * StreamDisassembler reads, decodes and writes one instruction at a time. Nothing is kept between two lines, so the
+ * memory used is the same regardless of the size of the input and the first line is written as soon as it is read.
+ */
+public class StreamDisassembler {
+
+    // Size of the read and write buffers (chars).
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Disassembles the instructions in the input-file and writes the result to the output-file.
+     * @param input File to read instructions from, "-" reads from stdin.
+     * @param output File to write the result to, "-" or null writes to stdout.
+     * @param opts Mappings, cache, labels and query of the listing.
+     * @throws IOException If reading or writing fails.
+     */
+    public static void run(String input, String output, ListingOptions opts) throws IOException {
+
+        InputStream in    = input.equals("-") ? System.in : new FileInputStream(input);
+        BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+        Writer wr         = openOutput(output);
+
+        try {
+            run(br, wr, opts);
+        } finally {
+            closeOutput(wr, output);
+            if (in != System.in)
+                br.close();
+        }
+    }
+
+    /**
+     * Disassembles every line of br and writes the result to wr. The writer is flushed whenever the reader has no
+     * more buffered input, so output keeps up with a slow producer (e.g. a pipe) without flushing every line.
+     * @param br Reader of instructions (one per line).
+     * @param wr Writer to write the result to.
+     * @param map Mappings object.
+     * @return Number of instructions read.
+     * @throws IOException If reading or writing fails.
+     */
+    public static int run(BufferedReader br, Writer wr, Mappings map) throws IOException {
+        return run(br, wr, new ListingOptions(map));
+    }
+
+    /**
+     * Disassembles every line of br and writes the rows of the words that match the query (if any) to wr, with
+     * labels (if any). The words are at Program.TEXT_BASE.
+     * @param br Reader of instructions (one per line).
+     * @param wr Writer to write the result to.
+     * @param opts Mappings, cache, labels and query of the listing.
+     * @return Number of instructions read.
+     * @throws IOException If reading or writing fails.
+     */
+    public static int run(BufferedReader br, Writer wr, ListingOptions opts) throws IOException {
+
+        // Line number
+        int j = 0;
+        String line;
+        RowFormatter fmt = new RowFormatter();
+
+        while ((line = br.readLine()) != null) {
+
+            long word = Main.parseLine(line);
+            if (word < 0)
+                continue;
+            j++;
+
+            writeWord((int) word, j, Program.TEXT_BASE + (j - 1) * 4, opts, fmt, wr, System.err);
+
+            if (!br.ready())
+                wr.flush();
+        }
+
+        return j;
+    }
+
+    /**
+     * Disassembles every word of a binary input and writes the result to the output-file. The line number of a
+     * word is its index in the input (starting at 1).
+     * @param input Binary input to read words from.
+     * @param output File to write the result to, "-" or null writes to stdout.
+     * @param opts Mappings, cache, labels and query of the listing.
+     * @throws IOException If reading or writing fails.
+     */
+    public static void run(BinaryInput input, String output, ListingOptions opts) throws IOException {
+
+        Writer wr = openOutput(output);
+
+        try {
+            long total  = input.getWordCount();
+            long first  = 0;
+
+            while (first < total) {
+
+                int count = (int) Math.min(total - first, BinaryInput.getWindowWords());
+                IntBuffer words = input.map(first, count);
+
+                writeWords(words, (int) (first + 1), (int) (Program.TEXT_BASE + first * 4), null, opts, wr,
+                           System.err);
+
+                first += count;
+            }
+        } finally {
+            closeOutput(wr, output);
+        }
+    }
+
+    /**
+     * Disassembles the executable sections of an ELF file and writes the result to the output-file. Every row is
+     * prefixed with the virtual address of the instruction and every function symbol gets a "<name>:" line.
+     * @param elf ELF file to read sections from.
+     * @param output File to write the result to, "-" or null writes to stdout.
+     * @param opts Mappings, cache, labels and query of the listing. Symbols are only written with a word that
+     *             matches the query.
+     * @throws IOException If reading or writing fails.
+     */
+    public static void run(ElfFile elf, String output, ListingOptions opts) throws IOException {
+
+        Writer wr = openOutput(output);
+
+        try {
+            // Index of the word in the file, used as line number.
+            int j = 0;
+
+            for (ElfFile.Section section : elf.getExecutableSections()) {
+
+                wr.write(sectionHeader(section));
+
+                IntBuffer words = elf.words(section);
+                writeWords(words, j + 1, section.getAddr(), elf, opts, wr, System.err);
+                j += words.limit();
+            }
+        } finally {
+            closeOutput(wr, output);
+        }
+    }
+
+    /**
+     * Writes the listing of the input an index was written from (see DecodeIndex) to the output-file, the same as
+     * disassembling the input again. Nothing is parsed or looked up: the rows are rendered from the word and
+     * descriptor columns, only words that are not in the mapping are decoded (to report them).
+     * @param index Index to list.
+     * @param output File to write the result to, "-" or null writes to stdout.
+     * @param opts Mappings the index was written with, cache and query of the listing. The query is tested on the
+     *             columns. Labels are not used.
+     * @throws IOException If reading or writing fails.
+     */
+    public static void run(DecodeIndex index, String output, ListingOptions opts) throws IOException {
+
+        Query query = opts.getQuery();
+        Writer wr   = openOutput(output);
+
+        try {
+            RowFormatter fmt = new RowFormatter();
+            boolean elf      = index.getSectionCount() > 0;
+            int section      = 0;
+            long total       = index.getCount();
+
+            for (long first = 0; first < total; ) {
+
+                int count = (int) Math.min(total - first, DecodeIndex.getWindowRecords());
+                DecodeIndex.Window records = index.map(first, count);
+
+                for (int i = 0; i < count; i++) {
+
+                    while ((section < index.getSectionCount()) && (index.getSectionStart(section) == first + i))
+                        wr.write(index.getSectionHeader(section++));
+
+                    int word = records.getWord(i);
+                    int addr = records.getAddress(i);
+                    if ((query != null) && !query.matches(word, records.getDescriptor(i), addr))
+                        continue;
+                    if (elf) {
+                        String symbol = index.getSymbol(addr);
+                        if (symbol != null)
+                            fmt.symbol(addr, symbol).writeTo(wr);
+                    }
+
+                    Output res = decodeRecord(records, i, (int) (first + i + 1), opts, System.err);
+                    if (res != null) {
+                        res.setAddress(addr);
+                        fmt.row(res, elf).writeTo(wr);
+                    }
+                }
+
+                first += count;
+            }
+
+            // Sections without words at the end.
+            while (section < index.getSectionCount())
+                wr.write(index.getSectionHeader(section++));
+        } finally {
+            closeOutput(wr, output);
+        }
+    }
+
+    /**
+     * Returns the Output of a record of an index, from its descriptor (without looking the word up) unless it is
+     * not in the mapping or a cache is used.
+     */
+    private static Output decodeRecord(DecodeIndex.Window records, int i, int srcLine, ListingOptions opts,
+                                       PrintStream err) throws IOException {
+        int desc = records.getDescriptor(i);
+        int word = records.getWord(i);
+        if ((desc < 0) || (opts.getCache() != null))
+            return decodeWord(word, srcLine, opts, err);
+        Mappings map = opts.getMappings();
+        return new CompactOutput(word, srcLine, map.getDescriptor(desc), map);
+    }
+
+    /**
+     * Returns the line written before the instructions of an ELF section.
+     * @param section Section that follows.
+     * @return The header line.
+     */
+    static String sectionHeader(ElfFile.Section section) {
+        return sectionHeader(section.getName(), section.getAddr());
+    }
+
+    /**
+     * Returns the line written before the instructions of an ELF section.
+     * @param name Name of the section.
+     * @param addr Address of the section.
+     * @return The header line.
+     */
+    static String sectionHeader(String name, int addr) {
+        return String.format("%nSection %s (0x%08x):%n", name, addr);
+    }
+
+    /**
+     * Disassembles all remaining words of a buffer and writes their rows to wr.
+     * @param words Words to disassemble, from position to limit.
+     * @param firstLine Line (or index) of the first word in the input.
+     * @param firstAddr Address of the first word, for the rows of an ELF file and for labels.
+     * @param elf ELF file of the words, rows are then prefixed with addresses and symbols. Null for other inputs.
+     * @param opts Mappings, cache, labels and query of the listing.
+     * @param wr Writer to write the rows to.
+     * @param err Stream to report words that can not be decoded to.
+     * @throws IOException If writing fails.
+     */
+    static void writeWords(IntBuffer words, int firstLine, int firstAddr, ElfFile elf, ListingOptions opts,
+                           Writer wr, PrintStream err) throws IOException {
+
+        Labels labels = opts.getLabels();
+        Query query   = opts.getQuery();
+        int line = firstLine;
+        int addr = firstAddr;
+        RowFormatter fmt = new RowFormatter();
+
+        for (int i = words.position(); i < words.limit(); i++, line++, addr += 4) {
+
+            if (elf == null) {
+                writeWord(words.get(i), line, addr, opts, fmt, wr, err);
+                continue;
+            }
+            if ((query != null) && !query.matches(words.get(i), addr))
+                continue;
+
+            String symbol = elf.getSymbol(addr);
+            if (symbol != null)
+                fmt.symbol(addr, symbol).writeTo(wr);
+            else if ((labels != null) && labels.isLabel(addr))
+                fmt.label(labels.name(addr)).writeTo(wr);
+
+            Output res = decodeWord(words.get(i), line, opts, err);
+            if (res != null) {
+                res.setAddress(addr);
+                if (labels != null)
+                    res = labels.label(res, words.get(i), addr);
+                fmt.row(res, true).writeTo(wr);
+            }
+        }
+    }
+
+    /**
+     * Disassembles one word and writes its row to wr. Words that can not be decoded are reported on stderr and
+     * not written.
+     * @param word Instruction to disassemble.
+     * @param srcLine Line (or index) of the instruction in the input.
+     * @param addr Address of the instruction, for the query and labels.
+     * @param opts Mappings, cache, labels and query of the listing.
+     * @param fmt Formatter to render the row with.
+     * @param wr Writer to write the row to.
+     * @param err Stream to report the word to if it can not be decoded.
+     * @throws IOException If writing fails.
+     */
+    static void writeWord(int word, int srcLine, int addr, ListingOptions opts, RowFormatter fmt, Writer wr,
+                          PrintStream err) throws IOException {
+        Labels labels = opts.getLabels();
+        if ((opts.getQuery() != null) && !opts.getQuery().matches(word, addr))
+            return;
+        if (labels == null) {
+            Output res = decodeWord(word, srcLine, opts, err);
+            if (res != null)
+                fmt.row(res, false).writeTo(wr);
+            return;
+        }
+        if (labels.isLabel(addr))
+            fmt.label(labels.name(addr)).writeTo(wr);
+        Output res = decodeWord(word, srcLine, opts, err);
+        if (res != null)
+            fmt.row(labels.label(res, word, addr), false).writeTo(wr);
+    }
+
+    /**
+     * Disassembles one word and sets its input.
+     * @param word Instruction to disassemble.
+     * @param srcLine Line (or index) of the instruction in the input.
+     * @param opts Mappings and cache to decode with.
+     * @param err Stream to report the word to if it can not be decoded.
+     * @return Output - Result of disassembling, or null if the word could not be decoded.
+     */
+    static Output decodeWord(int word, int srcLine, ListingOptions opts, PrintStream err) {
+        DecodeCache cache = opts.getCache();
+        Output res = (cache != null) ? cache.decode(word, srcLine, err)
+                                     : Disassembler.parseWord(word, srcLine, opts.getMappings(), err);
+        if (res != null)
+            res.setInput("0x".concat(Integer.toHexString(word)));
+        return res;
+    }
+
+    /**
+     * Opens a buffered writer to the output-file.
+     * @param output File to write to, "-" or null writes to stdout.
+     * @return The writer.
+     * @throws IOException If the file can not be opened.
+     */
+    static Writer openOutput(String output) throws IOException {
+        boolean toStdout = (output == null) || output.equals("-");
+        OutputStream out = toStdout ? System.out : new FileOutputStream(output);
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * Flushes a writer from openOutput, the writer is closed unless it writes to stdout.
+     * @param wr Writer to close.
+     * @param output File the writer was opened with.
+     * @throws IOException If flushing or closing fails.
+     */
+    static void closeOutput(Writer wr, String output) throws IOException {
+        if ((output == null) || output.equals("-"))
+            wr.flush();
+        else
+            wr.close();
+    }
+}
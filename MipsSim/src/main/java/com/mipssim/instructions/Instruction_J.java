@@ -2,11 +2,8 @@ package com.mipssim.instructions;
 
 public class Instruction_J extends Instructions {
 
-    public Instruction_J(String binCode, String func) {
-        super();
-        this.setFormat("J");
-        this.setFunc(func);
-        this.setBin(binCode);
+    public Instruction_J(int id, String func) {
+        super(id, "J", func);
     }
 
 }
@@ -2,11 +2,8 @@ package com.mipssim.instructions;
 
 public class Instruction_R extends Instructions {
 
-    public Instruction_R(String binCode, String func) {
-        super();
-        this.setFormat("R");
-        this.setFunc(func);
-        this.setBin(binCode);
+    public Instruction_R(int id, String func) {
+        super(id, "R", func);
     }
 
 }
@@ -1,31 +1,36 @@
 package com.mipssim.instructions;
 
+/**
+ * Describes one instruction of the OP-map. Descriptors are immutable and shared by all decodes, so one set of
+ * descriptors (held by Mappings) can be used by many threads at once.
+ */
 public class Instructions {
 
-    private String format;
-    private String func;
-    private String bin;
+    private final int id;
+    private final String format;
+    private final String func;
 
-    public Instructions() {
-        format = null;
-        func = null;
-        bin = null;
+    public Instructions(int id, String format, String func) {
+        this.id     = id;
+        this.format = (format.equals("R") || format.equals("I") || format.equals("J")) ? format : null;
+        this.func   = func;
     }
 
     /**
-     * Returns the instruction format.
-     * @return String - format of instruction.
+     * Returns the id of the instruction. The id is the index of the instruction in the descriptor table of the
+     * Mappings object that created it.
+     * @return int - id of instruction.
      */
-    public String getFormat() {
-        return format;
+    public int getId() {
+        return id;
     }
 
     /**
-     * Set the instruction format.
-     * @param format Format of the instruction.
+     * Returns the instruction format.
+     * @return String - format of instruction.
      */
-    public void setFormat(String format) {
-        this.format = (format.equals("R") || format.equals("I") || format.equals("J")) ? format : null;
+    public String getFormat() {
+        return format;
     }
 
     /**
@@ -36,30 +41,4 @@ public class Instructions {
         return func;
     }
 
-    /**
-     * Set a function to the instruction.
-     * @param func The function to the instruction.
-     */
-    public void setFunc(String func) {
-        this.func = (func == null) ? null : func;
-    }
-
-
-    /**
-     * Returns the binary representation (32-bit) of the instruction.
-     * @return The binary representation of the instruction.
-     */
-    public String getBin() {
-        return bin;
-    }
-
-
-    /**
-     * Set a binary number to representing the instruction.
-     * @param bin String - The 32-bit binary number.
-     */
-    public void setBin(String bin) {
-        this.bin = (bin == null) ? null : bin;
-    }
-
 }
@@ -0,0 +1,37 @@
+package com.mipssim.sim;
+
+/**
+ * Thrown when a load or store through a Mmu can not be translated: a TLB refill, invalid or modified exception, or
+ * an address error for a kernel address in user mode. Unlike SimulationException it does not stop the simulation,
+ * the Interpreter hands it to the guest (see Cp0.exception) and goes on at the exception vector.
+ */
+class AddressException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int code;
+    private final int address;
+    private final boolean refill;
+
+    /**
+     * @param code Exception code (Cp0.MOD, TLBL, TLBS, ADEL or ADES).
+     * @param address The virtual address.
+     * @param refill True if no TLB entry matched the address.
+     */
+    AddressException(int code, int address, boolean refill) {
+        // Without a stack trace, guest TLB misses are frequent.
+        super(null, null, false, false);
+        this.code    = code;
+        this.address = address;
+        this.refill  = refill;
+    }
+
+    int getCode()       { return code; }
+    int getAddress()    { return address; }
+    boolean isRefill()  { return refill; }
+
+    @Override
+    public String getMessage() {
+        return String.format("Address exception %d (0x%08x)", code, address);
+    }
+}
@@ -0,0 +1,337 @@
+package com.mipssim.sim;
+
+/**
+ * Block is a translated basic block: the straight-line instructions from its first address up to and including the
+ * next branch or jump and its delay slot. Every instruction except the branch is bound once into a Step (a lambda
+ * with its registers and immediate already taken from the word), so running the block decodes nothing.
+ *
+ * A block also ends before an instruction that can not be bound (e.g. syscall, break or a branch in a delay slot)
+ * and after MAX_STEPS instructions; it then continues at the next address (see getNext).
+ */
+final class Block {
+
+    // Maximum number of instructions in a block (not counting the branch and its delay slot).
+    static final int MAX_STEPS = 64;
+
+    /**
+     * One instruction with its operands bound.
+     */
+    interface Step {
+        void run(Cpu cpu, int[] r, Memory mem);
+    }
+
+    private static final Step NOP = (cpu, r, mem) -> { };
+
+    final int pc;
+    final Step[] steps;
+
+    // The branch (Op.INVALID if the block falls through), its word and its delay slot.
+    final int branchOp;
+    final int branchWord;
+    final Step delay;
+
+    // Number of words covered by the block (steps, branch and delay slot).
+    final int length;
+
+    // Number of times the block was entered.
+    long count;
+
+    // The block compiled to a JVM class once it is hot (see BlockCompiler), null until then.
+    CompiledBlock compiled;
+
+    private Block(int pc, Step[] steps, int branchOp, int branchWord, Step delay) {
+        this.pc         = pc;
+        this.steps      = steps;
+        this.branchOp   = branchOp;
+        this.branchWord = branchWord;
+        this.delay      = delay;
+        this.length     = steps.length + ((branchOp == Op.INVALID) ? 0 : 2);
+    }
+
+    /**
+     * Returns the address following the instructions of a block that falls through.
+     * @return Address.
+     */
+    int getNext() {
+        return pc + length * 4;
+    }
+
+    /**
+     * Returns the address of the branch.
+     * @return Address.
+     */
+    int getBranchPc() {
+        return pc + steps.length * 4;
+    }
+
+    /**
+     * Returns true if op ends a block: a branch (the functions Disassembler.isBranchFunction accepts, and bc1f,
+     * bc1t, bc1fl, bc1tl) or a jump (j, jal, jr, jalr). The ops are listed instead of calling isBranchFunction,
+     * which tests the name of the function ("break" starts with "b" too) and would need the name of every word.
+     * @param op The op.
+     * @return True if a block ends with op.
+     */
+    static boolean isBranch(int op) {
+        switch (op) {
+            case Op.J:      case Op.JAL:    case Op.JR:      case Op.JALR:
+            case Op.BEQ:    case Op.BNE:    case Op.BLEZ:    case Op.BGTZ:
+            case Op.BLTZ:   case Op.BGEZ:   case Op.BLTZAL:  case Op.BGEZAL:
+            case Op.BEQL:   case Op.BNEL:   case Op.BLEZL:   case Op.BGTZL:
+            case Op.BLTZL:  case Op.BGEZL:  case Op.BLTZALL: case Op.BGEZALL:
+            case Op.BC1F:   case Op.BC1T:   case Op.BC1FL:   case Op.BC1TL:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Translates the block starting at pc.
+     * @param pc Address of the first instruction.
+     * @param words Words of the code, words[i] is at base + i * 4.
+     * @param ops Ops of the words (see Op.predecode).
+     * @param base Address of words[0].
+     * @return The block, null if the first instruction can not be bound (it has to be interpreted).
+     */
+    static Block translate(int pc, int[] words, int[] ops, int base) {
+
+        int first = (pc - base) >>> 2;
+        int i     = first;
+        Step[] steps = new Step[MAX_STEPS];
+        int count = 0;
+
+        while ((i < words.length) && (count < MAX_STEPS)) {
+
+            int op = ops[i];
+
+            if (isBranch(op)) {
+                // The delay slot must be an instruction that can be bound, otherwise the branch is interpreted.
+                Step delay = (i + 1 < words.length) ? bind(ops[i + 1], words[i + 1], base + (i + 1) * 4) : null;
+                if (delay == null)
+                    break;
+                return new Block(pc, trim(steps, count), op, words[i], delay);
+            }
+
+            Step step = bind(op, words[i], base + i * 4);
+            if (step == null)
+                break;
+            steps[count++] = step;
+            i++;
+        }
+
+        if (count == 0)
+            return null;
+        return new Block(pc, trim(steps, count), Op.INVALID, 0, null);
+    }
+
+    private static Step[] trim(Step[] steps, int count) {
+        Step[] trimmed = new Step[count];
+        System.arraycopy(steps, 0, trimmed, 0, count);
+        return trimmed;
+    }
+
+    /**
+     * Binds one instruction that is not a branch.
+     * @return The step, or null if the instruction can not be bound.
+     */
+    static Step bind(int op, int word, int pc) {
+
+        final int s   = (word >>> 21) & 0x1f;
+        final int t   = (word >>> 16) & 0x1f;
+        final int d   = (word >>> 11) & 0x1f;
+        final int sa  = (word >>> 6) & 0x1f;
+        final int imm = (short) word;
+        final int uimm = word & 0xffff;
+
+        // Destination of the ops that only write a register, writing $zero does nothing.
+        int dest = -1;
+        switch (op) {
+            case Op.SLL: case Op.SRL: case Op.SRA: case Op.SLLV: case Op.SRLV: case Op.SRAV:
+            case Op.ADDU: case Op.SUBU: case Op.AND: case Op.OR: case Op.XOR: case Op.NOR:
+            case Op.SLT: case Op.SLTU: case Op.MOVZ: case Op.MOVN: case Op.MFHI: case Op.MFLO:
+            case Op.MUL: case Op.CLZ: case Op.CLO: case Op.MOVF: case Op.MOVT:
+                dest = d;
+                break;
+            case Op.ADDIU: case Op.SLTI: case Op.SLTIU: case Op.ANDI: case Op.ORI: case Op.XORI: case Op.LUI:
+            case Op.MFC1: case Op.CFC1:
+                dest = t;
+                break;
+            default:
+                break;
+        }
+        if (dest == 0)
+            return NOP;
+
+        switch (op) {
+
+            case Op.NOP:
+            case Op.SYNC:
+            case Op.PREF:
+            case Op.CACHE:
+                return NOP;
+
+            case Op.SLL:  return (c, r, m) -> r[d] = r[t] << sa;
+            case Op.SRL:  return (c, r, m) -> r[d] = r[t] >>> sa;
+            case Op.SRA:  return (c, r, m) -> r[d] = r[t] >> sa;
+            case Op.SLLV: return (c, r, m) -> r[d] = r[t] << r[s];
+            case Op.SRLV: return (c, r, m) -> r[d] = r[t] >>> r[s];
+            case Op.SRAV: return (c, r, m) -> r[d] = r[t] >> r[s];
+
+            case Op.ADD:  return zero(d, (c, r, m) -> r[d] = Interpreter.addExact(r[s], r[t], pc));
+            case Op.ADDU: return (c, r, m) -> r[d] = r[s] + r[t];
+            case Op.SUB:  return zero(d, (c, r, m) -> r[d] = Interpreter.subExact(r[s], r[t], pc));
+            case Op.SUBU: return (c, r, m) -> r[d] = r[s] - r[t];
+            case Op.AND:  return (c, r, m) -> r[d] = r[s] & r[t];
+            case Op.OR:   return (s == 0) ? (c, r, m) -> r[d] = r[t] : (c, r, m) -> r[d] = r[s] | r[t];
+            case Op.XOR:  return (c, r, m) -> r[d] = r[s] ^ r[t];
+            case Op.NOR:  return (c, r, m) -> r[d] = ~(r[s] | r[t]);
+            case Op.SLT:  return (c, r, m) -> r[d] = (r[s] < r[t]) ? 1 : 0;
+            case Op.SLTU: return (c, r, m) -> r[d] = (Integer.compareUnsigned(r[s], r[t]) < 0) ? 1 : 0;
+            case Op.MOVZ: return (c, r, m) -> { if (r[t] == 0) r[d] = r[s]; };
+            case Op.MOVN: return (c, r, m) -> { if (r[t] != 0) r[d] = r[s]; };
+            case Op.MOVF: return (c, r, m) -> { if (!Fpu.condition(c.fcsr, t >>> 2)) r[d] = r[s]; };
+            case Op.MOVT: return (c, r, m) -> { if (Fpu.condition(c.fcsr, t >>> 2)) r[d] = r[s]; };
+
+            case Op.ADDI:  return zero(t, (c, r, m) -> r[t] = Interpreter.addExact(r[s], imm, pc));
+            case Op.ADDIU: return (s == 0) ? (c, r, m) -> r[t] = imm : (c, r, m) -> r[t] = r[s] + imm;
+            case Op.SLTI:  return (c, r, m) -> r[t] = (r[s] < imm) ? 1 : 0;
+            case Op.SLTIU: return (c, r, m) -> r[t] = (Integer.compareUnsigned(r[s], imm) < 0) ? 1 : 0;
+            case Op.ANDI:  return (c, r, m) -> r[t] = r[s] & uimm;
+            case Op.ORI:   return (c, r, m) -> r[t] = r[s] | uimm;
+            case Op.XORI:  return (c, r, m) -> r[t] = r[s] ^ uimm;
+            case Op.LUI: {
+                final int value = word << 16;
+                return (c, r, m) -> r[t] = value;
+            }
+
+            case Op.LB:  return zero(t, (c, r, m) -> r[t] = (byte) m.loadByte(r[s] + imm));
+            case Op.LBU: return zero(t, (c, r, m) -> r[t] = m.loadByte(r[s] + imm));
+            case Op.LH:  return zero(t, (c, r, m) -> r[t] = (short) m.loadHalf(Interpreter.aligned(r[s] + imm, 1, pc)));
+            case Op.LHU: return zero(t, (c, r, m) -> r[t] = m.loadHalf(Interpreter.aligned(r[s] + imm, 1, pc)));
+            case Op.LW:  return zero(t, (c, r, m) -> r[t] = m.loadWord(Interpreter.aligned(r[s] + imm, 3, pc)));
+            case Op.LWL: return zero(t, (c, r, m) -> r[t] = Interpreter.lwl(m, r[s] + imm, r[t]));
+            case Op.LWR: return zero(t, (c, r, m) -> r[t] = Interpreter.lwr(m, r[s] + imm, r[t]));
+            case Op.SB:  return (c, r, m) -> m.storeByte(r[s] + imm, r[t]);
+            case Op.SH:  return (c, r, m) -> m.storeHalf(Interpreter.aligned(r[s] + imm, 1, pc), r[t]);
+            case Op.SW:  return (c, r, m) -> m.storeWord(Interpreter.aligned(r[s] + imm, 3, pc), r[t]);
+            case Op.SWL: return (c, r, m) -> Interpreter.swl(m, r[s] + imm, r[t]);
+            case Op.SWR: return (c, r, m) -> Interpreter.swr(m, r[s] + imm, r[t]);
+
+            case Op.LL:
+                return zero(t, (c, r, m) -> {
+                    r[t]    = m.loadWord(Interpreter.aligned(r[s] + imm, 3, pc));
+                    c.llBit = true;
+                });
+            case Op.SC:
+                return zero(t, (c, r, m) -> {
+                    if (c.llBit)
+                        m.storeWord(Interpreter.aligned(r[s] + imm, 3, pc), r[t]);
+                    r[t]    = c.llBit ? 1 : 0;
+                    c.llBit = false;
+                });
+
+            // Coprocessor 1 (ft is the t field, fs the d field and fd the sa field).
+            case Op.MFC1: return (c, r, m) -> r[t] = c.fpr[d];
+            case Op.MTC1: return (c, r, m) -> c.fpr[d] = r[t];
+            case Op.CFC1: return (c, r, m) -> r[t] = Fpu.control(c, d);
+            case Op.CTC1: return (c, r, m) -> Fpu.setControl(c, d, r[t]);
+            case Op.LWC1: return (c, r, m) -> c.fpr[t] = m.loadWord(Interpreter.aligned(r[s] + imm, 3, pc));
+            case Op.SWC1: return (c, r, m) -> m.storeWord(Interpreter.aligned(r[s] + imm, 3, pc), c.fpr[t]);
+            case Op.LDC1: return (c, r, m) -> Fpu.loadDouble(m, Interpreter.aligned(r[s] + imm, 7, pc), c.fpr, t);
+            case Op.SDC1: return (c, r, m) -> Fpu.storeDouble(m, Interpreter.aligned(r[s] + imm, 7, pc), c.fpr, t);
+            case Op.ADD_S: return (c, r, m) -> Fpu.s(c.fpr, sa, Fpu.s(c.fpr, d) + Fpu.s(c.fpr, t));
+            case Op.ADD_D: return (c, r, m) -> Fpu.d(c.fpr, sa, Fpu.d(c.fpr, d) + Fpu.d(c.fpr, t));
+            case Op.SUB_S: return (c, r, m) -> Fpu.s(c.fpr, sa, Fpu.s(c.fpr, d) - Fpu.s(c.fpr, t));
+            case Op.SUB_D: return (c, r, m) -> Fpu.d(c.fpr, sa, Fpu.d(c.fpr, d) - Fpu.d(c.fpr, t));
+            case Op.MUL_S: return (c, r, m) -> Fpu.s(c.fpr, sa, Fpu.s(c.fpr, d) * Fpu.s(c.fpr, t));
+            case Op.MUL_D: return (c, r, m) -> Fpu.d(c.fpr, sa, Fpu.d(c.fpr, d) * Fpu.d(c.fpr, t));
+            case Op.DIV_S: return (c, r, m) -> Fpu.s(c.fpr, sa, Fpu.s(c.fpr, d) / Fpu.s(c.fpr, t));
+            case Op.DIV_D: return (c, r, m) -> Fpu.d(c.fpr, sa, Fpu.d(c.fpr, d) / Fpu.d(c.fpr, t));
+            case Op.MOV_S: return (c, r, m) -> c.fpr[sa] = c.fpr[d];
+            case Op.C_S:   return (c, r, m) -> Fpu.compareS(c, word);
+            case Op.C_D:   return (c, r, m) -> Fpu.compareD(c, word);
+
+            case Op.MFHI: return (c, r, m) -> r[d] = c.hi;
+            case Op.MTHI: return (c, r, m) -> c.hi = r[s];
+            case Op.MFLO: return (c, r, m) -> r[d] = c.lo;
+            case Op.MTLO: return (c, r, m) -> c.lo = r[s];
+
+            case Op.MULT:
+                return (c, r, m) -> {
+                    long p = (long) r[s] * r[t];
+                    c.lo = (int) p;
+                    c.hi = (int) (p >>> 32);
+                };
+            case Op.MULTU:
+                return (c, r, m) -> {
+                    long p = Integer.toUnsignedLong(r[s]) * Integer.toUnsignedLong(r[t]);
+                    c.lo = (int) p;
+                    c.hi = (int) (p >>> 32);
+                };
+            case Op.DIV:
+                return (c, r, m) -> {
+                    if (r[t] != 0) {
+                        c.lo = r[s] / r[t];
+                        c.hi = r[s] % r[t];
+                    }
+                };
+            case Op.DIVU:
+                return (c, r, m) -> {
+                    if (r[t] != 0) {
+                        c.lo = Integer.divideUnsigned(r[s], r[t]);
+                        c.hi = Integer.remainderUnsigned(r[s], r[t]);
+                    }
+                };
+            case Op.MADD:
+            case Op.MADDU:
+            case Op.MSUB:
+            case Op.MSUBU: {
+                final boolean unsigned = (op == Op.MADDU) || (op == Op.MSUBU);
+                final boolean add      = (op == Op.MADD) || (op == Op.MADDU);
+                return (c, r, m) -> {
+                    long p   = unsigned ? Integer.toUnsignedLong(r[s]) * Integer.toUnsignedLong(r[t])
+                                        : (long) r[s] * r[t];
+                    long acc = ((long) c.hi << 32) | Integer.toUnsignedLong(c.lo);
+                    acc      = add ? acc + p : acc - p;
+                    c.lo = (int) acc;
+                    c.hi = (int) (acc >>> 32);
+                };
+            }
+            case Op.MUL: return (c, r, m) -> r[d] = r[s] * r[t];
+            case Op.CLZ: return (c, r, m) -> r[d] = Integer.numberOfLeadingZeros(r[s]);
+            case Op.CLO: return (c, r, m) -> r[d] = Integer.numberOfLeadingZeros(~r[s]);
+
+            case Op.TGE:   return (c, r, m) -> Interpreter.trap(r[s] >= r[t], pc);
+            case Op.TGEU:  return (c, r, m) -> Interpreter.trap(Integer.compareUnsigned(r[s], r[t]) >= 0, pc);
+            case Op.TLT:   return (c, r, m) -> Interpreter.trap(r[s] < r[t], pc);
+            case Op.TLTU:  return (c, r, m) -> Interpreter.trap(Integer.compareUnsigned(r[s], r[t]) < 0, pc);
+            case Op.TEQ:   return (c, r, m) -> Interpreter.trap(r[s] == r[t], pc);
+            case Op.TNE:   return (c, r, m) -> Interpreter.trap(r[s] != r[t], pc);
+            case Op.TGEI:  return (c, r, m) -> Interpreter.trap(r[s] >= imm, pc);
+            case Op.TGEIU: return (c, r, m) -> Interpreter.trap(Integer.compareUnsigned(r[s], imm) >= 0, pc);
+            case Op.TLTI:  return (c, r, m) -> Interpreter.trap(r[s] < imm, pc);
+            case Op.TLTIU: return (c, r, m) -> Interpreter.trap(Integer.compareUnsigned(r[s], imm) < 0, pc);
+            case Op.TEQI:  return (c, r, m) -> Interpreter.trap(r[s] == imm, pc);
+            case Op.TNEI:  return (c, r, m) -> Interpreter.trap(r[s] != imm, pc);
+
+            default:
+                if (Op.isFloat(op))
+                    return (c, r, m) -> Fpu.execute(c, op, word);
+                // Branches, syscall, break and the ops the interpreter reports as unsupported.
+                return null;
+        }
+    }
+
+    /**
+     * Clears $zero after step if it writes register reg and reg is $zero (the step is still run for its exceptions
+     * and memory accesses).
+     */
+    private static Step zero(int reg, Step step) {
+        if (reg != 0)
+            return step;
+        return (c, r, m) -> {
+            step.run(c, r, m);
+            r[0] = 0;
+        };
+    }
+}
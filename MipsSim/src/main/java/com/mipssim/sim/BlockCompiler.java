@@ -0,0 +1,782 @@
+package com.mipssim.sim;
+
+import static com.mipssim.sim.ClassFile.*;
+
+/**
+ * BlockCompiler translates a hot Block into a JVM class (a subclass of CompiledBlock), so HotSpot compiles the
+ * guest instructions like ordinary Java code. The guest registers the block uses are loaded into locals when it is
+ * entered and the ones it writes are stored back when it leaves, so inside the block a register operation is a
+ * local variable operation. A block that branches back to its own start loops inside the generated method.
+ *
+ * If an instruction throws (overflow, address error, trap), the registers written so far are stored before the
+ * exception leaves the block, like after the same instruction in the interpreter.
+ *
+ * Every class gets its own class loader, so it is unloaded when its block is invalidated and dropped.
+ */
+final class BlockCompiler {
+
+    private static final String SUPER  = "com/mipssim/sim/CompiledBlock";
+    private static final String MEMORY = "com/mipssim/sim/Memory";
+    private static final String CPU_MEM = "(Lcom/mipssim/sim/Cpu;Lcom/mipssim/sim/Memory;";
+    private static final String MEM_FPR = "(Lcom/mipssim/sim/Memory;I[II)V";
+
+    // Locals of the run method: this, its arguments, the instruction count, a temporary, the guest registers 1-31
+    // (register k in local REGS + k) and the FPRs of the Cpu.
+    private static final int CPU = 1, R = 2, MEM = 3, BUDGET = 4, COUNT = 6, TEMP = 8, REGS = 8, FPR = REGS + 32;
+    private static final int MAX_LOCALS = FPR + 1;
+    private static final int MAX_STACK = 8;
+
+    private static final int LCONST_0 = 0x09;
+
+    /**
+     * Loads every generated class on its own.
+     */
+    private static final class Loader extends ClassLoader {
+
+        Loader() {
+            super(CompiledBlock.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    private final ClassFile cf;
+
+    // Start of the block and the registers written by it (a bit per register).
+    private final Label loop = new Label();
+    private int written;
+
+    private BlockCompiler(String name) {
+        this.cf = new ClassFile(name, SUPER);
+    }
+
+    /**
+     * Compiles a block.
+     * @param block The block.
+     * @param words Words of the code, words[i] is at base + i * 4.
+     * @param ops Ops of the words.
+     * @param base Address of words[0].
+     * @return The compiled block, null if an instruction of the block can not be compiled.
+     */
+    static CompiledBlock compile(Block block, int[] words, int[] ops, int base) {
+
+        String name = String.format("com/mipssim/sim/jit/Block_%08x", block.pc);
+        byte[] bytes = new BlockCompiler(name).generate(block, words, ops, base);
+        if (bytes == null)
+            return null;
+
+        try {
+            Class<?> c = new Loader().define(name.replace('/', '.'), bytes);
+            return (CompiledBlock) c.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the class file of a block, null if an instruction can not be compiled.
+     */
+    private byte[] generate(Block block, int[] words, int[] ops, int base) {
+
+        int first = (block.pc - base) >>> 2;
+        int steps = block.steps.length;
+        int last  = first + block.length;
+
+        // Load every register named by an instruction of the block (reading a few too many does no harm).
+        int used = 0;
+        for (int i = first; i < last; i++)
+            used |= (1 << ((words[i] >>> 21) & 0x1f)) | (1 << ((words[i] >>> 16) & 0x1f)) |
+                    (1 << ((words[i] >>> 11) & 0x1f));
+        used |= 1 << 31;
+        for (int k = 1; k < 32; k++) {
+            if ((used & (1 << k)) != 0) {
+                cf.local(ALOAD, R);
+                cf.push(k);
+                cf.op(IALOAD);
+                cf.local(ISTORE, REGS + k);
+            }
+        }
+        cf.local(ALOAD, CPU);
+        cf.member(INVOKESTATIC, SUPER, "fpr", "(Lcom/mipssim/sim/Cpu;)[I");
+        cf.local(ASTORE, FPR);
+        cf.op(LCONST_0);
+        cf.local(LSTORE, COUNT);
+
+        Label handler = new Label();
+        Label end     = new Label();
+        cf.place(loop);
+
+        boolean stores = false;
+        for (int i = first; i < first + steps; i++) {
+            if (!instruction(ops[i], words[i], base + i * 4))
+                return null;
+            stores |= isStore(ops[i]);
+        }
+
+        if (block.branchOp == Op.INVALID) {
+            count(steps);
+            exit(block.getNext(), false);
+        } else {
+            int slot = first + steps + 1;
+            if (!terminator(block, ops[slot], words[slot], base + slot * 4, stores | isStore(ops[slot])))
+                return null;
+        }
+
+        cf.place(end);
+
+        // Store the registers written so far and rethrow.
+        cf.place(handler);
+        cf.local(ASTORE, TEMP);
+        spill();
+        cf.local(ALOAD, TEMP);
+        cf.op(ATHROW);
+        cf.handler(loop, end, handler);
+
+        return cf.toBytes("run", "(Lcom/mipssim/sim/Cpu;[ILcom/mipssim/sim/Memory;J)J", MAX_STACK, MAX_LOCALS);
+    }
+
+    /**
+     * Generates the branch at the end of a block, its delay slot and the exits.
+     */
+    private boolean terminator(Block block, int delayOp, int delayWord, int delayPc, boolean stores) {
+
+        int op     = block.branchOp;
+        int word   = block.branchWord;
+        int bpc    = block.getBranchPc();
+        int slot   = bpc + 4;
+        int s      = (word >>> 21) & 0x1f;
+        int t      = (word >>> 16) & 0x1f;
+        int length = block.steps.length + 2;
+
+        switch (op) {
+            case Op.J:
+            case Op.JAL: {
+                int target = (slot & 0xf0000000) | ((word & 0x3ffffff) << 2);
+                if (op == Op.JAL) {
+                    cf.push(bpc + 8);
+                    store(31);
+                }
+                if (!instruction(delayOp, delayWord, delayPc))
+                    return false;
+                count(length);
+                if (target == block.pc)
+                    loopBack(length, stores);
+                exit(target, false);
+                return true;
+            }
+            case Op.JR:
+            case Op.JALR: {
+                int d = (word >>> 11) & 0x1f;
+                load(s);
+                cf.local(ISTORE, TEMP);
+                if ((op == Op.JALR) && (d != 0)) {
+                    cf.push(bpc + 8);
+                    store(d);
+                }
+                if (!instruction(delayOp, delayWord, delayPc))
+                    return false;
+                count(length);
+                exit(0, true);
+                return true;
+            }
+            default:
+                break;
+        }
+
+        // A conditional branch: jump to notTaken unless the condition holds.
+        Label notTaken = new Label();
+        if ((op == Op.BC1F) || (op == Op.BC1T) || (op == Op.BC1FL) || (op == Op.BC1TL)) {
+            condition((word >>> 18) & 7);
+            cf.jump(((op == Op.BC1T) || (op == Op.BC1TL)) ? IFEQ : IFNE, notTaken);
+        } else {
+            load(s);
+            switch (op) {
+                case Op.BEQ:  case Op.BEQL:  load(t); cf.jump(IF_ICMPNE, notTaken); break;
+                case Op.BNE:  case Op.BNEL:  load(t); cf.jump(IF_ICMPEQ, notTaken); break;
+                case Op.BLEZ: case Op.BLEZL: cf.jump(IFGT, notTaken); break;
+                case Op.BGTZ: case Op.BGTZL: cf.jump(IFLE, notTaken); break;
+                case Op.BLTZ: case Op.BLTZL: case Op.BLTZAL: case Op.BLTZALL: cf.jump(IFGE, notTaken); break;
+                default:                     cf.jump(IFLT, notTaken); break;
+            }
+        }
+
+        boolean link   = (op == Op.BLTZAL) || (op == Op.BGEZAL) || (op == Op.BLTZALL) || (op == Op.BGEZALL);
+        boolean likely = (op == Op.BEQL) || (op == Op.BNEL) || (op == Op.BLEZL) || (op == Op.BGTZL) ||
+                         (op == Op.BLTZL) || (op == Op.BGEZL) || (op == Op.BLTZALL) || (op == Op.BGEZALL) ||
+                         (op == Op.BC1FL) || (op == Op.BC1TL);
+        int target = slot + ((short) word << 2);
+
+        for (int taken = 1; taken >= 0; taken--) {
+            if (taken == 0)
+                cf.place(notTaken);
+            if (link) {
+                cf.push(bpc + 8);
+                store(31);
+            }
+            if ((taken == 1) || !likely) {
+                // The delay slot, a branch likely skips it when it is not taken.
+                if (!instruction(delayOp, delayWord, delayPc))
+                    return false;
+                count(length);
+            } else {
+                count(length - 1);
+            }
+            if ((taken == 1) && (target == block.pc))
+                loopBack(length, stores);
+            exit((taken == 1) ? target : slot + 4, false);
+        }
+        return true;
+    }
+
+    /**
+     * Jumps back to the start of the block if there is budget for one more pass and the block is still valid.
+     */
+    private void loopBack(int length, boolean stores) {
+        Label leave = new Label();
+        if (stores) {
+            cf.op(ALOAD_0);
+            cf.member(GETFIELD, SUPER, "invalidated", "Z");
+            cf.jump(IFNE, leave);
+        }
+        cf.local(LLOAD, BUDGET);
+        cf.local(LLOAD, COUNT);
+        cf.op(LSUB);
+        cf.push(length);
+        cf.op(I2L);
+        cf.op(LCMP);
+        cf.jump(IFLT, leave);
+        cf.jump(GOTO, loop);
+        cf.place(leave);
+    }
+
+    /**
+     * Adds length to the instruction count.
+     */
+    private void count(int length) {
+        cf.local(LLOAD, COUNT);
+        cf.push(length);
+        cf.op(I2L);
+        cf.op(LADD);
+        cf.local(LSTORE, COUNT);
+    }
+
+    /**
+     * Leaves the block: sets pc to target (or to the TEMP local) and returns the instruction count.
+     */
+    private void exit(int target, boolean inTemp) {
+        cf.local(ALOAD, CPU);
+        if (inTemp)
+            cf.local(ILOAD, TEMP);
+        else
+            cf.push(target);
+        cf.member(INVOKESTATIC, SUPER, "jump", "(Lcom/mipssim/sim/Cpu;I)V");
+        spill();
+        cf.local(LLOAD, COUNT);
+        cf.op(LRETURN);
+    }
+
+    /**
+     * Stores the written registers in the register array.
+     */
+    private void spill() {
+        for (int k = 1; k < 32; k++) {
+            if ((written & (1 << k)) != 0) {
+                cf.local(ALOAD, R);
+                cf.push(k);
+                cf.local(ILOAD, REGS + k);
+                cf.op(IASTORE);
+            }
+        }
+    }
+
+    private void load(int reg) {
+        if (reg == 0)
+            cf.push(0);
+        else
+            cf.local(ILOAD, REGS + reg);
+    }
+
+    /**
+     * Stores the value on the stack in a register, a value for $zero is dropped.
+     */
+    private void store(int reg) {
+        if (reg == 0) {
+            cf.op(POP);
+        } else {
+            cf.local(ISTORE, REGS + reg);
+            written |= 1 << reg;
+        }
+    }
+
+    /**
+     * Pushes 1 if the comparison of the two values on the stack is true and 0 if it is false.
+     * @param opposite The IF_ICMP opcode of the opposite comparison.
+     */
+    private void compare(int opposite) {
+        Label no   = new Label();
+        Label done = new Label();
+        cf.jump(opposite, no);
+        cf.push(1);
+        cf.jump(GOTO, done);
+        cf.place(no);
+        cf.push(0);
+        cf.place(done);
+    }
+
+    /**
+     * Pushes rs + imm, checked for alignment if mask is not 0.
+     */
+    private void address(int s, int imm, int mask, int pc) {
+        load(s);
+        if (imm != 0) {
+            cf.push(imm);
+            cf.op(IADD);
+        }
+        if (mask != 0) {
+            cf.push(mask);
+            cf.push(pc);
+            cf.member(INVOKESTATIC, SUPER, "aligned", "(III)I");
+        }
+    }
+
+    private static boolean isStore(int op) {
+        switch (op) {
+            case Op.SB: case Op.SH: case Op.SW: case Op.SWL: case Op.SWR: case Op.SC: case Op.SWC1: case Op.SDC1:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Generates one instruction that is not a branch (the ops Block.bind accepts).
+     * @return False if the op can not be compiled.
+     */
+    private boolean instruction(int op, int word, int pc) {
+
+        final int s    = (word >>> 21) & 0x1f;
+        final int t    = (word >>> 16) & 0x1f;
+        final int d    = (word >>> 11) & 0x1f;
+        final int sa   = (word >>> 6) & 0x1f;
+        final int imm  = (short) word;
+        final int uimm = word & 0xffff;
+
+        switch (op) {
+
+            case Op.NOP:
+            case Op.SYNC:
+            case Op.PREF:
+            case Op.CACHE:
+                return true;
+
+            case Op.SLL:  return shift(t, sa, ISHL, d);
+            case Op.SRL:  return shift(t, sa, IUSHR, d);
+            case Op.SRA:  return shift(t, sa, ISHR, d);
+            case Op.SLLV: return binary(t, s, ISHL, d);
+            case Op.SRLV: return binary(t, s, IUSHR, d);
+            case Op.SRAV: return binary(t, s, ISHR, d);
+
+            case Op.ADD:  return exact(s, t, "addExact", pc, d);
+            case Op.ADDU: return binary(s, t, IADD, d);
+            case Op.SUB:  return exact(s, t, "subExact", pc, d);
+            case Op.SUBU: return binary(s, t, ISUB, d);
+            case Op.AND:  return binary(s, t, IAND, d);
+            case Op.OR:   return binary(s, t, IOR, d);
+            case Op.XOR:  return binary(s, t, IXOR, d);
+            case Op.MUL:  return binary(s, t, IMUL, d);
+            case Op.NOR:
+                if (d != 0) {
+                    load(s);
+                    load(t);
+                    cf.op(IOR);
+                    cf.push(-1);
+                    cf.op(IXOR);
+                    store(d);
+                }
+                return true;
+            case Op.SLT:
+            case Op.SLTU:
+                if (d != 0) {
+                    pushCompared(s, op == Op.SLTU);
+                    load(t);
+                    if (op == Op.SLTU)
+                        flip();
+                    compare(IF_ICMPGE);
+                    store(d);
+                }
+                return true;
+            case Op.MOVZ:
+            case Op.MOVN:
+                if (d != 0) {
+                    Label skip = new Label();
+                    load(t);
+                    cf.jump((op == Op.MOVZ) ? IFNE : IFEQ, skip);
+                    load(s);
+                    store(d);
+                    cf.place(skip);
+                }
+                return true;
+
+            case Op.ADDI:
+                load(s);
+                cf.push(imm);
+                cf.push(pc);
+                cf.member(INVOKESTATIC, SUPER, "addExact", "(III)I");
+                store(t);
+                return true;
+            case Op.ADDIU:
+                if (t != 0) {
+                    if (s == 0) {
+                        cf.push(imm);
+                    } else {
+                        load(s);
+                        cf.push(imm);
+                        cf.op(IADD);
+                    }
+                    store(t);
+                }
+                return true;
+            case Op.SLTI:
+            case Op.SLTIU:
+                if (t != 0) {
+                    boolean unsigned = (op == Op.SLTIU);
+                    pushCompared(s, unsigned);
+                    cf.push(unsigned ? imm ^ Integer.MIN_VALUE : imm);
+                    compare(IF_ICMPGE);
+                    store(t);
+                }
+                return true;
+            case Op.ANDI: return immediate(s, uimm, IAND, t);
+            case Op.ORI:  return immediate(s, uimm, IOR, t);
+            case Op.XORI: return immediate(s, uimm, IXOR, t);
+            case Op.LUI:
+                if (t != 0) {
+                    cf.push(word << 16);
+                    store(t);
+                }
+                return true;
+
+            case Op.LB:
+            case Op.LBU:
+            case Op.LH:
+            case Op.LHU:
+            case Op.LW: {
+                boolean half = (op == Op.LH) || (op == Op.LHU);
+                cf.local(ALOAD, MEM);
+                address(s, imm, (op == Op.LW) ? 3 : half ? 1 : 0, pc);
+                cf.member(INVOKEVIRTUAL, MEMORY, (op == Op.LW) ? "loadWord" : half ? "loadHalf" : "loadByte",
+                          "(I)I");
+                if (op == Op.LB)
+                    cf.op(I2B);
+                else if (op == Op.LH)
+                    cf.op(I2S);
+                store(t);
+                return true;
+            }
+            case Op.LWL:
+            case Op.LWR:
+                cf.local(ALOAD, MEM);
+                address(s, imm, 0, pc);
+                load(t);
+                cf.member(INVOKESTATIC, SUPER, (op == Op.LWL) ? "lwl" : "lwr", "(Lcom/mipssim/sim/Memory;II)I");
+                store(t);
+                return true;
+            case Op.SB:
+            case Op.SH:
+            case Op.SW:
+                cf.local(ALOAD, MEM);
+                address(s, imm, (op == Op.SW) ? 3 : (op == Op.SH) ? 1 : 0, pc);
+                load(t);
+                cf.member(INVOKEVIRTUAL, MEMORY, (op == Op.SW) ? "storeWord" : (op == Op.SH) ? "storeHalf"
+                                                                                          : "storeByte", "(II)V");
+                return true;
+            case Op.SWL:
+            case Op.SWR:
+                cf.local(ALOAD, MEM);
+                address(s, imm, 0, pc);
+                load(t);
+                cf.member(INVOKESTATIC, SUPER, (op == Op.SWL) ? "swl" : "swr", "(Lcom/mipssim/sim/Memory;II)V");
+                return true;
+            case Op.LL:
+                cf.local(ALOAD, CPU);
+                cf.local(ALOAD, MEM);
+                address(s, imm, 0, pc);
+                cf.push(pc);
+                cf.member(INVOKESTATIC, SUPER, "ll", CPU_MEM + "II)I");
+                store(t);
+                return true;
+            case Op.SC:
+                cf.local(ALOAD, CPU);
+                cf.local(ALOAD, MEM);
+                address(s, imm, 0, pc);
+                load(t);
+                cf.push(pc);
+                cf.member(INVOKESTATIC, SUPER, "sc", CPU_MEM + "III)I");
+                store(t);
+                return true;
+
+            case Op.MOVF:
+            case Op.MOVT:
+                if (d != 0) {
+                    Label skip = new Label();
+                    condition(t >>> 2);
+                    cf.jump((op == Op.MOVF) ? IFNE : IFEQ, skip);
+                    load(s);
+                    store(d);
+                    cf.place(skip);
+                }
+                return true;
+
+            // Coprocessor 1, the FPRs stay in their array (ft is the t field, fs the d field and fd the sa field).
+            case Op.MFC1:
+                if (t != 0) {
+                    cf.local(ALOAD, FPR);
+                    cf.push(d);
+                    cf.op(IALOAD);
+                    store(t);
+                }
+                return true;
+            case Op.MTC1:
+                cf.local(ALOAD, FPR);
+                cf.push(d);
+                load(t);
+                cf.op(IASTORE);
+                return true;
+            case Op.CFC1:
+                if (t != 0) {
+                    cf.local(ALOAD, CPU);
+                    cf.push(d);
+                    cf.member(INVOKESTATIC, SUPER, "control", "(Lcom/mipssim/sim/Cpu;I)I");
+                    store(t);
+                }
+                return true;
+            case Op.CTC1:
+                cf.local(ALOAD, CPU);
+                cf.push(d);
+                load(t);
+                cf.member(INVOKESTATIC, SUPER, "setControl", "(Lcom/mipssim/sim/Cpu;II)V");
+                return true;
+            case Op.LWC1:
+                cf.local(ALOAD, FPR);
+                cf.push(t);
+                cf.local(ALOAD, MEM);
+                address(s, imm, 3, pc);
+                cf.member(INVOKEVIRTUAL, MEMORY, "loadWord", "(I)I");
+                cf.op(IASTORE);
+                return true;
+            case Op.SWC1:
+                cf.local(ALOAD, MEM);
+                address(s, imm, 3, pc);
+                cf.local(ALOAD, FPR);
+                cf.push(t);
+                cf.op(IALOAD);
+                cf.member(INVOKEVIRTUAL, MEMORY, "storeWord", "(II)V");
+                return true;
+            case Op.LDC1:
+            case Op.SDC1:
+                cf.local(ALOAD, MEM);
+                address(s, imm, 7, pc);
+                cf.local(ALOAD, FPR);
+                cf.push(t);
+                cf.member(INVOKESTATIC, SUPER, (op == Op.LDC1) ? "loadDouble" : "storeDouble", MEM_FPR);
+                return true;
+            case Op.ADD_S: return arithmetic(false, d, t, FADD, sa);
+            case Op.ADD_D: return arithmetic(true, d, t, DADD, sa);
+            case Op.SUB_S: return arithmetic(false, d, t, FSUB, sa);
+            case Op.SUB_D: return arithmetic(true, d, t, DSUB, sa);
+            case Op.MUL_S: return arithmetic(false, d, t, FMUL, sa);
+            case Op.MUL_D: return arithmetic(true, d, t, DMUL, sa);
+            case Op.DIV_S: return arithmetic(false, d, t, FDIV, sa);
+            case Op.DIV_D: return arithmetic(true, d, t, DDIV, sa);
+            case Op.MOV_S:
+                cf.local(ALOAD, FPR);
+                cf.push(sa);
+                cf.local(ALOAD, FPR);
+                cf.push(d);
+                cf.op(IALOAD);
+                cf.op(IASTORE);
+                return true;
+            case Op.C_S:
+            case Op.C_D:
+                cf.local(ALOAD, CPU);
+                cf.push(word);
+                cf.member(INVOKESTATIC, SUPER, (op == Op.C_S) ? "compareS" : "compareD", "(Lcom/mipssim/sim/Cpu;I)V");
+                return true;
+            case Op.MOVZ_S:
+            case Op.MOVZ_D:
+            case Op.MOVN_S:
+            case Op.MOVN_D: {
+                // The condition is a GPR, which is in a local here; the move itself is mov.fmt.
+                Label skip = new Label();
+                load(t);
+                cf.jump(((op == Op.MOVZ_S) || (op == Op.MOVZ_D)) ? IFNE : IFEQ, skip);
+                cop1(((op == Op.MOVZ_S) || (op == Op.MOVN_S)) ? Op.MOV_S : Op.MOV_D, word);
+                cf.place(skip);
+                return true;
+            }
+
+            case Op.MFHI:
+            case Op.MFLO:
+                if (d != 0) {
+                    cf.local(ALOAD, CPU);
+                    cf.member(INVOKESTATIC, SUPER, (op == Op.MFHI) ? "hi" : "lo", "(Lcom/mipssim/sim/Cpu;)I");
+                    store(d);
+                }
+                return true;
+            case Op.MTHI:
+            case Op.MTLO:
+                cf.local(ALOAD, CPU);
+                load(s);
+                cf.member(INVOKESTATIC, SUPER, (op == Op.MTHI) ? "setHi" : "setLo", "(Lcom/mipssim/sim/Cpu;I)V");
+                return true;
+            case Op.MULT:
+            case Op.MULTU:
+            case Op.DIV:
+            case Op.DIVU:
+                cf.local(ALOAD, CPU);
+                load(s);
+                load(t);
+                cf.member(INVOKESTATIC, SUPER, Op.name(op), "(Lcom/mipssim/sim/Cpu;II)V");
+                return true;
+            case Op.MADD:
+            case Op.MADDU:
+            case Op.MSUB:
+            case Op.MSUBU:
+                cf.local(ALOAD, CPU);
+                load(s);
+                load(t);
+                cf.push(((op == Op.MADDU) || (op == Op.MSUBU)) ? 1 : 0);
+                cf.push(((op == Op.MADD) || (op == Op.MADDU)) ? 1 : 0);
+                cf.member(INVOKESTATIC, SUPER, "accumulate", "(Lcom/mipssim/sim/Cpu;IIZZ)V");
+                return true;
+            case Op.CLZ:
+            case Op.CLO:
+                if (d != 0) {
+                    load(s);
+                    if (op == Op.CLO) {
+                        cf.push(-1);
+                        cf.op(IXOR);
+                    }
+                    cf.member(INVOKESTATIC, "java/lang/Integer", "numberOfLeadingZeros", "(I)I");
+                    store(d);
+                }
+                return true;
+
+            case Op.TGE: case Op.TGEU: case Op.TLT: case Op.TLTU: case Op.TEQ: case Op.TNE:
+            case Op.TGEI: case Op.TGEIU: case Op.TLTI: case Op.TLTIU: case Op.TEQI: case Op.TNEI: {
+                boolean immediate = (op >= Op.TGEI) && (op <= Op.TNEI);
+                cf.push(op);
+                load(s);
+                if (immediate)
+                    cf.push(imm);
+                else
+                    load(t);
+                cf.push(pc);
+                cf.member(INVOKESTATIC, SUPER, "trap", "(IIII)V");
+                return true;
+            }
+
+            default:
+                if (!Op.isFloat(op))
+                    return false;
+                cop1(op, word);
+                return true;
+        }
+    }
+
+    /**
+     * Pushes condition flag cc of the FCSR.
+     */
+    private void condition(int cc) {
+        cf.local(ALOAD, CPU);
+        cf.push(cc);
+        cf.member(INVOKESTATIC, SUPER, "condition", "(Lcom/mipssim/sim/Cpu;I)Z");
+    }
+
+    /**
+     * Calls CompiledBlock.cop1 for a computational coprocessor 1 op.
+     */
+    private void cop1(int op, int word) {
+        cf.local(ALOAD, CPU);
+        cf.push(op);
+        cf.push(word);
+        cf.member(INVOKESTATIC, SUPER, "cop1", "(Lcom/mipssim/sim/Cpu;II)V");
+    }
+
+    /**
+     * fd = fs op ft on singles or doubles, with JVM float arithmetic (which is IEEE 754, like the FPU).
+     */
+    private boolean arithmetic(boolean dbl, int fs, int ft, int opcode, int fd) {
+        String get = dbl ? "getD" : "getS";
+        String type = dbl ? "D" : "F";
+        cf.local(ALOAD, FPR);
+        cf.push(fd);
+        cf.local(ALOAD, FPR);
+        cf.push(fs);
+        cf.member(INVOKESTATIC, SUPER, get, "([II)" + type);
+        cf.local(ALOAD, FPR);
+        cf.push(ft);
+        cf.member(INVOKESTATIC, SUPER, get, "([II)" + type);
+        cf.op(opcode);
+        cf.member(INVOKESTATIC, SUPER, dbl ? "setD" : "setS", "([II" + type + ")V");
+        return true;
+    }
+
+    private boolean shift(int t, int sa, int opcode, int d) {
+        if (d != 0) {
+            load(t);
+            cf.push(sa);
+            cf.op(opcode);
+            store(d);
+        }
+        return true;
+    }
+
+    private boolean binary(int a, int b, int opcode, int d) {
+        if (d != 0) {
+            load(a);
+            load(b);
+            cf.op(opcode);
+            store(d);
+        }
+        return true;
+    }
+
+    private boolean immediate(int s, int uimm, int opcode, int t) {
+        if (t != 0) {
+            load(s);
+            cf.push(uimm);
+            cf.op(opcode);
+            store(t);
+        }
+        return true;
+    }
+
+    /**
+     * add and sub, which trap on overflow even when rd is $zero.
+     */
+    private boolean exact(int s, int t, String method, int pc, int d) {
+        load(s);
+        load(t);
+        cf.push(pc);
+        cf.member(INVOKESTATIC, SUPER, method, "(III)I");
+        store(d);
+        return true;
+    }
+
+    /**
+     * Pushes a register to compare, with its sign bit flipped for an unsigned comparison.
+     */
+    private void pushCompared(int reg, boolean unsigned) {
+        load(reg);
+        if (unsigned)
+            flip();
+    }
+
+    private void flip() {
+        cf.push(Integer.MIN_VALUE);
+        cf.op(IXOR);
+    }
+}
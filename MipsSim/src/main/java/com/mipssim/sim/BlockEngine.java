@@ -0,0 +1,311 @@
+package com.mipssim.sim;
+
+import com.mipssim.Mappings;
+
+import java.io.PrintStream;
+
+/**
+ * BlockEngine executes a program one basic block at a time. The first time an address is reached, the block
+ * starting there is translated (see Block) and stored in a table indexed by the address, so later visits run the
+ * bound steps without decoding. A write into the code invalidates every block that covers the written word (a
+ * block that is running when it overwrites itself finishes with its old instructions).
+ *
+ * Instructions that can not be bound (syscall, break, branches in delay slots, ...) and addresses outside of the
+ * program are executed by an Interpreter, one instruction at a time.
+ *
+ * With a JIT threshold (see setJitThreshold), a block that has been entered that many times is compiled into a JVM
+ * class by BlockCompiler and runs as compiled code from then on. Colder blocks keep running their steps.
+ *
+ * Without the JIT, blocks are not faster than the Interpreter (on a tight ALU loop they are about a third slower):
+ * every step is a call through the Step interface, which HotSpot can not inline at a call site that sees many
+ * lambda classes, while the interpreter's switch is compiled as one method. The translated blocks, their entry
+ * counts and their invalidation are what the JIT and the translation cache build on.
+ */
+public class BlockEngine implements Engine, Memory.Watcher {
+
+    private final Interpreter interpreter;
+    private final Memory memory;
+    private final int base;
+    private final int[] words;
+    private final int[] ops;
+
+    // Translated blocks, indexed by (address - base) / 4 of their first instruction.
+    private final Block[] blocks;
+
+    // Number of entries after which a block is compiled, 0 = never.
+    private long jitThreshold;
+
+    private long translated;
+    private long invalidated;
+    private long compiled;
+
+    /**
+     * Predecodes a program, blocks are translated when they are first reached.
+     * @param program Program to execute.
+     * @param map Mappings object used to decode the words.
+     */
+    public BlockEngine(Program program, Mappings map) {
+        this(program, map, Op.descriptors(program.getWords(), map));
+    }
+
+    /**
+     * Predecodes a program from the descriptors of its words, e.g. read from a TranslationCache.
+     * @param program Program to execute.
+     * @param map Mappings object used to decode words written by the program.
+     * @param descriptors Descriptor id of every word of the program (see Op.descriptors).
+     */
+    public BlockEngine(Program program, Mappings map, int[] descriptors) {
+
+        this.interpreter = new Interpreter(program, map, descriptors);
+        this.memory      = program.getMemory();
+        this.base        = interpreter.getBase();
+        this.words       = interpreter.getWords();
+        this.ops         = interpreter.getOps();
+        this.blocks      = new Block[words.length];
+
+        memory.watch(base, words.length * 4, this);
+    }
+
+    /**
+     * Predecodes the written word again and invalidates the blocks that cover it.
+     * @param addr Address of the word.
+     */
+    @Override
+    public void written(int addr) {
+
+        interpreter.written(addr);
+
+        int index = (addr - base) >>> 2;
+        for (int i = Math.max(0, index - Block.MAX_STEPS - 1); i <= index; i++) {
+            if ((blocks[i] != null) && (i + blocks[i].length > index)) {
+                if (blocks[i].compiled != null)
+                    blocks[i].compiled.invalidated = true;
+                blocks[i] = null;
+                invalidated++;
+            }
+        }
+    }
+
+    /**
+     * Compiles blocks to JVM classes once they have been entered n times.
+     * @param n Number of entries, 0 = never compile.
+     */
+    public void setJitThreshold(long n) {
+        this.jitThreshold = n;
+    }
+
+    /**
+     * Translates the blocks of an earlier run before this one starts, with their entry counts. Blocks that are
+     * already hot (see setJitThreshold) are compiled at once.
+     * @param starts Word index of the first instruction of every block (see getBlockStarts).
+     * @param counts Number of times each block was entered.
+     */
+    public void warm(int[] starts, long[] counts) {
+
+        for (int i = 0; i < starts.length; i++) {
+
+            int index = starts[i];
+            if ((index < 0) || (index >= blocks.length) || (blocks[index] != null))
+                continue;
+
+            Block b = Block.translate(base + index * 4, words, ops, base);
+            if (b == null)
+                continue;
+            blocks[index] = b;
+            translated++;
+
+            b.count = counts[i];
+            if ((jitThreshold > 0) && (b.count >= jitThreshold)) {
+                b.compiled = BlockCompiler.compile(b, words, ops, base);
+                if (b.compiled != null)
+                    compiled++;
+            }
+        }
+    }
+
+    /**
+     * Returns the word index of the first instruction of every translated block, in address order.
+     * @return Indexes of the blocks.
+     */
+    public int[] getBlockStarts() {
+        int n = 0;
+        for (Block b : blocks)
+            n += (b == null) ? 0 : 1;
+
+        int[] starts = new int[n];
+        n = 0;
+        for (int i = 0; i < blocks.length; i++) {
+            if (blocks[i] != null)
+                starts[n++] = i;
+        }
+        return starts;
+    }
+
+    /**
+     * Returns the number of times each block was entered, including the counts given to warm.
+     * @param starts Indexes from getBlockStarts.
+     * @return Entry count of every block.
+     */
+    public long[] getBlockCounts(int[] starts) {
+        long[] counts = new long[starts.length];
+        for (int i = 0; i < starts.length; i++)
+            counts[i] = blocks[starts[i]].count;
+        return counts;
+    }
+
+    /**
+     * Returns the number of blocks translated so far (including translations of invalidated blocks).
+     * @return Number of blocks.
+     */
+    public long getTranslated() {
+        return translated;
+    }
+
+    /**
+     * Returns the number of blocks invalidated by writes into the code.
+     * @return Number of blocks.
+     */
+    public long getInvalidated() {
+        return invalidated;
+    }
+
+    /**
+     * Returns the number of blocks compiled to JVM classes.
+     * @return Number of blocks.
+     */
+    public long getCompiled() {
+        return compiled;
+    }
+
+    @Override
+    public void setOutput(PrintStream out) {
+        interpreter.setOutput(out);
+    }
+
+    @Override
+    public boolean isHalted() {
+        return interpreter.isHalted();
+    }
+
+    @Override
+    public int getExitCode() {
+        return interpreter.getExitCode();
+    }
+
+    @Override
+    public long run(Cpu cpu, long limit) {
+
+        final int[] r      = cpu.regs;
+        final Memory mem   = this.memory;
+        final Block[] blocks = this.blocks;
+
+        if (limit <= 0)
+            limit = Long.MAX_VALUE;
+
+        long n = 0;
+
+        while ((n < limit) && !interpreter.isHalted()) {
+
+            int pc    = cpu.pc;
+            int index = (pc - base) >>> 2;
+            Block b   = null;
+
+            // Blocks start at instructions that are not in a delay slot.
+            if ((index < blocks.length) && ((pc & 3) == 0) && (cpu.npc == pc + 4)) {
+                b = blocks[index];
+                if (b == null) {
+                    b = Block.translate(pc, words, ops, base);
+                    if (b != null) {
+                        blocks[index] = b;
+                        translated++;
+                    }
+                }
+            }
+
+            if (b == null) {
+                n += interpreter.run(cpu, 1);
+                continue;
+            }
+
+            // Compiled blocks are counted too, for the profile of the run (see getBlockCounts).
+            if ((++b.count == jitThreshold) && (b.compiled == null)) {
+                b.compiled = BlockCompiler.compile(b, words, ops, base);
+                if (b.compiled != null)
+                    compiled++;
+            }
+
+            if (b.compiled != null) {
+                n += b.compiled.run(cpu, r, mem, limit - n);
+                continue;
+            }
+
+            for (Block.Step step : b.steps)
+                step.run(cpu, r, mem);
+            n += b.steps.length;
+
+            if (b.branchOp == Op.INVALID) {
+                cpu.pc  = b.getNext();
+                cpu.npc = cpu.pc + 4;
+                continue;
+            }
+
+            int op   = b.branchOp;
+            int word = b.branchWord;
+            int bpc  = b.getBranchPc();
+            int slot = bpc + 4;
+            int rs   = (word >>> 21) & 0x1f;
+            boolean taken  = true;
+            boolean likely = false;
+            int target;
+
+            switch (op) {
+                case Op.J:
+                    target = (slot & 0xf0000000) | ((word & 0x3ffffff) << 2);
+                    break;
+                case Op.JAL:
+                    r[31]  = bpc + 8;
+                    target = (slot & 0xf0000000) | ((word & 0x3ffffff) << 2);
+                    break;
+                case Op.JR:
+                    target = r[rs];
+                    break;
+                case Op.JALR: {
+                    int rd = (word >>> 11) & 0x1f;
+                    target = r[rs];
+                    if (rd != 0)
+                        r[rd] = bpc + 8;
+                    break;
+                }
+                case Op.BC1F:
+                case Op.BC1T:
+                case Op.BC1FL:
+                case Op.BC1TL:
+                    taken  = Fpu.branchTaken(op, word, cpu.fcsr);
+                    target = slot + ((short) word << 2);
+                    likely = (op == Op.BC1FL) || (op == Op.BC1TL);
+                    break;
+                default:
+                    taken  = Interpreter.branchTaken(op, r[rs], r[(word >>> 16) & 0x1f]);
+                    target = slot + ((short) word << 2);
+                    likely = (op == Op.BEQL) || (op == Op.BNEL) || (op == Op.BLEZL) || (op == Op.BGTZL) ||
+                             (op == Op.BLTZL) || (op == Op.BGEZL) || (op == Op.BLTZALL) || (op == Op.BGEZALL);
+                    if ((op == Op.BLTZAL) || (op == Op.BGEZAL) || (op == Op.BLTZALL) || (op == Op.BGEZALL))
+                        r[31] = bpc + 8;
+                    break;
+            }
+
+            if (taken || !likely) {
+                // The delay slot runs before the jump, unless a branch likely is not taken.
+                b.delay.run(cpu, r, mem);
+                n += 2;
+            } else {
+                n += 1;
+            }
+
+            cpu.pc  = taken ? target : slot + 4;
+            cpu.npc = cpu.pc + 4;
+        }
+
+        return n;
+    }
+}
@@ -0,0 +1,182 @@
+package com.mipssim.sim;
+
+import java.util.Arrays;
+
+/**
+ * BranchPredictor guesses the direction of conditional branches from their address and what it was told about the
+ * branches before them. BranchProfiler asks every predictor for its guess and then tells it the outcome.
+ *
+ * The predictors here keep 2-bit saturating counters (0 and 1 predict not taken, 2 and 3 taken) in byte arrays of
+ * 2^bits entries, indexed by masking, so no prediction allocates or divides.
+ */
+public interface BranchPredictor {
+
+    /**
+     * Returns the name of the predictor, as given to create.
+     * @return The name.
+     */
+    String getName();
+
+    /**
+     * Predicts a branch.
+     * @param pc Address of the branch.
+     * @return True if predicted taken.
+     */
+    boolean predict(int pc);
+
+    /**
+     * Tells the outcome of the branch last predicted.
+     * @param pc Address of the branch.
+     * @param taken True if it was taken.
+     */
+    void update(int pc, boolean taken);
+
+    /**
+     * Creates a predictor.
+     * @param name not-taken, bimodal, gshare or tournament.
+     * @param bits Index bits of the tables (gshare also keeps this many bits of history).
+     * @return The predictor.
+     * @throws IllegalArgumentException If the name is unknown or bits is not 1 - 24.
+     */
+    static BranchPredictor create(String name, int bits) throws IllegalArgumentException {
+        if ((bits < 1) || (bits > 24))
+            throw new IllegalArgumentException("Bad predictor size: " + bits + " bits.");
+        switch (name) {
+            case "not-taken":  return new NotTaken();
+            case "bimodal":    return new Bimodal(bits);
+            case "gshare":     return new Gshare(bits);
+            case "tournament": return new Tournament(bits);
+            default:
+                throw new IllegalArgumentException("Unknown branch predictor " + name + ".");
+        }
+    }
+
+    /**
+     * Moves a 2-bit counter towards taken or not taken.
+     */
+    private static void train(byte[] counters, int i, boolean taken) {
+        int c = counters[i];
+        if (taken && (c < 3))
+            counters[i] = (byte) (c + 1);
+        else if (!taken && (c > 0))
+            counters[i] = (byte) (c - 1);
+    }
+
+    /**
+     * Returns a table of counters that are weakly not taken.
+     */
+    private static byte[] counters(int bits) {
+        byte[] counters = new byte[1 << bits];
+        Arrays.fill(counters, (byte) 1);
+        return counters;
+    }
+
+    /**
+     * Static prediction: no branch is taken.
+     */
+    final class NotTaken implements BranchPredictor {
+
+        @Override public String getName()                     { return "not-taken"; }
+        @Override public boolean predict(int pc)              { return false; }
+        @Override public void update(int pc, boolean taken)   { }
+    }
+
+    /**
+     * One counter per branch address (aliased by the low bits of the word address).
+     */
+    final class Bimodal implements BranchPredictor {
+
+        private final byte[] counters;
+        private final int mask;
+
+        Bimodal(int bits) {
+            this.counters = counters(bits);
+            this.mask     = (1 << bits) - 1;
+        }
+
+        @Override
+        public String getName() {
+            return "bimodal";
+        }
+
+        @Override
+        public boolean predict(int pc) {
+            return counters[(pc >>> 2) & mask] >= 2;
+        }
+
+        @Override
+        public void update(int pc, boolean taken) {
+            train(counters, (pc >>> 2) & mask, taken);
+        }
+    }
+
+    /**
+     * Counters indexed by the branch address xor the directions of the last branches (global history).
+     */
+    final class Gshare implements BranchPredictor {
+
+        private final byte[] counters;
+        private final int mask;
+        private int history;
+
+        Gshare(int bits) {
+            this.counters = counters(bits);
+            this.mask     = (1 << bits) - 1;
+        }
+
+        @Override
+        public String getName() {
+            return "gshare";
+        }
+
+        @Override
+        public boolean predict(int pc) {
+            return counters[((pc >>> 2) ^ history) & mask] >= 2;
+        }
+
+        @Override
+        public void update(int pc, boolean taken) {
+            train(counters, ((pc >>> 2) ^ history) & mask, taken);
+            history = ((history << 1) | (taken ? 1 : 0)) & mask;
+        }
+    }
+
+    /**
+     * A bimodal and a gshare predictor, and per branch address a counter choosing the one that was right more
+     * often (0 and 1 bimodal, 2 and 3 gshare).
+     */
+    final class Tournament implements BranchPredictor {
+
+        private final Bimodal local;
+        private final Gshare global;
+        private final byte[] chooser;
+        private final int mask;
+
+        Tournament(int bits) {
+            this.local   = new Bimodal(bits);
+            this.global  = new Gshare(bits);
+            this.chooser = counters(bits);
+            this.mask    = (1 << bits) - 1;
+        }
+
+        @Override
+        public String getName() {
+            return "tournament";
+        }
+
+        @Override
+        public boolean predict(int pc) {
+            return (chooser[(pc >>> 2) & mask] >= 2) ? global.predict(pc) : local.predict(pc);
+        }
+
+        @Override
+        public void update(int pc, boolean taken) {
+            boolean l = local.predict(pc);
+            boolean g = global.predict(pc);
+            if (l != g)
+                train(chooser, (pc >>> 2) & mask, g == taken);
+            local.update(pc, taken);
+            global.update(pc, taken);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.mipssim.sim;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * BranchProfiler feeds the branches of a program through branch predictors while it is interpreted, and counts how
+ * often every predictor is wrong, in total and for every branch.
+ *
+ * The conditional branches are the functions Disassembler.isBranchFunction accepts (beq, bne, blez, bgtz and their
+ * likely forms) and the REGIMM (op 0x01) branches bltz, bgez, bltzal, bgezal and their likely forms; the direction
+ * is computed from the registers before the branch executes. The coprocessor 1 branches bc1f, bc1t and their likely
+ * forms are conditional too, their direction comes from the FPU condition codes of the Cpu. The jumps (j, jal, jr,
+ * jalr) go through a direct-mapped branch target buffer instead, which is right if it holds the address of the
+ * jump with the target it jumps to.
+ */
+public class BranchProfiler implements Tracer {
+
+    // Number of branches in the report.
+    private static final int TOP = 20;
+
+    private final BranchPredictor[] predictors;
+    private final int base;
+    private final Cpu cpu;
+
+    // Branch target buffer: the jump address (-1 = empty) and its last target of every entry.
+    private final int[] btbTags;
+    private final int[] btbTargets;
+    private final int btbMask;
+
+    private long branches;
+    private long taken;
+    private final long[] mispredicts;
+    private long jumps;
+    private long btbMisses;
+
+    // Op, executions, taken branches and the mispredicts of every predictor (index * predictors + k), by word index.
+    private final int[] pcOps;
+    private final long[] pcExecuted;
+    private final long[] pcTaken;
+    private final long[] pcMispredicts;
+
+    /**
+     * Creates a profiler.
+     * @param program The program, its code gets the per branch counters.
+     * @param predictors The predictors to compare.
+     * @param btbBits Index bits of the branch target buffer.
+     * @param cpu The Cpu the program runs on, its FPU condition codes decide bc1f and bc1t.
+     */
+    public BranchProfiler(Program program, BranchPredictor[] predictors, int btbBits, Cpu cpu) {
+        int words = program.getWords().length;
+        this.predictors    = predictors.clone();
+        this.base          = program.getBase();
+        this.cpu           = cpu;
+        this.btbTags       = new int[1 << btbBits];
+        this.btbTargets    = new int[1 << btbBits];
+        this.btbMask       = (1 << btbBits) - 1;
+        this.mispredicts   = new long[predictors.length];
+        this.pcOps         = new int[words];
+        this.pcExecuted    = new long[words];
+        this.pcTaken       = new long[words];
+        this.pcMispredicts = new long[words * predictors.length];
+        Arrays.fill(btbTags, -1);
+    }
+
+    /**
+     * Returns true if op is a conditional branch.
+     * @param op The op.
+     * @return True for beq ... bgezall and bc1f ... bc1tl.
+     */
+    static boolean isConditional(int op) {
+        switch (op) {
+            case Op.BEQ:    case Op.BNE:    case Op.BLEZ:    case Op.BGTZ:
+            case Op.BLTZ:   case Op.BGEZ:   case Op.BLTZAL:  case Op.BGEZAL:
+            case Op.BEQL:   case Op.BNEL:   case Op.BLEZL:   case Op.BGTZL:
+            case Op.BLTZL:  case Op.BGEZL:  case Op.BLTZALL: case Op.BGEZALL:
+            case Op.BC1F:   case Op.BC1T:   case Op.BC1FL:   case Op.BC1TL:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public void step(int pc, int word, int op, int[] r) {
+
+        if ((op == Op.J) || (op == Op.JAL)) {
+            jump(pc, ((pc + 4) & 0xf0000000) | ((word & 0x03ffffff) << 2));
+            return;
+        }
+        if ((op == Op.JR) || (op == Op.JALR)) {
+            jump(pc, r[(word >>> 21) & 0x1f]);
+            return;
+        }
+        if (!isConditional(op))
+            return;
+
+        boolean t = ((op >= Op.BC1F) && (op <= Op.BC1TL))
+                    ? Fpu.branchTaken(op, word, cpu.fcsr)
+                    : Interpreter.branchTaken(op, r[(word >>> 21) & 0x1f], r[(word >>> 16) & 0x1f]);
+        int index = (pc - base) >>> 2;
+        boolean inCode = index < pcExecuted.length;
+
+        branches++;
+        if (t)
+            taken++;
+        if (inCode) {
+            pcOps[index] = op;
+            pcExecuted[index]++;
+            if (t)
+                pcTaken[index]++;
+        }
+
+        for (int k = 0; k < predictors.length; k++) {
+            BranchPredictor p = predictors[k];
+            if (p.predict(pc) != t) {
+                mispredicts[k]++;
+                if (inCode)
+                    pcMispredicts[index * predictors.length + k]++;
+            }
+            p.update(pc, t);
+        }
+    }
+
+    private void jump(int pc, int target) {
+        int i = (pc >>> 2) & btbMask;
+        jumps++;
+        if ((btbTags[i] != pc) || (btbTargets[i] != target)) {
+            btbMisses++;
+            btbTags[i]    = pc;
+            btbTargets[i] = target;
+        }
+    }
+
+    public long getBranches()  { return branches; }
+    public long getTaken()     { return taken; }
+    public long getJumps()     { return jumps; }
+    public long getBtbMisses() { return btbMisses; }
+
+    /**
+     * Returns the number of branches a predictor got wrong.
+     * @param k Index of the predictor, as given to the constructor.
+     * @return Number of mispredicts.
+     */
+    public long getMispredicts(int k) {
+        return mispredicts[k];
+    }
+
+    /**
+     * Writes the accuracy of every predictor and the BTB, and the branches mispredicted most often (summed over the
+     * predictors) with their mispredicts for every predictor.
+     * @param out Stream to write to.
+     */
+    public void report(PrintStream out) {
+
+        out.printf("Branches: %d conditional, %d taken (%.2f%%).%n", branches, taken, percent(taken, branches));
+        for (int k = 0; k < predictors.length; k++)
+            out.printf("  %-12s %.2f%% accuracy, %d mispredicts.%n", predictors[k].getName(),
+                       100.0 - percent(mispredicts[k], branches), mispredicts[k]);
+        out.printf("Jumps: %d, BTB (%d entries) %.2f%% accuracy, %d misses.%n", jumps, btbTags.length,
+                   100.0 - percent(btbMisses, jumps), btbMisses);
+
+        // Selects the TOP branches with the most mispredicts without sorting every PC.
+        int n = predictors.length;
+        long[] sums = new long[pcExecuted.length];
+        int[] best  = new int[TOP];
+        int count   = 0;
+        for (int i = 0; i < sums.length; i++) {
+            for (int k = 0; k < n; k++)
+                sums[i] += pcMispredicts[i * n + k];
+            if (sums[i] == 0)
+                continue;
+            int j = Math.min(count, TOP - 1);
+            if ((count == TOP) && (sums[i] <= sums[best[j]]))
+                continue;
+            while ((j > 0) && (sums[best[j - 1]] < sums[i])) {
+                best[j] = best[j - 1];
+                j--;
+            }
+            best[j] = i;
+            count = Math.min(count + 1, TOP);
+        }
+
+        if (count == 0)
+            return;
+        StringBuilder title = new StringBuilder(String.format("%-21s %12s %8s", "Mispredicts by PC:", "executed",
+                                                                      "taken"));
+        for (BranchPredictor p : predictors)
+            title.append(String.format(" %12s", p.getName()));
+        out.println(title);
+        for (int j = 0; j < count; j++) {
+            int i = best[j];
+            StringBuilder row = new StringBuilder(String.format("  0x%08x %-8s %12d %7.2f%%", base + i * 4,
+                                                                Op.name(pcOps[i]), pcExecuted[i],
+                                                                percent(pcTaken[i], pcExecuted[i])));
+            for (int k = 0; k < n; k++)
+                row.append(String.format(" %12d", pcMispredicts[i * n + k]));
+            out.println(row);
+        }
+    }
+
+    private static double percent(long part, long whole) {
+        return (whole == 0) ? 0.0 : 100.0 * part / whole;
+    }
+}
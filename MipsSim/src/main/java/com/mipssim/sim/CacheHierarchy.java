@@ -0,0 +1,144 @@
+package com.mipssim.sim;
+
+import java.io.PrintStream;
+
+/**
+ * CacheHierarchy passes the instruction fetches and the loads and stores of a program through an L1 instruction
+ * cache, an L1 data cache and an optional unified L2. A miss in an L1 reads the line from the L2, a dirty line
+ * evicted from a write-back L1 is written to it, and a write-through L1 passes every store on.
+ *
+ * The memory ops are the loads and stores of the Mappings (lb ... sw, lwl/lwr/swl/swr, ll/sc, lwc1/ldc1/swc1/sdc1)
+ * and pref, which is counted as a read; cache (maintenance) is not modelled. The effective address is taken from
+ * the registers before the instruction executes, so a failed sc still counts as a write.
+ *
+ * Misses are also counted per instruction of the program, for the report of the PCs that miss the most.
+ */
+public class CacheHierarchy implements Tracer {
+
+    // Number of PCs in the report.
+    private static final int TOP = 10;
+
+    private final CacheLevel l1i;
+    private final CacheLevel l1d;
+    private final CacheLevel l2;
+
+    // Accesses and misses of every instruction of the program (fetches in L1I, data in L1D), by word index.
+    private final int base;
+    private final long[] fetchMisses;
+    private final long[] dataAccesses;
+    private final long[] dataMisses;
+
+    /**
+     * Creates a hierarchy for a program.
+     * @param program The program, its code gets the per PC counters.
+     * @param l1i Instruction cache.
+     * @param l1d Data cache.
+     * @param l2 Unified second level, null for none.
+     */
+    public CacheHierarchy(Program program, CacheLevel l1i, CacheLevel l1d, CacheLevel l2) {
+        int words = program.getWords().length;
+        this.l1i  = l1i;
+        this.l1d  = l1d;
+        this.l2   = l2;
+        this.base = program.getBase();
+        this.fetchMisses  = new long[words];
+        this.dataAccesses = new long[words];
+        this.dataMisses   = new long[words];
+    }
+
+    @Override
+    public void step(int pc, int word, int op, int[] r) {
+
+        int index = (pc - base) >>> 2;
+        boolean inCode = index < fetchMisses.length;
+
+        if (!l1i.access(pc, false)) {
+            if (inCode)
+                fetchMisses[index]++;
+            next(l1i, pc, false);
+        }
+
+        boolean write;
+        switch (op) {
+            case Op.LB: case Op.LH: case Op.LWL: case Op.LW: case Op.LBU: case Op.LHU: case Op.LWR:
+            case Op.LL: case Op.LWC1: case Op.LDC1: case Op.PREF:
+                write = false;
+                break;
+            case Op.SB: case Op.SH: case Op.SWL: case Op.SW: case Op.SWR:
+            case Op.SC: case Op.SWC1: case Op.SDC1:
+                write = true;
+                break;
+            default:
+                return;
+        }
+
+        int addr = r[(word >>> 21) & 0x1f] + (short) word;
+        boolean hit = l1d.access(addr, write);
+        if (inCode) {
+            dataAccesses[index]++;
+            if (!hit)
+                dataMisses[index]++;
+        }
+        if (!hit || (write && !l1d.isWriteBack()))
+            next(l1d, addr, write);
+    }
+
+    /**
+     * Passes an access that l1 could not serve (or a write-through) and its writeback on to the L2.
+     */
+    private void next(CacheLevel l1, int addr, boolean write) {
+        if (l2 == null)
+            return;
+        if (l1.isEvictedDirty())
+            l2.access(l1.getEvicted(), true);
+        if (write && l1.isWriteBack())
+            // The line is allocated in l1, so it is read from the L2.
+            write = false;
+        l2.access(addr, write);
+    }
+
+    /**
+     * Writes the counters of every level and the PCs with the most misses.
+     * @param out Stream to write to.
+     */
+    public void report(PrintStream out) {
+        l1i.report(out);
+        l1d.report(out);
+        if (l2 != null)
+            l2.report(out);
+        top(out, "L1I misses", fetchMisses, null);
+        top(out, "L1D misses", dataMisses, dataAccesses);
+    }
+
+    private void top(PrintStream out, String title, long[] misses, long[] accesses) {
+
+        // Selects the TOP largest counts without sorting every PC.
+        int[] best = new int[TOP];
+        int n = 0;
+        for (int i = 0; i < misses.length; i++) {
+            if (misses[i] == 0)
+                continue;
+            int k = Math.min(n, TOP - 1);
+            if ((n == TOP) && (misses[i] <= misses[best[k]]))
+                continue;
+            while ((k > 0) && (misses[best[k - 1]] < misses[i])) {
+                best[k] = best[k - 1];
+                k--;
+            }
+            best[k] = i;
+            n = Math.min(n + 1, TOP);
+        }
+
+        if (n == 0)
+            return;
+        out.println(title + " by PC:");
+        for (int k = 0; k < n; k++) {
+            int i = best[k];
+            if (accesses == null)
+                out.printf("  0x%08x %12d%n", base + i * 4, misses[i]);
+            else
+                out.printf("  0x%08x %12d of %12d (%.2f%%)%n", base + i * 4, misses[i], accesses[i],
+                           100.0 * misses[i] / accesses[i]);
+        }
+    }
+}
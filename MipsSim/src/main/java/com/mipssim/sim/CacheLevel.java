@@ -0,0 +1,248 @@
+package com.mipssim.sim;
+
+import java.io.PrintStream;
+
+/**
+ * CacheLevel models one set-associative cache: which lines it holds, not their data. Size, associativity and line
+ * size are powers of two, so the set of an address is a shift and a mask.
+ *
+ * The lines are kept in one flat int array, way w of set s at s * ways + w, each entry holding the line number
+ * (address >>> line bits) shifted left by two, a dirty bit (2) and a valid bit (1). Replacement is LRU (a long
+ * time stamp per line), tree PLRU (ways - 1 bits per set in a long) or random.
+ *
+ * Write-back caches allocate on a write miss and mark the line dirty; write-through caches pass every write on and
+ * do not allocate on a write miss.
+ */
+public class CacheLevel {
+
+    public static final int LRU    = 0;
+    public static final int PLRU   = 1;
+    public static final int RANDOM = 2;
+
+    private static final String[] POLICIES = { "lru", "plru", "random" };
+
+    private static final int VALID = 1;
+    private static final int DIRTY = 2;
+
+    private final String name;
+    private final int size;
+    private final int ways;
+    private final int lineBits;
+    private final int setMask;
+    private final int policy;
+    private final boolean writeBack;
+
+    private final int[] lines;
+    private final long[] stamps;
+    private final long[] plru;
+    private long clock;
+    private int random = 0x2545f491;
+
+    // Line evicted by the last access, -1 if none.
+    private int evicted = -1;
+    private boolean evictedDirty;
+
+    private long reads;
+    private long writes;
+    private long misses;
+    private long evictions;
+    private long writebacks;
+
+    /**
+     * Creates an empty cache.
+     * @param name Name used in the report (e.g. "L1D").
+     * @param size Size in bytes.
+     * @param ways Associativity (size / line for fully associative).
+     * @param line Line size in bytes (at least 4).
+     * @param policy LRU, PLRU or RANDOM.
+     * @param writeBack True for write-back with write-allocate, false for write-through without.
+     * @throws IllegalArgumentException If a size is not a power of two or they do not fit.
+     */
+    public CacheLevel(String name, int size, int ways, int line, int policy, boolean writeBack)
+            throws IllegalArgumentException {
+
+        if ((Integer.bitCount(size) != 1) || (Integer.bitCount(ways) != 1) || (Integer.bitCount(line) != 1) ||
+            (line < 4) || ((long) ways * line > size) || (ways > 64) || (policy < LRU) || (policy > RANDOM))
+            throw new IllegalArgumentException("Bad " + name + " cache: " + size + " bytes, " + ways + " ways, " +
+                                               line + " byte lines.");
+
+        int sets = size / (ways * line);
+
+        this.name      = name;
+        this.size      = size;
+        this.ways      = ways;
+        this.lineBits  = Integer.numberOfTrailingZeros(line);
+        this.setMask   = sets - 1;
+        this.policy    = policy;
+        this.writeBack = writeBack;
+        this.lines     = new int[sets * ways];
+        this.stamps    = (policy == LRU) ? new long[sets * ways] : null;
+        this.plru      = (policy == PLRU) ? new long[sets] : null;
+    }
+
+    /**
+     * Parses a cache description "size[:ways[:line[:policy[:write]]]]", e.g. "32k:4:64:plru:wt". size may end in
+     * k or m; policy is lru (default), plru or random; write is wb (default, write-back) or wt (write-through).
+     * @param name Name of the cache.
+     * @param spec The description.
+     * @return The cache.
+     * @throws IllegalArgumentException If spec can not be parsed.
+     */
+    public static CacheLevel parse(String name, String spec) throws IllegalArgumentException {
+
+        String[] parts = spec.split(":");
+        try {
+            int size   = bytes(parts[0]);
+            int ways   = (parts.length > 1) ? Integer.parseInt(parts[1]) : 1;
+            int line   = (parts.length > 2) ? bytes(parts[2]) : 32;
+            int policy = (parts.length > 3) ? java.util.Arrays.asList(POLICIES).indexOf(parts[3]) : LRU;
+            if ((parts.length > 4) && !parts[4].equals("wb") && !parts[4].equals("wt"))
+                throw new NumberFormatException();
+            if ((parts.length > 5) || (policy < 0))
+                throw new NumberFormatException();
+            return new CacheLevel(name, size, ways, line, policy, (parts.length <= 4) || parts[4].equals("wb"));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad " + name + " cache: " + spec + ".");
+        }
+    }
+
+    private static int bytes(String s) {
+        String lower = s.toLowerCase();
+        if (lower.endsWith("k"))
+            return Integer.parseInt(lower.substring(0, lower.length() - 1)) << 10;
+        if (lower.endsWith("m"))
+            return Integer.parseInt(lower.substring(0, lower.length() - 1)) << 20;
+        return Integer.parseInt(lower);
+    }
+
+    /**
+     * Looks up the line of addr and fills it on a miss (unless it is a write to a write-through cache). The line
+     * it replaced is given by getEvicted.
+     * @param addr Address accessed.
+     * @param write True for a write.
+     * @return True on a hit.
+     */
+    public boolean access(int addr, boolean write) {
+
+        int line  = addr >>> lineBits;
+        int set   = line & setMask;
+        int first = set * ways;
+        int key   = (line << 2) | VALID;
+
+        evicted = -1;
+        if (write)
+            writes++;
+        else
+            reads++;
+
+        for (int w = 0; w < ways; w++) {
+            int i = first + w;
+            if ((lines[i] & ~DIRTY) == key) {
+                if (write && writeBack)
+                    lines[i] |= DIRTY;
+                touch(set, w);
+                return true;
+            }
+        }
+
+        misses++;
+        if (write && !writeBack)
+            return false;
+
+        int w = victim(set, first);
+        int i = first + w;
+        if ((lines[i] & VALID) != 0) {
+            evicted      = (lines[i] >>> 2) << lineBits;
+            evictedDirty = (lines[i] & DIRTY) != 0;
+            evictions++;
+            if (evictedDirty)
+                writebacks++;
+        }
+        lines[i] = (write ? key | DIRTY : key);
+        touch(set, w);
+        return false;
+    }
+
+    private int victim(int set, int first) {
+
+        for (int w = 0; w < ways; w++) {
+            if ((lines[first + w] & VALID) == 0)
+                return w;
+        }
+
+        switch (policy) {
+            case LRU: {
+                int oldest = 0;
+                for (int w = 1; w < ways; w++) {
+                    if (stamps[first + w] < stamps[first + oldest])
+                        oldest = w;
+                }
+                return oldest;
+            }
+            case PLRU: {
+                // Follow the bits from the root, they point away from the recently used half.
+                long bits = plru[set];
+                int node  = 1;
+                while (node < ways)
+                    node = (node << 1) | (int) ((bits >>> node) & 1);
+                return node - ways;
+            }
+            default:
+                random ^= random << 13;
+                random ^= random >>> 17;
+                random ^= random << 5;
+                return random & (ways - 1);
+        }
+    }
+
+    private void touch(int set, int w) {
+        if (policy == LRU) {
+            stamps[set * ways + w] = ++clock;
+        } else if (policy == PLRU) {
+            // Point every node on the path to w at the other half.
+            long bits = plru[set];
+            int node  = 1;
+            for (int level = Integer.numberOfTrailingZeros(ways) - 1; level >= 0; level--) {
+                int right = (w >>> level) & 1;
+                bits = (right != 0) ? bits & ~(1L << node) : bits | (1L << node);
+                node = (node << 1) | right;
+            }
+            plru[set] = bits;
+        }
+    }
+
+    /**
+     * Returns the address of the line replaced by the last access.
+     * @return Address of the line, -1 if no valid line was replaced.
+     */
+    public int getEvicted() {
+        return evicted;
+    }
+
+    /**
+     * Returns true if the line replaced by the last access was dirty (it has to be written to the next level).
+     * @return True if dirty.
+     */
+    public boolean isEvictedDirty() {
+        return (evicted != -1) && evictedDirty;
+    }
+
+    public boolean isWriteBack() { return writeBack; }
+    public long getAccesses()    { return reads + writes; }
+    public long getMisses()      { return misses; }
+    public long getEvictions()   { return evictions; }
+    public long getWritebacks()  { return writebacks; }
+
+    /**
+     * Writes the counters of the cache.
+     * @param out Stream to write to.
+     */
+    public void report(PrintStream out) {
+        long accesses = reads + writes;
+        out.printf("%s (%d KiB, %d-way, %d byte lines, %s, %s): %d accesses (%d reads, %d writes), %d hits, " +
+                   "%d misses (%.2f%%), %d evictions, %d writebacks.%n", name, size >> 10, ways, 1 << lineBits,
+                   POLICIES[policy], writeBack ? "write-back" : "write-through", accesses, reads, writes,
+                   accesses - misses, misses, (accesses == 0) ? 0.0 : 100.0 * misses / accesses, evictions,
+                   writebacks);
+    }
+}
@@ -0,0 +1,310 @@
+package com.mipssim.sim;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ClassFile assembles a class with a default constructor and one method, enough for the blocks the BlockCompiler
+ * generates. The code of the method is written with op, local, push, member and jump; branches go to Labels, which
+ * are patched when they are placed.
+ *
+ * The class file version is 49 (Java 5), so the method needs no StackMapTable: the JVM verifies it by type
+ * inference.
+ */
+final class ClassFile {
+
+    static final int ICONST_M1 = 0x02, ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11, LDC_W = 0x13;
+    static final int ILOAD = 0x15, LLOAD = 0x16, ALOAD = 0x19, ISTORE = 0x36, LSTORE = 0x37, ASTORE = 0x3a;
+    static final int ALOAD_0 = 0x2a, IALOAD = 0x2e, IASTORE = 0x4f, POP = 0x57;
+    static final int IADD = 0x60, LADD = 0x61, ISUB = 0x64, LSUB = 0x65, IMUL = 0x68;
+    static final int FADD = 0x62, DADD = 0x63, FSUB = 0x66, DSUB = 0x67, FMUL = 0x6a, DMUL = 0x6b;
+    static final int FDIV = 0x6e, DDIV = 0x6f;
+    static final int ISHL = 0x78, ISHR = 0x7a, IUSHR = 0x7c, IAND = 0x7e, IOR = 0x80, IXOR = 0x82;
+    static final int I2L = 0x85, I2B = 0x91, I2S = 0x93, LCMP = 0x94;
+    static final int IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, IFGT = 0x9d, IFLE = 0x9e;
+    static final int IF_ICMPEQ = 0x9f, IF_ICMPNE = 0xa0, IF_ICMPLT = 0xa1, IF_ICMPGE = 0xa2;
+    static final int GOTO = 0xa7, LRETURN = 0xad, RETURN = 0xb1, GETFIELD = 0xb4;
+    static final int INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8, ATHROW = 0xbf;
+
+    private static final int ACC_PUBLIC = 0x0001, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+    /**
+     * A position in the code, branches to it are patched when it is placed.
+     */
+    static final class Label {
+        private int position = -1;
+        private int[] branches = new int[4];
+        private int count;
+    }
+
+    // Constant pool, as written to the class file, and the index of every entry by its bytes.
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final Map<String, Integer> entries = new HashMap<>();
+    private int poolCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final String superName;
+
+    private byte[] code = new byte[256];
+    private int length;
+
+    // Exception handlers: start, end, handler (catch type is always any).
+    private int[] handlers = new int[0];
+
+    /**
+     * Starts a class.
+     * @param name Internal name of the class (e.g. "com/mipssim/sim/Jit_00400000").
+     * @param superName Internal name of its super class, which must have a constructor without arguments.
+     */
+    ClassFile(String name, String superName) {
+        this.thisClass  = classRef(name);
+        this.superClass = classRef(superName);
+        this.superName  = superName;
+    }
+
+    // ---- Constant pool.
+
+    private int entry(String key, byte[] bytes) {
+        Integer index = entries.get(key);
+        if (index != null)
+            return index;
+        pool.write(bytes, 0, bytes.length);
+        entries.put(key, poolCount);
+        return poolCount++;
+    }
+
+    private int utf8(String s) {
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(b)) {
+            out.writeByte(1);
+            out.writeUTF(s);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return entry("U" + s, b.toByteArray());
+    }
+
+    private int classRef(String name) {
+        return entry("C" + name, u1u2(7, utf8(name)));
+    }
+
+    private int nameAndType(String name, String desc) {
+        int n = utf8(name);
+        int t = utf8(desc);
+        return entry("N" + name + " " + desc, new byte[] { 12, (byte) (n >>> 8), (byte) n, (byte) (t >>> 8),
+                                                         (byte) t });
+    }
+
+    private int memberRef(int tag, String owner, String name, String desc) {
+        int c  = classRef(owner);
+        int nt = nameAndType(name, desc);
+        return entry(tag + owner + "." + name + desc, new byte[] { (byte) tag, (byte) (c >>> 8), (byte) c,
+                                                                   (byte) (nt >>> 8), (byte) nt });
+    }
+
+    private int integer(int value) {
+        return entry("I" + value, new byte[] { 3, (byte) (value >>> 24), (byte) (value >>> 16),
+                                              (byte) (value >>> 8), (byte) value });
+    }
+
+    private static byte[] u1u2(int tag, int value) {
+        return new byte[] { (byte) tag, (byte) (value >>> 8), (byte) value };
+    }
+
+    // ---- Code.
+
+    private void u1(int b) {
+        if (length == code.length) {
+            byte[] grown = new byte[code.length * 2];
+            System.arraycopy(code, 0, grown, 0, length);
+            code = grown;
+        }
+        code[length++] = (byte) b;
+    }
+
+    private void u2(int v) {
+        u1(v >>> 8);
+        u1(v);
+    }
+
+    /**
+     * Writes an instruction without operands.
+     * @param opcode The opcode.
+     */
+    void op(int opcode) {
+        u1(opcode);
+    }
+
+    /**
+     * Writes a load or store of a local variable (ILOAD, LLOAD, ALOAD, ISTORE, LSTORE, ASTORE).
+     * @param opcode The opcode.
+     * @param local Index of the local variable (less than 256).
+     */
+    void local(int opcode, int local) {
+        u1(opcode);
+        u1(local);
+    }
+
+    /**
+     * Pushes an int constant with the shortest instruction.
+     * @param value The constant.
+     */
+    void push(int value) {
+        if (value >= -1 && value <= 5) {
+            u1(ICONST_0 + value);
+        } else if (value == (byte) value) {
+            u1(BIPUSH);
+            u1(value);
+        } else if (value == (short) value) {
+            u1(SIPUSH);
+            u2(value);
+        } else {
+            u1(LDC_W);
+            u2(integer(value));
+        }
+    }
+
+    /**
+     * Writes an invoke or field instruction.
+     * @param opcode INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC or GETFIELD.
+     * @param owner Internal name of the class declaring the member.
+     * @param name Name of the member.
+     * @param desc Descriptor of the member.
+     */
+    void member(int opcode, String owner, String name, String desc) {
+        u1(opcode);
+        u2(memberRef((opcode == GETFIELD) ? 9 : 10, owner, name, desc));
+    }
+
+    /**
+     * Writes a branch (IF*, IF_ICMP* or GOTO) to label.
+     * @param opcode The opcode.
+     * @param label The target.
+     */
+    void jump(int opcode, Label label) {
+        int at = length;
+        u1(opcode);
+        if (label.position >= 0) {
+            u2(label.position - at);
+            return;
+        }
+        if (label.count == label.branches.length) {
+            int[] grown = new int[label.count * 2];
+            System.arraycopy(label.branches, 0, grown, 0, label.count);
+            label.branches = grown;
+        }
+        label.branches[label.count++] = at;
+        u2(0);
+    }
+
+    /**
+     * Places label at the current position and patches the branches to it.
+     * @param label The label.
+     */
+    void place(Label label) {
+        label.position = length;
+        for (int i = 0; i < label.count; i++) {
+            int at = label.branches[i];
+            int offset = length - at;
+            code[at + 1] = (byte) (offset >>> 8);
+            code[at + 2] = (byte) offset;
+        }
+        label.count = 0;
+    }
+
+    /**
+     * Adds a handler for any exception thrown between start and end.
+     * @param start First instruction covered.
+     * @param end First instruction not covered.
+     * @param handler The handler.
+     */
+    void handler(Label start, Label end, Label handler) {
+        int n = handlers.length;
+        int[] grown = new int[n + 3];
+        System.arraycopy(handlers, 0, grown, 0, n);
+        grown[n]     = start.position;
+        grown[n + 1] = end.position;
+        grown[n + 2] = handler.position;
+        handlers = grown;
+    }
+
+    /**
+     * Returns the bytes of the class with the code written so far as its method.
+     * @param name Name of the method.
+     * @param desc Descriptor of the method.
+     * @param maxStack Maximum depth of the operand stack.
+     * @param maxLocals Number of local variables (including this and the arguments).
+     * @return The class file.
+     */
+    byte[] toBytes(String name, String desc, int maxStack, int maxLocals) {
+
+        int codeAttr = utf8("Code");
+        int init     = utf8("<init>");
+        int initDesc = utf8("()V");
+        int superInit = memberRef(10, superName, "<init>", "()V");
+        int method   = utf8(name);
+        int methodDesc = utf8(desc);
+
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(b)) {
+
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolCount);
+            pool.writeTo(out);
+
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);             // interfaces
+            out.writeShort(0);             // fields
+            out.writeShort(2);             // methods
+
+            // public <init>() { super(); }
+            out.writeShort(ACC_PUBLIC);
+            out.writeShort(init);
+            out.writeShort(initDesc);
+            out.writeShort(1);
+            out.writeShort(codeAttr);
+            out.writeInt(12 + 5);
+            out.writeShort(1);
+            out.writeShort(1);
+            out.writeInt(5);
+            out.writeByte(ALOAD_0);
+            out.writeByte(INVOKESPECIAL);
+            out.writeShort(superInit);
+            out.writeByte(RETURN);
+            out.writeShort(0);
+            out.writeShort(0);
+
+            out.writeShort(ACC_PUBLIC);
+            out.writeShort(method);
+            out.writeShort(methodDesc);
+            out.writeShort(1);
+            out.writeShort(codeAttr);
+            out.writeInt(12 + length + handlers.length / 3 * 8);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(length);
+            out.write(code, 0, length);
+            out.writeShort(handlers.length / 3);
+            for (int i = 0; i < handlers.length; i += 3) {
+                out.writeShort(handlers[i]);
+                out.writeShort(handlers[i + 1]);
+                out.writeShort(handlers[i + 2]);
+                out.writeShort(0);
+            }
+            out.writeShort(0);
+
+            out.writeShort(0);             // class attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return b.toByteArray();
+    }
+}
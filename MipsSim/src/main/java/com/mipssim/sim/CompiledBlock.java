@@ -0,0 +1,193 @@
+package com.mipssim.sim;
+
+/**
+ * CompiledBlock is the super class of the classes BlockCompiler generates for hot blocks. The generated classes are
+ * defined by their own class loader (so they are unloaded with their block) and therefore can not see the
+ * package-private members of the simulator; they call the protected helpers here instead, which the JVM inlines.
+ */
+public abstract class CompiledBlock {
+
+    // Set when the code of the block is written, a block that loops on itself then stops after the iteration.
+    protected boolean invalidated;
+
+    protected CompiledBlock() {
+    }
+
+    /**
+     * Executes the block, repeating it while it branches back to its own start and budget allows.
+     * @param cpu State of the processor, pc and npc are set to the next block when this returns.
+     * @param r The general registers of cpu.
+     * @param mem Memory of the program.
+     * @param budget Number of instructions left, the block is run at least once even if it is longer.
+     * @return Number of instructions executed.
+     */
+    protected abstract long run(Cpu cpu, int[] r, Memory mem, long budget);
+
+    protected static void jump(Cpu cpu, int pc) {
+        cpu.pc  = pc;
+        cpu.npc = pc + 4;
+    }
+
+    protected static int addExact(int a, int b, int pc) {
+        return Interpreter.addExact(a, b, pc);
+    }
+
+    protected static int subExact(int a, int b, int pc) {
+        return Interpreter.subExact(a, b, pc);
+    }
+
+    protected static int aligned(int addr, int mask, int pc) {
+        return Interpreter.aligned(addr, mask, pc);
+    }
+
+    protected static int lwl(Memory mem, int addr, int rt) {
+        return Interpreter.lwl(mem, addr, rt);
+    }
+
+    protected static int lwr(Memory mem, int addr, int rt) {
+        return Interpreter.lwr(mem, addr, rt);
+    }
+
+    protected static void swl(Memory mem, int addr, int rt) {
+        Interpreter.swl(mem, addr, rt);
+    }
+
+    protected static void swr(Memory mem, int addr, int rt) {
+        Interpreter.swr(mem, addr, rt);
+    }
+
+    protected static int ll(Cpu cpu, Memory mem, int addr, int pc) {
+        cpu.llBit = true;
+        return mem.loadWord(Interpreter.aligned(addr, 3, pc));
+    }
+
+    protected static int sc(Cpu cpu, Memory mem, int addr, int rt, int pc) {
+        boolean linked = cpu.llBit;
+        if (linked)
+            mem.storeWord(Interpreter.aligned(addr, 3, pc), rt);
+        cpu.llBit = false;
+        return linked ? 1 : 0;
+    }
+
+    protected static int hi(Cpu cpu) {
+        return cpu.hi;
+    }
+
+    protected static int lo(Cpu cpu) {
+        return cpu.lo;
+    }
+
+    protected static void setHi(Cpu cpu, int value) {
+        cpu.hi = value;
+    }
+
+    protected static void setLo(Cpu cpu, int value) {
+        cpu.lo = value;
+    }
+
+    protected static void mult(Cpu cpu, int a, int b) {
+        long p = (long) a * b;
+        cpu.lo = (int) p;
+        cpu.hi = (int) (p >>> 32);
+    }
+
+    protected static void multu(Cpu cpu, int a, int b) {
+        long p = Integer.toUnsignedLong(a) * Integer.toUnsignedLong(b);
+        cpu.lo = (int) p;
+        cpu.hi = (int) (p >>> 32);
+    }
+
+    protected static void div(Cpu cpu, int a, int b) {
+        if (b != 0) {
+            cpu.lo = a / b;
+            cpu.hi = a % b;
+        }
+    }
+
+    protected static void divu(Cpu cpu, int a, int b) {
+        if (b != 0) {
+            cpu.lo = Integer.divideUnsigned(a, b);
+            cpu.hi = Integer.remainderUnsigned(a, b);
+        }
+    }
+
+    /**
+     * Adds (or subtracts) the product of a and b to HI/LO, for madd, maddu, msub and msubu.
+     */
+    protected static void accumulate(Cpu cpu, int a, int b, boolean unsigned, boolean add) {
+        long p   = unsigned ? Integer.toUnsignedLong(a) * Integer.toUnsignedLong(b) : (long) a * b;
+        long acc = ((long) cpu.hi << 32) | Integer.toUnsignedLong(cpu.lo);
+        acc      = add ? acc + p : acc - p;
+        cpu.lo = (int) acc;
+        cpu.hi = (int) (acc >>> 32);
+    }
+
+    protected static int[] fpr(Cpu cpu) {
+        return cpu.fpr;
+    }
+
+    protected static float getS(int[] f, int reg) {
+        return Fpu.s(f, reg);
+    }
+
+    protected static void setS(int[] f, int reg, float value) {
+        Fpu.s(f, reg, value);
+    }
+
+    protected static double getD(int[] f, int reg) {
+        return Fpu.d(f, reg);
+    }
+
+    protected static void setD(int[] f, int reg, double value) {
+        Fpu.d(f, reg, value);
+    }
+
+    protected static boolean condition(Cpu cpu, int cc) {
+        return Fpu.condition(cpu.fcsr, cc);
+    }
+
+    protected static int control(Cpu cpu, int reg) {
+        return Fpu.control(cpu, reg);
+    }
+
+    protected static void setControl(Cpu cpu, int reg, int value) {
+        Fpu.setControl(cpu, reg, value);
+    }
+
+    protected static void loadDouble(Memory mem, int addr, int[] f, int reg) {
+        Fpu.loadDouble(mem, addr, f, reg);
+    }
+
+    protected static void storeDouble(Memory mem, int addr, int[] f, int reg) {
+        Fpu.storeDouble(mem, addr, f, reg);
+    }
+
+    protected static void compareS(Cpu cpu, int word) {
+        Fpu.compareS(cpu, word);
+    }
+
+    protected static void compareD(Cpu cpu, int word) {
+        Fpu.compareD(cpu, word);
+    }
+
+    /**
+     * Executes a computational coprocessor 1 op that is not generated inline (see Fpu.execute).
+     */
+    protected static void cop1(Cpu cpu, int op, int word) {
+        Fpu.execute(cpu, op, word);
+    }
+
+    /**
+     * Traps if the condition of a trap op (tge, tgei, ...) holds for a and b.
+     */
+    protected static void trap(int op, int a, int b, int pc) {
+        switch (op) {
+            case Op.TGE:  case Op.TGEI:  Interpreter.trap(a >= b, pc); break;
+            case Op.TGEU: case Op.TGEIU: Interpreter.trap(Integer.compareUnsigned(a, b) >= 0, pc); break;
+            case Op.TLT:  case Op.TLTI:  Interpreter.trap(a < b, pc); break;
+            case Op.TLTU: case Op.TLTIU: Interpreter.trap(Integer.compareUnsigned(a, b) < 0, pc); break;
+            case Op.TEQ:  case Op.TEQI:  Interpreter.trap(a == b, pc); break;
+            default:                     Interpreter.trap(a != b, pc); break;
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package com.mipssim.sim;
+
+import java.util.Arrays;
+
+/**
+ * Cp0 is the system control coprocessor: the CP0 registers for exceptions and virtual memory, and a MIPS32 TLB of
+ * ENTRIES entries. An entry maps an even/odd pair of virtual pages (VPN2, of the size given by its page mask) of
+ * one address space (ASID, or all if global) to two physical frames (EntryLo0 and EntryLo1).
+ *
+ * translate is the full lookup of the MIPS32 segments: kuseg (unmapped while Status.ERL is set) and kseg2/kseg3
+ * go through the TLB, kseg0 and kseg1 are unmapped, and user mode (supervisor mode is treated as user mode) can only
+ * reach kuseg. Physical memory is the Memory of the program indexed by the kseg0 address of every physical byte
+ * (physical address ^ 0x80000000), so an image linked in kseg0 is found where it was loaded, and kseg1 and mapped
+ * pages alias it. A Mmu keeps the translations in a software TLB and is told when they change (TLB writes, a new
+ * ASID in EntryHi, a new mode in Status).
+ *
+ * Exceptions (see exception) set EPC, Cause, BadVAddr, Context and EntryHi as MIPS32 does and enter the refill or
+ * the general vector. Count/Compare, interrupts, caches and the Debug registers are not modelled, and Random
+ * counts down on every tlbwr instead of every cycle.
+ */
+final class Cp0 {
+
+    // Number of TLB entries.
+    static final int ENTRIES = 16;
+
+    // Register numbers (all sel 0, except Config1).
+    static final int INDEX     = 0;
+    static final int RANDOM    = 1;
+    static final int ENTRY_LO0 = 2;
+    static final int ENTRY_LO1 = 3;
+    static final int CONTEXT   = 4;
+    static final int PAGE_MASK = 5;
+    static final int WIRED     = 6;
+    static final int BAD_VADDR = 8;
+    static final int COUNT     = 9;
+    static final int ENTRY_HI  = 10;
+    static final int COMPARE   = 11;
+    static final int STATUS    = 12;
+    static final int CAUSE     = 13;
+    static final int EPC       = 14;
+    static final int PRID      = 15;
+    static final int CONFIG    = 16;
+    static final int DEPC      = 24;
+    static final int ERROR_EPC = 30;
+
+    // Status bits.
+    static final int STATUS_EXL = 1 << 1;
+    static final int STATUS_ERL = 1 << 2;
+    static final int STATUS_KSU = 3 << 3;
+    static final int STATUS_BEV = 1 << 22;
+
+    // Exception codes (Cause bits 6:2).
+    static final int MOD  = 1;
+    static final int TLBL = 2;
+    static final int TLBS = 3;
+    static final int ADEL = 4;
+    static final int ADES = 5;
+
+    // EntryLo bits.
+    private static final int GLOBAL = 1;
+    private static final int VALID  = 2;
+    private static final int DIRTY  = 4;
+
+    // Writable bits of Status: CU, RP, FR, RE, BEV, IM, KSU, ERL, EXL and IE.
+    private static final int STATUS_MASK = 0xfe40ff1f;
+
+    // MIPS 4Kc; Config: Config1 present, MMU type TLB, kseg0 cacheable; Config1: the number of entries - 1.
+    private static final int PRID_VALUE    = 0x00018001;
+    private static final int CONFIG_VALUE  = 0x80000083;
+    private static final int CONFIG1_VALUE = (ENTRIES - 1) << 25;
+
+    private final int[] regs = new int[32];
+    private int random;
+
+    // The TLB: page mask, VPN2 and ASID, and the two EntryLos (with G set in both if the entry is global).
+    private final int[] pageMasks = new int[ENTRIES];
+    private final int[] entryHis  = new int[ENTRIES];
+    private final int[] entryLo0s = new int[ENTRIES];
+    private final int[] entryLo1s = new int[ENTRIES];
+
+    // Software TLB told about changed translations, null for none.
+    Mmu mmu;
+
+    private long exceptions;
+
+    /**
+     * Sets the registers to their reset values: kernel mode with Status.ERL and BEV set, and a TLB without valid
+     * entries.
+     */
+    void reset() {
+        Arrays.fill(regs, 0);
+        regs[STATUS] = STATUS_BEV | STATUS_ERL;
+        regs[PRID]   = PRID_VALUE;
+        regs[CONFIG] = CONFIG_VALUE;
+        random = ENTRIES - 1;
+        for (int i = 0; i < ENTRIES; i++) {
+            // Distinct VPN2s in kseg0, which is never looked up in the TLB.
+            pageMasks[i] = 0;
+            entryHis[i]  = 0x80000000 + (i << 13);
+            entryLo0s[i] = 0;
+            entryLo1s[i] = 0;
+        }
+        exceptions = 0;
+        changed();
+    }
+
+    /**
+     * Reads a register for mfc0.
+     * @param reg Register number.
+     * @param sel Select field.
+     * @return The value, 0 for registers that are not modelled.
+     */
+    int read(int reg, int sel) {
+        if (sel != 0)
+            return ((reg == CONFIG) && (sel == 1)) ? CONFIG1_VALUE : 0;
+        return (reg == RANDOM) ? random : regs[reg];
+    }
+
+    /**
+     * Writes a register for mtc0. Only the writable fields change; Random, BadVAddr, PRId and Config are read-only.
+     * @param reg Register number.
+     * @param sel Select field.
+     * @param value Value.
+     */
+    void write(int reg, int sel, int value) {
+        if (sel != 0)
+            return;
+        switch (reg) {
+            case INDEX:
+                regs[INDEX] = (regs[INDEX] & 0x80000000) | (value & (ENTRIES - 1));
+                break;
+            case ENTRY_LO0:
+            case ENTRY_LO1:
+                regs[reg] = value & 0x03ffffff;
+                break;
+            case CONTEXT:
+                regs[CONTEXT] = (regs[CONTEXT] & 0x007ffff0) | (value & 0xff800000);
+                break;
+            case PAGE_MASK:
+                regs[PAGE_MASK] = value & 0x1fffe000;
+                break;
+            case WIRED:
+                regs[WIRED] = value & (ENTRIES - 1);
+                random = ENTRIES - 1;
+                break;
+            case ENTRY_HI: {
+                int asid = regs[ENTRY_HI] & 0xff;
+                regs[ENTRY_HI] = value & 0xffffe0ff;
+                if ((value & 0xff) != asid)
+                    changed();
+                break;
+            }
+            case STATUS: {
+                int mode = mode();
+                regs[STATUS] = value & STATUS_MASK;
+                if (mode() != mode)
+                    changed();
+                break;
+            }
+            case CAUSE:
+                // Only the software interrupt bits.
+                regs[CAUSE] = (regs[CAUSE] & ~0x300) | (value & 0x300);
+                break;
+            case COUNT:
+            case COMPARE:
+            case EPC:
+            case DEPC:
+            case ERROR_EPC:
+                regs[reg] = value;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Returns what decides how addresses are translated apart from the TLB: bit 0 Status.ERL, bit 1 user mode.
+     */
+    private int mode() {
+        int status = regs[STATUS];
+        if ((status & STATUS_ERL) != 0)
+            return 1;
+        return (((status & STATUS_EXL) == 0) && ((status & STATUS_KSU) != 0)) ? 2 : 0;
+    }
+
+    private void changed() {
+        if (mmu != null)
+            mmu.flush();
+    }
+
+    /**
+     * tlbr: reads the entry at Index into PageMask, EntryHi, EntryLo0 and EntryLo1.
+     */
+    void tlbr() {
+        int i    = regs[INDEX] & (ENTRIES - 1);
+        int asid = regs[ENTRY_HI] & 0xff;
+        regs[PAGE_MASK] = pageMasks[i];
+        regs[ENTRY_HI]  = entryHis[i];
+        regs[ENTRY_LO0] = entryLo0s[i];
+        regs[ENTRY_LO1] = entryLo1s[i];
+        if ((entryHis[i] & 0xff) != asid)
+            changed();
+    }
+
+    /**
+     * tlbwi: writes PageMask, EntryHi, EntryLo0 and EntryLo1 to the entry at Index.
+     */
+    void tlbwi() {
+        writeEntry(regs[INDEX] & (ENTRIES - 1));
+    }
+
+    /**
+     * tlbwr: writes the entry at Random, which then counts down from ENTRIES - 1 to Wired.
+     */
+    void tlbwr() {
+        writeEntry(random);
+        random = (random <= regs[WIRED]) ? ENTRIES - 1 : random - 1;
+    }
+
+    private void writeEntry(int i) {
+        // The pages of the old and of the new entry are no longer translated the same.
+        invalidate(i);
+        int global   = regs[ENTRY_LO0] & regs[ENTRY_LO1] & GLOBAL;
+        pageMasks[i] = regs[PAGE_MASK];
+        entryHis[i]  = regs[ENTRY_HI];
+        entryLo0s[i] = (regs[ENTRY_LO0] & ~GLOBAL) | global;
+        entryLo1s[i] = (regs[ENTRY_LO1] & ~GLOBAL) | global;
+        invalidate(i);
+    }
+
+    private void invalidate(int i) {
+        if (mmu != null) {
+            int mask = pageMasks[i] | 0x1fff;
+            mmu.invalidate(entryHis[i] & ~mask, mask + 1);
+        }
+    }
+
+    /**
+     * tlbp: sets Index to the entry matching EntryHi, or its P bit (31) if none does.
+     */
+    void tlbp() {
+        int hi = regs[ENTRY_HI];
+        regs[INDEX] = 0x80000000;
+        for (int i = 0; i < ENTRIES; i++) {
+            if (matches(i, hi)) {
+                regs[INDEX] = i;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns true if entry i maps the VPN2 of vaddr in the address space of the ASID in asid (bits 7:0).
+     */
+    private boolean matches(int i, int vaddr, int asid) {
+        int mask = pageMasks[i] | 0x1fff;
+        return (((vaddr ^ entryHis[i]) & ~mask) == 0) &&
+               (((entryLo0s[i] & GLOBAL) != 0) || (((entryHis[i] ^ asid) & 0xff) == 0));
+    }
+
+    private boolean matches(int i, int hi) {
+        return matches(i, hi, hi);
+    }
+
+    /**
+     * eret: leaves the exception (Status.EXL) or error (Status.ERL) level.
+     * @return Address to continue at, EPC or ErrorEPC.
+     */
+    int eret() {
+        int mode = mode();
+        int target;
+        if ((regs[STATUS] & STATUS_ERL) != 0) {
+            target = regs[ERROR_EPC];
+            regs[STATUS] &= ~STATUS_ERL;
+        } else {
+            target = regs[EPC];
+            regs[STATUS] &= ~STATUS_EXL;
+        }
+        if (mode() != mode)
+            changed();
+        return target;
+    }
+
+    /**
+     * deret: returns from a debug exception, which are not raised here.
+     * @return Address to continue at, DEPC.
+     */
+    int deret() {
+        return regs[DEPC];
+    }
+
+    /**
+     * Translates a virtual address.
+     * @param vaddr The virtual address.
+     * @param write True for a store.
+     * @return The address of the physical byte in the Memory of the program (physical address ^ 0x80000000).
+     * @throws AddressException If the address is not mapped, the entry is not valid, a store hits a clean page or
+     * user mode accesses a kernel segment.
+     */
+    int translate(int vaddr, boolean write) throws AddressException {
+
+        int mode = mode();
+        switch (vaddr >>> 29) {
+            case 4:
+            case 5:
+                if (mode == 2)
+                    throw new AddressException(write ? ADES : ADEL, vaddr, false);
+                // kseg0 is where physical memory is indexed, kseg1 aliases it.
+                return vaddr & 0x9fffffff;
+            case 6:
+            case 7:
+                if (mode == 2)
+                    throw new AddressException(write ? ADES : ADEL, vaddr, false);
+                break;
+            default:
+                if (mode == 1)
+                    return vaddr ^ 0x80000000;
+                break;
+        }
+
+        int asid = regs[ENTRY_HI];
+        for (int i = 0; i < ENTRIES; i++) {
+            if (!matches(i, vaddr, asid))
+                continue;
+            // The bit below VPN2 selects the even or the odd page.
+            int odd = ((pageMasks[i] | 0x1fff) + 1) >>> 1;
+            int lo  = ((vaddr & odd) == 0) ? entryLo0s[i] : entryLo1s[i];
+            if ((lo & VALID) == 0)
+                throw new AddressException(write ? TLBS : TLBL, vaddr, false);
+            if (write && ((lo & DIRTY) == 0))
+                throw new AddressException(MOD, vaddr, false);
+            int frame = ((lo >>> 6) << 12) & -odd;
+            return (frame | (vaddr & (odd - 1))) ^ 0x80000000;
+        }
+        throw new AddressException(write ? TLBS : TLBL, vaddr, true);
+    }
+
+    /**
+     * Takes an exception raised by an instruction: sets EPC (unless Status.EXL is already set), Cause, BadVAddr,
+     * and for a TLB exception the BadVPN2 of Context and the VPN2 of EntryHi, and enters exception level.
+     * @param e The exception.
+     * @param pc Address of the instruction.
+     * @param delaySlot True if the instruction is in the delay slot of a branch (EPC is then the branch).
+     * @return Address of the exception vector to continue at.
+     */
+    int exception(AddressException e, int pc, boolean delaySlot) {
+
+        int status = regs[STATUS];
+        int mode   = mode();
+        boolean refill = e.isRefill() && ((status & STATUS_EXL) == 0);
+
+        if ((status & STATUS_EXL) == 0) {
+            regs[EPC]   = delaySlot ? pc - 4 : pc;
+            regs[CAUSE] = delaySlot ? regs[CAUSE] | 0x80000000 : regs[CAUSE] & 0x7fffffff;
+        }
+        regs[CAUSE]     = (regs[CAUSE] & ~0x7c) | (e.getCode() << 2);
+        regs[BAD_VADDR] = e.getAddress();
+        if (e.getCode() <= TLBS) {
+            regs[CONTEXT]  = (regs[CONTEXT] & 0xff800000) | ((e.getAddress() >>> 9) & 0x007ffff0);
+            regs[ENTRY_HI] = (e.getAddress() & 0xffffe000) | (regs[ENTRY_HI] & 0xff);
+        }
+        regs[STATUS] = status | STATUS_EXL;
+        exceptions++;
+        if (mode() != mode)
+            changed();
+
+        int base = ((status & STATUS_BEV) != 0) ? 0xbfc00200 : 0x80000000;
+        return base + (refill ? 0 : 0x180);
+    }
+
+    /**
+     * Returns the number of exceptions taken.
+     * @return Number of exceptions.
+     */
+    long getExceptions() {
+        return exceptions;
+    }
+}
@@ -0,0 +1,105 @@
+package com.mipssim.sim;
+
+import java.util.Arrays;
+
+/**
+ * Cpu holds the architectural state of the simulated processor: the 32 general registers, HI/LO, the program
+ * counter, the floating-point registers and FCSR of coprocessor 1 (see Fpu) and the registers and TLB of
+ * coprocessor 0 (see Cp0). npc is the address of the instruction after pc, which differs from pc + 4 while pc is
+ * the delay slot of a taken branch.
+ */
+public class Cpu {
+
+    // Initial $sp and $gp, the same as in SPIM.
+    public static final int STACK_TOP  = 0x7fffeffc;
+    public static final int GLOBAL_PTR = 0x10008000;
+
+    // Initial $ra. Returning to it (e.g. "jr $ra" from the entry function) halts the simulation.
+    public static final int RETURN_ADDRESS = 0;
+
+    final int[] regs = new int[32];
+    int hi;
+    int lo;
+    int pc;
+    int npc;
+
+    // Raw bits of the FPRs, a double is held in an even/odd pair.
+    final int[] fpr = new int[32];
+    int fcsr;
+
+    final Cp0 cp0 = new Cp0();
+
+    // Set by ll, sc only stores if it is still set.
+    boolean llBit;
+
+    /**
+     * Clears all registers and starts at entry.
+     * @param entry Address of the first instruction.
+     */
+    public void reset(int entry) {
+        Arrays.fill(regs, 0);
+        hi  = 0;
+        lo  = 0;
+        pc  = entry;
+        npc = entry + 4;
+        llBit = false;
+        Arrays.fill(fpr, 0);
+        fcsr = 0;
+        cp0.reset();
+        regs[28] = GLOBAL_PTR;
+        regs[29] = STACK_TOP;
+        regs[31] = RETURN_ADDRESS;
+    }
+
+    public int getRegister(int reg)            { return regs[reg & 0x1f]; }
+    public int getHi()                         { return hi; }
+    public int getLo()                         { return lo; }
+    public int getPc()                         { return pc; }
+    public int getFcsr()                       { return fcsr; }
+
+    /**
+     * Returns a floating-point register as a single.
+     * @param reg Register number (0-31).
+     * @return Value.
+     */
+    public float getFloat(int reg) {
+        return Fpu.s(fpr, reg & 0x1f);
+    }
+
+    /**
+     * Returns a floating-point register pair as a double.
+     * @param reg Number of the even register of the pair.
+     * @return Value.
+     */
+    public double getDouble(int reg) {
+        return Fpu.d(fpr, reg);
+    }
+
+    /**
+     * Sets a floating-point register to the bits of a single.
+     * @param reg Register number (0-31).
+     * @param value Value.
+     */
+    public void setFloat(int reg, float value) {
+        Fpu.s(fpr, reg & 0x1f, value);
+    }
+
+    /**
+     * Sets a floating-point register pair to the bits of a double.
+     * @param reg Number of the even register of the pair.
+     * @param value Value.
+     */
+    public void setDouble(int reg, double value) {
+        Fpu.d(fpr, reg, value);
+    }
+
+    /**
+     * Sets a register, writes to $zero are ignored.
+     * @param reg Register number (0-31).
+     * @param value Value.
+     */
+    public void setRegister(int reg, int value) {
+        if ((reg & 0x1f) != 0)
+            regs[reg & 0x1f] = value;
+    }
+}
@@ -0,0 +1,38 @@
+package com.mipssim.sim;
+
+import java.io.PrintStream;
+
+/**
+ * Engine executes a program on a Cpu, e.g. one instruction at a time (Interpreter) or one translated block at a
+ * time (BlockEngine).
+ */
+public interface Engine {
+
+    /**
+     * Executes instructions until the program halts or about limit instructions have been executed (an engine
+     * that executes whole blocks stops at the end of the block that reaches limit).
+     * @param cpu State to execute on, its pc is the first instruction.
+     * @param limit Maximum number of instructions to execute, 0 = no limit.
+     * @return Number of instructions executed.
+     * @throws SimulationException If an instruction can not be executed.
+     */
+    long run(Cpu cpu, long limit);
+
+    /**
+     * Returns true if the program has exited (syscall exit or return to Cpu.RETURN_ADDRESS).
+     * @return True if halted.
+     */
+    boolean isHalted();
+
+    /**
+     * Returns the exit code of the program, valid when halted.
+     * @return Exit code.
+     */
+    int getExitCode();
+
+    /**
+     * Sets the stream syscalls print to.
+     * @param out Stream to print to (default System.out).
+     */
+    void setOutput(PrintStream out);
+}
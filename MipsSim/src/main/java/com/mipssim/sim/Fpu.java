@@ -0,0 +1,251 @@
+package com.mipssim.sim;
+
+/**
+ * Fpu executes the instructions of coprocessor 1, the floating-point unit, on the FPRs and the FCSR of a Cpu.
+ *
+ * The 32 FPRs hold raw bits in an int array. A single is one register, viewed through Float.intBitsToFloat; a double
+ * is an even/odd pair (the low word in the even register, as with FR = 0), viewed through Double.longBitsToDouble.
+ * Nothing is boxed or allocated.
+ *
+ * The compares set one of the eight condition flags of the FCSR (cc 0 in bit 23, cc 1-7 in bits 25-31), which
+ * bc1f/bc1t and movf/movt test. Conversions to word use the rounding mode of the FCSR (bits 1:0) and give
+ * 2^31 - 1 for NaN and values out of range, like MIPS with the invalid operation exception disabled. No other
+ * exception or flag of the FCSR is modelled.
+ */
+final class Fpu {
+
+    // Rounding modes of the FCSR.
+    static final int ROUND_NEAREST = 0;
+    static final int ROUND_ZERO    = 1;
+    static final int ROUND_UP      = 2;
+    static final int ROUND_DOWN    = 3;
+
+    // Value of FIR (control register 0): single, double and word formats, no implementation number.
+    static final int FIR = 0x00130000;
+
+    // Result of an invalid conversion to word.
+    private static final int INVALID_WORD = Integer.MAX_VALUE;
+
+    private Fpu() {
+    }
+
+    static float s(int[] f, int reg) {
+        return Float.intBitsToFloat(f[reg]);
+    }
+
+    static void s(int[] f, int reg, float value) {
+        f[reg] = Float.floatToRawIntBits(value);
+    }
+
+    static double d(int[] f, int reg) {
+        return Double.longBitsToDouble(bits(f, reg));
+    }
+
+    static void d(int[] f, int reg, double value) {
+        bits(f, reg, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Returns the bits of the double in the register pair of reg (an odd reg names the same pair as reg - 1).
+     */
+    static long bits(int[] f, int reg) {
+        reg &= 0x1e;
+        return ((long) f[reg + 1] << 32) | Integer.toUnsignedLong(f[reg]);
+    }
+
+    static void bits(int[] f, int reg, long bits) {
+        reg &= 0x1e;
+        f[reg]     = (int) bits;
+        f[reg + 1] = (int) (bits >>> 32);
+    }
+
+    /**
+     * Returns condition flag cc of an FCSR.
+     * @param fcsr The FCSR.
+     * @param cc Number of the flag (0-7).
+     * @return The flag.
+     */
+    static boolean condition(int fcsr, int cc) {
+        return (fcsr & bit(cc)) != 0;
+    }
+
+    private static int bit(int cc) {
+        return (cc == 0) ? 1 << 23 : 1 << (24 + cc);
+    }
+
+    /**
+     * Returns true if bc1f, bc1t, bc1fl or bc1tl branches.
+     * @param op The branch.
+     * @param word The instruction word (cc in bits 20:18).
+     * @param fcsr The FCSR.
+     * @return True if taken.
+     */
+    static boolean branchTaken(int op, int word, int fcsr) {
+        boolean set = condition(fcsr, (word >>> 18) & 7);
+        return ((op == Op.BC1T) || (op == Op.BC1TL)) ? set : !set;
+    }
+
+    /**
+     * Compares two values for c.cond.fmt. Bit 0 of cond accepts unordered (a NaN), bit 1 equal and bit 2 less
+     * than; bit 3 (signalling) only matters for exceptions.
+     */
+    static boolean compare(double a, double b, int cond) {
+        if (Double.isNaN(a) || Double.isNaN(b))
+            return (cond & 1) != 0;
+        return (((cond & 2) != 0) && (a == b)) || (((cond & 4) != 0) && (a < b));
+    }
+
+    /**
+     * Converts a value to a word, rounded in a rounding mode.
+     */
+    static int toWord(double value, int mode) {
+        double rounded;
+        switch (mode) {
+            case ROUND_NEAREST: rounded = Math.rint(value); break;
+            case ROUND_ZERO:    rounded = (value < 0) ? Math.ceil(value) : Math.floor(value); break;
+            case ROUND_UP:      rounded = Math.ceil(value); break;
+            default:            rounded = Math.floor(value); break;
+        }
+        if (Double.isNaN(rounded) || (rounded < Integer.MIN_VALUE) || (rounded > Integer.MAX_VALUE))
+            return INVALID_WORD;
+        return (int) rounded;
+    }
+
+    /**
+     * Reads a control register for cfc1: 0 (FIR), 25 (FCCR, the condition flags), 26 (FEXR) and 28 (FENR), the
+     * views of the FCSR, and 31 (FCSR).
+     */
+    static int control(Cpu cpu, int reg) {
+        int fcsr = cpu.fcsr;
+        switch (reg) {
+            case 0:  return FIR;
+            case 25: return ((fcsr >>> 24) & 0xfe) | ((fcsr >>> 23) & 1);
+            case 26: return fcsr & 0x0003f07c;
+            case 28: return (fcsr & 0x00000f83) | ((fcsr >>> 22) & 4);
+            case 31: return fcsr;
+            default: return 0;
+        }
+    }
+
+    /**
+     * Writes a control register for ctc1 (see control), writes to the others are ignored.
+     */
+    static void setControl(Cpu cpu, int reg, int value) {
+        int fcsr = cpu.fcsr;
+        switch (reg) {
+            case 25: fcsr = (fcsr & 0x017fffff) | ((value & 0xfe) << 24) | ((value & 1) << 23); break;
+            case 26: fcsr = (fcsr & ~0x0003f07c) | (value & 0x0003f07c); break;
+            case 28: fcsr = (fcsr & ~0x01000f83) | (value & 0x00000f83) | ((value & 4) << 22); break;
+            case 31: fcsr = value; break;
+            default: return;
+        }
+        cpu.fcsr = fcsr;
+    }
+
+    static void loadDouble(Memory mem, int addr, int[] f, int reg) {
+        // The word at the lower address is the high half in big-endian memory.
+        int first  = mem.loadWord(addr);
+        int second = mem.loadWord(addr + 4);
+        reg &= 0x1e;
+        f[reg]     = mem.isBigEndian() ? second : first;
+        f[reg + 1] = mem.isBigEndian() ? first : second;
+    }
+
+    static void storeDouble(Memory mem, int addr, int[] f, int reg) {
+        reg &= 0x1e;
+        mem.storeWord(addr, mem.isBigEndian() ? f[reg + 1] : f[reg]);
+        mem.storeWord(addr + 4, mem.isBigEndian() ? f[reg] : f[reg + 1]);
+    }
+
+    /**
+     * Executes a computational instruction (the ops from ADD_S to C_D), the operands are the fs, ft and fd fields
+     * of the word.
+     * @param cpu State of the processor.
+     * @param op The op.
+     * @param word The instruction word.
+     */
+    static void execute(Cpu cpu, int op, int word) {
+
+        final int[] f = cpu.fpr;
+        final int ft  = (word >>> 16) & 0x1f;
+        final int fs  = (word >>> 11) & 0x1f;
+        final int fd  = (word >>> 6) & 0x1f;
+
+        switch (op) {
+            case Op.ADD_S:  s(f, fd, s(f, fs) + s(f, ft)); break;
+            case Op.ADD_D:  d(f, fd, d(f, fs) + d(f, ft)); break;
+            case Op.SUB_S:  s(f, fd, s(f, fs) - s(f, ft)); break;
+            case Op.SUB_D:  d(f, fd, d(f, fs) - d(f, ft)); break;
+            case Op.MUL_S:  s(f, fd, s(f, fs) * s(f, ft)); break;
+            case Op.MUL_D:  d(f, fd, d(f, fs) * d(f, ft)); break;
+            case Op.DIV_S:  s(f, fd, s(f, fs) / s(f, ft)); break;
+            case Op.DIV_D:  d(f, fd, d(f, fs) / d(f, ft)); break;
+            // The square root of a double rounded to float is the correctly rounded square root of the float.
+            case Op.SQRT_S: s(f, fd, (float) Math.sqrt(s(f, fs))); break;
+            case Op.SQRT_D: d(f, fd, Math.sqrt(d(f, fs))); break;
+            // abs, mov and neg only change the sign bit, even of a NaN.
+            case Op.ABS_S:  f[fd] = f[fs] & 0x7fffffff; break;
+            case Op.ABS_D:  bits(f, fd, bits(f, fs) & Long.MAX_VALUE); break;
+            case Op.MOV_S:  f[fd] = f[fs]; break;
+            case Op.MOV_D:  bits(f, fd, bits(f, fs)); break;
+            case Op.NEG_S:  f[fd] = f[fs] ^ 0x80000000; break;
+            case Op.NEG_D:  bits(f, fd, bits(f, fs) ^ Long.MIN_VALUE); break;
+
+            case Op.ROUND_W_S: f[fd] = toWord(s(f, fs), ROUND_NEAREST); break;
+            case Op.ROUND_W_D: f[fd] = toWord(d(f, fs), ROUND_NEAREST); break;
+            case Op.TRUNC_W_S: f[fd] = toWord(s(f, fs), ROUND_ZERO); break;
+            case Op.TRUNC_W_D: f[fd] = toWord(d(f, fs), ROUND_ZERO); break;
+            case Op.CEIL_W_S:  f[fd] = toWord(s(f, fs), ROUND_UP); break;
+            case Op.CEIL_W_D:  f[fd] = toWord(d(f, fs), ROUND_UP); break;
+            case Op.FLOOR_W_S: f[fd] = toWord(s(f, fs), ROUND_DOWN); break;
+            case Op.FLOOR_W_D: f[fd] = toWord(d(f, fs), ROUND_DOWN); break;
+
+            // Conditional moves, on a GPR (movz/movn) or a condition flag (movf/movt, cc in bits 20:18).
+            case Op.MOVZ_S: if (cpu.regs[ft] == 0) f[fd] = f[fs]; break;
+            case Op.MOVZ_D: if (cpu.regs[ft] == 0) bits(f, fd, bits(f, fs)); break;
+            case Op.MOVN_S: if (cpu.regs[ft] != 0) f[fd] = f[fs]; break;
+            case Op.MOVN_D: if (cpu.regs[ft] != 0) bits(f, fd, bits(f, fs)); break;
+            case Op.MOVF_S: if (!condition(cpu.fcsr, ft >>> 2)) f[fd] = f[fs]; break;
+            case Op.MOVF_D: if (!condition(cpu.fcsr, ft >>> 2)) bits(f, fd, bits(f, fs)); break;
+            case Op.MOVT_S: if (condition(cpu.fcsr, ft >>> 2)) f[fd] = f[fs]; break;
+            case Op.MOVT_D: if (condition(cpu.fcsr, ft >>> 2)) bits(f, fd, bits(f, fs)); break;
+
+            // Conversions, the double to single one rounds to nearest.
+            case Op.CVT_S_D: s(f, fd, (float) d(f, fs)); break;
+            case Op.CVT_S_W: s(f, fd, (float) f[fs]); break;
+            case Op.CVT_D_S: d(f, fd, s(f, fs)); break;
+            case Op.CVT_D_W: d(f, fd, f[fs]); break;
+            case Op.CVT_W_S: f[fd] = toWord(s(f, fs), cpu.fcsr & 3); break;
+            case Op.CVT_W_D: f[fd] = toWord(d(f, fs), cpu.fcsr & 3); break;
+
+            case Op.C_S: compareS(cpu, word); break;
+            case Op.C_D: compareD(cpu, word); break;
+
+            default:
+                throw new IllegalArgumentException("Not a computational COP1 op: " + Op.name(op));
+        }
+    }
+
+    /**
+     * Executes c.cond.s, the condition is in bits 3:0 of the word and cc in bits 10:8.
+     */
+    static void compareS(Cpu cpu, int word) {
+        int[] f = cpu.fpr;
+        compare(cpu, (word >>> 8) & 7, compare(s(f, (word >>> 11) & 0x1f), s(f, (word >>> 16) & 0x1f), word & 0xf));
+    }
+
+    /**
+     * Executes c.cond.d (see compareS).
+     */
+    static void compareD(Cpu cpu, int word) {
+        int[] f = cpu.fpr;
+        compare(cpu, (word >>> 8) & 7, compare(d(f, (word >>> 11) & 0x1f), d(f, (word >>> 16) & 0x1f), word & 0xf));
+    }
+
+    /**
+     * Sets condition flag cc to the result of a compare.
+     */
+    static void compare(Cpu cpu, int cc, boolean result) {
+        cpu.fcsr = result ? cpu.fcsr | bit(cc) : cpu.fcsr & ~bit(cc);
+    }
+}
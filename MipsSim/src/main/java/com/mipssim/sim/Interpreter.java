@@ -0,0 +1,576 @@
+package com.mipssim.sim;
+
+import com.mipssim.Mappings;
+
+import java.io.PrintStream;
+
+/**
+ * Interpreter executes a program on a Cpu. Every word of the program is predecoded once into its op (see Op), so
+ * executing an instruction is one array load and a switch; the register fields are taken from the word with shifts
+ * and masks. Branches and jumps have a delay slot: the instruction after them is executed before the target.
+ *
+ * Loads and stores go to the Memory of the program. Words must be aligned (lwl/lwr/swl/swr reach the unaligned
+ * bytes), and a store into the code of the program predecodes the written word again.
+ *
+ * Coprocessor 1 instructions work on the FPRs and the FCSR of the Cpu (see Fpu), coprocessor 0 instructions on its
+ * CP0 registers and TLB (see Cp0). With a Mmu (see setMmu), loads and stores are translated by the TLB, and an
+ * access it does not allow enters the exception vector of the guest instead of stopping the simulation;
+ * instructions are still fetched from the addresses the program was loaded at.
+ *
+ * Syscalls follow SPIM: $v0 = 1 print int, 2 print float ($f12), 3 print double ($f12), 4 print string, 9 sbrk,
+ * 10 exit, 11 print char, 17 exit with code $a0.
+ */
+public class Interpreter implements Engine, Memory.Watcher {
+
+    // Start of the heap grown by sbrk, the same as in SPIM.
+    public static final int HEAP_BASE = 0x10040000;
+
+    private final int base;
+    private final int[] words;
+    private final int[] ops;
+    private final Memory memory;
+    private final Mappings map;
+    private final int[] table;
+
+    private int brk = HEAP_BASE;
+
+    private PrintStream out = System.out;
+    private Tracer tracer;
+    private Mmu mmu;
+
+    // Instructions executed by the last execute, also when it threw.
+    private long executed;
+
+    private boolean halted;
+    private int exitCode;
+
+    /**
+     * Predecodes a program.
+     * @param program Program to execute.
+     * @param map Mappings object used to decode the words.
+     */
+    public Interpreter(Program program, Mappings map) {
+        this(program, map, Op.descriptors(program.getWords(), map));
+    }
+
+    /**
+     * Predecodes a program from the descriptors of its words, e.g. read from a TranslationCache.
+     * @param program Program to execute.
+     * @param map Mappings object used to decode words written by the program.
+     * @param descriptors Descriptor id of every word of the program (see Op.descriptors).
+     */
+    public Interpreter(Program program, Mappings map, int[] descriptors) {
+
+        this.base   = program.getBase();
+        this.words  = program.getWords().clone();
+        this.ops    = new int[words.length];
+        this.memory = program.getMemory();
+        this.map    = map;
+        this.table  = Op.table(map);
+
+        for (int i = 0; i < words.length; i++)
+            ops[i] = Op.fromDescriptor(words[i], descriptors[i], table);
+
+        memory.watch(base, words.length * 4, this);
+    }
+
+    /**
+     * Predecodes a word of the code again after the program wrote it.
+     * @param addr Address of the word.
+     */
+    @Override
+    public void written(int addr) {
+        int index    = (addr - base) >>> 2;
+        words[index] = memory.loadWord(addr);
+        ops[index]   = Op.predecode(words[index], map, table);
+    }
+
+    int getBase()    { return base; }
+    int[] getWords() { return words; }
+    int[] getOps()   { return ops; }
+
+    @Override
+    public void setOutput(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Sets a tracer to tell about every executed instruction.
+     * @param tracer The tracer, null for none.
+     */
+    public void setTracer(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * Translates the loads and stores of the program through mmu, which must belong to the Cpu that is run.
+     * @param mmu The Mmu, null to access the memory of the program directly.
+     */
+    public void setMmu(Mmu mmu) {
+        this.mmu = mmu;
+    }
+
+    @Override
+    public boolean isHalted() {
+        return halted;
+    }
+
+    @Override
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    @Override
+    public long run(Cpu cpu, long limit) {
+
+        if (limit <= 0)
+            limit = Long.MAX_VALUE;
+
+        long n = 0;
+        while (true) {
+            try {
+                return n + execute(cpu, limit - n);
+            } catch (AddressException e) {
+                // The instruction did not complete, the guest restarts it with eret. It is in the delay slot of a
+                // taken branch or jump if it is not followed by the next word (the word before it may be a branch
+                // that was jumped over).
+                n += executed;
+                boolean delaySlot = cpu.npc != cpu.pc + 4;
+                cpu.pc  = cpu.cp0.exception(e, cpu.pc, delaySlot);
+                cpu.npc = cpu.pc + 4;
+                if (n >= limit)
+                    return n;
+            }
+        }
+    }
+
+    /**
+     * Executes instructions as run does, but throws the AddressException of a translated load or store.
+     */
+    private long execute(Cpu cpu, long limit) {
+
+        final int[] r     = cpu.regs;
+        final int[] f     = cpu.fpr;
+        final Memory mem  = (mmu != null) ? mmu : this.memory;
+        final int[] words = this.words;
+        final int[] ops   = this.ops;
+        final int base    = this.base;
+        final int length  = words.length;
+        final Tracer tracer = this.tracer;
+
+        int pc  = cpu.pc;
+        int npc = cpu.npc;
+        int hi  = cpu.hi;
+        int lo  = cpu.lo;
+        long n  = 0;
+
+        try {
+            while (n < limit) {
+
+                int index = (pc - base) >>> 2;
+                if ((index >= length) || ((pc & 3) != 0)) {
+                    if (pc == Cpu.RETURN_ADDRESS) {
+                        halted = true;
+                        break;
+                    }
+                    throw new SimulationException(pc, "Jump outside the program");
+                }
+
+                int word = words[index];
+                if (tracer != null)
+                    tracer.step(pc, word, ops[index], r);
+                int rs   = (word >>> 21) & 0x1f;
+                int rt   = (word >>> 16) & 0x1f;
+                int rd   = (word >>> 11) & 0x1f;
+                int next = npc + 4;
+
+                switch (ops[index]) {
+
+                    case Op.NOP:
+                    case Op.SYNC:
+                    case Op.PREF:
+                    case Op.CACHE:
+                        break;
+
+                    // Shifts.
+                    case Op.SLL:  r[rd] = r[rt] << ((word >>> 6) & 0x1f); break;
+                    case Op.SRL:  r[rd] = r[rt] >>> ((word >>> 6) & 0x1f); break;
+                    case Op.SRA:  r[rd] = r[rt] >> ((word >>> 6) & 0x1f); break;
+                    case Op.SLLV: r[rd] = r[rt] << r[rs]; break;
+                    case Op.SRLV: r[rd] = r[rt] >>> r[rs]; break;
+                    case Op.SRAV: r[rd] = r[rt] >> r[rs]; break;
+
+                    // Arithmetic and logic.
+                    case Op.ADD:  r[rd] = addExact(r[rs], r[rt], pc); break;
+                    case Op.ADDU: r[rd] = r[rs] + r[rt]; break;
+                    case Op.SUB:  r[rd] = subExact(r[rs], r[rt], pc); break;
+                    case Op.SUBU: r[rd] = r[rs] - r[rt]; break;
+                    case Op.AND:  r[rd] = r[rs] & r[rt]; break;
+                    case Op.OR:   r[rd] = r[rs] | r[rt]; break;
+                    case Op.XOR:  r[rd] = r[rs] ^ r[rt]; break;
+                    case Op.NOR:  r[rd] = ~(r[rs] | r[rt]); break;
+                    case Op.SLT:  r[rd] = (r[rs] < r[rt]) ? 1 : 0; break;
+                    case Op.SLTU: r[rd] = (Integer.compareUnsigned(r[rs], r[rt]) < 0) ? 1 : 0; break;
+                    case Op.MOVZ: if (r[rt] == 0) r[rd] = r[rs]; break;
+                    case Op.MOVN: if (r[rt] != 0) r[rd] = r[rs]; break;
+                    case Op.MOVF: if (!Fpu.condition(cpu.fcsr, rt >>> 2)) r[rd] = r[rs]; break;
+                    case Op.MOVT: if (Fpu.condition(cpu.fcsr, rt >>> 2)) r[rd] = r[rs]; break;
+
+                    case Op.ADDI:  r[rt] = addExact(r[rs], (short) word, pc); break;
+                    case Op.ADDIU: r[rt] = r[rs] + (short) word; break;
+                    case Op.SLTI:  r[rt] = (r[rs] < (short) word) ? 1 : 0; break;
+                    case Op.SLTIU: r[rt] = (Integer.compareUnsigned(r[rs], (short) word) < 0) ? 1 : 0; break;
+                    case Op.ANDI:  r[rt] = r[rs] & (word & 0xffff); break;
+                    case Op.ORI:   r[rt] = r[rs] | (word & 0xffff); break;
+                    case Op.XORI:  r[rt] = r[rs] ^ (word & 0xffff); break;
+                    case Op.LUI:   r[rt] = word << 16; break;
+
+                    // Loads and stores, the address is rs + the sign-extended offset.
+                    case Op.LB:  r[rt] = (byte) mem.loadByte(r[rs] + (short) word); break;
+                    case Op.LBU: r[rt] = mem.loadByte(r[rs] + (short) word); break;
+                    case Op.LH:  r[rt] = (short) mem.loadHalf(aligned(r[rs] + (short) word, 1, pc)); break;
+                    case Op.LHU: r[rt] = mem.loadHalf(aligned(r[rs] + (short) word, 1, pc)); break;
+                    case Op.LW:  r[rt] = mem.loadWord(aligned(r[rs] + (short) word, 3, pc)); break;
+                    case Op.SB:  mem.storeByte(r[rs] + (short) word, r[rt]); break;
+                    case Op.SH:  mem.storeHalf(aligned(r[rs] + (short) word, 1, pc), r[rt]); break;
+                    case Op.SW:  mem.storeWord(aligned(r[rs] + (short) word, 3, pc), r[rt]); break;
+
+                    case Op.LL:
+                        r[rt]     = mem.loadWord(aligned(r[rs] + (short) word, 3, pc));
+                        cpu.llBit = true;
+                        break;
+                    case Op.SC:
+                        // Only this program runs, so the store succeeds unless there was no ll (or an eret).
+                        if (cpu.llBit)
+                            mem.storeWord(aligned(r[rs] + (short) word, 3, pc), r[rt]);
+                        r[rt]     = cpu.llBit ? 1 : 0;
+                        cpu.llBit = false;
+                        break;
+
+                    // Coprocessor 1 moves, loads and stores (ft is the rt field, fs the rd field).
+                    case Op.MFC1: r[rt] = f[rd]; break;
+                    case Op.MTC1: f[rd] = r[rt]; break;
+                    case Op.CFC1: r[rt] = Fpu.control(cpu, rd); break;
+                    case Op.CTC1: Fpu.setControl(cpu, rd, r[rt]); break;
+                    case Op.LWC1: f[rt] = mem.loadWord(aligned(r[rs] + (short) word, 3, pc)); break;
+                    case Op.SWC1: mem.storeWord(aligned(r[rs] + (short) word, 3, pc), f[rt]); break;
+                    case Op.LDC1: Fpu.loadDouble(mem, aligned(r[rs] + (short) word, 7, pc), f, rt); break;
+                    case Op.SDC1: Fpu.storeDouble(mem, aligned(r[rs] + (short) word, 7, pc), f, rt); break;
+
+                    // The common float arithmetic (fd in bits 10:6), the other ops are run by Fpu.execute.
+                    case Op.ADD_S: Fpu.s(f, (word >>> 6) & 0x1f, Fpu.s(f, rd) + Fpu.s(f, rt)); break;
+                    case Op.ADD_D: Fpu.d(f, (word >>> 6) & 0x1f, Fpu.d(f, rd) + Fpu.d(f, rt)); break;
+                    case Op.SUB_S: Fpu.s(f, (word >>> 6) & 0x1f, Fpu.s(f, rd) - Fpu.s(f, rt)); break;
+                    case Op.SUB_D: Fpu.d(f, (word >>> 6) & 0x1f, Fpu.d(f, rd) - Fpu.d(f, rt)); break;
+                    case Op.MUL_S: Fpu.s(f, (word >>> 6) & 0x1f, Fpu.s(f, rd) * Fpu.s(f, rt)); break;
+                    case Op.MUL_D: Fpu.d(f, (word >>> 6) & 0x1f, Fpu.d(f, rd) * Fpu.d(f, rt)); break;
+                    case Op.DIV_S: Fpu.s(f, (word >>> 6) & 0x1f, Fpu.s(f, rd) / Fpu.s(f, rt)); break;
+                    case Op.DIV_D: Fpu.d(f, (word >>> 6) & 0x1f, Fpu.d(f, rd) / Fpu.d(f, rt)); break;
+                    case Op.MOV_S: f[(word >>> 6) & 0x1f] = f[rd]; break;
+                    case Op.C_S:   Fpu.compareS(cpu, word); break;
+                    case Op.C_D:   Fpu.compareD(cpu, word); break;
+
+                    // Coprocessor 0 (rd is the register and bits 2:0 the select) and the TLB.
+                    case Op.MFC0:  r[rt] = cpu.cp0.read(rd, word & 7); break;
+                    case Op.MTC0:  cpu.cp0.write(rd, word & 7, r[rt]); break;
+                    case Op.TLBR:  cpu.cp0.tlbr(); break;
+                    case Op.TLBWI: cpu.cp0.tlbwi(); break;
+                    case Op.TLBWR: cpu.cp0.tlbwr(); break;
+                    case Op.TLBP:  cpu.cp0.tlbp(); break;
+                    case Op.ERET:
+                    case Op.DERET:
+                        // No delay slot, the next instruction is the one returned to.
+                        npc  = (ops[index] == Op.ERET) ? cpu.cp0.eret() : cpu.cp0.deret();
+                        next = npc + 4;
+                        cpu.llBit = false;
+                        break;
+
+                    // Unaligned loads and stores.
+                    case Op.LWL: r[rt] = lwl(mem, r[rs] + (short) word, r[rt]); break;
+                    case Op.LWR: r[rt] = lwr(mem, r[rs] + (short) word, r[rt]); break;
+                    case Op.SWL: swl(mem, r[rs] + (short) word, r[rt]); break;
+                    case Op.SWR: swr(mem, r[rs] + (short) word, r[rt]); break;
+
+                    // HI/LO.
+                    case Op.MFHI: r[rd] = hi; break;
+                    case Op.MTHI: hi = r[rs]; break;
+                    case Op.MFLO: r[rd] = lo; break;
+                    case Op.MTLO: lo = r[rs]; break;
+
+                    case Op.MULT: {
+                        long p = (long) r[rs] * r[rt];
+                        lo = (int) p;
+                        hi = (int) (p >>> 32);
+                        break;
+                    }
+                    case Op.MULTU: {
+                        long p = Integer.toUnsignedLong(r[rs]) * Integer.toUnsignedLong(r[rt]);
+                        lo = (int) p;
+                        hi = (int) (p >>> 32);
+                        break;
+                    }
+                    case Op.DIV:
+                        // Division by zero leaves HI/LO unpredictable, they are left unchanged.
+                        if (r[rt] != 0) {
+                            lo = r[rs] / r[rt];
+                            hi = r[rs] % r[rt];
+                        }
+                        break;
+                    case Op.DIVU:
+                        if (r[rt] != 0) {
+                            lo = Integer.divideUnsigned(r[rs], r[rt]);
+                            hi = Integer.remainderUnsigned(r[rs], r[rt]);
+                        }
+                        break;
+                    case Op.MADD:
+                    case Op.MADDU:
+                    case Op.MSUB:
+                    case Op.MSUBU: {
+                        int op   = ops[index];
+                        boolean unsigned = (op == Op.MADDU) || (op == Op.MSUBU);
+                        long p   = unsigned ? Integer.toUnsignedLong(r[rs]) * Integer.toUnsignedLong(r[rt])
+                                            : (long) r[rs] * r[rt];
+                        long acc = ((long) hi << 32) | Integer.toUnsignedLong(lo);
+                        acc      = ((op == Op.MADD) || (op == Op.MADDU)) ? acc + p : acc - p;
+                        lo = (int) acc;
+                        hi = (int) (acc >>> 32);
+                        break;
+                    }
+                    case Op.MUL: r[rd] = r[rs] * r[rt]; break;
+                    case Op.CLZ: r[rd] = Integer.numberOfLeadingZeros(r[rs]); break;
+                    case Op.CLO: r[rd] = Integer.numberOfLeadingZeros(~r[rs]); break;
+
+                    // Jumps, the target is in the same 256 MB region as the delay slot.
+                    case Op.J:
+                        next = (npc & 0xf0000000) | ((word & 0x3ffffff) << 2);
+                        break;
+                    case Op.JAL:
+                        r[31] = pc + 8;
+                        next  = (npc & 0xf0000000) | ((word & 0x3ffffff) << 2);
+                        break;
+                    case Op.JR:
+                        next = r[rs];
+                        break;
+                    case Op.JALR:
+                        next  = r[rs];
+                        r[rd] = pc + 8;
+                        break;
+
+                    // Branches, the offset is relative to the delay slot (npc).
+                    case Op.BEQ:    if (r[rs] == r[rt]) next = npc + ((short) word << 2); break;
+                    case Op.BNE:    if (r[rs] != r[rt]) next = npc + ((short) word << 2); break;
+                    case Op.BLEZ:   if (r[rs] <= 0) next = npc + ((short) word << 2); break;
+                    case Op.BGTZ:   if (r[rs] > 0) next = npc + ((short) word << 2); break;
+                    case Op.BLTZ:   if (r[rs] < 0) next = npc + ((short) word << 2); break;
+                    case Op.BGEZ:   if (r[rs] >= 0) next = npc + ((short) word << 2); break;
+                    case Op.BLTZAL: {
+                        boolean taken = r[rs] < 0;
+                        r[31] = pc + 8;
+                        if (taken) next = npc + ((short) word << 2);
+                        break;
+                    }
+                    case Op.BGEZAL: {
+                        boolean taken = r[rs] >= 0;
+                        r[31] = pc + 8;
+                        if (taken) next = npc + ((short) word << 2);
+                        break;
+                    }
+
+                    case Op.BC1F:
+                    case Op.BC1T:
+                        if (Fpu.branchTaken(ops[index], word, cpu.fcsr)) next = npc + ((short) word << 2);
+                        break;
+
+                    // Branch likely, the delay slot is skipped (nullified) if the branch is not taken.
+                    case Op.BEQL:
+                    case Op.BNEL:
+                    case Op.BLEZL:
+                    case Op.BGTZL:
+                    case Op.BLTZL:
+                    case Op.BGEZL:
+                    case Op.BLTZALL:
+                    case Op.BGEZALL:
+                    case Op.BC1FL:
+                    case Op.BC1TL: {
+                        boolean taken = ((ops[index] == Op.BC1FL) || (ops[index] == Op.BC1TL))
+                                        ? Fpu.branchTaken(ops[index], word, cpu.fcsr)
+                                        : branchTaken(ops[index], r[rs], r[rt]);
+                        if ((ops[index] == Op.BLTZALL) || (ops[index] == Op.BGEZALL))
+                            r[31] = pc + 8;
+                        if (taken) {
+                            next = npc + ((short) word << 2);
+                        } else {
+                            npc += 4;
+                            next = npc + 4;
+                        }
+                        break;
+                    }
+
+                    // Traps.
+                    case Op.TGE:   trap(r[rs] >= r[rt], pc); break;
+                    case Op.TGEU:  trap(Integer.compareUnsigned(r[rs], r[rt]) >= 0, pc); break;
+                    case Op.TLT:   trap(r[rs] < r[rt], pc); break;
+                    case Op.TLTU:  trap(Integer.compareUnsigned(r[rs], r[rt]) < 0, pc); break;
+                    case Op.TEQ:   trap(r[rs] == r[rt], pc); break;
+                    case Op.TNE:   trap(r[rs] != r[rt], pc); break;
+                    case Op.TGEI:  trap(r[rs] >= (short) word, pc); break;
+                    case Op.TGEIU: trap(Integer.compareUnsigned(r[rs], (short) word) >= 0, pc); break;
+                    case Op.TLTI:  trap(r[rs] < (short) word, pc); break;
+                    case Op.TLTIU: trap(Integer.compareUnsigned(r[rs], (short) word) < 0, pc); break;
+                    case Op.TEQI:  trap(r[rs] == (short) word, pc); break;
+                    case Op.TNEI:  trap(r[rs] != (short) word, pc); break;
+
+                    case Op.SYSCALL:
+                        if (syscall(cpu, r, pc)) {
+                            n++;
+                            pc  = npc;
+                            npc = next;
+                            return n;
+                        }
+                        break;
+
+                    case Op.BREAK:
+                        throw new SimulationException(pc, "Break");
+
+                    default:
+                        if (!Op.isFloat(ops[index]))
+                            throw new SimulationException(pc, "Unsupported instruction '" + Op.name(ops[index]) +
+                                                              "'");
+                        Fpu.execute(cpu, ops[index], word);
+                        break;
+                }
+
+                r[0] = 0;
+                pc   = npc;
+                npc  = next;
+                n++;
+            }
+
+            return n;
+
+        } finally {
+            cpu.pc  = pc;
+            cpu.npc = npc;
+            cpu.hi  = hi;
+            cpu.lo  = lo;
+            executed = n;
+        }
+    }
+
+    /**
+     * Returns true if a conditional branch is taken.
+     * @param op The branch.
+     * @param rs Value of rs.
+     * @param rt Value of rt.
+     * @return True if taken.
+     */
+    static boolean branchTaken(int op, int rs, int rt) {
+        switch (op) {
+            case Op.BEQ:
+            case Op.BEQL:    return rs == rt;
+            case Op.BNE:
+            case Op.BNEL:    return rs != rt;
+            case Op.BLEZ:
+            case Op.BLEZL:   return rs <= 0;
+            case Op.BGTZ:
+            case Op.BGTZL:   return rs > 0;
+            case Op.BLTZ:
+            case Op.BLTZL:
+            case Op.BLTZAL:
+            case Op.BLTZALL: return rs < 0;
+            default:         return rs >= 0;
+        }
+    }
+
+    // lwl/lwr/swl/swr: k is the offset of the address in its word counted from the most significant byte.
+
+    static int lwl(Memory mem, int addr, int rt) {
+        int k    = (mem.isBigEndian() ? addr : ~addr) & 3;
+        int mask = -1 << (k << 3);
+        return (rt & ~mask) | (mem.loadWord(addr) << (k << 3));
+    }
+
+    static int lwr(Memory mem, int addr, int rt) {
+        int k    = (mem.isBigEndian() ? addr : ~addr) & 3;
+        int mask = -1 >>> ((3 - k) << 3);
+        return (rt & ~mask) | (mem.loadWord(addr) >>> ((3 - k) << 3));
+    }
+
+    static void swl(Memory mem, int addr, int rt) {
+        int k = (mem.isBigEndian() ? addr : ~addr) & 3;
+        mem.storeMasked(addr, rt >>> (k << 3), -1 >>> (k << 3));
+    }
+
+    static void swr(Memory mem, int addr, int rt) {
+        int k = (mem.isBigEndian() ? addr : ~addr) & 3;
+        mem.storeMasked(addr, rt << ((3 - k) << 3), -1 << ((3 - k) << 3));
+    }
+
+    static int addExact(int a, int b, int pc) {
+        int sum = a + b;
+        if (((a ^ sum) & (b ^ sum)) < 0)
+            throw new SimulationException(pc, "Integer overflow");
+        return sum;
+    }
+
+    static int subExact(int a, int b, int pc) {
+        int diff = a - b;
+        if (((a ^ b) & (a ^ diff)) < 0)
+            throw new SimulationException(pc, "Integer overflow");
+        return diff;
+    }
+
+    /**
+     * Returns addr if the bits of mask are 0 in it.
+     * @throws SimulationException If addr is not aligned.
+     */
+    static int aligned(int addr, int mask, int pc) {
+        if ((addr & mask) != 0)
+            throw new SimulationException(pc, String.format("Address error (0x%08x)", addr));
+        return addr;
+    }
+
+    static void trap(boolean condition, int pc) {
+        if (condition)
+            throw new SimulationException(pc, "Trap");
+    }
+
+    /**
+     * Executes a syscall.
+     * @return True if the program exited.
+     */
+    private boolean syscall(Cpu cpu, int[] r, int pc) {
+        switch (r[2]) {
+            case 1:
+                out.print(r[4]);
+                return false;
+            case 2:
+                out.print(cpu.getFloat(12));
+                return false;
+            case 3:
+                out.print(cpu.getDouble(12));
+                return false;
+            case 4:
+                out.print(((mmu != null) ? mmu : memory).loadString(r[4], Integer.MAX_VALUE));
+                return false;
+            case 9:
+                // sbrk: $v0 = start of $a0 new bytes (word aligned).
+                r[2] = brk;
+                brk += (r[4] + 3) & ~3;
+                return false;
+            case 10:
+                halted   = true;
+                exitCode = 0;
+                return true;
+            case 11:
+                out.print((char) (r[4] & 0xff));
+                return false;
+            case 17:
+                halted   = true;
+                exitCode = r[4];
+                return true;
+            default:
+                throw new SimulationException(pc, "Unsupported syscall " + r[2]);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.mipssim.sim;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Memory is the 32-bit address space of the simulated program. It is split into 4 KiB pages which are allocated
+ * when they are first written; reading a page that was never written gives zeros without allocating it. Pages are
+ * found through a two-level page table (1024 directories of 1024 pages), and the last page read and the last page
+ * written are remembered, so sequential accesses skip the table.
+ *
+ * A page holds its words as ints, so a word access is a single array access. Bytes and halfwords are taken from
+ * the lanes of their word given by the byte order of the program.
+ */
+public class Memory {
+
+    public static final int PAGE_BITS = 12;
+    public static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    // Words per page.
+    static final int PAGE_WORDS = PAGE_SIZE >>> 2;
+
+    // Returned for pages that have not been written, never written itself.
+    static final int[] ZERO_PAGE = new int[PAGE_WORDS];
+
+    /**
+     * Told when a word in the watched range (see watch) is written, e.g. to invalidate predecoded code.
+     */
+    public interface Watcher {
+        /**
+         * @param addr Address of the word (aligned) that was written.
+         */
+        void written(int addr);
+    }
+
+    private final boolean bigEndian;
+    private final int[][][] directory = new int[1 << 10][][];
+    private int pageCount;
+
+    // Last page read and last page written, by page number (-1 = none).
+    private int lastReadNumber  = -1;
+    private int[] lastRead;
+    private int lastWriteNumber = -1;
+    private int[] lastWrite;
+
+    // Watched range [watchLow, watchLow + watchSize) and its watcher.
+    private int watchLow;
+    private int watchSize;
+    private Watcher watcher;
+
+    /**
+     * Creates an empty address space.
+     * @param order Byte order of the program.
+     */
+    public Memory(ByteOrder order) {
+        this.bigEndian = (order == ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Returns the byte order of the program.
+     * @return Byte order.
+     */
+    public ByteOrder getByteOrder() {
+        return bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+    }
+
+    /**
+     * Returns true if the program is big-endian.
+     * @return True if big-endian.
+     */
+    public boolean isBigEndian() {
+        return bigEndian;
+    }
+
+    /**
+     * Returns the number of pages allocated so far.
+     * @return Number of pages.
+     */
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Calls watcher for every write to a word in [low, low + size). Only one range is watched.
+     * @param low First address of the range.
+     * @param size Size of the range in bytes.
+     * @param watcher Watcher to call, null to stop watching.
+     */
+    public void watch(int low, int size, Watcher watcher) {
+        this.watchLow  = low;
+        this.watchSize = (watcher == null) ? 0 : size;
+        this.watcher   = watcher;
+    }
+
+    /**
+     * Reads an aligned word.
+     * @param addr Address (the lowest two bits are ignored).
+     * @return The word.
+     */
+    public int loadWord(int addr) {
+        return readPage(addr >>> PAGE_BITS)[(addr >>> 2) & (PAGE_WORDS - 1)];
+    }
+
+    /**
+     * Reads an aligned halfword.
+     * @param addr Address (the lowest bit is ignored).
+     * @return The halfword, zero-extended.
+     */
+    public int loadHalf(int addr) {
+        return (loadWord(addr) >>> halfShift(addr)) & 0xffff;
+    }
+
+    /**
+     * Reads a byte.
+     * @param addr Address.
+     * @return The byte, zero-extended.
+     */
+    public int loadByte(int addr) {
+        return (loadWord(addr) >>> byteShift(addr)) & 0xff;
+    }
+
+    /**
+     * Writes an aligned word.
+     * @param addr Address (the lowest two bits are ignored).
+     * @param value The word.
+     */
+    public void storeWord(int addr, int value) {
+        writePage(addr >>> PAGE_BITS)[(addr >>> 2) & (PAGE_WORDS - 1)] = value;
+        if (Integer.compareUnsigned(addr - watchLow, watchSize) < 0)
+            watcher.written(addr & ~3);
+    }
+
+    /**
+     * Writes the bytes of value selected by mask (in the lanes of the word at addr), e.g. for sb and swl.
+     * @param addr Address (the lowest two bits are ignored).
+     * @param value Bytes to write, already in their lanes.
+     * @param mask Lanes to write.
+     */
+    public void storeMasked(int addr, int value, int mask) {
+        int[] page = writePage(addr >>> PAGE_BITS);
+        int i      = (addr >>> 2) & (PAGE_WORDS - 1);
+        page[i]    = (page[i] & ~mask) | (value & mask);
+        if (Integer.compareUnsigned(addr - watchLow, watchSize) < 0)
+            watcher.written(addr & ~3);
+    }
+
+    /**
+     * Writes an aligned halfword.
+     * @param addr Address (the lowest bit is ignored).
+     * @param value The halfword (the lowest 16 bits).
+     */
+    public void storeHalf(int addr, int value) {
+        int shift = halfShift(addr);
+        storeMasked(addr, value << shift, 0xffff << shift);
+    }
+
+    /**
+     * Writes a byte.
+     * @param addr Address.
+     * @param value The byte (the lowest 8 bits).
+     */
+    public void storeByte(int addr, int value) {
+        int shift = byteShift(addr);
+        storeMasked(addr, value << shift, 0xff << shift);
+    }
+
+    /**
+     * Returns the shift of the byte at addr within its word.
+     * @param addr Address.
+     * @return Shift in bits.
+     */
+    public int byteShift(int addr) {
+        return bigEndian ? (24 - ((addr & 3) << 3)) : ((addr & 3) << 3);
+    }
+
+    private int halfShift(int addr) {
+        return bigEndian ? (16 - ((addr & 2) << 3)) : ((addr & 2) << 3);
+    }
+
+    /**
+     * Copies the remaining bytes of data into memory.
+     * @param addr Address of the first byte.
+     * @param data Bytes to copy.
+     */
+    public void load(int addr, ByteBuffer data) {
+        // Whole words are copied as words, in the byte order of the program.
+        ByteBuffer b = data.duplicate().order(getByteOrder());
+        while (b.hasRemaining()) {
+            if (((addr & 3) == 0) && (b.remaining() >= 4)) {
+                storeWord(addr, b.getInt());
+                addr += 4;
+            } else {
+                storeByte(addr++, b.get());
+            }
+        }
+    }
+
+    /**
+     * Reads a zero-terminated string (bytes as ISO-8859-1 characters).
+     * @param addr Address of the first character.
+     * @param max Maximum number of characters to read.
+     * @return The string.
+     */
+    public String loadString(int addr, int max) {
+        StringBuilder sb = new StringBuilder();
+        for (int c; (sb.length() < max) && ((c = loadByte(addr)) != 0); addr++)
+            sb.append((char) c);
+        return sb.toString();
+    }
+
+    /**
+     * Returns the page of addr for a Mmu to access directly. A read of a page that was never written gets ZERO_PAGE,
+     * a write allocates the page, and a write to a page with watched words (whose writes have to go through
+     * storeWord) gets null.
+     * @param addr Address in the page.
+     * @param write True to write the page.
+     * @return The words of the page, null if the page can not be written directly.
+     */
+    int[] directPage(int addr, boolean write) {
+        int number = addr >>> PAGE_BITS;
+        if (!write)
+            return readPage(number);
+        int low = number << PAGE_BITS;
+        if ((Integer.compareUnsigned(low - watchLow, watchSize) < 0) ||
+            ((watchSize != 0) && (Integer.compareUnsigned(watchLow - low, PAGE_SIZE) < 0)))
+            return null;
+        return writePage(number);
+    }
+
+    private int[] readPage(int number) {
+        if (number == lastReadNumber)
+            return lastRead;
+
+        int[][] pages = directory[number >>> 10];
+        int[] page    = (pages == null) ? null : pages[number & 0x3ff];
+        if (page == null)
+            // Not cached, so a later write to the page is seen.
+            return ZERO_PAGE;
+
+        lastReadNumber = number;
+        lastRead       = page;
+        return page;
+    }
+
+    private int[] writePage(int number) {
+        if (number == lastWriteNumber)
+            return lastWrite;
+
+        int[][] pages = directory[number >>> 10];
+        if (pages == null)
+            pages = directory[number >>> 10] = new int[1 << 10][];
+
+        int[] page = pages[number & 0x3ff];
+        if (page == null) {
+            page = pages[number & 0x3ff] = new int[PAGE_WORDS];
+            pageCount++;
+        }
+
+        lastWriteNumber = number;
+        lastWrite       = page;
+        return page;
+    }
+}
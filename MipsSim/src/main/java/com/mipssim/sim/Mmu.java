@@ -0,0 +1,161 @@
+package com.mipssim.sim;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Mmu is the address space of a program as the Cpu sees it through CP0: every load and store is translated from
+ * its virtual address by the TLB and the segments of Cp0 to the physical memory of the program.
+ *
+ * Walking the TLB on every access would be slow, so the translations are kept in a direct-mapped software TLB of
+ * SOFT_SIZE entries per direction, indexed by the low bits of the virtual page number, each holding the page number
+ * and the words of its physical page. A load or store that hits is one compare and an array access; a miss walks
+ * Cp0.translate and fills the entry. Cp0 invalidates the pages of TLB entries it writes and flushes everything when
+ * the ASID or the mode changes. Stores are only cached once the page was found dirty, so a store to a clean page
+ * still raises its exception, and pages holding code are never written directly, so writes into the code are seen.
+ * Loads from pages that were never written read Memory.ZERO_PAGE until one of them is allocated.
+ */
+public class Mmu extends Memory {
+
+    private static final int SOFT_BITS = 10;
+    private static final int SOFT_SIZE = 1 << SOFT_BITS;
+
+    private final Memory memory;
+    private final Cp0 cp0;
+
+    // Virtual page number of every entry (-1 = empty) and its physical page, for loads and for stores.
+    private final int[] readTags    = new int[SOFT_SIZE];
+    private final int[][] readPages = new int[SOFT_SIZE][];
+    private final int[] writeTags    = new int[SOFT_SIZE];
+    private final int[][] writePages = new int[SOFT_SIZE][];
+
+    private long misses;
+    private long flushes;
+    private long invalidations;
+
+    /**
+     * Creates the translated view of memory for a processor.
+     * @param memory Physical memory (indexed by kseg0 address, see Cp0).
+     * @param cpu Processor whose CP0 translates the addresses.
+     */
+    public Mmu(Memory memory, Cpu cpu) {
+        super(memory.getByteOrder());
+        this.memory = memory;
+        this.cp0    = cpu.cp0;
+        cp0.mmu     = this;
+        Arrays.fill(readTags, -1);
+        Arrays.fill(writeTags, -1);
+    }
+
+    /**
+     * Empties the software TLB.
+     */
+    void flush() {
+        Arrays.fill(readTags, -1);
+        Arrays.fill(writeTags, -1);
+        flushes++;
+    }
+
+    /**
+     * Drops the translations of the pages in [vaddr, vaddr + size).
+     * @param vaddr First virtual address, page aligned.
+     * @param size Size in bytes, a multiple of the page size.
+     */
+    void invalidate(int vaddr, int size) {
+        int pages = size >>> PAGE_BITS;
+        if (pages >= SOFT_SIZE) {
+            flush();
+            return;
+        }
+        invalidations++;
+        for (int vpn = vaddr >>> PAGE_BITS, end = vpn + pages; vpn < end; vpn++) {
+            int i = vpn & (SOFT_SIZE - 1);
+            if (readTags[i] == vpn)
+                readTags[i] = -1;
+            if (writeTags[i] == vpn)
+                writeTags[i] = -1;
+        }
+    }
+
+    /**
+     * Translates an address that missed the software TLB and caches its page if it can be accessed directly.
+     * @return The physical address (in the Memory of the program).
+     * @throws AddressException If the guest TLB does not allow the access.
+     */
+    private int fill(int addr, boolean write) {
+        misses++;
+        int physical = cp0.translate(addr, write);
+        int pages    = memory.getPageCount();
+        int[] page   = memory.directPage(physical, write);
+        if (memory.getPageCount() != pages) {
+            // A new page, which any entry reading zeros may alias.
+            for (int i = 0; i < SOFT_SIZE; i++) {
+                if (readPages[i] == ZERO_PAGE)
+                    readTags[i] = -1;
+            }
+        }
+        if (page != null) {
+            int vpn = addr >>> PAGE_BITS;
+            int i   = vpn & (SOFT_SIZE - 1);
+            if (write) {
+                writeTags[i]  = vpn;
+                writePages[i] = page;
+            } else {
+                readTags[i]  = vpn;
+                readPages[i] = page;
+            }
+        }
+        return physical;
+    }
+
+    @Override
+    public int loadWord(int addr) {
+        int vpn = addr >>> PAGE_BITS;
+        int i   = vpn & (SOFT_SIZE - 1);
+        if (readTags[i] == vpn)
+            return readPages[i][(addr >>> 2) & (PAGE_WORDS - 1)];
+        return memory.loadWord(fill(addr, false));
+    }
+
+    @Override
+    public void storeWord(int addr, int value) {
+        int vpn = addr >>> PAGE_BITS;
+        int i   = vpn & (SOFT_SIZE - 1);
+        if (writeTags[i] == vpn)
+            writePages[i][(addr >>> 2) & (PAGE_WORDS - 1)] = value;
+        else
+            memory.storeWord(fill(addr, true), value);
+    }
+
+    @Override
+    public void storeMasked(int addr, int value, int mask) {
+        int vpn = addr >>> PAGE_BITS;
+        int i   = vpn & (SOFT_SIZE - 1);
+        if (writeTags[i] == vpn) {
+            int[] page = writePages[i];
+            int w      = (addr >>> 2) & (PAGE_WORDS - 1);
+            page[w]    = (page[w] & ~mask) | (value & mask);
+        } else {
+            memory.storeMasked(fill(addr, true), value, mask);
+        }
+    }
+
+    @Override
+    public int getPageCount() {
+        return memory.getPageCount();
+    }
+
+    @Override
+    public void watch(int low, int size, Watcher watcher) {
+        memory.watch(low, size, watcher);
+    }
+
+    /**
+     * Writes the counters of the software TLB.
+     * @param out Stream to write to.
+     */
+    public void report(PrintStream out) {
+        out.printf("TLB: %d software TLB misses, %d flushes, %d invalidations, %d guest exceptions.%n", misses,
+                   flushes, invalidations, cp0.getExceptions());
+    }
+}
@@ -0,0 +1,357 @@
+package com.mipssim.sim;
+
+import com.mipssim.Disassembler;
+import com.mipssim.Mappings;
+import com.mipssim.instructions.Instructions;
+
+/**
+ * Op numbers the operations the simulator executes. A word is predecoded once into its op (see predecode), so the
+ * interpreter dispatches on a small int instead of looking the word up in the Mappings tables again. The ops are
+ * named after the functions of the Mappings tables and are found through the ids of their descriptors.
+ */
+public final class Op {
+
+    // Words that are not in the mapping.
+    public static final int INVALID = 0;
+    public static final int NOP     = 1;
+
+    // op = 0x00
+    public static final int SLL     = 2;
+    public static final int SRL     = 3;
+    public static final int SRA     = 4;
+    public static final int SLLV    = 5;
+    public static final int SRLV    = 6;
+    public static final int SRAV    = 7;
+    public static final int JR      = 8;
+    public static final int JALR    = 9;
+    public static final int MOVZ    = 10;
+    public static final int MOVN    = 11;
+    public static final int SYSCALL = 12;
+    public static final int BREAK   = 13;
+    public static final int SYNC    = 14;
+    public static final int MFHI    = 15;
+    public static final int MTHI    = 16;
+    public static final int MFLO    = 17;
+    public static final int MTLO    = 18;
+    public static final int MULT    = 19;
+    public static final int MULTU   = 20;
+    public static final int DIV     = 21;
+    public static final int DIVU    = 22;
+    public static final int ADD     = 23;
+    public static final int ADDU    = 24;
+    public static final int SUB     = 25;
+    public static final int SUBU    = 26;
+    public static final int AND     = 27;
+    public static final int OR      = 28;
+    public static final int XOR     = 29;
+    public static final int NOR     = 30;
+    public static final int SLT     = 31;
+    public static final int SLTU    = 32;
+    public static final int TGE     = 33;
+    public static final int TGEU    = 34;
+    public static final int TLT     = 35;
+    public static final int TLTU    = 36;
+    public static final int TEQ     = 37;
+    public static final int TNE     = 38;
+    public static final int MOVF    = 39;
+    public static final int MOVT    = 40;
+
+    // op = 0x01
+    public static final int BLTZ    = 41;
+    public static final int BGEZ    = 42;
+    public static final int BLTZL   = 43;
+    public static final int BGEZL   = 44;
+    public static final int TGEI    = 45;
+    public static final int TGEIU   = 46;
+    public static final int TLTI    = 47;
+    public static final int TLTIU   = 48;
+    public static final int TEQI    = 49;
+    public static final int TNEI    = 50;
+    public static final int BLTZAL  = 51;
+    public static final int BGEZAL  = 52;
+    public static final int BLTZALL = 53;
+    public static final int BGEZALL = 54;
+
+    // op = 0x1c
+    public static final int MADD    = 55;
+    public static final int MADDU   = 56;
+    public static final int MUL     = 57;
+    public static final int MSUB    = 58;
+    public static final int MSUBU   = 59;
+    public static final int CLZ     = 60;
+    public static final int CLO     = 61;
+
+    // Identified by the op-field.
+    public static final int J       = 62;
+    public static final int JAL     = 63;
+    public static final int BEQ     = 64;
+    public static final int BNE     = 65;
+    public static final int BLEZ    = 66;
+    public static final int BGTZ    = 67;
+    public static final int ADDI    = 68;
+    public static final int ADDIU   = 69;
+    public static final int SLTI    = 70;
+    public static final int SLTIU   = 71;
+    public static final int ANDI    = 72;
+    public static final int ORI     = 73;
+    public static final int XORI    = 74;
+    public static final int LUI     = 75;
+    public static final int BEQL    = 76;
+    public static final int BNEL    = 77;
+    public static final int BLEZL   = 78;
+    public static final int BGTZL   = 79;
+    public static final int LB      = 80;
+    public static final int LH      = 81;
+    public static final int LWL     = 82;
+    public static final int LW      = 83;
+    public static final int LBU     = 84;
+    public static final int LHU     = 85;
+    public static final int LWR     = 86;
+    public static final int SB      = 87;
+    public static final int SH      = 88;
+    public static final int SWL     = 89;
+    public static final int SW      = 90;
+    public static final int SWR     = 91;
+    public static final int CACHE   = 92;
+    public static final int LL      = 93;
+    public static final int LWC1    = 94;
+    public static final int PREF    = 95;
+    public static final int LDC1    = 96;
+    public static final int SC      = 97;
+    public static final int SWC1    = 98;
+    public static final int SDC1    = 99;
+
+    // op = 0x11 (coprocessor 1), looked up in the Mappings except the forms it has no descriptor for (see cop1).
+    public static final int MFC1    = 100;
+    public static final int CFC1    = 101;
+    public static final int MTC1    = 102;
+    public static final int CTC1    = 103;
+    public static final int BC1F    = 104;
+    public static final int BC1T    = 105;
+    public static final int BC1FL   = 106;
+    public static final int BC1TL   = 107;
+
+    // Computational, the single (fmt = 0x10) op of a pair is even and the double (fmt = 0x11) one follows it.
+    public static final int ADD_S     = 108;
+    public static final int ADD_D     = 109;
+    public static final int SUB_S     = 110;
+    public static final int SUB_D     = 111;
+    public static final int MUL_S     = 112;
+    public static final int MUL_D     = 113;
+    public static final int DIV_S     = 114;
+    public static final int DIV_D     = 115;
+    public static final int SQRT_S    = 116;
+    public static final int SQRT_D    = 117;
+    public static final int ABS_S     = 118;
+    public static final int ABS_D     = 119;
+    public static final int MOV_S     = 120;
+    public static final int MOV_D     = 121;
+    public static final int NEG_S     = 122;
+    public static final int NEG_D     = 123;
+    public static final int ROUND_W_S = 124;
+    public static final int ROUND_W_D = 125;
+    public static final int TRUNC_W_S = 126;
+    public static final int TRUNC_W_D = 127;
+    public static final int CEIL_W_S  = 128;
+    public static final int CEIL_W_D  = 129;
+    public static final int FLOOR_W_S = 130;
+    public static final int FLOOR_W_D = 131;
+    public static final int MOVF_S    = 132;
+    public static final int MOVF_D    = 133;
+    public static final int MOVT_S    = 134;
+    public static final int MOVT_D    = 135;
+    public static final int MOVZ_S    = 136;
+    public static final int MOVZ_D    = 137;
+    public static final int MOVN_S    = 138;
+    public static final int MOVN_D    = 139;
+    public static final int CVT_S_D   = 140;
+    public static final int CVT_S_W   = 141;
+    public static final int CVT_D_S   = 142;
+    public static final int CVT_D_W   = 143;
+    public static final int CVT_W_S   = 144;
+    public static final int CVT_W_D   = 145;
+    public static final int C_S       = 146;
+    public static final int C_D       = 147;
+
+    // op = 0x10 (coprocessor 0), decoded from the fields of the word (see cop0).
+    public static final int MFC0      = 148;
+    public static final int MTC0      = 149;
+    public static final int TLBR      = 150;
+    public static final int TLBWI     = 151;
+    public static final int TLBWR     = 152;
+    public static final int TLBP      = 153;
+    public static final int ERET      = 154;
+    public static final int DERET     = 155;
+
+    // Names of the ops, the same as the functions of the Mappings tables ("tegi", "bgczall" and "cell.w" are spelled
+    // like there).
+    private static final String[] NAMES = {
+            null, "nop",
+            "sll", "srl", "sra", "sllv", "srlv", "srav", "jr", "jalr", "movz", "movn", "syscall", "break", "sync",
+            "mfhi", "mthi", "mflo", "mtlo", "mult", "multu", "div", "divu", "add", "addu", "sub", "subu", "and",
+            "or", "xor", "nor", "slt", "sltu", "tge", "tgeu", "tlt", "tltu", "teq", "tne", "movf", "movt",
+            "bltz", "bgez", "bltzl", "bgezl", "tgei", "tgeiu", "tlti", "tltiu", "tegi", "tnei", "bltzal", "bgezal",
+            "bltzall", "bgczall",
+            "madd", "maddu", "mul", "msub", "msubu", "clz", "clo",
+            "j", "jal", "beq", "bne", "blez", "bgtz", "addi", "addiu", "slti", "sltiu", "andi", "ori", "xori",
+            "lui", "beql", "bnel", "blezl", "bgtzl", "lb", "lh", "lwl", "lw", "lbu", "lhu", "lwr", "sb", "sh",
+            "swl", "sw", "swr", "cache", "ll", "lwc1", "pref", "ldc1", "sc", "swc1", "sdc1",
+            "mfc1", "cfc1", "mtc1", "ctc1", "bc1f", "bc1t", "bc1fl", "bc1tl", "add.s", "add.d", "sub.s", "sub.d",
+            "mul.s", "mul.d", "div.s", "div.d", "sqrt.s", "sqrt.d", "abs.s", "abs.d", "mov.s", "mov.d", "neg.s",
+            "neg.d", "round.w.s", "round.w.d", "trunc.w.s", "trunc.w.d", "cell.w.s", "cell.w.d", "floor.w.s",
+            "floor.w.d", "movf.s", "movf.d", "movt.s", "movt.d", "movz.s", "movz.d", "movn.s", "movn.d", "cvt.s.d",
+            "cvt.s.w", "cvt.d.s", "cvt.d.w", "cvt.w.s", "cvt.w.d", "c.cond.s", "c.cond.d",
+            "mfc0", "mtc0", "tlbr", "tlbwi", "tlbwr", "tlbp", "eret", "deret"
+    };
+
+    private Op() {
+    }
+
+    /**
+     * Returns the number of ops, all ops are less than this.
+     * @return Number of ops.
+     */
+    public static int count() {
+        return NAMES.length;
+    }
+
+    /**
+     * Returns the name of an op.
+     * @param op The op.
+     * @return Name of the op ("invalid" for INVALID).
+     */
+    public static String name(int op) {
+        return (op > INVALID && op < NAMES.length) ? NAMES[op] : "invalid";
+    }
+
+    /**
+     * Builds the table from descriptor id to op for the instructions of map. Descriptors the simulator can not
+     * execute (e.g. coprocessor 2) get INVALID.
+     * @param map Mappings object.
+     * @return Op of every descriptor, indexed by Instructions.getId().
+     */
+    public static int[] table(Mappings map) {
+
+        int[] ops = new int[map.getDescriptorCount()];
+
+        for (int id = 0; id < ops.length; id++) {
+            String func = map.getDescriptor(id).getFunc();
+            for (int op = NOP; op < NAMES.length; op++) {
+                if (NAMES[op].equals(func)) {
+                    ops[id] = op;
+                    break;
+                }
+            }
+            // The 16 conditions of c.cond.fmt are one op per format, the condition is taken from the word.
+            if ((ops[id] == INVALID) && func.startsWith("c."))
+                ops[id] = func.endsWith(".d") ? C_D : C_S;
+        }
+        return ops;
+    }
+
+    /**
+     * Returns the op of a word.
+     * @param word The instruction word.
+     * @param map Mappings object.
+     * @param table Table from table(map).
+     * @return The op, INVALID if the word is not in the mapping.
+     */
+    public static int predecode(int word, Mappings map, int[] table) {
+        return fromDescriptor(word, descriptor(word, map), table);
+    }
+
+    /**
+     * Returns the id of the descriptor of a word.
+     * @param word The instruction word.
+     * @param map Mappings object.
+     * @return Id of the descriptor (see Instructions.getId()), -1 if the word is not in the mapping.
+     */
+    public static int descriptor(int word, Mappings map) {
+        Instructions instr = Disassembler.lookup(word, map);
+        return (instr == null) ? -1 : instr.getId();
+    }
+
+    /**
+     * Returns the descriptor ids of words, e.g. to predecode them later without looking them up again.
+     * @param words The instruction words.
+     * @param map Mappings object.
+     * @return Id of the descriptor of every word (-1 if it is not in the mapping).
+     */
+    public static int[] descriptors(int[] words, Mappings map) {
+        int[] ids = new int[words.length];
+        for (int i = 0; i < words.length; i++)
+            ids[i] = descriptor(words[i], map);
+        return ids;
+    }
+
+    /**
+     * Returns the op of a word from the id of its descriptor.
+     * @param word The instruction word.
+     * @param descriptor Id of its descriptor, -1 if it is not in the mapping.
+     * @param table Table from table(map).
+     * @return The op.
+     */
+    public static int fromDescriptor(int word, int descriptor, int[] table) {
+        if (word == 0)
+            return NOP;
+        if ((word >>> 26) == 0x10)
+            return cop0(word);
+        if (((word >>> 26) == 0x11) && (descriptor < 0))
+            return cop1(word);
+        return (descriptor < 0) ? INVALID : table[descriptor];
+    }
+
+    /**
+     * Returns the op of a coprocessor 0 word. The cop0 table of the Mappings is looked up by the low five bits of
+     * func, so these are decoded from the fields of the word as well.
+     * @param word The instruction word, op = 0x10.
+     * @return The op, INVALID if the word is not a coprocessor 0 instruction the simulator executes.
+     */
+    static int cop0(int word) {
+
+        int rs = (word >>> 21) & 0x1f;
+        if (rs == 0x00)
+            return MFC0;
+        if (rs == 0x04)
+            return MTC0;
+        if ((rs & 0x10) == 0)
+            return INVALID;
+
+        switch (word & 0x3f) {
+            case 0x01: return TLBR;
+            case 0x02: return TLBWI;
+            case 0x06: return TLBWR;
+            case 0x08: return TLBP;
+            case 0x18: return ERET;
+            case 0x1f: return DERET;
+            default:   return INVALID;
+        }
+    }
+
+    /**
+     * Returns the op of a coprocessor 1 word that is not in the mapping. The float table of the Mappings has no word
+     * format (cvt.s.w, cvt.d.w) and no movf.fmt/movt.fmt, these are decoded from the fields of the word.
+     * @param word The instruction word, op = 0x11.
+     * @return The op, INVALID if the word is not one of these.
+     */
+    static int cop1(int word) {
+
+        int rs   = (word >>> 21) & 0x1f;
+        int func = word & 0x3f;
+
+        if (rs == 0x14)
+            return (func == 0x20) ? CVT_S_W : (func == 0x21) ? CVT_D_W : INVALID;
+        if (((rs == 0x10) || (rs == 0x11)) && (func == 0x11))
+            return (((word >>> 16) & 1) == 0) ? MOVF_S + (rs - 0x10) : MOVT_S + (rs - 0x10);
+        return INVALID;
+    }
+
+    /**
+     * Returns true if op is a computational coprocessor 1 op (executed by Fpu.execute).
+     * @param op The op.
+     * @return True for ADD_S ... C_D.
+     */
+    public static boolean isFloat(int op) {
+        return (op >= ADD_S) && (op <= C_D);
+    }
+}
@@ -0,0 +1,231 @@
+package com.mipssim.sim;
+
+import java.io.PrintStream;
+
+/**
+ * Pipeline models the timing of the classic 5-stage MIPS pipeline (IF, ID, EX, MEM, WB) for the instructions the
+ * Interpreter executes. One instruction is fetched per cycle unless it has to wait in ID for an operand; no cycle is
+ * simulated on its own, instead the cycle every instruction enters IF is computed from the cycles its operands
+ * become available.
+ *
+ * An instruction reads and writes the registers given by the masks of its op (the rs, rt and rd fields, $ra, HI
+ * and LO). With forwarding, a result is available to the next instruction's EX after the EX (ALU) or MEM (loads)
+ * of its producer, and store data is needed only in MEM. Branches and jumps are resolved in ID, so their operands
+ * are needed there and the delay slot hides the fetch of the target. Without forwarding, every operand is read in
+ * ID and a result is available in the WB of its producer (written in the first half of the cycle, read in the
+ * second). The FPRs are not tracked, coprocessor 1 ops only depend on the general registers they move or test.
+ *
+ * Stalls are counted by cause: load-use (waiting for a load), branch (a branch waiting for an ALU result) and data
+ * (any other operand, only without forwarding). All state is in primitive fields and arrays.
+ */
+public class Pipeline implements Tracer {
+
+    // What an op reads and writes, and how.
+    private static final int READ_RS  = 1;
+    private static final int READ_RT  = 2;
+    private static final int WRITE_RD = 4;
+    private static final int WRITE_RT = 8;
+    private static final int WRITE_RA = 16;
+    private static final int READ_HI  = 32;
+    private static final int READ_LO  = 64;
+    private static final int WRITE_HL = 128;
+    private static final int LOAD     = 256;
+    private static final int STORE    = 512;
+    private static final int BRANCH   = 1024;
+
+    // Registers of the timing model: the 32 general registers, HI and LO.
+    private static final int HI = 32;
+    private static final int LO = 33;
+
+    private static final int[] FLAGS = new int[Op.count()];
+
+    static {
+        for (int op = 0; op < FLAGS.length; op++)
+            FLAGS[op] = flags(op);
+    }
+
+    private final boolean forwarding;
+
+    // Cycle each register is available from, and whether it was loaded (for the stall cause).
+    private final long[] ready = new long[34];
+    private final boolean[] loaded = new boolean[34];
+
+    // Cycle the last instruction entered IF.
+    private long fetch = -1;
+
+    private long instructions;
+    private long loadUseStalls;
+    private long branchStalls;
+    private long dataStalls;
+
+    /**
+     * Creates an empty pipeline.
+     * @param forwarding True to forward results from EX and MEM, false to wait for WB.
+     */
+    public Pipeline(boolean forwarding) {
+        this.forwarding = forwarding;
+    }
+
+    private static int flags(int op) {
+        switch (op) {
+            case Op.SLL: case Op.SRL: case Op.SRA:
+                return READ_RT | WRITE_RD;
+            case Op.CLZ: case Op.CLO: case Op.MOVF: case Op.MOVT:
+                return READ_RS | WRITE_RD;
+            case Op.SLLV: case Op.SRLV: case Op.SRAV:
+            case Op.ADD: case Op.ADDU: case Op.SUB: case Op.SUBU: case Op.AND: case Op.OR: case Op.XOR: case Op.NOR:
+            case Op.SLT: case Op.SLTU: case Op.MOVZ: case Op.MOVN: case Op.MUL:
+                return READ_RS | READ_RT | WRITE_RD;
+            case Op.MFHI: return READ_HI | WRITE_RD;
+            case Op.MFLO: return READ_LO | WRITE_RD;
+            case Op.MTHI:
+            case Op.MTLO: return READ_RS | WRITE_HL;
+            case Op.MULT: case Op.MULTU: case Op.DIV: case Op.DIVU:
+                return READ_RS | READ_RT | WRITE_HL;
+            case Op.MADD: case Op.MADDU: case Op.MSUB: case Op.MSUBU:
+                return READ_RS | READ_RT | READ_HI | READ_LO | WRITE_HL;
+            case Op.TGE: case Op.TGEU: case Op.TLT: case Op.TLTU: case Op.TEQ: case Op.TNE:
+                return READ_RS | READ_RT;
+            case Op.TGEI: case Op.TGEIU: case Op.TLTI: case Op.TLTIU: case Op.TEQI: case Op.TNEI:
+                return READ_RS;
+            case Op.ADDI: case Op.ADDIU: case Op.SLTI: case Op.SLTIU: case Op.ANDI: case Op.ORI: case Op.XORI:
+                return READ_RS | WRITE_RT;
+            case Op.LUI:
+                return WRITE_RT;
+            case Op.LB: case Op.LH: case Op.LW: case Op.LBU: case Op.LHU: case Op.LL:
+                return READ_RS | WRITE_RT | LOAD;
+            case Op.LWL: case Op.LWR:
+                return READ_RS | READ_RT | WRITE_RT | LOAD;
+            case Op.SB: case Op.SH: case Op.SW: case Op.SWL: case Op.SWR:
+                return READ_RS | READ_RT | STORE;
+            case Op.SC:
+                return READ_RS | READ_RT | WRITE_RT | STORE;
+            case Op.LWC1: case Op.LDC1: case Op.SWC1: case Op.SDC1: case Op.PREF: case Op.CACHE:
+                return READ_RS;
+            case Op.MFC1: case Op.CFC1: case Op.MFC0:
+                return WRITE_RT;
+            case Op.MTC1: case Op.CTC1: case Op.MTC0: case Op.MOVZ_S: case Op.MOVZ_D: case Op.MOVN_S: case Op.MOVN_D:
+                return READ_RT;
+            case Op.J:      return BRANCH;
+            case Op.JAL:    return BRANCH | WRITE_RA;
+            case Op.JR:     return BRANCH | READ_RS;
+            case Op.JALR:   return BRANCH | READ_RS | WRITE_RD;
+            case Op.BEQ: case Op.BNE: case Op.BEQL: case Op.BNEL:
+                return BRANCH | READ_RS | READ_RT;
+            case Op.BC1F: case Op.BC1T: case Op.BC1FL: case Op.BC1TL:
+                return BRANCH;
+            case Op.BLEZ: case Op.BGTZ: case Op.BLEZL: case Op.BGTZL:
+            case Op.BLTZ: case Op.BGEZ: case Op.BLTZL: case Op.BGEZL:
+                return BRANCH | READ_RS;
+            case Op.BLTZAL: case Op.BGEZAL: case Op.BLTZALL: case Op.BGEZALL:
+                return BRANCH | READ_RS | WRITE_RA;
+            case Op.SYSCALL:
+                // Reads $v0 and $a0.
+                return READ_RS | READ_RT;
+            default:
+                return 0;
+        }
+    }
+
+    @Override
+    public void step(int pc, int word, int op, int[] r) {
+
+        int f  = FLAGS[op];
+        int rs = (word >>> 21) & 0x1f;
+        int rt = (word >>> 16) & 0x1f;
+
+        if (op == Op.SYSCALL) {
+            rs = 2;
+            rt = 4;
+        }
+
+        long cycle = fetch + 1;
+        long id    = cycle + 1;
+        long ex    = forwarding ? id + 1 : id;
+        long need  = ((f & BRANCH) != 0) ? id : ex;
+
+        // Cycles the operands arrive after they are needed.
+        long stall = 0;
+        int cause  = -1;
+        if (((f & READ_RS) != 0) && (ready[rs] - need > stall)) {
+            stall = ready[rs] - need;
+            cause = rs;
+        }
+        if ((f & READ_RT) != 0) {
+            long needRt = (((f & STORE) != 0) && forwarding) ? ex + 1 : need;
+            if (ready[rt] - needRt > stall) {
+                stall = ready[rt] - needRt;
+                cause = rt;
+            }
+        }
+        if (((f & READ_HI) != 0) && (ready[HI] - need > stall)) {
+            stall = ready[HI] - need;
+            cause = HI;
+        }
+        if (((f & READ_LO) != 0) && (ready[LO] - need > stall)) {
+            stall = ready[LO] - need;
+            cause = LO;
+        }
+
+        if (stall > 0) {
+            if (loaded[cause])
+                loadUseStalls += stall;
+            else if ((f & BRANCH) != 0)
+                branchStalls += stall;
+            else
+                dataStalls += stall;
+            cycle += stall;
+        }
+
+        fetch = cycle;
+        instructions++;
+
+        // Cycle the result can be used from: after EX or MEM with forwarding, in WB without.
+        boolean load   = (f & LOAD) != 0;
+        long available = (!forwarding || load) ? cycle + 4 : cycle + 3;
+
+        if ((f & WRITE_RD) != 0)
+            write((word >>> 11) & 0x1f, available, load);
+        if ((f & WRITE_RT) != 0)
+            write(rt, available, load);
+        if ((f & WRITE_RA) != 0)
+            write(31, available, false);
+        if ((f & WRITE_HL) != 0) {
+            write(HI, available, false);
+            write(LO, available, false);
+        }
+    }
+
+    private void write(int reg, long available, boolean load) {
+        if (reg != 0) {
+            ready[reg]  = available;
+            loaded[reg] = load;
+        }
+    }
+
+    /**
+     * Returns the number of cycles until the last instruction has left WB.
+     * @return Number of cycles.
+     */
+    public long getCycles() {
+        return (instructions == 0) ? 0 : fetch + 5;
+    }
+
+    public long getInstructions()  { return instructions; }
+    public long getLoadUseStalls() { return loadUseStalls; }
+    public long getBranchStalls()  { return branchStalls; }
+    public long getDataStalls()    { return dataStalls; }
+
+    /**
+     * Writes the cycles, CPI and stalls.
+     * @param out Stream to write to.
+     */
+    public void report(PrintStream out) {
+        long cycles = getCycles();
+        long stalls = loadUseStalls + branchStalls + dataStalls;
+        out.printf("Pipeline: %d cycles, %d instructions, CPI %.3f (forwarding %s).%n", cycles, instructions,
+                   (instructions == 0) ? 0.0 : (double) cycles / instructions, forwarding ? "on" : "off");
+        out.printf("Stalls: %d load-use, %d branch, %d data (%.1f%% of the cycles).%n", loadUseStalls,
+                   branchStalls, dataStalls, (cycles == 0) ? 0.0 : 100.0 * stalls / cycles);
+    }
+}
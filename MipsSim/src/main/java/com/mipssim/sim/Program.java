@@ -0,0 +1,51 @@
+package com.mipssim.sim;
+
+import java.nio.ByteOrder;
+
+/**
+ * Program is the code to simulate: the instruction words of one contiguous region starting at base, the address
+ * to start at and the memory the program runs in. The code is also stored in the memory, so it can be read (and
+ * written) by the program like any other data.
+ */
+public class Program {
+
+    // Address programs without addresses (text and raw binary input) are loaded at, the same as in SPIM.
+    public static final int TEXT_BASE = 0x00400000;
+
+    private final int base;
+    private final int[] words;
+    private final int entry;
+    private final Memory memory;
+
+    /**
+     * Creates a big-endian program in an otherwise empty memory.
+     * @param base Address of the first word.
+     * @param words Instruction words.
+     * @param entry Address of the first instruction to execute.
+     */
+    public Program(int base, int[] words, int entry) {
+        this(base, words, entry, new Memory(ByteOrder.BIG_ENDIAN));
+    }
+
+    /**
+     * Creates a program and stores its words in memory.
+     * @param base Address of the first word.
+     * @param words Instruction words.
+     * @param entry Address of the first instruction to execute.
+     * @param memory Memory to run in, e.g. with the data of the program already loaded.
+     */
+    public Program(int base, int[] words, int entry, Memory memory) {
+        this.base   = base;
+        this.words  = words;
+        this.entry  = entry;
+        this.memory = memory;
+
+        for (int i = 0; i < words.length; i++)
+            memory.storeWord(base + i * 4, words[i]);
+    }
+
+    public int getBase()       { return base; }
+    public int[] getWords()    { return words; }
+    public int getEntry()      { return entry; }
+    public Memory getMemory()  { return memory; }
+}
@@ -0,0 +1,29 @@
+package com.mipssim.sim;
+
+/**
+ * Thrown when the simulated program can not continue, e.g. on an invalid instruction, an integer overflow or a
+ * jump out of the program. The message includes the address of the instruction.
+ */
+public class SimulationException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int pc;
+
+    /**
+     * @param pc Address of the instruction that failed.
+     * @param message What went wrong.
+     */
+    public SimulationException(int pc, String message) {
+        super(String.format("%s at 0x%08x.", message, pc));
+        this.pc = pc;
+    }
+
+    /**
+     * Returns the address of the instruction that failed.
+     * @return Address.
+     */
+    public int getPc() {
+        return pc;
+    }
+}
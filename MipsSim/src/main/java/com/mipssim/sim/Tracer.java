@@ -0,0 +1,35 @@
+package com.mipssim.sim;
+
+/**
+ * Tracer is told about every instruction the Interpreter executes, before it is executed, e.g. to model the timing
+ * of a pipeline. The registers still hold the operands of the instruction, so a tracer can compute its effective
+ * address or whether it branches.
+ */
+public interface Tracer {
+
+    /**
+     * Called before an instruction is executed.
+     * @param pc Address of the instruction.
+     * @param word The instruction word.
+     * @param op Its op (see Op).
+     * @param r The general registers (not to be written).
+     */
+    void step(int pc, int word, int op, int[] r);
+
+    /**
+     * Returns a tracer that tells a and then b.
+     * @param a First tracer, or null.
+     * @param b Second tracer, or null.
+     * @return The combined tracer (a or b if the other one is null).
+     */
+    static Tracer both(Tracer a, Tracer b) {
+        if (a == null)
+            return b;
+        if (b == null)
+            return a;
+        return (pc, word, op, r) -> {
+            a.step(pc, word, op, r);
+            b.step(pc, word, op, r);
+        };
+    }
+}
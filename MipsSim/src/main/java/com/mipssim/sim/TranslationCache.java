@@ -0,0 +1,234 @@
+package com.mipssim.sim;
+
+import com.mipssim.Mappings;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * TranslationCache keeps what a run learned about a program in a directory, so the next run of the same program can
+ * skip it: the descriptor of every word (so nothing is looked up in the Mappings tables again), and the basic
+ * blocks that were translated with the number of times each was entered (so the blocks are translated, and the hot
+ * ones compiled, before the program starts).
+ *
+ * An entry is a file named after a 64-bit hash of the code (see hash). It is memory-mapped when it is loaded and
+ * rejected if its header does not match the program and the Mappings (stale) or its checksum is wrong (corrupt);
+ * the header is checked first, so a stale entry is rejected without reading the rest.
+ *
+ * File layout (big-endian):
+ * <pre>
+ *   0  int    magic "MTC1"
+ *   4  int    version
+ *   8  long   hash of the code
+ *  16  int    base address of the code
+ *  20  int    number of words
+ *  24  int    number of descriptors of the Mappings
+ *  28  int    number of blocks
+ *  32  int    CRC-32 of the bytes from 40 to the end
+ *  36  int    hash of the descriptors of the Mappings (see Mappings.getDescriptorHash)
+ *  40  int[]  descriptor id of every word (-1 = not in the mapping)
+ *      int[]  word index of the first instruction of every block
+ *      long[] number of times every block was entered
+ * </pre>
+ */
+public class TranslationCache {
+
+    private static final int MAGIC   = 0x4d544331;
+    private static final int VERSION = 2;
+    private static final int HEADER  = 40;
+
+    private final Path dir;
+
+    // The loaded entry.
+    private int[] descriptors;
+    private int[] blockStarts;
+    private long[] blockCounts;
+    private String rejected;
+
+    /**
+     * Creates a cache in dir, which is created when the first entry is stored.
+     * @param dir Directory of the entries.
+     */
+    public TranslationCache(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Returns the hash of the code of a program, which names its entry.
+     * @param program The program.
+     * @return 64-bit hash of the base address and the words.
+     */
+    public static long hash(Program program) {
+        // FNV-1a over the words, the base and the length.
+        long h = 0xcbf29ce484222325L;
+        h = (h ^ program.getBase()) * 0x100000001b3L;
+        for (int word : program.getWords())
+            h = (h ^ word) * 0x100000001b3L;
+        return (h ^ program.getWords().length) * 0x100000001b3L;
+    }
+
+    /**
+     * Returns the file of the entry for program.
+     * @param program The program.
+     * @return Path of the entry.
+     */
+    public Path entry(Program program) {
+        return dir.resolve(String.format("%016x.mtc", hash(program)));
+    }
+
+    /**
+     * Loads the entry of a program.
+     * @param program The program.
+     * @param map Mappings object the program is run with.
+     * @return True if an entry was found and accepted, false if there is none or it was rejected (see getRejected).
+     * @throws IOException If the entry can not be read.
+     */
+    public boolean load(Program program, Mappings map) throws IOException {
+
+        descriptors = null;
+        blockStarts = null;
+        blockCounts = null;
+        rejected    = null;
+
+        MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(entry(program), StandardOpenOption.READ)) {
+            if (ch.size() < HEADER)
+                return reject("truncated");
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+
+        int words  = buf.getInt(20);
+        int blocks = buf.getInt(28);
+        int descriptorCount = map.getDescriptorCount();
+
+        if ((buf.getInt(0) != MAGIC) || (buf.getInt(4) != VERSION))
+            return reject("not a translation cache entry");
+        if ((buf.getLong(8) != hash(program)) || (buf.getInt(16) != program.getBase()) ||
+            (words != program.getWords().length))
+            return reject("different code");
+        if ((buf.getInt(24) != descriptorCount) || (buf.getInt(36) != map.getDescriptorHash()))
+            return reject("different mappings");
+        if ((blocks < 0) || (buf.capacity() != HEADER + 4L * words + 12L * blocks))
+            return reject("truncated");
+
+        CRC32 crc = new CRC32();
+        crc.update(buf.duplicate().position(HEADER));
+        if ((int) crc.getValue() != buf.getInt(32))
+            return reject("checksum mismatch");
+
+        int[] ids    = new int[words];
+        int[] starts = new int[blocks];
+        long[] counts = new long[blocks];
+        buf.position(HEADER);
+        buf.asIntBuffer().get(ids);
+        buf.position(HEADER + 4 * words);
+        buf.asIntBuffer().get(starts);
+        buf.position(HEADER + 4 * words + 4 * blocks);
+        buf.asLongBuffer().get(counts);
+
+        for (int id : ids) {
+            if ((id < -1) || (id >= descriptorCount))
+                return reject("bad descriptor " + id);
+        }
+
+        descriptors = ids;
+        blockStarts = starts;
+        blockCounts = counts;
+        return true;
+    }
+
+    private boolean reject(String reason) {
+        rejected = reason;
+        return false;
+    }
+
+    /**
+     * Stores the entry of a program, replacing an older one. The file is written next to the entry and then
+     * renamed, so a run that loads it at the same time sees either entry.
+     * @param program The program.
+     * @param map Mappings object the program was run with.
+     * @param descriptors Descriptor id of every word of the program as it was loaded (see Op.descriptors).
+     * @param blockStarts Word index of the first instruction of every block.
+     * @param blockCounts Number of times every block was entered.
+     * @throws IOException If the entry can not be written.
+     */
+    public void store(Program program, Mappings map, int[] descriptors, int[] blockStarts, long[] blockCounts)
+            throws IOException {
+
+        int words  = descriptors.length;
+        int blocks = blockStarts.length;
+
+        ByteBuffer buf = ByteBuffer.allocate(HEADER + 4 * words + 12 * blocks);
+        buf.position(HEADER);
+        buf.asIntBuffer().put(descriptors);
+        buf.position(HEADER + 4 * words);
+        buf.asIntBuffer().put(blockStarts);
+        buf.position(HEADER + 4 * words + 4 * blocks);
+        buf.asLongBuffer().put(blockCounts);
+
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), HEADER, buf.capacity() - HEADER);
+
+        buf.putInt(0, MAGIC);
+        buf.putInt(4, VERSION);
+        buf.putLong(8, hash(program));
+        buf.putInt(16, program.getBase());
+        buf.putInt(20, words);
+        buf.putInt(24, map.getDescriptorCount());
+        buf.putInt(28, blocks);
+        buf.putInt(32, (int) crc.getValue());
+        buf.putInt(36, map.getDescriptorHash());
+
+        Files.createDirectories(dir);
+        Path entry = entry(program);
+        Path tmp   = Files.createTempFile(dir, entry.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, buf.array());
+            Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Returns the descriptor ids of the loaded entry.
+     * @return Descriptor id of every word, null if no entry was loaded.
+     */
+    public int[] getDescriptors() {
+        return descriptors;
+    }
+
+    /**
+     * Returns the blocks of the loaded entry.
+     * @return Word index of the first instruction of every block, null if no entry was loaded.
+     */
+    public int[] getBlockStarts() {
+        return blockStarts;
+    }
+
+    /**
+     * Returns the entry counts of the blocks of the loaded entry.
+     * @return Number of times every block was entered, null if no entry was loaded.
+     */
+    public long[] getBlockCounts() {
+        return blockCounts;
+    }
+
+    /**
+     * Returns why the last entry was rejected.
+     * @return The reason, null if the last load did not reject an entry.
+     */
+    public String getRejected() {
+        return rejected;
+    }
+}
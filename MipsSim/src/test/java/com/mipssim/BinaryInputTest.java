@@ -0,0 +1,152 @@
+package com.mipssim;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+
+/**
+ * Unit test for the words of raw binary files.
+ */
+public class BinaryInputTest
+    extends TestCase
+{
+    // addi $sp, $sp, -8 and jr $ra in big-endian order, followed by two bytes that are not a whole word.
+    private static final byte[] BYTES = { 0x23, (byte) 0xbd, (byte) 0xff, (byte) 0xf8, 0x03, (byte) 0xe0, 0x00, 0x08,
+                                          0x11, 0x22 };
+
+    private File file;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public BinaryInputTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( BinaryInputTest.class );
+    }
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        file = File.createTempFile( "mipssim", ".bin" );
+        file.deleteOnExit();
+        Files.write( file.toPath(), BYTES );
+    }
+
+    private int[] words( ByteOrder order, long offset, long length ) throws IOException
+    {
+        try ( BinaryInput in = new BinaryInput( file.getPath(), order, offset, length ) )
+        {
+            IntBuffer buf = in.map( 0, (int) in.getWordCount() );
+            int[] words = new int[ buf.remaining() ];
+            buf.get( words );
+            return words;
+        }
+    }
+
+    public void testByteOrder() throws IOException
+    {
+        int[] big = words( ByteOrder.BIG_ENDIAN, 0, -1 );
+        assertEquals( 2, big.length );
+        assertEquals( 0x23bdfff8, big[ 0 ] );
+        assertEquals( 0x03e00008, big[ 1 ] );
+
+        int[] little = words( ByteOrder.LITTLE_ENDIAN, 0, -1 );
+        assertEquals( 0xf8ffbd23, little[ 0 ] );
+        assertEquals( 0x0800e003, little[ 1 ] );
+    }
+
+    public void testOffsetAndLength() throws IOException
+    {
+        // The region starts at the second word.
+        int[] rest = words( ByteOrder.BIG_ENDIAN, 4, -1 );
+        assertEquals( 1, rest.length );
+        assertEquals( 0x03e00008, rest[ 0 ] );
+
+        // Offsets need not be aligned.
+        assertEquals( 0xfff803e0, words( ByteOrder.BIG_ENDIAN, 2, 4 )[ 0 ] );
+
+        // A length of 7 bytes holds one whole word, a length past the end of the file is cut at the end.
+        assertEquals( 1, words( ByteOrder.BIG_ENDIAN, 0, 7 ).length );
+        assertEquals( 1, words( ByteOrder.BIG_ENDIAN, 4, 100 ).length );
+        assertEquals( 0, words( ByteOrder.BIG_ENDIAN, BYTES.length, -1 ).length );
+    }
+
+    public void testTrailingBytesAreIgnored() throws IOException
+    {
+        try ( BinaryInput in = new BinaryInput( file.getPath(), ByteOrder.BIG_ENDIAN, 0, -1 ) )
+        {
+            assertEquals( 2, in.getWordCount() );
+        }
+        try ( BinaryInput in = new BinaryInput( file.getPath(), ByteOrder.BIG_ENDIAN, 3, -1 ) )
+        {
+            assertEquals( 1, in.getWordCount() );
+        }
+    }
+
+    public void testRejectsOffsetOutsideFile() throws IOException
+    {
+        long[] bad = { -1, BYTES.length + 1 };
+        for ( long offset : bad )
+        {
+            try
+            {
+                new BinaryInput( file.getPath(), ByteOrder.BIG_ENDIAN, offset, -1 ).close();
+                fail( "offset " + offset );
+            }
+            catch ( IOException e )
+            {
+                assertTrue( e.getMessage().contains( "outside the file" ) );
+            }
+        }
+    }
+
+    public void testRejectsMoreWordsThanTheAddressSpace() throws IOException
+    {
+        File big = File.createTempFile( "mipssim", ".bin" );
+        big.deleteOnExit();
+        try ( RandomAccessFile raf = new RandomAccessFile( big, "rw" ) )
+        {
+            // Sparse, nothing is written.
+            raf.setLength( BinaryInput.MAX_WORDS * 4 + 4 );
+        }
+
+        try
+        {
+            long length = BinaryInput.MAX_WORDS * 4;
+            try ( BinaryInput in = new BinaryInput( big.getPath(), ByteOrder.BIG_ENDIAN, 0, length ) )
+            {
+                assertEquals( BinaryInput.MAX_WORDS, in.getWordCount() );
+            }
+            try
+            {
+                new BinaryInput( big.getPath(), ByteOrder.BIG_ENDIAN, 0, -1 ).close();
+                fail( "too large" );
+            }
+            catch ( IOException e )
+            {
+                assertTrue( e.getMessage().contains( "too large" ) );
+            }
+        }
+        finally
+        {
+            big.delete();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.mipssim;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+/**
+ * Unit test for lazily rendered results.
+ */
+public class CompactOutputTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public CompactOutputTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( CompactOutputTest.class );
+    }
+
+    public void testFormatWithoutRendering()
+    {
+        Mappings map = new Mappings();
+
+        Output res = Disassembler.parseCompact( 0x8fa40000, 7, map, System.err );
+        assertTrue( res instanceof CompactOutput );
+
+        CompactOutput lw = (CompactOutput) res;
+        assertEquals( "I", lw.getFormat() );
+        assertEquals( 0x23, lw.getOpcode() );
+        assertEquals( "lw", lw.getInstruction().getFunc() );
+        assertEquals( 7, lw.getLineInput() );
+        assertFalse( lw.isRendered() );
+
+        assertEquals( "lw $a0, 0($sp)", lw.getMnemonic() );
+        assertTrue( lw.isRendered() );
+
+        // Rendered from the stored instruction, the word is not looked up again.
+        CompactOutput sw = new CompactOutput( 0x8fa40000, 7, map.getOp( 0x2b ), map );
+        assertEquals( "sw $a0, 0($sp)", sw.getMnemonic() );
+    }
+
+    public void testMatchesParseWord()
+    {
+        Mappings map = new Mappings();
+        PrintStream quiet = new PrintStream( new OutputStream()
+        {
+            @Override
+            public void write( int b )
+            {
+            }
+        } );
+        Random rnd = new Random( 7 );
+
+        for ( int i = 0; i < 20000; i++ )
+        {
+            int word = ( i == 0 ) ? 0 : rnd.nextInt();
+            Output expected = Disassembler.parseWord( word, i, map, quiet );
+            Output actual   = Disassembler.parseCompact( word, i, map, quiet );
+
+            if ( expected == null )
+            {
+                assertNull( actual );
+                continue;
+            }
+
+            assertEquals( expected.getFormat(), actual.getFormat() );
+            assertEquals( expected.getDecDecomp(), actual.getDecDecomp() );
+            assertEquals( expected.getHexDecomp(), actual.getHexDecomp() );
+            assertEquals( expected.getMnemonic(), actual.getMnemonic() );
+            assertEquals( i, actual.getLineInput() );
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.mipssim;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Unit test for the control-flow graph.
+ */
+public class ControlFlowGraphTest
+    extends TestCase
+{
+    private static final int BASE = 0x00400000;
+
+    // A loop, a call to the function at index 8 and an unreachable word after it.
+    private static final int[] PROGRAM = {
+        0x20080003,     // 0: addi $t0, $zero, 3
+        0x2108ffff,     // 1: addi $t0, $t0, -1
+        0x1500fffe,     // 2: bne $t0, $zero, 1
+        0x00000000,     // 3: nop
+        0x0c100008,     // 4: jal 8
+        0x00000000,     // 5: nop
+        0x08100006,     // 6: j 6
+        0x00000000,     // 7: nop
+        0x03e00008,     // 8: jr $ra
+        0x00000000,     // 9: nop
+        0x00000000,     // 10: nop
+    };
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public ControlFlowGraphTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( ControlFlowGraphTest.class );
+    }
+
+    public void testBlocksAndEdges()
+    {
+        ControlFlowGraph cfg = ControlFlowGraph.build( PROGRAM, BASE, BASE );
+
+        // [0], [1 2 3], [4 5], [6 7], [8 9], [10]
+        assertEquals( 6, cfg.getBlockCount() );
+        int[] starts  = { 0, 1, 4, 6, 8, 10 };
+        int[] lengths = { 1, 3, 2, 2, 2, 1 };
+        for ( int b = 0; b < 6; b++ )
+        {
+            assertEquals( BASE + starts[ b ] * 4, cfg.getStart( b ) );
+            assertEquals( lengths[ b ], cfg.getLength( b ) );
+        }
+        assertEquals( 1, cfg.blockAt( BASE + 12 ) );
+        assertEquals( -1, cfg.blockAt( BASE + 44 ) );
+        assertEquals( -1, cfg.blockAt( BASE - 4 ) );
+
+        assertEquals( 2, cfg.getSuccessorCount( 1 ) );
+        assertEquals( 1, cfg.getSuccessor( 1, 0 ) );
+        assertEquals( ControlFlowGraph.BRANCH, cfg.getSuccessorKind( 1, 0 ) );
+        assertEquals( 2, cfg.getSuccessor( 1, 1 ) );
+        assertEquals( ControlFlowGraph.FALL, cfg.getSuccessorKind( 1, 1 ) );
+
+        assertEquals( 4, cfg.getSuccessor( 2, 0 ) );
+        assertEquals( ControlFlowGraph.CALL, cfg.getSuccessorKind( 2, 0 ) );
+        assertEquals( 3, cfg.getSuccessor( 2, 1 ) );
+
+        assertEquals( 1, cfg.getSuccessorCount( 3 ) );
+        assertEquals( 3, cfg.getSuccessor( 3, 0 ) );
+        assertEquals( ControlFlowGraph.JUMP, cfg.getSuccessorKind( 3, 0 ) );
+
+        // jr has no static successor.
+        assertEquals( 0, cfg.getSuccessorCount( 4 ) );
+        assertEquals( 0, cfg.getPredecessorCount( 5 ) );
+
+        assertEquals( 2, cfg.getPredecessorCount( 1 ) );
+        assertEquals( 0, cfg.getPredecessor( 1, 0 ) );
+        assertEquals( 1, cfg.getPredecessor( 1, 1 ) );
+    }
+
+    public void testDominators()
+    {
+        ControlFlowGraph cfg = ControlFlowGraph.build( PROGRAM, BASE, BASE );
+
+        assertEquals( -1, cfg.getIdom( 0 ) );
+        assertEquals( 0, cfg.getIdom( 1 ) );
+        assertEquals( 1, cfg.getIdom( 2 ) );
+        assertEquals( 2, cfg.getIdom( 3 ) );
+        assertEquals( 2, cfg.getIdom( 4 ) );
+        assertEquals( -1, cfg.getIdom( 5 ) );
+
+        assertTrue( cfg.dominates( 0, 4 ) );
+        assertTrue( cfg.dominates( 3, 3 ) );
+        assertFalse( cfg.dominates( 3, 4 ) );
+        assertFalse( cfg.dominates( 0, 5 ) );
+    }
+
+    public void testDelaySlotLeader()
+    {
+        // The delay slot of the beq is the target of the bne, so the beq edges leave from the delay slot block.
+        int[] words = { 0x10000003,     // 0: beq $zero, $zero, 4
+                        0x00000000,     // 1: nop
+                        0x1420fffe,     // 2: bne $at, $zero, 1
+                        0x00000000,     // 3: nop
+                        0x00000000 };   // 4: nop
+        ControlFlowGraph cfg = ControlFlowGraph.build( words, BASE, BASE );
+
+        // [0], [1], [2 3], [4]
+        assertEquals( 4, cfg.getBlockCount() );
+        assertEquals( 1, cfg.getSuccessorCount( 0 ) );
+        assertEquals( 1, cfg.getSuccessor( 0, 0 ) );
+        assertEquals( ControlFlowGraph.FALL, cfg.getSuccessorKind( 0, 0 ) );
+        assertEquals( 3, cfg.getSuccessor( 1, 0 ) );
+        assertEquals( ControlFlowGraph.BRANCH, cfg.getSuccessorKind( 1, 0 ) );
+        assertEquals( 2, cfg.getSuccessor( 1, 1 ) );
+        assertEquals( 1, cfg.getSuccessor( 2, 0 ) );
+        assertEquals( 1, cfg.getIdom( 3 ) );
+    }
+
+    public void testCoprocessorBranches()
+    {
+        // bc0f, bc1t and bc2f are conditional branches, mfc0 (op 0x10, rs 0) is not.
+        int[] words = { 0x41000002,     // 0: bc0f 3
+                        0x40086000,     // 1: mfc0 $t0, $12
+                        0x45010002,     // 2: bc1t 5
+                        0x00000000,     // 3: nop
+                        0x49000000,     // 4: bc2f 5
+                        0x00000000,     // 5: nop
+                        0x00000000 };   // 6: nop
+        ControlFlowGraph cfg = ControlFlowGraph.build( words, BASE, BASE );
+
+        // [0 1], [2], [3], [4], [5], [6]
+        assertEquals( 6, cfg.getBlockCount() );
+        assertEquals( 2, cfg.getSuccessorCount( 0 ) );
+        assertEquals( 2, cfg.getSuccessor( 0, 0 ) );
+        assertEquals( ControlFlowGraph.BRANCH, cfg.getSuccessorKind( 0, 0 ) );
+        assertEquals( 1, cfg.getSuccessor( 0, 1 ) );
+        assertEquals( ControlFlowGraph.FALL, cfg.getSuccessorKind( 0, 1 ) );
+        // The delay slot of bc2f is its target, the edges leave from the delay slot block.
+        assertEquals( 4, cfg.getSuccessor( 4, 0 ) );
+        assertEquals( ControlFlowGraph.BRANCH, cfg.getSuccessorKind( 4, 0 ) );
+        assertTrue( ControlFlowGraph.hasTarget( 0x41010000 ) );
+        assertFalse( ControlFlowGraph.hasTarget( 0x40086000 ) );
+    }
+
+    public void testExport() throws IOException
+    {
+        ControlFlowGraph cfg = ControlFlowGraph.build( PROGRAM, BASE, BASE );
+
+        StringWriter dot = new StringWriter();
+        cfg.writeDot( dot );
+        assertTrue( dot.toString().startsWith( "digraph cfg {" ) );
+        assertTrue( dot.toString().contains( "  b2 [label=\"0x00400010\\n2 words\\nidom b1\"];" ) );
+        assertTrue( dot.toString().contains( "  b2 -> b4 [style=dashed];" ) );
+
+        StringWriter json = new StringWriter();
+        cfg.writeJson( json );
+        assertTrue( json.toString().contains( "{\"id\": 1, \"start\": \"0x00400004\", \"words\": 3, \"succ\": [1, 2], "
+                                              + "\"kinds\": [\"branch\", \"fall\"], \"pred\": [0, 1], \"idom\": 0}" ) );
+        assertTrue( json.toString().endsWith( "\n]}\n" ) );
+    }
+}
@@ -0,0 +1,111 @@
+package com.mipssim;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+/**
+ * Unit test for the cache of decoded words.
+ */
+public class DecodeCacheTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public DecodeCacheTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( DecodeCacheTest.class );
+    }
+
+    private static void assertSame( Output expected, Output actual )
+    {
+        assertEquals( expected.getFormat(), actual.getFormat() );
+        assertEquals( expected.getDecDecomp(), actual.getDecDecomp() );
+        assertEquals( expected.getHexDecomp(), actual.getHexDecomp() );
+        assertEquals( expected.getMnemonic(), actual.getMnemonic() );
+        assertEquals( expected.getLineInput(), actual.getLineInput() );
+    }
+
+    public void testHitsMatchDecoding()
+    {
+        Mappings map = new Mappings();
+        DecodeCache cache = new DecodeCache( map, 64 );
+        int[] words = { 0x27bdfff8, 0xafbf0004, 0, 0x03e00008, 0x27bdfff8, 0xafbf0004, 0, 0x03e00008 };
+
+        for ( int i = 0; i < words.length; i++ )
+            assertSame( Disassembler.parseWord( words[i], i + 1, map ), cache.decode( words[i], i + 1, System.err ) );
+
+        assertEquals( 4, cache.getMisses() );
+        assertEquals( 4, cache.getHits() );
+        assertEquals( 0, cache.getEvictions() );
+    }
+
+    public void testEvictsWhenFull()
+    {
+        Mappings map = new Mappings();
+        DecodeCache cache = new DecodeCache( map, 4 );
+        assertEquals( 4, cache.getCapacity() );
+
+        // addiu $sp, $sp, -n for many n, more words than the cache holds.
+        for ( int n = 0; n < 100; n++ )
+        {
+            int word = 0x27bd0000 | n;
+            assertSame( Disassembler.parseWord( word, n, map ), cache.decode( word, n, System.err ) );
+        }
+        assertEquals( 100, cache.getMisses() );
+        assertEquals( 96, cache.getEvictions() );
+
+        // The last word is still cached.
+        cache.decode( 0x27bd0000 | 99, 100, System.err );
+        assertEquals( 1, cache.getHits() );
+    }
+
+    public void testClockHandMoves()
+    {
+        Mappings map = new Mappings();
+        DecodeCache cache = new DecodeCache( map, 4 );
+
+        // One set: fill it, then every new word evicts the slot after the previous victim.
+        for ( int n = 0; n < 6; n++ )
+            cache.decode( 0x27bd0000 | n, n, System.err );
+        assertEquals( 2, cache.getEvictions() );
+
+        // The words 0 and 1 were evicted, 2 to 5 (including the word stored by the first eviction) are cached.
+        for ( int n = 2; n < 6; n++ )
+            cache.decode( 0x27bd0000 | n, n, System.err );
+        assertEquals( 4, cache.getHits() );
+        cache.decode( 0x27bd0000, 0, System.err );
+        assertEquals( 4, cache.getHits() );
+    }
+
+    public void testErrorsAreNotCached()
+    {
+        Mappings map = new Mappings();
+        DecodeCache cache = new DecodeCache( map, 16 );
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        PrintStream err = new PrintStream( errors, true );
+
+        // op 0x3f does not exist, every line reports its own error.
+        assertNull( cache.decode( 0xfc000000, 1, err ) );
+        assertNull( cache.decode( 0xfc000000, 2, err ) );
+        assertEquals( 0, cache.getHits() );
+
+        String reported = errors.toString();
+        assertTrue( reported.contains( "1| Error" ) );
+        assertTrue( reported.contains( "2| Error" ) );
+    }
+}
@@ -0,0 +1,229 @@
+package com.mipssim;
+
+import com.mipssim.sim.Op;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Unit test for the decode index.
+ */
+public class DecodeIndexTest
+    extends TestCase
+{
+    private static final int[] WORDS = { 0x23bdfff8, 0xafbf0004, 0x7c000000, 0x8fa40000, 0x03e00008, 0 };
+
+    private Path dir;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public DecodeIndexTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( DecodeIndexTest.class );
+    }
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        dir = Files.createTempDirectory( "mipssim" );
+    }
+
+    @Override
+    protected void tearDown() throws IOException
+    {
+        File[] files = dir.toFile().listFiles();
+        if ( files != null )
+            for ( File f : files )
+                f.delete();
+        dir.toFile().delete();
+    }
+
+    private static String read( File f ) throws IOException
+    {
+        return new String( Files.readAllBytes( f.toPath() ) );
+    }
+
+    private static String listing( DecodeIndex index ) throws IOException
+    {
+        File out = File.createTempFile( "mipssim", ".txt" );
+        out.deleteOnExit();
+        StreamDisassembler.run( index, out.getPath(), new ListingOptions( new Mappings() ) );
+        return read( out );
+    }
+
+    public void testColumns() throws IOException
+    {
+        File input = File.createTempFile( "mipssim", ".bin" );
+        input.deleteOnExit();
+        ByteBuffer buf = ByteBuffer.allocate( WORDS.length * 4 );
+        buf.asIntBuffer().put( WORDS );
+        Files.write( input.toPath(), buf.array() );
+
+        Mappings map = new Mappings();
+        try ( BinaryInput in = new BinaryInput( input.getPath(), ByteOrder.BIG_ENDIAN, 0, -1 ) )
+        {
+            assertEquals( WORDS.length, DecodeIndex.write( dir, in, map ) );
+        }
+
+        try ( DecodeIndex index = DecodeIndex.open( dir, map ) )
+        {
+            assertEquals( WORDS.length, index.getCount() );
+            assertEquals( 0, index.getSectionCount() );
+
+            DecodeIndex.Window records = index.map( 0, WORDS.length );
+            for ( int i = 0; i < WORDS.length; i++ )
+            {
+                assertEquals( WORDS[ i ], records.getWord( i ) );
+                assertEquals( 0x00400000 + 4 * i, records.getAddress( i ) );
+                assertEquals( Op.descriptor( WORDS[ i ], map ), records.getDescriptor( i ) );
+            }
+            // sw $ra, 4($sp)
+            assertEquals( 0x2b, records.getOpcode( 1 ) );
+            assertEquals( 29, records.getRs( 1 ) );
+            assertEquals( 31, records.getRt( 1 ) );
+            // jr $ra
+            assertEquals( 31, records.getRs( 4 ) );
+            assertEquals( 0x08, records.getFunct( 4 ) );
+            assertEquals( -1, records.getDescriptor( 2 ) );
+
+            // The word 0 is counted as nop, as a query counts it.
+            long[] counts = index.countDescriptors( null );
+            assertEquals( 1, counts[ counts.length - 1 ] );
+            assertEquals( 1, counts[ counts.length - 2 ] );
+            assertEquals( 0, counts[ Op.descriptor( 0, map ) ] );
+            assertEquals( 1, index.countDescriptors( Query.parse( "mnemonic = nop", map ) )[ counts.length - 2 ] );
+            StringWriter stats = new StringWriter();
+            index.writeStats( stats, null );
+            assertTrue( stats.toString().contains( "1  nop        ?" ) );
+            assertFalse( stats.toString().contains( "sll" ) );
+
+            // The listing is the one of the input.
+            File expected = File.createTempFile( "mipssim", ".txt" );
+            expected.deleteOnExit();
+            try ( BinaryInput in = new BinaryInput( input.getPath(), ByteOrder.BIG_ENDIAN, 0, -1 ) )
+            {
+                StreamDisassembler.run( in, expected.getPath(), new ListingOptions( map ) );
+            }
+            assertEquals( read( expected ), listing( index ) );
+        }
+    }
+
+    public void testElfListing() throws IOException
+    {
+        File input = ElfFileTest.writeElf( ByteOrder.BIG_ENDIAN, ElfFileTest.CODE );
+        File expected = File.createTempFile( "mipssim", ".txt" );
+        expected.deleteOnExit();
+
+        try ( ElfFile elf = new ElfFile( input.getPath() ) )
+        {
+            StreamDisassembler.run( elf, expected.getPath(), new ListingOptions( new Mappings() ) );
+            DecodeIndex.write( dir, elf, new Mappings() );
+        }
+
+        try ( DecodeIndex index = DecodeIndex.open( dir, new Mappings() ) )
+        {
+            assertEquals( 1, index.getSectionCount() );
+            assertEquals( "helper", index.getSymbol( 0x400010 ) );
+            assertEquals( read( expected ), listing( index ) );
+        }
+    }
+
+    public void testRejectsIncompleteIndex() throws IOException
+    {
+        try
+        {
+            DecodeIndex.open( dir, new Mappings() );
+            fail( "no index" );
+        }
+        catch ( IOException e )
+        {
+            assertTrue( e.getMessage().contains( "no meta file" ) );
+        }
+
+        File input = File.createTempFile( "mipssim", ".txt" );
+        input.deleteOnExit();
+        Files.write( input.toPath(), "0x03e00008\n0\n".getBytes() );
+        DecodeIndex.write( dir, input.getPath(), new Mappings() );
+        DecodeIndex.open( dir, new Mappings() ).close();
+
+        // Descriptor ids of other Mappings with as many descriptors.
+        byte[] meta = Files.readAllBytes( dir.resolve( "meta" ) );
+        meta[ 35 ] ^= 1;
+        Files.write( dir.resolve( "meta" ), meta );
+        try
+        {
+            DecodeIndex.open( dir, new Mappings() );
+            fail( "other mappings" );
+        }
+        catch ( IOException e )
+        {
+            assertTrue( e.getMessage().contains( "different mappings" ) );
+        }
+        meta[ 35 ] ^= 1;
+        Files.write( dir.resolve( "meta" ), meta );
+
+        Files.write( dir.resolve( "rd.col" ), new byte[] { 0 } );
+        try
+        {
+            DecodeIndex.open( dir, new Mappings() );
+            fail( "truncated column" );
+        }
+        catch ( IOException e )
+        {
+            assertTrue( e.getMessage().contains( "wrong size" ) );
+        }
+    }
+
+    public void testRejectsCorruptDescriptors() throws IOException
+    {
+        File input = File.createTempFile( "mipssim", ".txt" );
+        input.deleteOnExit();
+        Files.write( input.toPath(), "0x03e00008\n0\n".getBytes() );
+        Mappings map = new Mappings();
+        DecodeIndex.write( dir, input.getPath(), map );
+
+        // The second record gets an id past the last descriptor.
+        ByteBuffer desc = ByteBuffer.wrap( Files.readAllBytes( dir.resolve( "desc.col" ) ) );
+        desc.putShort( 2, (short) map.getDescriptorCount() );
+        Files.write( dir.resolve( "desc.col" ), desc.array() );
+
+        try ( DecodeIndex index = DecodeIndex.open( dir, map ) )
+        {
+            try
+            {
+                index.countDescriptors( null );
+                fail( "corrupt descriptor" );
+            }
+            catch ( IOException e )
+            {
+                assertTrue( e.getMessage().contains( "record 1 is out of range" ) );
+            }
+            try
+            {
+                listing( index );
+                fail( "corrupt descriptor" );
+            }
+            catch ( IOException e )
+            {
+                assertTrue( e.getMessage().contains( "out of range" ) );
+            }
+        }
+    }
+}
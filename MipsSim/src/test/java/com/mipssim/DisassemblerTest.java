@@ -0,0 +1,109 @@
+package com.mipssim;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the decoding of instruction words.
+ */
+public class DisassemblerTest
+    extends TestCase
+{
+    private Mappings map;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public DisassemblerTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( DisassemblerTest.class );
+    }
+
+    protected void setUp()
+    {
+        map = new Mappings();
+    }
+
+    private static String toBin( int word )
+    {
+        String bin = Integer.toBinaryString( word );
+        while ( bin.length() < 32 )
+            bin = "0" + bin;
+        return bin;
+    }
+
+    private void assertDecodes( int word, String format, String decDecomp, String hexDecomp, String mnemonic )
+    {
+        Output res = Disassembler.parseWord( word, 1, map );
+        assertNotNull( res );
+        assertEquals( format, res.getFormat() );
+        assertEquals( decDecomp, res.getDecDecomp() );
+        assertEquals( hexDecomp, res.getHexDecomp() );
+        assertEquals( mnemonic, res.getMnemonic() );
+    }
+
+    public void testParseWordFormats()
+    {
+        assertDecodes( 0x23bdfff8, "I", "[8 29 29 -8]", "[0x08 0x1d 0x1d 0xfff8]", "addi $sp, $sp, -8" );
+        assertDecodes( 0xafbf0004, "I", "[-21 29 31 4]", "[0x2b 0x1d 0x1f 0x04]", "sw $ra, 4($sp)" );
+        assertDecodes( 0x11000003, "I", "[4 8 0 4]", "[0x04 0x08 0x00 0x03]", "beq $t0, $zero, 4" );
+        assertDecodes( 0x03e00008, "R", "[0 31 0 0 0 8]", "[0x00 0x1f 0x00 0x00 0 0x08]", "jr $ra" );
+        assertDecodes( 0x0c100000, "J", "[3 1048576]", "[0x03 0x100000]", "jal 0x100000" );
+        assertDecodes( 0x70821002, "R", "[28 4 2 2 0 2]", "[0x1c 0x04 0x02 0x02 0 0x02]", "mul $v0, $a0, $v0" );
+        assertDecodes( 0, "?", "[0]", "[0x00]", "nop" );
+    }
+
+    public void testNegativeBranchOffset()
+    {
+        assertDecodes( 0x1000fffe, "I", "[4 0 0 -1]", "[0x04 0x00 0x00 0xfffe]", "beq $zero, $zero, -1" );
+    }
+
+    public void testCoprocessorVariants()
+    {
+        assertDecodes( 0x46241000, "R", "[17 2 4 0 0 0]", "[0x11 0x02 0x04 0x00 0 0x00]", "add.d $f0, $f2, $f4" );
+        assertDecodes( 0x4604bd8f, "R", "[17 23 4 22 0 15]", "[0x11 0x17 0x04 0x16 0 0x0f]", "floor.w.s $f22, $f23, $f4" );
+        // c.cond.fmt is in the upper half of the float functions.
+        assertDecodes( 0x46041032, "R", "[17 2 4 0 0 -14]", "[0x11 0x02 0x04 0x00 0 0x32]", "c.eq.s $f0, $f2, $f4" );
+        assertDecodes( 0x42000002, "J", "[16 -524288]", "[0x10 0x80000]", "tlbwi " );
+        assertSame( map.getCop( 1, 0x04 ), map.getCop( 1, 0x04 ) );
+        assertEquals( "mtc1", map.getCop( 1, 0x04 ).getFunc() );
+        assertSame( map.getOp( 0x23 ), map.getDescriptor( map.getOp( 0x23 ).getId() ) );
+    }
+
+    public void testParseBinMatchesParseWord()
+    {
+        int[] words = { 0x23bdfff8, 0x8fa40000, 0x00012122, 0x46041080, 0x45010004, 0x40046800, 0x0810000f };
+        for ( int word : words )
+        {
+            Output a = Disassembler.parseWord( word, 7, map );
+            Output b = Disassembler.parseBin( toBin( word ), 7, map );
+            assertEquals( a == null, b == null );
+            if ( a == null )
+                continue;
+            assertEquals( a.getFormat(), b.getFormat() );
+            assertEquals( a.getDecDecomp(), b.getDecDecomp() );
+            assertEquals( a.getHexDecomp(), b.getHexDecomp() );
+            assertEquals( a.getMnemonic(), b.getMnemonic() );
+            assertEquals( 7, b.getLineInput() );
+        }
+    }
+
+    public void testFieldHelpers()
+    {
+        assertEquals( Disassembler.binaryToHex( "000101" ), Disassembler.fieldToHex( 5 ) );
+        assertEquals( Disassembler.binaryToHex( "1111111111111000" ), Disassembler.fieldToHex( 0xfff8 ) );
+        assertEquals( Disassembler.binaryToDec( "100011" ), Disassembler.signExtend( 0x23, 6 ) );
+        assertEquals( Disassembler.binaryToDec( "1" ), Disassembler.signExtend( 1, 1 ) );
+    }
+}
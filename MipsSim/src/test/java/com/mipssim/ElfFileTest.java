@@ -0,0 +1,170 @@
+package com.mipssim;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.List;
+
+/**
+ * Unit test for reading ELF files.
+ */
+public class ElfFileTest
+    extends TestCase
+{
+    static final int[] CODE = { 0x27bdfff8, 0xafbf0004, 0x0c100004, 0x00000000,
+                                0x03e00008, 0x00000000, 0x1000fffe, 0x00000000 };
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public ElfFileTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( ElfFileTest.class );
+    }
+
+    /**
+     * Writes a minimal MIPS executable with a .text section at 0x400000 holding code and the function symbols
+     * "main" (0x400000) and "helper" (0x400010).
+     */
+    static File writeElf( ByteOrder order, int[] code ) throws IOException
+    {
+        return writeElf( order, code, 0x400010 );
+    }
+
+    /**
+     * Writes the executable of writeElf with the symbol "helper" at helperAddr.
+     */
+    static File writeElf( ByteOrder order, int[] code, int helperAddr ) throws IOException
+    {
+        byte[] shstr  = "\0.text\0.symtab\0.strtab\0.shstrtab\0".getBytes( "US-ASCII" );
+        byte[] strtab = "\0main\0helper\0".getBytes( "US-ASCII" );
+
+        int offText  = 52 + 32;
+        int offSym   = offText + code.length * 4;
+        int offStr   = offSym + 3 * 16;
+        int offShstr = offStr + strtab.length;
+        int shoff    = ( offShstr + shstr.length + 3 ) & ~3;
+
+        ByteBuffer b = ByteBuffer.allocate( shoff + 5 * 40 ).order( order );
+        b.put( new byte[] { 0x7f, 'E', 'L', 'F', 1, (byte) ( order == ByteOrder.LITTLE_ENDIAN ? 1 : 2 ), 1 } );
+        b.position( 16 );
+        b.putShort( (short) 2 ).putShort( (short) 8 ).putInt( 1 ).putInt( 0x400000 ).putInt( 52 ).putInt( shoff )
+         .putInt( 0 ).putShort( (short) 52 ).putShort( (short) 32 ).putShort( (short) 1 ).putShort( (short) 40 )
+         .putShort( (short) 5 ).putShort( (short) 4 );
+
+        // Program header.
+        b.putInt( 1 ).putInt( offText ).putInt( 0x400000 ).putInt( 0x400000 ).putInt( code.length * 4 )
+         .putInt( code.length * 4 ).putInt( 5 ).putInt( 4 );
+
+        for ( int w : code )
+            b.putInt( w );
+
+        // Symbols: null, main, helper.
+        b.position( offSym + 16 );
+        b.putInt( 1 ).putInt( 0x400000 ).putInt( 16 ).put( (byte) 0x12 ).put( (byte) 0 ).putShort( (short) 1 );
+        b.putInt( 6 ).putInt( helperAddr ).putInt( 16 ).put( (byte) 0x12 ).put( (byte) 0 ).putShort( (short) 1 );
+        b.put( strtab ).put( shstr );
+
+        // Section headers: null, .text, .symtab, .strtab, .shstrtab.
+        b.position( shoff + 40 );
+        b.putInt( 1 ).putInt( 1 ).putInt( 6 ).putInt( 0x400000 ).putInt( offText ).putInt( code.length * 4 )
+         .putInt( 0 ).putInt( 0 ).putInt( 4 ).putInt( 0 );
+        b.putInt( 7 ).putInt( 2 ).putInt( 0 ).putInt( 0 ).putInt( offSym ).putInt( 3 * 16 )
+         .putInt( 3 ).putInt( 1 ).putInt( 4 ).putInt( 16 );
+        b.putInt( 15 ).putInt( 3 ).putInt( 0 ).putInt( 0 ).putInt( offStr ).putInt( strtab.length )
+         .putInt( 0 ).putInt( 0 ).putInt( 1 ).putInt( 0 );
+        b.putInt( 23 ).putInt( 3 ).putInt( 0 ).putInt( 0 ).putInt( offShstr ).putInt( shstr.length )
+         .putInt( 0 ).putInt( 0 ).putInt( 1 ).putInt( 0 );
+
+        File f = File.createTempFile( "mipssim", ".elf" );
+        f.deleteOnExit();
+        try ( FileOutputStream out = new FileOutputStream( f ) )
+        {
+            out.write( b.array() );
+        }
+        return f;
+    }
+
+    private void assertReads( ByteOrder order ) throws IOException
+    {
+        try ( ElfFile elf = new ElfFile( writeElf( order, CODE ).getPath() ) )
+        {
+            assertEquals( order, elf.getByteOrder() );
+            assertEquals( 0x400000, elf.getEntry() );
+
+            List<ElfFile.Section> exec = elf.getExecutableSections();
+            assertEquals( 1, exec.size() );
+            assertEquals( ".text", exec.get( 0 ).getName() );
+            assertEquals( 0x400000, exec.get( 0 ).getAddr() );
+
+            IntBuffer words = elf.words( exec.get( 0 ) );
+            assertEquals( CODE.length, words.limit() );
+            for ( int i = 0; i < CODE.length; i++ )
+                assertEquals( CODE[i], words.get( i ) );
+
+            assertEquals( "main", elf.getSymbol( 0x400000 ) );
+            assertEquals( "helper", elf.getSymbol( 0x400010 ) );
+            assertNull( elf.getSymbol( 0x400004 ) );
+        }
+    }
+
+    public void testBigEndian() throws IOException
+    {
+        assertReads( ByteOrder.BIG_ENDIAN );
+    }
+
+    public void testLittleEndian() throws IOException
+    {
+        assertReads( ByteOrder.LITTLE_ENDIAN );
+    }
+
+    public void testSymbolsAreSortedUnsigned() throws IOException
+    {
+        // A kseg1 symbol sorts after the kuseg one.
+        try ( ElfFile elf = new ElfFile( writeElf( ByteOrder.BIG_ENDIAN, CODE, 0xbfc00000 ).getPath() ) )
+        {
+            int[] addrs = elf.getSymbolAddresses();
+            assertEquals( 2, addrs.length );
+            assertEquals( 0x400000, addrs[ 0 ] );
+            assertEquals( 0xbfc00000, addrs[ 1 ] );
+            assertEquals( "main", elf.getSymbol( 0x400000 ) );
+            assertEquals( "helper", elf.getSymbol( 0xbfc00000 ) );
+        }
+    }
+
+    public void testRejectsNonElf() throws IOException
+    {
+        File f = File.createTempFile( "mipssim", ".txt" );
+        f.deleteOnExit();
+        try ( FileOutputStream out = new FileOutputStream( f ) )
+        {
+            out.write( new byte[64] );
+        }
+        try
+        {
+            new ElfFile( f.getPath() ).close();
+            fail( "Expected IOException" );
+        }
+        catch ( IOException e )
+        {
+            assertTrue( e.getMessage().startsWith( "Not an ELF file" ) );
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.mipssim;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Unit test for incremental disassembly.
+ */
+public class IncrementalDisassemblerTest
+    extends TestCase
+{
+    private static final int[] COMMON = { 0x23bdfff8, 0xafbf0004, 0x8fa40000, 0x03e00008, 0x0c100000, 0x1000fffe, 0 };
+
+    private File input;
+    private File output;
+    private Path cacheFile;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public IncrementalDisassemblerTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( IncrementalDisassemblerTest.class );
+    }
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        input     = File.createTempFile( "mipssim", ".bin" );
+        output    = File.createTempFile( "mipssim", ".txt" );
+        cacheFile = new File( output.getPath() + ".mic" ).toPath();
+        input.deleteOnExit();
+        output.deleteOnExit();
+        cacheFile.toFile().deleteOnExit();
+    }
+
+    private void writeInput( int[] words ) throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate( words.length * 4 );
+        buf.asIntBuffer().put( words );
+        Files.write( input.toPath(), buf.array() );
+    }
+
+    private IncrementalDisassembler run( IncrementalDisassembler inc ) throws IOException
+    {
+        try ( BinaryInput in = new BinaryInput( input.getPath(), ByteOrder.BIG_ENDIAN, 0, -1 ) )
+        {
+            inc.run( in, output.getPath() );
+        }
+        return inc;
+    }
+
+    private String full() throws IOException
+    {
+        File expected = File.createTempFile( "mipssim", ".txt" );
+        expected.deleteOnExit();
+        try ( BinaryInput in = new BinaryInput( input.getPath(), ByteOrder.BIG_ENDIAN, 0, -1 ) )
+        {
+            StreamDisassembler.run( in, expected.getPath(), new ListingOptions( new Mappings() ) );
+        }
+        return new String( Files.readAllBytes( expected.toPath() ) );
+    }
+
+    private String listing() throws IOException
+    {
+        return new String( Files.readAllBytes( output.toPath() ) );
+    }
+
+    public void testOnlyChangedChunksAreDecoded() throws IOException
+    {
+        Random rnd = new Random( 2 );
+        int[] words = new int[ IncrementalDisassembler.CHUNK_WORDS * 3 + 5 ];
+        for ( int i = 0; i < words.length; i++ )
+            words[ i ] = COMMON[ rnd.nextInt( COMMON.length ) ];
+        writeInput( words );
+
+        IncrementalDisassembler first = run( new IncrementalDisassembler( cacheFile, new Mappings(), null, "binary" ) );
+        assertEquals( 4, first.getDecoded() );
+        assertEquals( full(), listing() );
+
+        // A new instance reads the cache file; a change in place decodes its own chunk and patches the listing.
+        words[ IncrementalDisassembler.CHUNK_WORDS + 3 ] = 0x24020001;
+        writeInput( words );
+        IncrementalDisassembler second = run( new IncrementalDisassembler( cacheFile, new Mappings(), null,
+                                                                           "binary" ) );
+        assertEquals( 3, second.getReused() );
+        assertEquals( 1, second.getDecoded() );
+        assertTrue( second.isPatched() );
+        assertEquals( full(), listing() );
+
+        // Nothing changed.
+        run( second );
+        assertEquals( 4, second.getReused() );
+        assertEquals( full(), listing() );
+    }
+
+    public void testChangedLengthRewritesTail() throws IOException
+    {
+        int[] words = new int[ IncrementalDisassembler.CHUNK_WORDS * 2 + 1 ];
+        writeInput( words );
+        IncrementalDisassembler inc = run( new IncrementalDisassembler( cacheFile, new Mappings(), null, "binary" ) );
+
+        // A word that can not be decoded (no row) in the first chunk, and without the last chunk.
+        words[ 7 ] = 0x7c000000;
+        writeInput( Arrays.copyOf( words, IncrementalDisassembler.CHUNK_WORDS * 2 ) );
+        run( inc );
+        assertEquals( 1, inc.getReused() );
+        assertEquals( full(), listing() );
+    }
+
+    public void testRejectsOtherCache() throws IOException
+    {
+        writeInput( COMMON );
+        run( new IncrementalDisassembler( cacheFile, new Mappings(), null, "binary" ) );
+
+        IncrementalDisassembler elf = new IncrementalDisassembler( cacheFile, new Mappings(), null, "elf" );
+        run( elf );
+        assertEquals( 0, elf.getReused() );
+        assertFalse( elf.isPatched() );
+
+        // Descriptor ids of other Mappings with as many descriptors.
+        run( new IncrementalDisassembler( cacheFile, new Mappings(), null, "binary" ) );
+        byte[] bytes = Files.readAllBytes( cacheFile );
+        bytes[ 59 ] ^= 1;
+        Files.write( cacheFile, bytes );
+        IncrementalDisassembler other = run( new IncrementalDisassembler( cacheFile, new Mappings(), null,
+                                                                          "binary" ) );
+        assertEquals( 0, other.getReused() );
+        assertEquals( full(), listing() );
+
+        Files.write( cacheFile, new byte[] { 1, 2, 3 } );
+        IncrementalDisassembler corrupt = run( new IncrementalDisassembler( cacheFile, new Mappings(), null,
+                                                                            "binary" ) );
+        assertEquals( 1, corrupt.getDecoded() );
+        assertEquals( full(), listing() );
+    }
+}
@@ -0,0 +1,99 @@
+package com.mipssim;
+
+import com.mipssim.sim.Program;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.IntBuffer;
+
+/**
+ * Unit test for labelled listings.
+ */
+public class LabelsTest
+    extends TestCase
+{
+    private static final int[] PROGRAM = {
+        0x20080003,     // addi $t0, $zero, 3
+        0x2108ffff,     // addi $t0, $t0, -1
+        0x1500fffe,     // bne $t0, $zero, -1
+        0x00000000,     // nop
+        0x0c100006,     // jal 0x100006
+        0x1000ff00,     // beq $zero, $zero, -255 (outside the program)
+        0x03e00008,     // jr $ra
+    };
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public LabelsTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( LabelsTest.class );
+    }
+
+    private static Labels labels()
+    {
+        Labels labels = new Labels( null );
+        labels.scan( IntBuffer.wrap( PROGRAM ), Program.TEXT_BASE );
+        return labels.sort();
+    }
+
+    public void testTargets()
+    {
+        Labels labels = labels();
+
+        assertEquals( 2, labels.getCount() );
+        assertFalse( labels.isLabel( 0x00400000 ) );
+        assertTrue( labels.isLabel( 0x00400004 ) );
+        assertTrue( labels.isLabel( 0x00400018 ) );
+        // Out of order, e.g. sections not sorted by address.
+        assertTrue( labels.isLabel( 0x00400004 ) );
+        assertFalse( labels.isLabel( 0x00400008 ) );
+        assertEquals( "L_00400018", labels.name( 0x00400018 ) );
+    }
+
+    public void testListing() throws IOException
+    {
+        StringBuilder input = new StringBuilder();
+        for ( int word : PROGRAM )
+        {
+            input.append( "0x" ).append( Integer.toHexString( word ) ).append( '\n' );
+        }
+
+        StringWriter plain = new StringWriter();
+        StreamDisassembler.run( new BufferedReader( new StringReader( input.toString() ) ), plain, new Mappings() );
+        StringWriter labelled = new StringWriter();
+        ListingOptions opts = new ListingOptions( new Mappings() );
+        opts.setLabels( labels() );
+        StreamDisassembler.run( new BufferedReader( new StringReader( input.toString() ) ), labelled, opts );
+
+        String[] rows = labelled.toString().split( System.lineSeparator() );
+        assertEquals( PROGRAM.length + 2, rows.length );
+        assertEquals( "L_00400004:", rows[ 1 ] );
+        assertTrue( rows[ 3 ].contains( "bne $t0, $zero, L_00400004 " ) );
+        assertTrue( rows[ 5 ].contains( "jal L_00400018 " ) );
+        assertTrue( rows[ 6 ].contains( "beq $zero, $zero, -255 " ) );
+        assertEquals( "L_00400018:", rows[ 7 ] );
+
+        // The other rows are the plain ones.
+        String[] plainRows = plain.toString().split( System.lineSeparator() );
+        assertEquals( plainRows[ 0 ], rows[ 0 ] );
+        assertEquals( plainRows[ 1 ], rows[ 2 ] );
+        assertEquals( plainRows[ 3 ], rows[ 4 ] );
+        assertEquals( plainRows[ 6 ], rows[ 8 ] );
+    }
+}
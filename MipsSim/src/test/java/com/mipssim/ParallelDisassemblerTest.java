@@ -0,0 +1,102 @@
+package com.mipssim;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.*;
+import java.util.Random;
+
+/**
+ * Unit test for parallel disassembly.
+ */
+public class ParallelDisassemblerTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public ParallelDisassemblerTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( ParallelDisassemblerTest.class );
+    }
+
+    public void testOutputMatchesSequential() throws IOException
+    {
+        // More words than one chunk, so the order of several chunks is checked.
+        int[] common = { 0x23bdfff8, 0xafbf0004, 0x8fa40000, 0x03e00008, 0x0c100000, 0x70821002, 0x1000fffe, 0 };
+        Random rnd = new Random( 1 );
+
+        File input = File.createTempFile( "mipssim", ".txt" );
+        input.deleteOnExit();
+        try ( PrintWriter pw = new PrintWriter( new FileWriter( input ) ) )
+        {
+            for ( int i = 0; i < ParallelDisassembler.CHUNK_WORDS * 3 + 17; i++ )
+                pw.println( "0x" + Integer.toHexString( common[rnd.nextInt( common.length )] ) );
+        }
+
+        Mappings map = new Mappings();
+
+        StringWriter seq = new StringWriter();
+        try ( BufferedReader br = new BufferedReader( new FileReader( input ) ) )
+        {
+            StreamDisassembler.run( br, seq, map );
+        }
+
+        StringWriter par = new StringWriter();
+        new ParallelDisassembler( 3, map, par ).run( input.getPath() );
+
+        assertEquals( seq.toString(), par.toString() );
+    }
+
+    public void testStopsThreadsWhenWritingFails() throws IOException, InterruptedException
+    {
+        File input = File.createTempFile( "mipssim", ".txt" );
+        input.deleteOnExit();
+        // Enough chunks that the first one is written while the input is still being read.
+        try ( PrintWriter pw = new PrintWriter( new FileWriter( input ) ) )
+        {
+            for ( int i = 0; i < ParallelDisassembler.CHUNK_WORDS * 5; i++ )
+                pw.println( "0x03e00008" );
+        }
+
+        Writer broken = new Writer()
+        {
+            public void write( char[] buf, int off, int len ) throws IOException
+            {
+                throw new IOException( "disk full" );
+            }
+            public void flush() { }
+            public void close() { }
+        };
+
+        try
+        {
+            new ParallelDisassembler( 1, new Mappings(), broken ).run( input.getPath() );
+            fail( "write error" );
+        }
+        catch ( IOException e )
+        {
+            assertEquals( "disk full", e.getMessage() );
+        }
+
+        for ( Thread t : Thread.getAllStackTraces().keySet() )
+        {
+            if ( t.getName().equals( "mipssim-decoder" ) )
+            {
+                t.join( 5000 );
+                assertFalse( t.isAlive() );
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.mipssim;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+
+/**
+ * Unit test for queries on instruction words.
+ */
+public class QueryTest
+    extends TestCase
+{
+    private static final int LW_SP   = 0x8fa40000;     // lw $a0, 0($sp)
+    private static final int SW_SP   = 0xafbf0004;     // sw $ra, 4($sp)
+    private static final int LW_T0   = 0x8d090010;     // lw $t1, 16($t0)
+    private static final int ADDI    = 0x23bdfff8;     // addi $sp, $sp, -8
+    private static final int JAL     = 0x0c100000;     // jal 0x100000
+    private static final int JR      = 0x03e00008;     // jr $ra
+    private static final int INVALID = 0x7c000000;
+
+    private final Mappings map = new Mappings();
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public QueryTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( QueryTest.class );
+    }
+
+    private boolean matches( String query, int word )
+    {
+        return Query.parse( query, map ).matches( word, 0x00400000 );
+    }
+
+    public void testFields()
+    {
+        assertTrue( matches( "mnemonic in (lw,sw) and rs=$sp", LW_SP ) );
+        assertTrue( matches( "mnemonic in (lw,sw) and rs=$sp", SW_SP ) );
+        assertFalse( matches( "mnemonic in (lw,sw) and rs=$sp", LW_T0 ) );
+        assertFalse( matches( "mnemonic in (lw,sw) and rs=$sp", ADDI ) );
+
+        assertTrue( matches( "op = 0x23", LW_T0 ) );
+        assertTrue( matches( "rt=$29 and imm < 0", ADDI ) );
+        assertTrue( matches( "imm = 0xfff8", ADDI ) );
+        assertTrue( matches( "format = J or funct = 8 and op = 0", JAL ) );
+        assertTrue( matches( "format = J or funct = 8 and op = 0", JR ) );
+        assertFalse( matches( "not (format = j or rs = $ra)", JR ) );
+        assertTrue( matches( "rd not in (1, 2, 3)", JR ) );
+        assertTrue( matches( "addr >= 0x00400000 and addr < 0x80000000", JR ) );
+
+        // The word 0 is nop, not sll.
+        assertTrue( matches( "mnemonic = nop", 0 ) );
+        assertFalse( matches( "mnemonic = sll", 0 ) );
+        // c.eq.s, func 0x32 (movz.s is 0x12).
+        assertTrue( matches( "mnemonic = c.eq.s", 0x46041032 ) );
+        assertFalse( matches( "mnemonic = movz.s", 0x46041032 ) );
+        // Words that are not in the mapping have no mnemonic.
+        assertFalse( matches( "mnemonic = lw", INVALID ) );
+        assertTrue( matches( "mnemonic != lw", INVALID ) );
+
+        assertFalse( Query.parse( "op = 0", map ).usesDescriptor() );
+        assertTrue( Query.parse( "op = 0 or format = R", map ).usesDescriptor() );
+    }
+
+    public void testErrors()
+    {
+        String[] bad = { "", "op", "op = ", "foo = 1", "rs = $xx", "mnemonic < lw", "mnemonic = load", "op = 1 )",
+                         "(op = 1", "imm = 0x10000", "op in 1" };
+        for ( String query : bad )
+        {
+            try
+            {
+                Query.parse( query, map );
+                fail( query );
+            }
+            catch ( IllegalArgumentException e )
+            {
+                assertTrue( e.getMessage().contains( "query" ) );
+            }
+        }
+    }
+
+    public void testListing() throws IOException
+    {
+        int[] words = { LW_SP, ADDI, SW_SP, LW_T0, JAL, 0, JR };
+        StringBuilder input = new StringBuilder();
+        for ( int word : words )
+        {
+            input.append( "0x" ).append( Integer.toHexString( word ) ).append( '\n' );
+        }
+
+        StringWriter all = new StringWriter();
+        StreamDisassembler.run( new BufferedReader( new StringReader( input.toString() ) ), all, map );
+        StringWriter some = new StringWriter();
+        ListingOptions opts = new ListingOptions( map );
+        opts.setQuery( Query.parse( "mnemonic in (lw,sw) and rs=$sp", map ) );
+        StreamDisassembler.run( new BufferedReader( new StringReader( input.toString() ) ), some, opts );
+
+        String[] rows = all.toString().split( System.lineSeparator() );
+        assertEquals( rows[ 0 ] + System.lineSeparator() + rows[ 2 ] + System.lineSeparator(), some.toString() );
+
+        // Addresses start at Program.TEXT_BASE, also on several threads.
+        File file = File.createTempFile( "mipssim", ".txt" );
+        file.deleteOnExit();
+        Files.write( file.toPath(), input.toString().getBytes() );
+        Query tail = Query.parse( "addr >= 0x00400010", map );
+        StringWriter seq = new StringWriter();
+        opts.setQuery( tail );
+        StreamDisassembler.run( new BufferedReader( new StringReader( input.toString() ) ), seq, opts );
+        StringWriter par = new StringWriter();
+        ParallelDisassembler pd = new ParallelDisassembler( 2, map, par );
+        pd.setQuery( tail );
+        pd.run( file.getPath() );
+        assertEquals( 3, seq.toString().split( System.lineSeparator() ).length );
+        assertEquals( seq.toString(), par.toString() );
+    }
+}
@@ -0,0 +1,55 @@
+package com.mipssim;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for formatting result rows.
+ */
+public class RowFormatterTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public RowFormatterTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( RowFormatterTest.class );
+    }
+
+    public void testMatchesStringFormat()
+    {
+        Mappings map = new Mappings();
+        RowFormatter fmt = new RowFormatter();
+        String layout = "%-10s\t\t%-5s\t%-25s %-35s %-35s %n";
+
+        for ( int word : new int[] { 0x23bdfff8, 0x8fa40000, 0x0c100000, 0x1000fffe, 0x46241000, 0x42000002 } )
+        {
+            Output res = Disassembler.parseWord( word, 1, map );
+            res.setInput( "0x" + Integer.toHexString( word ) );
+            res.setAddress( 0x400000 );
+
+            String expected = String.format( layout, res.getInput(), res.getFormat(), res.getDecDecomp(),
+                                             res.getHexDecomp(), res.getMnemonic() );
+            assertEquals( expected, fmt.row( res, false ).toString() );
+            assertEquals( "00400000  " + expected, fmt.row( res, true ).toString() );
+        }
+
+        // Null columns are written as "null", like String.format does.
+        assertEquals( String.format( layout, "a", null, null, null, null ),
+                      fmt.row( "a", null, null, null, null ).toString() );
+        assertEquals( String.format( "%n%08x <%s>:%n", 0x400010, "helper" ),
+                      fmt.symbol( 0x400010, "helper" ).toString() );
+    }
+}
@@ -0,0 +1,176 @@
+package com.mipssim;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit test for the streaming disassembly of text input.
+ */
+public class StreamDisassemblerTest
+    extends TestCase
+{
+    private static final String[] LINES = { "0x23bdfff8", "0xafbf0004", "0x03e00008" };
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public StreamDisassemblerTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( StreamDisassemblerTest.class );
+    }
+
+    private static String lines( String... lines )
+    {
+        StringBuilder sb = new StringBuilder();
+        for ( String line : lines )
+            sb.append( line ).append( '\n' );
+        return sb.toString();
+    }
+
+    /**
+     * Writer that records the length of the output at every flush.
+     */
+    private static class FlushLog extends StringWriter
+    {
+        final List<Integer> flushes = new ArrayList<>();
+
+        @Override
+        public void flush()
+        {
+            flushes.add( getBuffer().length() );
+        }
+    }
+
+    /**
+     * Reader that returns one piece of the input per read and never has more input ready, like a pipe.
+     */
+    private static class PipeReader extends Reader
+    {
+        private final String[] pieces;
+        private int next;
+
+        PipeReader( String... pieces )
+        {
+            this.pieces = pieces;
+        }
+
+        @Override
+        public int read( char[] buf, int off, int len )
+        {
+            if ( next == pieces.length )
+                return -1;
+            String piece = pieces[ next++ ];
+            piece.getChars( 0, piece.length(), buf, off );
+            return piece.length();
+        }
+
+        @Override
+        public boolean ready()
+        {
+            return false;
+        }
+
+        @Override
+        public void close() { }
+    }
+
+    public void testFlushesWhenNoInputIsBuffered() throws IOException
+    {
+        Mappings map = new Mappings();
+
+        // All lines arrive at once, the rows are flushed once after the last line.
+        FlushLog all = new FlushLog();
+        assertEquals( 3, StreamDisassembler.run( new BufferedReader( new PipeReader( lines( LINES ) ) ), all, map ) );
+        assertEquals( 1, all.flushes.size() );
+        assertEquals( all.toString().length(), (int) all.flushes.get( 0 ) );
+
+        // Every line arrives on its own, every row is flushed as soon as it is written.
+        FlushLog slow = new FlushLog();
+        StreamDisassembler.run( new BufferedReader( new PipeReader( lines( LINES[ 0 ] ), lines( LINES[ 1 ] ),
+                                                                    lines( LINES[ 2 ] ) ) ), slow, map );
+        assertEquals( 3, slow.flushes.size() );
+        String[] rows = slow.toString().split( System.lineSeparator() );
+        assertEquals( rows[ 0 ].length() + System.lineSeparator().length(), (int) slow.flushes.get( 0 ) );
+        assertEquals( slow.toString().length(), (int) slow.flushes.get( 2 ) );
+    }
+
+    public void testLineNumbersSkipLinesThatAreNotNumbers() throws IOException
+    {
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        PrintStream err = System.err;
+        StringWriter wr = new StringWriter();
+        int count;
+        try
+        {
+            System.setErr( new PrintStream( errors, true ) );
+            // The second line is skipped, the invalid word is the second instruction.
+            count = StreamDisassembler.run( new BufferedReader( new StringReader(
+                    lines( "0x23bdfff8", "foo", "0x7c000000", "0x03e00008" ) ) ), wr, new Mappings() );
+        }
+        finally
+        {
+            System.setErr( err );
+        }
+
+        assertEquals( 3, count );
+        assertEquals( 2, wr.toString().split( System.lineSeparator() ).length );
+        String reported = errors.toString();
+        assertTrue( reported.contains( "Error: Input not a number." ) );
+        assertTrue( reported.contains( "2| Error" ) );
+        assertFalse( reported.contains( "3| Error" ) );
+    }
+
+    public void testReadsStdin() throws IOException
+    {
+        final boolean[] closed = { false };
+        InputStream stdin = new ByteArrayInputStream( lines( LINES ).getBytes() )
+        {
+            @Override
+            public void close()
+            {
+                closed[ 0 ] = true;
+            }
+        };
+
+        File expected = File.createTempFile( "mipssim", ".txt" );
+        expected.deleteOnExit();
+        File input = File.createTempFile( "mipssim", ".txt" );
+        input.deleteOnExit();
+        Files.write( input.toPath(), lines( LINES ).getBytes() );
+        StreamDisassembler.run( input.getPath(), expected.getPath(), new ListingOptions( new Mappings() ) );
+
+        File actual = File.createTempFile( "mipssim", ".txt" );
+        actual.deleteOnExit();
+        InputStream in = System.in;
+        try
+        {
+            System.setIn( stdin );
+            StreamDisassembler.run( "-", actual.getPath(), new ListingOptions( new Mappings() ) );
+        }
+        finally
+        {
+            System.setIn( in );
+        }
+
+        assertEquals( new String( Files.readAllBytes( expected.toPath() ) ),
+                      new String( Files.readAllBytes( actual.toPath() ) ) );
+        // stdin is left open.
+        assertFalse( closed[ 0 ] );
+    }
+}
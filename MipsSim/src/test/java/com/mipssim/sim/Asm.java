@@ -0,0 +1,69 @@
+package com.mipssim.sim;
+
+/**
+ * Encodes instruction words for the simulator tests.
+ */
+final class Asm
+{
+    static final int ZERO = 0, V0 = 2, A0 = 4, T0 = 8, T1 = 9, T2 = 10, S0 = 16, S1 = 17, SP = 29, RA = 31;
+    static final int K0 = 26, K1 = 27;
+
+    private Asm()
+    {
+    }
+
+    static int r( int funct, int rd, int rs, int rt )
+    {
+        return ( rs << 21 ) | ( rt << 16 ) | ( rd << 11 ) | funct;
+    }
+
+    static int shift( int funct, int rd, int rt, int shamt )
+    {
+        return ( rt << 16 ) | ( rd << 11 ) | ( shamt << 6 ) | funct;
+    }
+
+    static int i( int op, int rt, int rs, int imm )
+    {
+        return ( op << 26 ) | ( rs << 21 ) | ( rt << 16 ) | ( imm & 0xffff );
+    }
+
+    static int j( int op, int addr )
+    {
+        return ( op << 26 ) | ( ( addr >>> 2 ) & 0x3ffffff );
+    }
+
+    // Coprocessor 1: formats of the fmt field and the encoding of a computational op (fd = fs op ft).
+    static final int S = 0x10, D = 0x11, W = 0x14;
+
+    static int cop1( int fmt, int funct, int fd, int fs, int ft )
+    {
+        return ( 0x11 << 26 ) | ( fmt << 21 ) | ( ft << 16 ) | ( fs << 11 ) | ( fd << 6 ) | funct;
+    }
+
+    static int mfc1( int rt, int fs )           { return cop1( 0x00, 0, 0, fs, rt ); }
+    static int mtc1( int rt, int fs )           { return cop1( 0x04, 0, 0, fs, rt ); }
+    static int bc1( int cctf, int off )         { return cop1( 0x08, 0, 0, 0, cctf ) | ( off & 0xffff ); }
+    static int ldc1( int ft, int rs, int imm )  { return i( 0x35, ft, rs, imm ); }
+    static int sdc1( int ft, int rs, int imm )  { return i( 0x3d, ft, rs, imm ); }
+
+    // Coprocessor 0: moves (rd is the CP0 register) and the TLB ops with CO set (tlbwi 0x02, tlbwr 0x06, eret 0x18).
+    static int cop0( int rs, int rt, int rd, int funct )
+    {
+        return ( 0x10 << 26 ) | ( rs << 21 ) | ( rt << 16 ) | ( rd << 11 ) | funct;
+    }
+
+    static int mfc0( int rt, int rd )           { return cop0( 0x00, rt, rd, 0 ); }
+    static int mtc0( int rt, int rd )           { return cop0( 0x04, rt, rd, 0 ); }
+    static int tlb( int funct )                 { return cop0( 0x10, 0, 0, funct ); }
+
+    static int addu( int rd, int rs, int rt )  { return r( 0x21, rd, rs, rt ); }
+    static int addiu( int rt, int rs, int imm ) { return i( 0x09, rt, rs, imm ); }
+    static int ori( int rt, int rs, int imm )   { return i( 0x0d, rt, rs, imm ); }
+    static int lui( int rt, int imm )           { return i( 0x0f, rt, 0, imm ); }
+    static int beq( int rs, int rt, int off )   { return i( 0x04, rt, rs, off ); }
+    static int bne( int rs, int rt, int off )   { return i( 0x05, rt, rs, off ); }
+    static int jr( int rs )                     { return r( 0x08, 0, rs, 0 ); }
+    static int syscall()                        { return 0x0c; }
+    static int lw( int rt, int rs, int imm )    { return i( 0x23, rt, rs, imm ); }
+    static int sw( int rt, int rs, int imm )    { return i( 0x2b, rt, rs, imm ); }
+}
@@ -0,0 +1,210 @@
+package com.mipssim.sim;
+
+import com.mipssim.Mappings;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static com.mipssim.sim.Asm.*;
+
+/**
+ * Unit test for executing translated basic blocks.
+ */
+public class BlockEngineTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public BlockEngineTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( BlockEngineTest.class );
+    }
+
+    // Stops a broken program instead of running it forever.
+    private static final long LIMIT = 1000000;
+
+    // JIT thresholds to run the programs with: steps only, and compiled after the second entry.
+    private static final long[] THRESHOLDS = { 0, 2 };
+
+    /**
+     * Runs words with the interpreter and with blocks, the registers, HI/LO, output and count must be equal.
+     */
+    private static BlockEngine assertSameAsInterpreter( long jitThreshold, int... words )
+    {
+        Mappings map = new Mappings();
+
+        Program p1 = new Program( Program.TEXT_BASE, words, Program.TEXT_BASE );
+        Interpreter interpreter = new Interpreter( p1, map );
+        ByteArrayOutputStream out1 = new ByteArrayOutputStream();
+        interpreter.setOutput( new PrintStream( out1, true ) );
+        Cpu cpu1 = new Cpu();
+        cpu1.reset( p1.getEntry() );
+        long n1 = interpreter.run( cpu1, LIMIT );
+
+        Program p2 = new Program( Program.TEXT_BASE, words, Program.TEXT_BASE );
+        BlockEngine blocks = new BlockEngine( p2, map );
+        blocks.setJitThreshold( jitThreshold );
+        ByteArrayOutputStream out2 = new ByteArrayOutputStream();
+        blocks.setOutput( new PrintStream( out2, true ) );
+        Cpu cpu2 = new Cpu();
+        cpu2.reset( p2.getEntry() );
+        long n2 = blocks.run( cpu2, LIMIT );
+
+        assertTrue( blocks.isHalted() );
+        assertEquals( n1, n2 );
+        assertEquals( out1.toString(), out2.toString() );
+        for ( int reg = 0; reg < 32; reg++ )
+            assertEquals( "register " + reg, cpu1.getRegister( reg ), cpu2.getRegister( reg ) );
+        assertEquals( cpu1.getHi(), cpu2.getHi() );
+        assertEquals( cpu1.getLo(), cpu2.getLo() );
+        for ( int reg = 0; reg < 32; reg++ )
+            assertEquals( "fpr " + reg, Float.floatToRawIntBits( cpu1.getFloat( reg ) ),
+                          Float.floatToRawIntBits( cpu2.getFloat( reg ) ) );
+        assertEquals( cpu1.getFcsr(), cpu2.getFcsr() );
+        return blocks;
+    }
+
+    public void testLoopWithCall()
+    {
+        // s0 = sum of squares 1..50, the squares are printed by a function called by jal.
+        int square = Program.TEXT_BASE + 9 * 4;
+        for ( long jit : THRESHOLDS )
+        {
+            BlockEngine blocks = assertSameAsInterpreter( jit,
+                                                          addiu( T0, ZERO, 50 ),
+                                                          // loop:
+                                                          addu( A0, T0, ZERO ),
+                                                          j( 0x03, square ),
+                                                          addiu( T0, T0, -1 ),    // delay slot of jal
+                                                          addu( S0, S0, V0 ),
+                                                          bne( T0, ZERO, -5 ),
+                                                          0,
+                                                          addiu( V0, ZERO, 10 ),
+                                                          syscall(),
+                                                          // square:
+                                                          r( 0x18, 0, A0, A0 ),   // mult
+                                                          r( 0x12, S1, 0, 0 ),    // mflo
+                                                          addiu( V0, ZERO, 1 ),
+                                                          syscall(),
+                                                          jr( RA ),
+                                                          addu( V0, S1, ZERO ) );
+            assertTrue( blocks.getTranslated() > 0 );
+            assertEquals( jit != 0, blocks.getCompiled() > 0 );
+        }
+    }
+
+    public void testLikelyBranches()
+    {
+        for ( long jit : THRESHOLDS )
+            assertSameAsInterpreter( jit,
+                                     addiu( T0, ZERO, 3 ),
+                                     i( 0x15, ZERO, T0, 2 ),      // bnel t0, 0: taken
+                                     addiu( S0, S0, 1 ),
+                                     addiu( S1, S1, 100 ),
+                                     addiu( T0, T0, -1 ),
+                                     i( 0x14, ZERO, T0, 2 ),      // beql t0, 0: not taken until t0 = 0
+                                     addiu( S1, S1, 1 ),          // nullified when not taken
+                                     bne( T0, ZERO, -7 ),
+                                     0,
+                                     jr( RA ),
+                                     0 );
+    }
+
+    public void testFloatLoop()
+    {
+        // f2 (double) = sum of 0.5 * i over i = 1..40, stored and loaded through the stack; f6 (single) counts up
+        // by 1.5 while it is less than f2, which c.lt.s and bc1t test.
+        for ( long jit : THRESHOLDS )
+            assertSameAsInterpreter( jit,
+                                     addiu( T0, ZERO, 40 ),
+                                     lui( T1, 0x3f00 ),                  // 0.5f
+                                     mtc1( T1, 8 ),
+                                     cop1( S, 0x21, 10, 8, 0 ),          // cvt.d.s f10, f8
+                                     // loop:
+                                     mtc1( T0, 12 ),
+                                     cop1( W, 0x21, 14, 12, 0 ),         // cvt.d.w f14, f12
+                                     cop1( D, 0x02, 14, 14, 10 ),        // mul.d f14, f14, f10
+                                     cop1( D, 0x00, 2, 2, 14 ),          // add.d f2, f2, f14
+                                     sdc1( 2, SP, -12 ),
+                                     ldc1( 4, SP, -12 ),
+                                     addiu( T0, T0, -1 ),
+                                     bne( T0, ZERO, -8 ),
+                                     cop1( D, 0x04, 16, 4, 0 ),          // sqrt.d f16, f4 (delay slot)
+                                     cop1( D, 0x20, 18, 2, 0 ),          // cvt.s.d f18, f2
+                                     lui( T1, 0x3fc0 ),                  // 1.5f
+                                     mtc1( T1, 20 ),
+                                     // count:
+                                     cop1( S, 0x00, 6, 6, 20 ),          // add.s f6, f6, f20
+                                     cop1( S, 0x3c, 0, 6, 18 ),          // c.lt.s f6, f18
+                                     bc1( 1, -3 ),                       // bc1t count
+                                     addiu( S0, S0, 1 ),
+                                     cop1( S, 0x24, 22, 6, 0 ),          // cvt.w.s f22, f6
+                                     mfc1( S1, 22 ),
+                                     jr( RA ),
+                                     cop1( D, 0x07, 24, 16, 0 ) );       // neg.d f24, f16
+    }
+
+    public void testWriteInvalidatesBlock()
+    {
+        // The loop body (addiu s0, s0, 1) is patched to addiu s0, s0, 16 after the first iteration.
+        for ( long jit : THRESHOLDS )
+        {
+            BlockEngine blocks = assertSameAsInterpreter( jit,
+                                                          addiu( T0, ZERO, 4 ),
+                                                          lui( T1, 0x0040 ),
+                                                          lui( T2, 0x2610 ),
+                                                          ori( T2, T2, 16 ),
+                                                          // loop:
+                                                          addiu( S0, S0, 1 ),
+                                                          sw( T2, T1, 16 ),
+                                                          addiu( T0, T0, -1 ),
+                                                          bne( T0, ZERO, -4 ),
+                                                          0,
+                                                          jr( RA ),
+                                                          0 );
+            assertTrue( blocks.getInvalidated() > 0 );
+        }
+    }
+
+    public void testOverflowInCompiledBlock()
+    {
+        // The loop adds s0 to 0x7ffffffc until it overflows, in its compiled form.
+        Program p = new Program( Program.TEXT_BASE, new int[] { lui( T0, 0x7fff ),
+                                                                ori( T0, T0, 0xfffc ),
+                                                                // loop:
+                                                                addiu( S0, S0, 1 ),
+                                                                r( 0x20, T1, T0, S0 ),    // add
+                                                                beq( ZERO, ZERO, -3 ),
+                                                                0 }, Program.TEXT_BASE );
+        BlockEngine blocks = new BlockEngine( p, new Mappings() );
+        blocks.setJitThreshold( 2 );
+        Cpu cpu = new Cpu();
+        cpu.reset( p.getEntry() );
+        try
+        {
+            blocks.run( cpu, LIMIT );
+            fail( "add did not overflow" );
+        }
+        catch ( SimulationException e )
+        {
+            // The registers written before the add are stored, t1 keeps the last sum.
+            assertEquals( 1, blocks.getCompiled() );
+            assertEquals( 4, cpu.getRegister( S0 ) );
+            assertEquals( 0x7fffffff, cpu.getRegister( T1 ) );
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.mipssim.sim;
+
+import com.mipssim.Mappings;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import static com.mipssim.sim.Asm.*;
+
+/**
+ * Unit test for the branch predictors.
+ */
+public class BranchPredictorTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public BranchPredictorTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( BranchPredictorTest.class );
+    }
+
+    /**
+     * Feeds a branch at pc with the given outcomes to p, returns the mispredicts of the last half.
+     */
+    private static int mispredicts( BranchPredictor p, int pc, boolean[] outcomes )
+    {
+        int wrong = 0;
+        for ( int i = 0; i < outcomes.length; i++ )
+        {
+            if ( ( p.predict( pc ) != outcomes[i] ) && ( i >= outcomes.length / 2 ) )
+                wrong++;
+            p.update( pc, outcomes[i] );
+        }
+        return wrong;
+    }
+
+    public void testLoop()
+    {
+        // A loop branch that is taken 7 times and then falls through.
+        boolean[] outcomes = new boolean[800];
+        for ( int i = 0; i < outcomes.length; i++ )
+            outcomes[i] = ( i % 8 ) != 7;
+        assertEquals( 350, mispredicts( BranchPredictor.create( "not-taken", 10 ), 0x400000, outcomes ) );
+        assertEquals( 50, mispredicts( BranchPredictor.create( "bimodal", 10 ), 0x400000, outcomes ) );
+        // The history of the last 8 outcomes tells when the loop ends.
+        assertEquals( 0, mispredicts( BranchPredictor.create( "gshare", 10 ), 0x400000, outcomes ) );
+        assertEquals( 0, mispredicts( BranchPredictor.create( "tournament", 10 ), 0x400000, outcomes ) );
+    }
+
+    public void testAlternating()
+    {
+        boolean[] outcomes = new boolean[200];
+        for ( int i = 0; i < outcomes.length; i++ )
+            outcomes[i] = ( i & 1 ) == 0;
+        assertTrue( mispredicts( BranchPredictor.create( "bimodal", 4 ), 0x400010, outcomes ) >= 50 );
+        assertEquals( 0, mispredicts( BranchPredictor.create( "gshare", 4 ), 0x400010, outcomes ) );
+    }
+
+    public void testProfilesCoprocessorBranches()
+    {
+        // A loop of 3 iterations with a bc1t that is always taken.
+        Program p = new Program( Program.TEXT_BASE,
+                                 new int[] { cop1( S, 0x32, 0, 0, 0 ),   // c.eq.s $fcc0, f0, f0: true
+                                             addiu( T0, ZERO, 3 ),
+                                             bc1( 1, 1 ),                // bc1t $fcc0
+                                             0,
+                                             addiu( T0, T0, -1 ),
+                                             bne( T0, ZERO, -4 ),
+                                             0,
+                                             jr( RA ),
+                                             0 },
+                                 Program.TEXT_BASE );
+        Cpu cpu = new Cpu();
+        BranchPredictor[] predictors = { BranchPredictor.create( "not-taken", 4 ) };
+        BranchProfiler profiler = new BranchProfiler( p, predictors, 4, cpu );
+        Interpreter sim = new Interpreter( p, new Mappings() );
+        sim.setTracer( profiler );
+        cpu.reset( p.getEntry() );
+        sim.run( cpu, 1000 );
+        assertTrue( sim.isHalted() );
+
+        // 3 bc1t and 3 bne, all taken but the last bne.
+        assertEquals( 6, profiler.getBranches() );
+        assertEquals( 5, profiler.getTaken() );
+        assertEquals( 5, profiler.getMispredicts( 0 ) );
+    }
+
+    public void testCreate()
+    {
+        try
+        {
+            BranchPredictor.create( "perceptron", 10 );
+            fail();
+        }
+        catch ( IllegalArgumentException e )
+        {
+            // Expected.
+        }
+    }
+}
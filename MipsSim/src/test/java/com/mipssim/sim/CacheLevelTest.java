@@ -0,0 +1,92 @@
+package com.mipssim.sim;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the cache model.
+ */
+public class CacheLevelTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public CacheLevelTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( CacheLevelTest.class );
+    }
+
+    public void testDirectMapped()
+    {
+        // 4 lines of 16 bytes, 0x00 and 0x40 share a set.
+        CacheLevel c = new CacheLevel( "L1", 64, 1, 16, CacheLevel.LRU, true );
+        assertFalse( c.access( 0x00, false ) );
+        assertTrue( c.access( 0x0c, false ) );
+        assertFalse( c.access( 0x40, true ) );
+        assertEquals( 0x00, c.getEvicted() );
+        assertFalse( c.isEvictedDirty() );
+        assertFalse( c.access( 0x00, false ) );
+        assertEquals( 0x40, c.getEvicted() );
+        assertTrue( c.isEvictedDirty() );
+        assertEquals( 4, c.getAccesses() );
+        assertEquals( 3, c.getMisses() );
+        assertEquals( 2, c.getEvictions() );
+        assertEquals( 1, c.getWritebacks() );
+    }
+
+    public void testLruAndPlru()
+    {
+        // One set of 4 ways: fill it, then use 1, 0 and 3 again.
+        CacheLevel lru  = new CacheLevel( "L1", 64, 4, 16, CacheLevel.LRU, true );
+        CacheLevel plru = new CacheLevel( "L1", 64, 4, 16, CacheLevel.PLRU, true );
+        for ( CacheLevel c : new CacheLevel[] { lru, plru } )
+        {
+            for ( int addr : new int[] { 0x00, 0x10, 0x20, 0x30, 0x10, 0x00, 0x30 } )
+                c.access( addr, false );
+            assertFalse( c.access( 0x40, false ) );
+        }
+        // LRU replaces the least recent line (2); the PLRU tree points at the left half (last used 3) and in it
+        // away from 0.
+        assertEquals( 0x20, lru.getEvicted() );
+        assertEquals( 0x10, plru.getEvicted() );
+    }
+
+    public void testWriteThrough()
+    {
+        CacheLevel c = new CacheLevel( "L1", 64, 1, 16, CacheLevel.LRU, false );
+        assertFalse( c.access( 0x00, true ) );
+        assertFalse( c.access( 0x00, false ) );
+        assertTrue( c.access( 0x00, true ) );
+        assertEquals( 0, c.getWritebacks() );
+    }
+
+    public void testParse()
+    {
+        CacheLevel c = CacheLevel.parse( "L2", "256k:8:64:plru:wt" );
+        assertFalse( c.isWriteBack() );
+        for ( String spec : new String[] { "3k", "16k:3", "16k:2:2", "16k:2:32:fifo", "16k:2:32:lru:wa", "x" } )
+        {
+            try
+            {
+                CacheLevel.parse( "L1", spec );
+                fail( spec );
+            }
+            catch ( IllegalArgumentException e )
+            {
+                // Expected.
+            }
+        }
+    }
+}
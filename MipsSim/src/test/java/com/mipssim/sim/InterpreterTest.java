@@ -0,0 +1,226 @@
+package com.mipssim.sim;
+
+import com.mipssim.Mappings;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static com.mipssim.sim.Asm.*;
+
+/**
+ * Unit test for executing programs.
+ */
+public class InterpreterTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public InterpreterTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( InterpreterTest.class );
+    }
+
+    private static Cpu run( Interpreter sim, Program program )
+    {
+        Cpu cpu = new Cpu();
+        cpu.reset( program.getEntry() );
+        sim.run( cpu, 1000000 );
+        assertTrue( sim.isHalted() );
+        return cpu;
+    }
+
+    private static Program program( int... words )
+    {
+        return new Program( Program.TEXT_BASE, words, Program.TEXT_BASE );
+    }
+
+    public void testLoop()
+    {
+        // for (t0 = 100; t0 != 0; t0--) s0 += t0;
+        Program p = program( addiu( T0, ZERO, 100 ),
+                             addu( S0, S0, T0 ),
+                             addiu( T0, T0, -1 ),
+                             bne( T0, ZERO, -3 ),
+                             0,
+                             jr( RA ),
+                             0 );
+        Cpu cpu = run( new Interpreter( p, new Mappings() ), p );
+        assertEquals( 5050, cpu.getRegister( S0 ) );
+    }
+
+    public void testDelaySlots()
+    {
+        Program p = program( beq( ZERO, ZERO, 2 ),
+                             addiu( T0, ZERO, 7 ),     // delay slot, executed
+                             addiu( T1, ZERO, 1 ),     // skipped
+                             addiu( T1, T1, 2 ),       // target
+                             i( 0x15, ZERO, ZERO, 5 ), // bnel $0, $0 not taken: delay slot nullified
+                             addiu( T2, ZERO, 1 ),
+                             jr( RA ),
+                             0 );
+        Cpu cpu = run( new Interpreter( p, new Mappings() ), p );
+        assertEquals( 7, cpu.getRegister( T0 ) );
+        assertEquals( 2, cpu.getRegister( T1 ) );
+        assertEquals( 0, cpu.getRegister( T2 ) );
+    }
+
+    public void testCallAndMultiply()
+    {
+        // s0 = fact(6) with a loop in a function called by jal, using mult/mflo and mul.
+        int fact = Program.TEXT_BASE + 6 * 4;
+        Program p = program( addiu( A0, ZERO, 6 ),
+                             j( 0x03, fact ),
+                             0,
+                             addu( S0, V0, ZERO ),
+                             addiu( V0, ZERO, 10 ),
+                             syscall(),
+                             // fact:
+                             addiu( V0, ZERO, 1 ),
+                             r( 0x18, 0, V0, A0 ),                      // mult
+                             r( 0x12, V0, 0, 0 ),                       // mflo
+                             addiu( A0, A0, -1 ),
+                             bne( A0, ZERO, -4 ),
+                             0,
+                             jr( RA ),
+                             ( 0x1c << 26 ) | r( 0x02, S1, V0, V0 ) );  // mul $s1, $v0, $v0 in the delay slot
+        Cpu cpu = run( new Interpreter( p, new Mappings() ), p );
+        assertEquals( 720, cpu.getRegister( S0 ) );
+        assertEquals( 720 * 720, cpu.getRegister( S1 ) );
+    }
+
+    public void testSyscalls()
+    {
+        Program p = program( addiu( A0, ZERO, -42 ),
+                             addiu( V0, ZERO, 1 ),
+                             syscall(),
+                             addiu( A0, ZERO, 3 ),
+                             addiu( V0, ZERO, 17 ),
+                             syscall(),
+                             addiu( T0, ZERO, 1 ) );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Interpreter sim = new Interpreter( p, new Mappings() );
+        sim.setOutput( new PrintStream( out, true ) );
+
+        Cpu cpu = run( sim, p );
+        assertEquals( "-42", out.toString() );
+        assertEquals( 3, sim.getExitCode() );
+        assertEquals( 0, cpu.getRegister( T0 ) );
+    }
+
+    public void testLoadsAndStores()
+    {
+        Program p = program( lui( T0, 0x1001 ),                 // t0 = 0x10010000
+                             lui( T1, 0x8899 ),
+                             ori( T1, T1, 0xaabb ),
+                             sw( T1, T0, 4 ),
+                             i( 0x20, S0, T0, 4 ),              // lb: 0x88 sign-extended
+                             i( 0x25, S1, T0, 6 ),              // lhu: 0xaabb
+                             i( 0x22, T2, T0, 5 ),              // lwl at offset 1: 0x99aabb..
+                             i( 0x26, T2, T0, 8 ),              // lwr at offset 0 of the next word (0)
+                             addiu( A0, ZERO, 0x77 ),
+                             i( 0x28, A0, T0, 7 ),              // sb
+                             lw( V0, T0, 4 ),
+                             sw( ZERO, SP, -4 ),
+                             jr( RA ),
+                             0 );
+        Cpu cpu = run( new Interpreter( p, new Mappings() ), p );
+        assertEquals( 0xffffff88, cpu.getRegister( S0 ) );
+        assertEquals( 0xaabb, cpu.getRegister( S1 ) );
+        assertEquals( 0x99aabb00, cpu.getRegister( T2 ) );
+        assertEquals( 0x8899aa77, cpu.getRegister( V0 ) );
+        assertEquals( 3, p.getMemory().getPageCount() );
+    }
+
+    public void testLoadLinkedStoreConditional()
+    {
+        Program p = program( lui( T0, 0x1001 ),
+                             i( 0x30, T1, T0, 0 ),               // ll
+                             addiu( T1, T1, 5 ),
+                             i( 0x38, T1, T0, 0 ),               // sc succeeds
+                             addiu( T2, ZERO, 9 ),
+                             i( 0x38, T2, T0, 0 ),               // sc without ll fails
+                             lw( S0, T0, 0 ),
+                             jr( RA ),
+                             0 );
+        Cpu cpu = run( new Interpreter( p, new Mappings() ), p );
+        assertEquals( 1, cpu.getRegister( T1 ) );
+        assertEquals( 0, cpu.getRegister( T2 ) );
+        assertEquals( 5, cpu.getRegister( S0 ) );
+    }
+
+    public void testSelfModifyingCode()
+    {
+        // Overwrites the instruction at index 5 (addiu s0, 0, 1) with addiu s0, 0, 2 before reaching it.
+        Program p = program( lui( T0, 0x0040 ),
+                             lui( T1, 0x2410 ),
+                             ori( T1, T1, 2 ),
+                             sw( T1, T0, 20 ),
+                             0,
+                             addiu( S0, ZERO, 1 ),
+                             jr( RA ),
+                             0 );
+        Cpu cpu = run( new Interpreter( p, new Mappings() ), p );
+        assertEquals( 2, cpu.getRegister( S0 ) );
+    }
+
+    public void testFloat()
+    {
+        Program p = program( lui( T0, 0x4020 ),                // 2.5f
+                             mtc1( T0, 0 ),
+                             cop1( S, 0x0c, 2, 0, 0 ),         // round.w.s f2, f0: to even, 2
+                             cop1( S, 0x0e, 3, 0, 0 ),         // ceil.w.s f3, f0: 3
+                             cop1( S, 0x21, 4, 0, 0 ),         // cvt.d.s f4, f0
+                             cop1( D, 0x04, 6, 4, 0 ),         // sqrt.d f6, f4
+                             cop1( D, 0x32, 0, 4, 4 ),         // c.eq.d $fcc0, f4, f4
+                             addiu( T1, ZERO, 5 ),
+                             r( 0x01, T2, T1, 1 ),             // movt t2, t1, $fcc0: taken
+                             cop1( D, 0x3c, 0, 6, 4 ) | ( 1 << 8 ), // c.lt.d $fcc1, f6, f4
+                             bc1( ( 1 << 2 ) | 1, 2 ),         // bc1t $fcc1
+                             0,
+                             addiu( S0, ZERO, 1 ),             // skipped
+                             mfc1( S1, 2 ),
+                             mfc1( A0, 3 ),
+                             jr( RA ),
+                             0 );
+        Cpu cpu = run( new Interpreter( p, new Mappings() ), p );
+        assertEquals( 2.5f, cpu.getFloat( 0 ) );
+        assertEquals( Math.sqrt( 2.5 ), cpu.getDouble( 6 ) );
+        assertEquals( 2, cpu.getRegister( S1 ) );
+        assertEquals( 3, cpu.getRegister( A0 ) );
+        assertEquals( 5, cpu.getRegister( T2 ) );
+        assertEquals( 0, cpu.getRegister( S0 ) );
+        assertEquals( ( 1 << 23 ) | ( 1 << 25 ), cpu.getFcsr() );
+    }
+
+    public void testOverflow()
+    {
+        Program p = program( lui( T0, 0x7fff ),
+                             ori( T0, T0, 0xffff ),
+                             i( 0x08, T0, T0, 1 ) );
+        Cpu cpu = new Cpu();
+        cpu.reset( p.getEntry() );
+        try
+        {
+            new Interpreter( p, new Mappings() ).run( cpu, 0 );
+            fail( "Expected SimulationException" );
+        }
+        catch ( SimulationException e )
+        {
+            assertEquals( Program.TEXT_BASE + 8, e.getPc() );
+        }
+    }
+}
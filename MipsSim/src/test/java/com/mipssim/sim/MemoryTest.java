@@ -0,0 +1,86 @@
+package com.mipssim.sim;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Unit test for the simulated address space.
+ */
+public class MemoryTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public MemoryTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( MemoryTest.class );
+    }
+
+    public void testSparsePages()
+    {
+        Memory mem = new Memory( ByteOrder.BIG_ENDIAN );
+
+        // Reading does not allocate.
+        assertEquals( 0, mem.loadWord( 0x7fff0000 ) );
+        assertEquals( 0, mem.getPageCount() );
+
+        int[] addrs = { 0x00000000, 0x00400000, 0x10010ffc, 0x7fffeffc, 0xfffffffc };
+        for ( int a : addrs )
+            mem.storeWord( a, a ^ 0x5a5a5a5a );
+        for ( int a : addrs )
+            assertEquals( a ^ 0x5a5a5a5a, mem.loadWord( a ) );
+        assertEquals( addrs.length, mem.getPageCount() );
+    }
+
+    public void testByteLanes()
+    {
+        Memory be = new Memory( ByteOrder.BIG_ENDIAN );
+        Memory le = new Memory( ByteOrder.LITTLE_ENDIAN );
+        byte[] bytes = { 0x11, 0x22, 0x33, (byte) 0x84, 0x55 };
+
+        be.load( 0x1000, ByteBuffer.wrap( bytes ) );
+        le.load( 0x1000, ByteBuffer.wrap( bytes ) );
+
+        assertEquals( 0x11223384, be.loadWord( 0x1000 ) );
+        assertEquals( 0x84332211, le.loadWord( 0x1000 ) );
+        for ( int i = 0; i < bytes.length; i++ )
+        {
+            assertEquals( bytes[i] & 0xff, be.loadByte( 0x1000 + i ) );
+            assertEquals( bytes[i] & 0xff, le.loadByte( 0x1000 + i ) );
+        }
+        assertEquals( 0x3384, be.loadHalf( 0x1002 ) );
+        assertEquals( 0x8433, le.loadHalf( 0x1002 ) );
+
+        be.storeHalf( 0x1000, 0xabcd );
+        assertEquals( 0xabcd3384, be.loadWord( 0x1000 ) );
+        le.storeByte( 0x1003, 0x7f );
+        assertEquals( 0x7f332211, le.loadWord( 0x1000 ) );
+    }
+
+    public void testWatch()
+    {
+        Memory mem = new Memory( ByteOrder.BIG_ENDIAN );
+        final int[] seen = { -1 };
+        mem.watch( 0x400000, 16, addr -> seen[0] = addr );
+
+        mem.storeWord( 0x400010, 1 );
+        assertEquals( -1, seen[0] );
+        mem.storeByte( 0x40000d, 1 );
+        assertEquals( 0x40000c, seen[0] );
+    }
+}
@@ -0,0 +1,179 @@
+package com.mipssim.sim;
+
+import com.mipssim.Mappings;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+
+import static com.mipssim.sim.Asm.*;
+
+/**
+ * Unit test for the CP0 TLB and the translated address space.
+ */
+public class MmuTest
+    extends TestCase
+{
+    // Where the tests are loaded: the refill handler at the refill vector, the code at MAIN.
+    private static final int KSEG0 = 0x80000000;
+    private static final int MAIN  = KSEG0 + 0x200;
+
+    // EntryLo of frame 0x00100000 and 0x00200000 (odd pages at + 0x1000), dirty and valid; G is set by the tests.
+    private static final int FRAME1 = ( 0x100 << 6 ) | 6;
+    private static final int FRAME2 = ( 0x200 << 6 ) | 6;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public MmuTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( MmuTest.class );
+    }
+
+    /**
+     * Returns a program in kseg0 with a refill handler that maps the missed page pair to lo0 and lo0 + one frame,
+     * and code that leaves exception level and the reset mode (Status = 0) and then runs main.
+     */
+    private static Program program( int lo0, int... main )
+    {
+        int[] words = new int[ ( MAIN - KSEG0 ) / 4 + 1 + main.length ];
+        int[] handler = { ori( K1, ZERO, lo0 ),
+                          mtc0( K1, Cp0.ENTRY_LO0 ),
+                          ori( K1, ZERO, lo0 + ( 1 << 6 ) ),
+                          mtc0( K1, Cp0.ENTRY_LO1 ),
+                          tlb( 0x06 ),
+                          tlb( 0x18 ) };
+        System.arraycopy( handler, 0, words, 0, handler.length );
+        words[ ( MAIN - KSEG0 ) / 4 ] = mtc0( ZERO, Cp0.STATUS );
+        System.arraycopy( main, 0, words, ( MAIN - KSEG0 ) / 4 + 1, main.length );
+        return new Program( KSEG0, words, MAIN );
+    }
+
+    private static Cpu run( Program program )
+    {
+        Cpu cpu = new Cpu();
+        cpu.reset( program.getEntry() );
+        Interpreter sim = new Interpreter( program, new Mappings() );
+        sim.setMmu( new Mmu( program.getMemory(), cpu ) );
+        sim.run( cpu, 10000 );
+        assertTrue( sim.isHalted() );
+        return cpu;
+    }
+
+    private static int[] exit( int... words )
+    {
+        int[] all = Arrays.copyOf( words, words.length + 2 );
+        all[ words.length ]     = addiu( V0, ZERO, 10 );
+        all[ words.length + 1 ] = syscall();
+        return all;
+    }
+
+    public void testWiredEntry()
+    {
+        // Maps 0x00200000 to frame 0x00100000 with tlbwi, stores through it and loads through kseg0 and kseg1.
+        Program p = program( 0, exit( lui( T0, 0x0020 ),
+                                      mtc0( T0, Cp0.ENTRY_HI ),
+                                      ori( T1, ZERO, FRAME1 | 1 ),
+                                      mtc0( T1, Cp0.ENTRY_LO0 ),
+                                      mtc0( T1, Cp0.ENTRY_LO1 ),
+                                      mtc0( ZERO, Cp0.INDEX ),
+                                      tlb( 0x02 ),
+                                      addiu( T2, ZERO, 1234 ),
+                                      sw( T2, T0, 0x10 ),
+                                      lui( S0, 0x8010 ),
+                                      lw( S0, S0, 0x10 ),
+                                      lui( S1, 0xa010 ),
+                                      lw( S1, S1, 0x10 ) ) );
+        Cpu cpu = run( p );
+        assertEquals( 1234, cpu.getRegister( S0 ) );
+        assertEquals( 1234, cpu.getRegister( S1 ) );
+        assertEquals( 1234, p.getMemory().loadWord( 0x80100010 ) );
+        assertEquals( 0, cpu.cp0.getExceptions() );
+    }
+
+    public void testRefill()
+    {
+        // The store misses the TLB, the handler maps its page and the store is restarted.
+        Program p = program( FRAME1, exit( lui( T0, 0x0030 ),
+                                           addiu( T2, ZERO, 77 ),
+                                           sw( T2, T0, 4 ),
+                                           lw( T1, T0, 4 ) ) );
+        Cpu cpu = run( p );
+        assertEquals( 77, cpu.getRegister( T1 ) );
+        assertEquals( 77, p.getMemory().loadWord( 0x80100004 ) );
+        assertEquals( 1, cpu.cp0.getExceptions() );
+        assertEquals( MAIN + 12, cpu.cp0.read( Cp0.EPC, 0 ) );
+        assertEquals( 0x00300004, cpu.cp0.read( Cp0.BAD_VADDR, 0 ) );
+        assertEquals( Cp0.TLBS << 2, cpu.cp0.read( Cp0.CAUSE, 0 ) );
+    }
+
+    public void testFaultAfterJump()
+    {
+        // The load misses the TLB; it was jumped to, so the beq before it (never executed) is not its branch and
+        // eret restarts the load itself. Restarting the beq would skip the addiu.
+        Program p = program( FRAME1, exit( lui( T0, 0x0030 ),
+                                           j( 0x02, MAIN + 20 ),
+                                           0,
+                                           beq( ZERO, ZERO, 2 ),
+                                           lw( T1, T0, 4 ),
+                                           addiu( S0, ZERO, 1 ) ) );
+        Cpu cpu = run( p );
+        assertEquals( 1, cpu.getRegister( S0 ) );
+        assertEquals( 1, cpu.cp0.getExceptions() );
+        assertEquals( MAIN + 20, cpu.cp0.read( Cp0.EPC, 0 ) );
+        assertEquals( 0, cpu.cp0.read( Cp0.CAUSE, 0 ) & 0x80000000 );
+    }
+
+    public void testAsidChange()
+    {
+        // 0x00400000 is mapped to frame 0x00100000 in ASID 1; in ASID 2 the load misses and the handler maps it to
+        // frame 0x00200000, so the software TLB must not keep the translation of ASID 1.
+        Program p = program( FRAME2, exit( lui( T0, 0x0040 ),
+                                           ori( T1, T0, 1 ),
+                                           mtc0( T1, Cp0.ENTRY_HI ),
+                                           ori( T1, ZERO, FRAME1 ),
+                                           mtc0( T1, Cp0.ENTRY_LO0 ),
+                                           mtc0( T1, Cp0.ENTRY_LO1 ),
+                                           mtc0( ZERO, Cp0.INDEX ),
+                                           tlb( 0x02 ),
+                                           lw( S0, T0, 0 ),
+                                           ori( T1, T0, 2 ),
+                                           mtc0( T1, Cp0.ENTRY_HI ),
+                                           lw( S1, T0, 0 ) ) );
+        p.getMemory().storeWord( 0x80100000, 11 );
+        p.getMemory().storeWord( 0x80200000, 22 );
+        Cpu cpu = run( p );
+        assertEquals( 11, cpu.getRegister( S0 ) );
+        assertEquals( 22, cpu.getRegister( S1 ) );
+        assertEquals( 1, cpu.cp0.getExceptions() );
+    }
+
+    public void testUserMode()
+    {
+        // A kernel address in user mode is an address error, taken at the general vector.
+        Cpu cpu = new Cpu();
+        cpu.reset( MAIN );
+        cpu.cp0.write( Cp0.STATUS, 0, 2 << 3 );
+        try
+        {
+            cpu.cp0.translate( 0x80000000, false );
+            fail();
+        }
+        catch ( AddressException e )
+        {
+            assertEquals( Cp0.ADEL, e.getCode() );
+            assertEquals( 0x80000180, cpu.cp0.exception( e, MAIN, false ) );
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.mipssim.sim;
+
+import com.mipssim.Mappings;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import static com.mipssim.sim.Asm.*;
+
+/**
+ * Unit test for the pipeline timing model.
+ */
+public class PipelineTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public PipelineTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( PipelineTest.class );
+    }
+
+    /**
+     * Feeds words to a pipeline as if they were executed in order.
+     */
+    private static Pipeline feed( boolean forwarding, int... words )
+    {
+        Mappings map = new Mappings();
+        int[] table = Op.table( map );
+        Pipeline p = new Pipeline( forwarding );
+        int[] r = new int[32];
+        for ( int i = 0; i < words.length; i++ )
+            p.step( Program.TEXT_BASE + i * 4, words[i], Op.predecode( words[i], map, table ), r );
+        return p;
+    }
+
+    public void testNoHazards()
+    {
+        Pipeline p = feed( true, addiu( T0, ZERO, 1 ), addiu( T1, ZERO, 2 ), addu( T2, T0, T1 ) );
+        assertEquals( 3 + 4, p.getCycles() );
+        assertEquals( 0, p.getLoadUseStalls() + p.getBranchStalls() + p.getDataStalls() );
+    }
+
+    public void testLoadUse()
+    {
+        // One stall between a load and its use, none for a store of the loaded value (forwarded to MEM).
+        Pipeline p = feed( true, lw( T0, SP, 0 ), addu( T1, T0, T0 ), lw( T2, SP, 4 ), sw( T2, SP, 8 ) );
+        assertEquals( 1, p.getLoadUseStalls() );
+        assertEquals( 4 + 4 + 1, p.getCycles() );
+    }
+
+    public void testBranchOperands()
+    {
+        // Branches are resolved in ID: one stall after an ALU result, two after a load.
+        Pipeline p = feed( true, addiu( T0, T0, -1 ), bne( T0, ZERO, 4 ), 0,
+                                 lw( T1, SP, 0 ), beq( T1, ZERO, 4 ), 0 );
+        assertEquals( 1, p.getBranchStalls() );
+        assertEquals( 2, p.getLoadUseStalls() );
+    }
+
+    public void testWithoutForwarding()
+    {
+        // Without forwarding, the sum can be read in ID when its producer is in WB: two stalls.
+        Pipeline p = feed( false, addiu( T0, ZERO, 1 ), addu( T1, T0, T0 ) );
+        assertEquals( 2, p.getDataStalls() );
+        assertEquals( 2 + 4 + 2, p.getCycles() );
+    }
+}
@@ -0,0 +1,128 @@
+package com.mipssim.sim;
+
+import com.mipssim.Mappings;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static com.mipssim.sim.Asm.*;
+
+/**
+ * Unit test for the translation cache.
+ */
+public class TranslationCacheTest
+    extends TestCase
+{
+    private Path dir;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public TranslationCacheTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( TranslationCacheTest.class );
+    }
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        dir = Files.createTempDirectory( "tcache" );
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        for ( File f : dir.toFile().listFiles() )
+            f.delete();
+        dir.toFile().delete();
+    }
+
+    private static Program loop()
+    {
+        return new Program( Program.TEXT_BASE, new int[] { addiu( T0, ZERO, 100 ),
+                                                           addiu( S0, S0, 3 ),
+                                                           addiu( T0, T0, -1 ),
+                                                           bne( T0, ZERO, -3 ),
+                                                           0,
+                                                           jr( RA ),
+                                                           0 }, Program.TEXT_BASE );
+    }
+
+    public void testStoreAndLoad() throws IOException
+    {
+        Mappings map = new Mappings();
+        Program p = loop();
+        BlockEngine first = new BlockEngine( p, map );
+        Cpu cpu = new Cpu();
+        cpu.reset( p.getEntry() );
+        first.run( cpu, 0 );
+
+        int[] starts = first.getBlockStarts();
+        long[] counts = first.getBlockCounts( starts );
+        int[] descriptors = Op.descriptors( p.getWords(), map );
+        TranslationCache cache = new TranslationCache( dir );
+        assertFalse( cache.load( p, map ) );
+        assertNull( cache.getRejected() );
+        cache.store( p, map, descriptors, starts, counts );
+
+        // A second run starts with the blocks of the first, and compiles the hot one at once.
+        assertTrue( cache.load( loop(), map ) );
+        assertTrue( Arrays.equals( descriptors, cache.getDescriptors() ) );
+        assertTrue( Arrays.equals( starts, cache.getBlockStarts() ) );
+        assertTrue( Arrays.equals( counts, cache.getBlockCounts() ) );
+
+        BlockEngine second = new BlockEngine( loop(), map, cache.getDescriptors() );
+        second.setJitThreshold( 50 );
+        second.warm( cache.getBlockStarts(), cache.getBlockCounts() );
+        assertEquals( starts.length, second.getTranslated() );
+        assertEquals( 1, second.getCompiled() );
+
+        cpu.reset( p.getEntry() );
+        second.run( cpu, 0 );
+        assertEquals( 300, cpu.getRegister( S0 ) );
+        assertEquals( starts.length, second.getTranslated() );
+    }
+
+    public void testRejectsCorruptEntry() throws IOException
+    {
+        Mappings map = new Mappings();
+        Program p = loop();
+        TranslationCache cache = new TranslationCache( dir );
+        cache.store( p, map, Op.descriptors( p.getWords(), map ), new int[] { 0 }, new long[] { 1 } );
+
+        byte[] bytes = Files.readAllBytes( cache.entry( p ) );
+        bytes[bytes.length - 1] ^= 1;
+        Files.write( cache.entry( p ), bytes );
+        assertFalse( cache.load( p, map ) );
+        assertEquals( "checksum mismatch", cache.getRejected() );
+        assertNull( cache.getDescriptors() );
+
+        Files.write( cache.entry( p ), Arrays.copyOf( bytes, bytes.length - 8 ) );
+        assertFalse( cache.load( p, map ) );
+        assertEquals( "truncated", cache.getRejected() );
+
+        // Descriptor ids of other Mappings with as many descriptors.
+        cache.store( p, map, Op.descriptors( p.getWords(), map ), new int[] { 0 }, new long[] { 1 } );
+        bytes = Files.readAllBytes( cache.entry( p ) );
+        bytes[39] ^= 1;
+        Files.write( cache.entry( p ), bytes );
+        assertFalse( cache.load( p, map ) );
+        assertEquals( "different mappings", cache.getRejected() );
+    }
+}
@@ -0,0 +1,134 @@
+package com.mipssim.bench;
+
+import com.mipssim.Disassembler;
+import com.mipssim.Mappings;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Corpus builds the instruction words the benchmarks decode. "testrun" reads the testrun*.txt files of MipsSim
+ * (directory given by the system property mipssim.resources), the other corpora are random valid words of one
+ * instruction class, or a mix of all classes weighted like ordinary compiled code.
+ */
+final class Corpus {
+
+    // Number of words of a synthetic corpus.
+    static final int SIZE = 4096;
+
+    // Names of the corpora, usable as @Param values.
+    static final String TESTRUN  = "testrun";
+    static final String R        = "R";
+    static final String I        = "I";
+    static final String J        = "J";
+    static final String COP      = "cop";
+    static final String SPECIAL2 = "special2";
+    static final String MIXED    = "mixed";
+
+    private Corpus() {
+    }
+
+    /**
+     * Returns the words of a corpus.
+     * @param name Name of the corpus.
+     * @param map Mappings object, only words it can decode are generated.
+     * @return The words.
+     * @throws IOException If the testrun files can not be read.
+     */
+    static int[] load(String name, Mappings map) throws IOException {
+
+        if (name.equals(TESTRUN))
+            return testrun();
+
+        Random rnd  = new Random(name.hashCode());
+        int[] words = new int[SIZE];
+
+        for (int i = 0; i < SIZE; i++) {
+            String cls = name;
+            if (name.equals(MIXED)) {
+                // Weights of the classes in the mix (percent).
+                int p = rnd.nextInt(100);
+                cls = (p < 40) ? R : (p < 85) ? I : (p < 92) ? J : (p < 97) ? COP : SPECIAL2;
+            }
+            words[i] = random(cls, rnd, map);
+        }
+        return words;
+    }
+
+    /**
+     * Returns the words of a corpus as 32-bit binary strings, the input of Disassembler.parseBin.
+     */
+    static String[] toBinary(int[] words) {
+        String[] bins = new String[words.length];
+        for (int i = 0; i < words.length; i++) {
+            String bin = Integer.toBinaryString(words[i]);
+            bins[i] = "00000000000000000000000000000000".substring(bin.length()).concat(bin);
+        }
+        return bins;
+    }
+
+    /**
+     * Returns a random word of the class cls that is in the mapping.
+     */
+    private static int random(String cls, Random rnd, Mappings map) {
+        while (true) {
+            int word = rnd.nextInt();
+            int op;
+            switch (cls) {
+                case R:
+                    op = 0x00;
+                    break;
+                case J:
+                    op = 0x02 + rnd.nextInt(2);
+                    break;
+                case COP:
+                    op = 0x10 + rnd.nextInt(3);
+                    // Only the rs-values that have functions.
+                    int[] rs = { 0x00, 0x02, 0x04, 0x06, 0x08, 0x10, 0x11 };
+                    word = (word & ~(0x1f << 21)) | (rs[rnd.nextInt(rs.length)] << 21);
+                    break;
+                case SPECIAL2:
+                    op = 0x1c;
+                    break;
+                case I:
+                    op = 0x04 + rnd.nextInt(60);
+                    if ((op >= 0x10 && op <= 0x12) || op == 0x1c)
+                        continue;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown corpus " + cls + ".");
+            }
+            word = (word & 0x03ffffff) | (op << 26);
+            if ((word != 0) && (Disassembler.lookup(word, map) != null))
+                return word;
+        }
+    }
+
+    private static int[] testrun() throws IOException {
+
+        String dir  = System.getProperty("mipssim.resources", "../MipsSim/src/resources");
+        int[] words = new int[64];
+        int count   = 0;
+
+        for (int n = 1; n <= 3; n++) {
+            try (BufferedReader br = new BufferedReader(new FileReader(dir + "/testrun" + n + ".txt"))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    try {
+                        int word = line.startsWith("0x") ? Integer.parseUnsignedInt(line.substring(2), 16)
+                                                         : Integer.parseUnsignedInt(line);
+                        if (count == words.length)
+                            words = Arrays.copyOf(words, count * 2);
+                        words[count++] = word;
+                    } catch (NumberFormatException e) {
+                        // Not an instruction, skipped like in Main.
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(words, count);
+    }
+}
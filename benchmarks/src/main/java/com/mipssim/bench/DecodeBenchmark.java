@@ -0,0 +1,67 @@
+package com.mipssim.bench;
+
+import com.mipssim.Disassembler;
+import com.mipssim.Mappings;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of decoding one instruction word, each invocation decodes the next word of the corpus.
+ * Run with "-prof gc" to see the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DecodeBenchmark {
+
+    @Param({ Corpus.TESTRUN, Corpus.MIXED, Corpus.R, Corpus.I, Corpus.J, Corpus.COP, Corpus.SPECIAL2 })
+    public String corpus;
+
+    private Mappings map;
+    private int[] words;
+    private String[] bins;
+    private int next;
+
+    // Errors are not part of the measurement (the corpora have none, but the stream is needed).
+    private final PrintStream quiet = new PrintStream(OutputStream.nullOutputStream());
+
+    @Setup
+    public void setup() throws IOException {
+        map   = new Mappings();
+        words = Corpus.load(corpus, map);
+        bins  = Corpus.toBinary(words);
+    }
+
+    private int nextIndex() {
+        int i = next;
+        next  = (i + 1 == words.length) ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public Object parseBin() {
+        return Disassembler.parseBin(bins[nextIndex()], 1, map);
+    }
+
+    @Benchmark
+    public Object parseWord() {
+        return Disassembler.parseWord(words[nextIndex()], 1, map, quiet);
+    }
+
+    @Benchmark
+    public Object parseCompact() {
+        return Disassembler.parseCompact(words[nextIndex()], 1, map, quiet);
+    }
+
+    @Benchmark
+    public Object lookup() {
+        return Disassembler.lookup(words[nextIndex()], map);
+    }
+}
@@ -0,0 +1,50 @@
+package com.mipssim.bench;
+
+import com.mipssim.Disassembler;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the helpers that build the strings of a result.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FieldBenchmark {
+
+    // A 16-bit immediate and a 6-bit field, as binary strings.
+    public String immediate = "1111111111111000";
+    public String field     = "100011";
+
+    @Benchmark
+    public void binaryToDec(Blackhole bh) {
+        bh.consume(Disassembler.binaryToDec(immediate));
+        bh.consume(Disassembler.binaryToDec(field));
+    }
+
+    @Benchmark
+    public void binaryToHex(Blackhole bh) {
+        bh.consume(Disassembler.binaryToHex(immediate));
+        bh.consume(Disassembler.binaryToHex(field));
+    }
+
+    @Benchmark
+    public Object toMnemonicR() {
+        return Disassembler.toMnemonic("R", "addu", "$v0", "$a0", "$a1", null, null);
+    }
+
+    @Benchmark
+    public Object toMnemonicI2() {
+        return Disassembler.toMnemonic("I2", "lw", null, "$sp", "$ra", "4", null);
+    }
+
+    @Benchmark
+    public Object getDecomp() {
+        return Disassembler.getDecomp("0x00", "0x04", "0x05", "0x02", "0", "0x21");
+    }
+}
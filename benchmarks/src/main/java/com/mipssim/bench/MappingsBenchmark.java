@@ -0,0 +1,45 @@
+package com.mipssim.bench;
+
+import com.mipssim.Mappings;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of building the instruction tables and looking instructions up in them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MappingsBenchmark {
+
+    private Mappings map;
+    private int field;
+
+    @Setup
+    public void setup() {
+        map = new Mappings();
+    }
+
+    @Benchmark
+    public Object construct() {
+        return new Mappings();
+    }
+
+    @Benchmark
+    public void getOpAndSpecial(Blackhole bh) {
+        int f = field = (field + 1) & 0x3f;
+        bh.consume(map.getOp(f));
+        bh.consume(map.getSpecial(f));
+    }
+
+    @Benchmark
+    public Object getRegister() {
+        int f = field = (field + 1) & 0x1f;
+        return map.getRegister(f);
+    }
+}